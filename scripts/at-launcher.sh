@@ -0,0 +1,29 @@
+#!/bin/sh
+#
+# Launches Lottery or Dice CLI, using AppCDS archive if one has been built, for faster cold start.
+#
+# usage: at-launcher.sh lottery|dice <args...>
+#
+# Set APPCDS=off to launch without archive, e.g. to compare startup times.
+
+target="${TARGET:-$(dirname "$0")/../target}"
+
+. "$(dirname "$0")/classpath.sh"
+cp=$(build_classpath "${target}")
+
+case "$1" in
+	lottery)	main_class=org.qortal.at.lottery.Lottery ;;
+	dice)		main_class=org.qortal.at.lottery.Dice ;;
+	*)
+		echo "usage: at-launcher.sh lottery|dice <args...>" >&2
+		exit 2
+		;;
+esac
+shift
+
+archive="${target}/appcds.jsa"
+if [ "${APPCDS:-on}" != "off" ] && [ -f "${archive}" ]; then
+	exec java -XX:SharedArchiveFile="${archive}" -Xshare:auto -cp "${cp}" "${main_class}" "$@"
+fi
+
+exec java -cp "${cp}" "${main_class}" "$@"
@@ -0,0 +1,31 @@
+#!/bin/sh
+#
+# Builds an AppCDS (application class-data sharing) archive for the Lottery and Dice CLIs.
+#
+# Run after `mvn package dependency:copy-dependencies`, or automatically using `mvn -Pappcds package`.
+#
+# The archive only contains classes actually loaded by a Lottery and a Dice run,
+# so it stays small and doesn't pull in the rest of the qortal and AT jars.
+#
+# usage: build-appcds.sh [<target-directory>]
+
+set -e
+
+target="${1:-target}"
+classlist="${target}/appcds.classlist"
+archive="${target}/appcds.jsa"
+
+. "$(dirname "$0")/classpath.sh"
+cp=$(build_classpath "${target}")
+
+# Record classes loaded by each CLI. Output is discarded; only class loading matters.
+java -Xshare:off -XX:DumpLoadedClassList="${classlist}.lottery" -cp "${cp}" org.qortal.at.lottery.Lottery 20160 1.0 > /dev/null
+java -Xshare:off -XX:DumpLoadedClassList="${classlist}.dice" -cp "${cp}" org.qortal.at.lottery.Dice 1.0 > /dev/null
+
+sort -u "${classlist}.lottery" "${classlist}.dice" > "${classlist}"
+rm -f "${classlist}.lottery" "${classlist}.dice"
+
+# Class path at runtime must match class path used here, which build_classpath makes deterministic
+java -Xshare:dump -XX:SharedClassListFile="${classlist}" -XX:SharedArchiveFile="${archive}" -cp "${cp}"
+
+echo "AppCDS archive: ${archive} ($(wc -l < "${classlist}") classes)" >&2
@@ -0,0 +1,15 @@
+# Shared by launcher and AppCDS scripts.
+#
+# AppCDS requires the runtime class path to match the one used to dump the archive,
+# so list jars explicitly in sorted order rather than relying on 'target/dependency/*' expansion order.
+
+build_classpath() {
+	target="$1"
+
+	cp="${target}/qortal-lottery-1.0.0.jar"
+	for jar in $(ls "${target}"/dependency/*.jar | sort); do
+		cp="${cp}:${jar}"
+	done
+
+	echo "${cp}"
+}
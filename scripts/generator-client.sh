@@ -0,0 +1,42 @@
+#!/bin/sh
+#
+# Tiny client for GeneratorServer, so each AT doesn't pay for JVM startup.
+#
+# usage: generator-client.sh lottery <timeout-minutes> <minimum-entry-amount> [<format>]
+#        generator-client.sh dice [--sides <n>] [--multiplier <n>] <minimum-entry-amount> [<format>]
+#
+# Dice defaults to a six-sided die paying 6x.
+# Server port can be overridden using GENERATOR_PORT (default 8765).
+# Creation bytes are written to stdout. Errors are written to stderr with non-zero exit status.
+# Requires curl 7.76 or later for --fail-with-body.
+
+port="${GENERATOR_PORT:-8765}"
+base_url="http://127.0.0.1:${port}"
+
+case "$1" in
+	lottery)
+		[ $# -ge 3 ] || { sed -n '5,6p' "$0" | cut -c3- >&2; exit 2; }
+		url="${base_url}/lottery?sleepMinutes=$2&minimumAmount=$3&format=${4:-base58}"
+		;;
+	dice)
+		shift
+		table=""
+		while [ $# -ge 2 ]; do
+			case "$1" in
+				--sides) table="${table}&sides=$2"; shift 2 ;;
+				--multiplier) table="${table}&multiplier=$2"; shift 2 ;;
+				*) break ;;
+			esac
+		done
+		case "$1" in
+			''|--*) sed -n '5,6p' "$0" | cut -c3- >&2; exit 2 ;;
+		esac
+		url="${base_url}/dice?minimumAmount=$1${table}&format=${2:-base58}"
+		;;
+	*)
+		sed -n '5,6p' "$0" | cut -c3- >&2
+		exit 2
+		;;
+esac
+
+exec curl --silent --show-error --fail-with-body "${url}"
@@ -0,0 +1,39 @@
+#!/bin/sh
+#
+# Compares cold-start time of Lottery CLI with and without AppCDS archive.
+#
+# usage: measure-startup.sh [<runs>]
+#
+# Needs a prior 'mvn -Pappcds package', otherwise both timings would be of the same, or failing, launch.
+
+runs="${1:-20}"
+launcher="$(dirname "$0")/at-launcher.sh"
+target="${TARGET:-$(dirname "$0")/../target}"
+
+if [ ! -f "${target}/appcds.jsa" ]; then
+	echo "No AppCDS archive at ${target}/appcds.jsa - build with: mvn -Pappcds package" >&2
+	exit 1
+fi
+
+measure() {
+	label="$1"
+	start=$(date +%s%N)
+
+	i=0
+	while [ $i -lt "${runs}" ]; do
+		if ! "${launcher}" lottery 20160 1.0 > /dev/null; then
+			echo "${label}: launch failed, no timing recorded" >&2
+			exit 1
+		fi
+
+		i=$((i + 1))
+	done
+
+	end=$(date +%s%N)
+	echo "${label}: $(( (end - start) / runs / 1000000 )) ms per run (${runs} runs)"
+}
+
+java -version 2>&1 | head -n 1
+
+APPCDS=off measure "without AppCDS"
+APPCDS=on measure "with AppCDS"
@@ -0,0 +1,84 @@
+package org.qortal.at.lottery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Precompiled AT creation bytes, packaged as classpath resources at build time by {@link TemplateGenerator}.
+ * <p>
+ * Building an AT from a template is a copy plus patching parameters into the data segment,
+ * so neither the <tt>OpCode</tt> compiler nor <tt>MachineState</tt> need to be loaded.
+ * <p>
+ * Resources, relative to this package:
+ * <ul>
+ *     <li><tt>templates/<i>name</i>.at</tt> - canonical creation bytes: header, code segment and data segment template</li>
+ *     <li><tt>templates/<i>name</i>.hash</tt> - SHA256 of code segment</li>
+ * </ul>
+ */
+class AtTemplate {
+
+    static final String RESOURCE_DIRECTORY = "templates";
+
+    private final byte[] creationBytes;
+    private final byte[] codeHash;
+    private final int dataOffset;
+
+    private AtTemplate(byte[] creationBytes, byte[] codeHash) {
+        CreationBytes parsed = new CreationBytes();
+        if (!parsed.wrap(ByteBuffer.wrap(creationBytes)))
+            throw new IllegalStateException("Malformed AT template");
+
+        this.creationBytes = creationBytes;
+        this.codeHash = codeHash;
+        this.dataOffset = parsed.getDataOffset();
+    }
+
+    /** Returns template from classpath, or null if not packaged, e.g. running from IDE without full build. */
+    static AtTemplate load(String name) {
+        byte[] creationBytes = readResource(name + ".at");
+        byte[] codeHash = readResource(name + ".hash");
+
+        if (creationBytes == null || codeHash == null)
+            return null;
+
+        return new AtTemplate(creationBytes, codeHash);
+    }
+
+    private static byte[] readResource(String resourceName) {
+        try (InputStream in = AtTemplate.class.getResourceAsStream(RESOURCE_DIRECTORY + "/" + resourceName)) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Writes template resources for <tt>name</tt> into <tt>directory</tt>. */
+    static void write(Path directory, String name, byte[] creationBytes, byte[] codeHash) throws IOException {
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(name + ".at"), creationBytes);
+        Files.write(directory.resolve(name + ".hash"), codeHash);
+    }
+
+    /** Returns copy of template creation bytes, ready for parameters to be patched in. */
+    byte[] newCreationBytes() {
+        return this.creationBytes.clone();
+    }
+
+    /** Sets value at data segment <tt>address</tt> in <tt>creationBytes</tt> from {@link #newCreationBytes()}. */
+    void putValue(byte[] creationBytes, int address, long value) {
+        int offset = this.dataOffset + address * CreationBytes.DATA_PAGE_SIZE;
+
+        for (int i = 7; i >= 0; --i) {
+            creationBytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    byte[] getCodeHash() {
+        return this.codeHash.clone();
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.MachineState;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable, zero-copy view of AT creation bytes, as produced by <tt>MachineState.toCreationBytes()</tt>.
+ * <p>
+ * Layout:
+ * <ul>
+ *     <li>header: version, reserved, code pages, data pages, call stack pages, user stack pages (all shorts),
+ *     then min activation amount (long)</li>
+ *     <li>code segment: one byte per code page</li>
+ *     <li>data segment: one value per data page</li>
+ * </ul>
+ * {@link #wrap(ByteBuffer)} only reads header fields; segments are accessed in place using absolute offsets
+ * into the wrapped buffer, so nothing is copied and no objects are allocated.
+ * <p>
+ * Not thread-safe. Create one per thread and re-wrap for each blob.
+ */
+public class CreationBytes {
+
+    public static final int HEADER_LENGTH = 2 + 2 + 2 + 2 + 2 + 2 + 8;
+
+    public static final int CODE_PAGE_SIZE = 1;
+    public static final int DATA_PAGE_SIZE = MachineState.VALUE_SIZE;
+
+    private ByteBuffer buffer;
+    private int start;
+
+    private short version;
+    private short reserved;
+    private int codeLength;
+    private int dataLength;
+    private short numCallStackPages;
+    private short numUserStackPages;
+    private long minActivationAmount;
+
+    /**
+     * Parses header of creation bytes from <tt>buffer</tt>'s position to its limit.
+     * <p>
+     * Buffer's position and limit are not changed. Buffer must not be modified while this view is in use.
+     *
+     * @return false if bytes are too short or their length doesn't match header
+     */
+    public boolean wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+
+        int length = buffer.limit() - this.start;
+        if (length < HEADER_LENGTH)
+            return false;
+
+        // Absolute gets: big-endian unless caller changed buffer's byte order
+        this.version = buffer.getShort(this.start);
+        this.reserved = buffer.getShort(this.start + 2);
+        this.codeLength = (buffer.getShort(this.start + 4) & 0xffff) * CODE_PAGE_SIZE;
+        this.dataLength = (buffer.getShort(this.start + 6) & 0xffff) * DATA_PAGE_SIZE;
+        this.numCallStackPages = buffer.getShort(this.start + 8);
+        this.numUserStackPages = buffer.getShort(this.start + 10);
+        this.minActivationAmount = buffer.getLong(this.start + 12);
+
+        return length == HEADER_LENGTH + this.codeLength + this.dataLength;
+    }
+
+    public short getVersion() {
+        return this.version;
+    }
+
+    public short getReserved() {
+        return this.reserved;
+    }
+
+    public short getNumCallStackPages() {
+        return this.numCallStackPages;
+    }
+
+    public short getNumUserStackPages() {
+        return this.numUserStackPages;
+    }
+
+    public long getMinActivationAmount() {
+        return this.minActivationAmount;
+    }
+
+    public int getCodeLength() {
+        return this.codeLength;
+    }
+
+    public int getDataLength() {
+        return this.dataLength;
+    }
+
+    /** Returns absolute offset of code segment in wrapped buffer. */
+    public int getCodeOffset() {
+        return this.start + HEADER_LENGTH;
+    }
+
+    /** Returns absolute offset of data segment in wrapped buffer. */
+    public int getDataOffset() {
+        return this.start + HEADER_LENGTH + this.codeLength;
+    }
+
+    /** Returns initial value at data segment <tt>address</tt>. */
+    public long getDataValue(int address) {
+        return this.buffer.getLong(getDataOffset() + address * DATA_PAGE_SIZE);
+    }
+
+    /** Returns true if code segment is byte-for-byte equal to <tt>codeBytes</tt>. */
+    public boolean codeEquals(byte[] codeBytes) {
+        return this.codeLength == codeBytes.length && regionEquals(getCodeOffset(), this.codeLength, codeBytes, 0);
+    }
+
+    /** Returns true if <tt>length</tt> bytes of data segment, from <tt>dataOffset</tt>, equal same region in <tt>dataBytes</tt>. */
+    public boolean dataRegionEquals(int dataOffset, int length, byte[] dataBytes) {
+        return regionEquals(getDataOffset() + dataOffset, length, dataBytes, dataOffset);
+    }
+
+    private boolean regionEquals(int offset, int length, byte[] expected, int expectedOffset) {
+        if (expectedOffset + length > expected.length)
+            return false;
+
+        for (int i = 0; i < length; ++i)
+            if (this.buffer.get(offset + i) != expected[expectedOffset + i])
+                return false;
+
+        return true;
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.qortal.at.lottery;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes encoded creation bytes to a file, or stdout, through a buffered channel.
+ * <p>
+ * Text formats write one encoded blob per line. {@link OutputFormat#RAW} writes blobs back-to-back.
+ */
+public class CreationBytesOutput implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputFormat format;
+    private final FileChannel channel;
+    private final boolean isStdout;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private CreationBytesOutput(OutputFormat format, FileChannel channel, boolean isStdout) {
+        this.format = format;
+        this.channel = channel;
+        this.isStdout = isStdout;
+    }
+
+    /** Opens output to <tt>path</tt>, replacing any existing file, or to stdout if <tt>path</tt> is null. */
+    public static CreationBytesOutput open(OutputFormat format, Path path) throws IOException {
+        if (path == null)
+            return new CreationBytesOutput(format, new FileOutputStream(FileDescriptor.out).getChannel(), true);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new CreationBytesOutput(format, channel, false);
+    }
+
+    public OutputFormat getFormat() {
+        return this.format;
+    }
+
+    /** Writes <tt>creationBytes</tt> using output's format. */
+    public void write(byte[] creationBytes) throws IOException {
+        put(this.format.encode(creationBytes));
+
+        if (this.format.isText)
+            put((byte) '\n');
+    }
+
+    /** Writes <tt>text</tt> as-is, e.g. labels. Ignored for raw output so blobs stay back-to-back. */
+    public void writeText(String text) throws IOException {
+        if (this.format.isText)
+            put(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void put(byte b) throws IOException {
+        if (!this.buffer.hasRemaining())
+            flush();
+
+        this.buffer.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (bytes.length > this.buffer.remaining()) {
+            flush();
+
+            // Too big to buffer, so write directly
+            if (bytes.length > this.buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+                return;
+            }
+        }
+
+        this.buffer.put(bytes);
+    }
+
+    public void flush() throws IOException {
+        this.buffer.flip();
+        writeFully(this.buffer);
+        this.buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer byteBuffer) throws IOException {
+        while (byteBuffer.hasRemaining())
+            this.channel.write(byteBuffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+
+        // Leave stdout open for anything else that wants to write to it
+        if (!this.isStdout)
+            this.channel.close();
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.qortal.at.lottery;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Checks whether creation bytes are for a genuine Lottery or Dice AT, without building a <tt>MachineState</tt>.
+ * <p>
+ * Canonical creation bytes are built once, when validator is constructed. Candidates must then have:
+ * <ul>
+ *     <li>same header values (version, stack pages, min activation amount)</li>
+ *     <li>identical code, and hence the same code hash as {@link Lottery#getCodeBytesHash()} or {@link Dice#getCodeBytesHash()}</li>
+ *     <li>identical initial data, apart from parameters</li>
+ *     <li>parameters within the bounds enforced by <tt>buildQortalAT</tt></li>
+ * </ul>
+ * Comparing code bytes directly is cheaper than hashing them and gives the same answer.
+ * <p>
+ * Not thread-safe, as parsed parameters are held until the next call to {@link #validate(ByteBuffer)}.
+ * Create one validator per thread.
+ */
+public class CreationBytesValidator {
+
+    public enum Result {
+        LOTTERY(true),
+        DICE(true),
+        /** Too short, or length doesn't match header */
+        MALFORMED(false),
+        /** Unexpected version, stack pages or min activation amount */
+        UNEXPECTED_HEADER(false),
+        /** Code is neither Lottery nor Dice */
+        UNKNOWN_CODE(false),
+        /** Code matches but initial data, other than parameters, doesn't */
+        UNEXPECTED_DATA(false),
+        /** Parameters outside the bounds enforced by <tt>buildQortalAT</tt> */
+        PARAMETER_OUT_OF_RANGE(false);
+
+        public final boolean isValid;
+
+        Result(boolean isValid) {
+            this.isValid = isValid;
+        }
+    }
+
+    // Parameters are at start of data segment
+    private static final int LOTTERY_PARAMETERS_LENGTH = 2 * CreationBytes.DATA_PAGE_SIZE;
+    private static final int DICE_PARAMETERS_LENGTH = 3 * CreationBytes.DATA_PAGE_SIZE;
+
+    private final CreationBytes candidate = new CreationBytes();
+
+    private final CreationBytes lotteryTemplate = new CreationBytes();
+    private final byte[] lotteryCode;
+    private final byte[] lotteryData;
+
+    private final CreationBytes diceTemplate = new CreationBytes();
+    private final byte[] diceCode;
+    private final byte[] diceData;
+
+    private int sleepMinutes;
+    private long minimumAmount;
+    private int sides;
+    private int multiplier;
+
+    public CreationBytesValidator() {
+        byte[] lotteryBytes = Lottery.buildQortalAT(Lottery.MIN_SLEEP_MINUTES, Lottery.MIN_MINIMUM_AMOUNT);
+        this.lotteryTemplate.wrap(ByteBuffer.wrap(lotteryBytes));
+        this.lotteryCode = codeOf(this.lotteryTemplate, lotteryBytes);
+        this.lotteryData = dataOf(this.lotteryTemplate, lotteryBytes);
+
+        byte[] diceBytes = Dice.buildQortalAT(Dice.MIN_MINIMUM_AMOUNT);
+        this.diceTemplate.wrap(ByteBuffer.wrap(diceBytes));
+        this.diceCode = codeOf(this.diceTemplate, diceBytes);
+        this.diceData = dataOf(this.diceTemplate, diceBytes);
+    }
+
+    private static byte[] codeOf(CreationBytes template, byte[] bytes) {
+        return Arrays.copyOfRange(bytes, template.getCodeOffset(), template.getCodeOffset() + template.getCodeLength());
+    }
+
+    private static byte[] dataOf(CreationBytes template, byte[] bytes) {
+        return Arrays.copyOfRange(bytes, template.getDataOffset(), template.getDataOffset() + template.getDataLength());
+    }
+
+    public Result validate(byte[] creationBytes) {
+        return validate(ByteBuffer.wrap(creationBytes));
+    }
+
+    /**
+     * Validates creation bytes from <tt>buffer</tt>'s position to its limit, without copying them.
+     * <p>
+     * On success, parameters are available from {@link #getSleepMinutes()}, {@link #getMinimumAmount()},
+     * {@link #getSides()} and {@link #getMultiplier()}.
+     */
+    public Result validate(ByteBuffer buffer) {
+        this.sleepMinutes = 0;
+        this.minimumAmount = 0;
+        this.sides = 0;
+        this.multiplier = 0;
+
+        if (!this.candidate.wrap(buffer))
+            return Result.MALFORMED;
+
+        if (this.candidate.codeEquals(this.lotteryCode))
+            return validateLottery();
+
+        if (this.candidate.codeEquals(this.diceCode))
+            return validateDice();
+
+        return Result.UNKNOWN_CODE;
+    }
+
+    private Result validateLottery() {
+        if (!headerMatches(this.lotteryTemplate))
+            return Result.UNEXPECTED_HEADER;
+
+        if (!dataMatches(this.lotteryData, LOTTERY_PARAMETERS_LENGTH))
+            return Result.UNEXPECTED_DATA;
+
+        long sleepMinutes = this.candidate.getDataValue(Lottery.ADDR_SLEEP_MINUTES);
+        long minimumAmount = this.candidate.getDataValue(Lottery.ADDR_MINIMUM_AMOUNT);
+
+        if (sleepMinutes < Lottery.MIN_SLEEP_MINUTES || sleepMinutes > Lottery.MAX_SLEEP_MINUTES)
+            return Result.PARAMETER_OUT_OF_RANGE;
+
+        if (minimumAmount < Lottery.MIN_MINIMUM_AMOUNT || minimumAmount > Lottery.MAX_MINIMUM_AMOUNT)
+            return Result.PARAMETER_OUT_OF_RANGE;
+
+        this.sleepMinutes = (int) sleepMinutes;
+        this.minimumAmount = minimumAmount;
+        return Result.LOTTERY;
+    }
+
+    private Result validateDice() {
+        if (!headerMatches(this.diceTemplate))
+            return Result.UNEXPECTED_HEADER;
+
+        if (!dataMatches(this.diceData, DICE_PARAMETERS_LENGTH))
+            return Result.UNEXPECTED_DATA;
+
+        long minimumAmount = this.candidate.getDataValue(Dice.ADDR_MINIMUM_AMOUNT);
+        long sides = this.candidate.getDataValue(Dice.ADDR_SIDES);
+        long multiplier = this.candidate.getDataValue(Dice.ADDR_MULTIPLIER);
+
+        if (minimumAmount < Dice.MIN_MINIMUM_AMOUNT || minimumAmount > Dice.MAX_MINIMUM_AMOUNT)
+            return Result.PARAMETER_OUT_OF_RANGE;
+
+        if (sides < Dice.MIN_SIDES || sides > Dice.MAX_SIDES)
+            return Result.PARAMETER_OUT_OF_RANGE;
+
+        if (multiplier < Dice.MIN_MULTIPLIER || multiplier > sides)
+            return Result.PARAMETER_OUT_OF_RANGE;
+
+        this.minimumAmount = minimumAmount;
+        this.sides = (int) sides;
+        this.multiplier = (int) multiplier;
+        return Result.DICE;
+    }
+
+    private boolean headerMatches(CreationBytes template) {
+        return this.candidate.getVersion() == template.getVersion()
+                && this.candidate.getReserved() == template.getReserved()
+                && this.candidate.getNumCallStackPages() == template.getNumCallStackPages()
+                && this.candidate.getNumUserStackPages() == template.getNumUserStackPages()
+                && this.candidate.getMinActivationAmount() == template.getMinActivationAmount();
+    }
+
+    /** Parameters are at start of data segment, so compare everything after them. */
+    private boolean dataMatches(byte[] templateData, int parametersLength) {
+        return this.candidate.getDataLength() == templateData.length
+                && this.candidate.dataRegionEquals(parametersLength, templateData.length - parametersLength, templateData);
+    }
+
+    /** Returns lottery sleep period from last successful validation, or 0 for Dice. */
+    public int getSleepMinutes() {
+        return this.sleepMinutes;
+    }
+
+    /** Returns minimum amount from last successful validation. */
+    public long getMinimumAmount() {
+        return this.minimumAmount;
+    }
+
+    /** Returns dice number of sides from last successful validation, or 0 for Lottery. */
+    public int getSides() {
+        return this.sides;
+    }
+
+    /** Returns dice payout multiplier from last successful validation, or 0 for Lottery. */
+    public int getMultiplier() {
+        return this.multiplier;
+    }
+
+}
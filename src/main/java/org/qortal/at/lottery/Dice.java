@@ -2,8 +2,16 @@ package org.qortal.at.lottery;
 
 import org.ciyam.at.*;
 import org.qortal.at.QortalFunctionCode;
+import org.qortal.crypto.Crypto;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static org.ciyam.at.OpCode.calcOffset;
 
@@ -12,7 +20,8 @@ import static org.ciyam.at.OpCode.calcOffset;
  *  1. Sleep until we receive a message/payment to avoid extra DB state records
  *  2. Any MESSAGE from creator causes AT to refund balance to creator and finish
  *  3. Enforce minimum PAYMENT (below minimum payments simply ignored)
- *  4. PAYMENTs larger than 6x balance are simply refunded
+ *  4. PAYMENTs whose winnings would exceed balance are simply refunded
+ *  5. Number of sides and payout multiplier are data, not code, so all dice ATs share one code hash
  *
  * Data:
  *      [start timestamp / most recent transaction timestamp]
@@ -33,36 +42,106 @@ import static org.ciyam.at.OpCode.calcOffset;
  *              refund balance to creator and finish
  *          if payment:
  *              if amount less than minimum, continue loop
- *              if amount greater than 6x balance, refund to sender, continue loop
- *          generate random
+ *              if amount x multiplier greater than balance, refund to sender, continue loop
+ *          generate random, modulo number of sides
  *          if loser:
  *              continue loop
- *          send amount x6 to sender
+ *          send amount x multiplier to sender
  *          continue loop
  */
 public class Dice {
 
+    /** Parameter bounds enforced by {@link #buildQortalAT(long)} */
+    public static final long MIN_MINIMUM_AMOUNT = 100_0000L;
+    public static final long MAX_MINIMUM_AMOUNT = 1000_0000_0000L;
+    public static final int MIN_SIDES = 2;
+    public static final int MAX_SIDES = 1000;
+    /** Multiplier must also be no more than number of sides, so players never have the edge over the AT's creator */
+    public static final int MIN_MULTIPLIER = 2;
+
+    /** Classic six-sided die, paying 6x */
+    public static final int DEFAULT_SIDES = 6;
+    public static final int DEFAULT_MULTIPLIER = 6;
+
     private static byte[] CODE_BYTES;
 
     /** SHA256 of AT code bytes */
     private static byte[] CODE_BYTES_HASH;
 
+    /** Data segment addresses of parameters, matching addr* labels in {@link #compileQortalAT(long, int, int)} */
+    static final int ADDR_MINIMUM_AMOUNT = 0;
+    static final int ADDR_SIDES = 1;
+    static final int ADDR_MULTIPLIER = 2;
+
+    /** Precompiled at build time, if available */
+    private static final AtTemplate TEMPLATE = AtTemplate.load("dice");
+
+    /** Returns SHA256 of dice AT code bytes, used to recognise deployed dice ATs. */
+    public static byte[] getCodeBytesHash() {
+        if (TEMPLATE != null)
+            return TEMPLATE.getCodeHash();
+
+        return compileCodeBytesHash();
+    }
+
+    /** Returns SHA256 of code bytes compiled at runtime, ignoring any template. */
+    static byte[] compileCodeBytesHash() {
+        if (CODE_BYTES_HASH == null)
+            compileQortalAT(MIN_MINIMUM_AMOUNT, DEFAULT_SIDES, DEFAULT_MULTIPLIER);
+
+        return CODE_BYTES_HASH.clone();
+    }
+
     /** Potential fees incurred by AT before paying out. Used as a safety margin to make sure AT has enough to pay out winner. */
-    private static final long PAYOUT_FEES = 100_0000L;
+    public static final long PAYOUT_FEES = 100_0000L;
 
     /**
-     * Returns Qortal AT creation bytes for dice AT.
+     * Returns Qortal AT creation bytes for six-sided dice AT, paying 6x.
      *
      * @param minimumAmount     Minimum amount of QORT for valid entry
      */
     public static byte[] buildQortalAT(long minimumAmount) {
-        if (minimumAmount < 100_0000L || minimumAmount > 1000_0000_0000L)
+        return buildQortalAT(minimumAmount, DEFAULT_SIDES, DEFAULT_MULTIPLIER);
+    }
+
+    /**
+     * Returns Qortal AT creation bytes for dice AT.
+     *
+     * @param minimumAmount     Minimum amount of QORT for valid entry
+     * @param sides             Number of sides, so odds of winning are 1 in <tt>sides</tt>
+     * @param multiplier        Winners receive entry amount multiplied by this
+     */
+    public static byte[] buildQortalAT(long minimumAmount, int sides, int multiplier) {
+        if (minimumAmount < MIN_MINIMUM_AMOUNT || minimumAmount > MAX_MINIMUM_AMOUNT)
             throw new IllegalArgumentException("Minimum amount should be between 0.01 QORT and 1000 QORT");
 
+        if (sides < MIN_SIDES || sides > MAX_SIDES)
+            throw new IllegalArgumentException("Number of sides should be between 2 and 1000");
+
+        if (multiplier < MIN_MULTIPLIER || multiplier > sides)
+            throw new IllegalArgumentException("Multiplier should be between 2 and number of sides");
+
+        if (TEMPLATE != null) {
+            byte[] creationBytes = TEMPLATE.newCreationBytes();
+            TEMPLATE.putValue(creationBytes, ADDR_MINIMUM_AMOUNT, minimumAmount);
+            TEMPLATE.putValue(creationBytes, ADDR_SIDES, sides);
+            TEMPLATE.putValue(creationBytes, ADDR_MULTIPLIER, multiplier);
+            return creationBytes;
+        }
+
+        return compileQortalAT(minimumAmount, sides, multiplier);
+    }
+
+    /** Returns creation bytes compiled at runtime. Parameters are not checked. */
+    static byte[] compileQortalAT(long minimumAmount, int sides, int multiplier) {
         // Labels for data segment addresses
         int addrCounter = 0;
 
+        // Parameters first, so validator can compare everything after them
         final int addrMinimumAmount = addrCounter++;
+        final int addrSides = addrCounter++;
+        final int addrMultiplier = addrCounter++;
+
         final int addrLastTxnTimestamp = addrCounter++;
 
         final int addrPreviousBlockHash = addrCounter; addrCounter += 4;
@@ -74,7 +153,6 @@ public class Dice {
         final int addrCurrentBalance = addrCounter++;
         final int addrWinningPayout = addrCounter++;
         final int addrZero = addrCounter++;
-        final int addrSix = addrCounter++;
 
         /*
          * We SHA256 bytes in data segment from zero to addrSenderAddress (inclusive) for each entry to produce random.
@@ -97,9 +175,17 @@ public class Dice {
         dataByteBuffer.position(addrPaymentTxnType * MachineState.VALUE_SIZE);
         dataByteBuffer.putLong(API.ATTransactionType.PAYMENT.value);
 
-        // SIX!
-        dataByteBuffer.position(addrSix * MachineState.VALUE_SIZE);
-        dataByteBuffer.putLong(6L);
+        // Number of sides
+        dataByteBuffer.position(addrSides * MachineState.VALUE_SIZE);
+        dataByteBuffer.putLong(sides);
+
+        // Payout multiplier
+        dataByteBuffer.position(addrMultiplier * MachineState.VALUE_SIZE);
+        dataByteBuffer.putLong(multiplier);
+
+        // Code doesn't depend on parameters, so reuse it once compiled
+        if (CODE_BYTES != null)
+            return toCreationBytes(CODE_BYTES, dataByteBuffer.array());
 
         // Code labels
         Integer labelSleepLoop = null;
@@ -175,7 +261,7 @@ public class Dice {
                 // Check payment amount isn't too large
                 // Calculate potential payout
                 codeByteBuffer.put(OpCode.SET_DAT.compile(addrWinningPayout, addrPaymentAmount));
-                codeByteBuffer.put(OpCode.MUL_VAL.compile(addrWinningPayout, 6));
+                codeByteBuffer.put(OpCode.MUL_DAT.compile(addrWinningPayout, addrMultiplier));
                 // Find current balance
                 codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_CURRENT_BALANCE, addrCurrentBalance));
                 // Subtract potential fees
@@ -201,8 +287,8 @@ public class Dice {
                 codeByteBuffer.put(OpCode.EXT_FUN_DAT_2.compile(FunctionCode.SHA256_INTO_B, addrZero, addrSenderAddressByteLength));
                 // Extract some of the hash output
                 codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_B4, addrResult));
-                // Modulo 6
-                codeByteBuffer.put(OpCode.MOD_DAT.compile(addrResult, addrSix));
+                // Modulo number of sides
+                codeByteBuffer.put(OpCode.MOD_DAT.compile(addrResult, addrSides));
 
                 // Winner if result is zero
                 codeByteBuffer.put(OpCode.BZR_DAT.compile(addrResult, calcOffset(codeByteBuffer, labelPayout)));
@@ -228,12 +314,169 @@ public class Dice {
         byte[] codeBytes = new byte[codeByteBuffer.limit()];
         codeByteBuffer.get(codeBytes);
 
+        // Code doesn't depend on parameters so all dice ATs share the same code hash
+        if (CODE_BYTES == null) {
+            CODE_BYTES = codeBytes;
+            CODE_BYTES_HASH = Crypto.digest(codeBytes);
+        }
+
+        return toCreationBytes(codeBytes, dataByteBuffer.array());
+    }
+
+    private static byte[] toCreationBytes(byte[] codeBytes, byte[] dataBytes) {
         final short ciyamAtVersion = 2;
         final short numCallStackPages = 0;
         final short numUserStackPages = 0;
         final long minActivationAmount = 0L;
 
-        return MachineState.toCreationBytes(ciyamAtVersion, codeBytes, dataByteBuffer.array(), numCallStackPages, numUserStackPages, minActivationAmount);
+        return MachineState.toCreationBytes(ciyamAtVersion, codeBytes, dataBytes, numCallStackPages, numUserStackPages, minActivationAmount);
+    }
+
+    private static void usage() {
+        System.err.println("usage: dice [--format raw|hex|base64|base58] [--output <file>] [--sides <n>] [--multiplier <n>] <minimum-entry-amount>");
+        System.err.println("       dice [--format raw|hex|base64|base58] [--output <file>] [--sides <n>] [--multiplier <n>] --batch");
+        System.err.println("example: dice 1.0");
+        System.err.println("         minimum entry 1.0 QORT, 1 in 6 chance of winning, winners receive 6x entry");
+        System.err.println("example: dice --sides 10 --multiplier 9 1.0");
+        System.err.println("         minimum entry 1.0 QORT, 1 in 10 chance of winning, winners receive 9x entry");
+        System.err.println("batch mode reads one minimum entry amount per line from stdin");
+        System.err.println("default format is base58, default output is stdout, default is 6 sides paying 6x");
+        System.err.println("code hash is written before each output, or to stderr for raw format");
+    }
+
+    public static void main(String[] args) throws IOException {
+        OutputFormat format = OutputFormat.BASE58;
+        Path outputPath = null;
+        int sides = DEFAULT_SIDES;
+        int multiplier = DEFAULT_MULTIPLIER;
+        boolean isBatch = false;
+
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String option = args[argIndex++];
+
+            if (option.equals("--batch")) {
+                isBatch = true;
+                continue;
+            }
+
+            if (argIndex >= args.length) {
+                usage();
+                System.exit(2);
+            }
+
+            String value = args[argIndex++];
+
+            if (option.equals("--format")) {
+                format = OutputFormat.fromName(value);
+
+                if (format == null) {
+                    usage();
+                    System.err.println();
+                    System.err.printf("Output format '%s' unknown%n", value);
+                    System.exit(2);
+                }
+            } else if (option.equals("--output")) {
+                outputPath = Paths.get(value);
+            } else if (option.equals("--sides")) {
+                sides = parseIntOption(option, value);
+            } else if (option.equals("--multiplier")) {
+                multiplier = parseIntOption(option, value);
+            } else {
+                usage();
+                System.exit(2);
+            }
+        }
+
+        if (args.length - argIndex != (isBatch ? 0 : 1)) {
+            usage();
+            System.exit(2);
+        }
+
+        try {
+            try (CreationBytesOutput output = CreationBytesOutput.open(format, outputPath)) {
+                if (!isBatch) {
+                    byte[] creationBytes = buildFromArg(args[argIndex], sides, multiplier, null);
+
+                    // Keep human-friendly labels for default output
+                    if (format == OutputFormat.BASE58) {
+                        output.writeText(String.format("Code hash:%n%s%nCreation bytes:%n", getCodeBytesHashHex()));
+                        output.write(creationBytes);
+                    } else {
+                        writeWithCodeHash(output, creationBytes);
+                    }
+
+                    return;
+                }
+
+                // Batch mode: same JVM, so builder stays warm for every line
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                int lineNumber = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ++lineNumber;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#"))
+                        continue;
+
+                    writeWithCodeHash(output, buildFromArg(line, sides, multiplier, lineNumber));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Output has been closed by now, so everything built before the bad input is kept
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Parses integer option value, exiting with message if invalid. */
+    private static int parseIntOption(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage();
+            System.err.println();
+            System.err.printf("Option %s value '%s' invalid - should be integer%n", option, value);
+            System.exit(2);
+            // not reached
+            throw e;
+        }
+    }
+
+    /**
+     * Parses minimum amount and builds AT.
+     *
+     * @throws IllegalArgumentException with message for user if either fails
+     */
+    private static byte[] buildFromArg(String arg, int sides, int multiplier, Integer lineNumber) {
+        String where = lineNumber == null ? "" : String.format(" on line %d", lineNumber);
+
+        long minimumAmount;
+        try {
+            minimumAmount = new BigDecimal(arg).setScale(8).unscaledValue().longValue();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("Minimum entry amount '%s'%s invalid - should be between 0.01 QORT and 1000 QORT", arg, where), e);
+        }
+
+        try {
+            return buildQortalAT(minimumAmount, sides, multiplier);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(e.getMessage() + where, e);
+        }
+    }
+
+    /** Writes <tt>code-hash TAB encoded-creation-bytes</tt>, or code hash to stderr for raw output. */
+    private static void writeWithCodeHash(CreationBytesOutput output, byte[] creationBytes) throws IOException {
+        if (output.getFormat().isText)
+            output.writeText(getCodeBytesHashHex() + "\t");
+        else
+            System.err.println(getCodeBytesHashHex());
+
+        output.write(creationBytes);
+    }
+
+    private static String getCodeBytesHashHex() {
+        return new String(OutputFormat.HEX.encode(getCodeBytesHash()), StandardCharsets.US_ASCII);
     }
 
 }
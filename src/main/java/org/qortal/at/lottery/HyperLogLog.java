@@ -0,0 +1,66 @@
+package org.qortal.at.lottery;
+
+/**
+ * HyperLogLog estimate of the number of distinct values added, using fixed memory.
+ * <p>
+ * Uses 2<sup>14</sup> one-byte registers, giving a standard error of roughly 0.8%.
+ * The harmonic sum and count of empty registers are kept up to date on every {@link #add(long)},
+ * so {@link #estimate()} is constant time.
+ * <p>
+ * Values must already be well-mixed 64-bit hashes, e.g. from {@link #hash(CharSequence)}.
+ */
+class HyperLogLog {
+
+    private static final int PRECISION = 14;
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1.0 + 1.079 / REGISTER_COUNT);
+
+    private final byte[] registers = new byte[REGISTER_COUNT];
+
+    /** Sum of 2<sup>-register</sup> over all registers */
+    private double inverseSum = REGISTER_COUNT;
+    private int zeroCount = REGISTER_COUNT;
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Rank is position of first 1-bit in remaining bits, capped if they're all zero
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), 64 - PRECISION) + 1;
+
+        int previousRank = this.registers[index];
+        if (rank <= previousRank)
+            return;
+
+        this.registers[index] = (byte) rank;
+        this.inverseSum += Math.scalb(1.0, -rank) - Math.scalb(1.0, -previousRank);
+
+        if (previousRank == 0)
+            --this.zeroCount;
+    }
+
+    public long estimate() {
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / this.inverseSum;
+
+        // Linear counting is more accurate for small cardinalities
+        if (estimate <= 2.5 * REGISTER_COUNT && this.zeroCount != 0)
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / this.zeroCount);
+
+        return Math.round(estimate);
+    }
+
+    /** Returns 64-bit hash of <tt>value</tt>: FNV-1a over chars, then MurmurHash3's finalizer to spread bits. */
+    public static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); ++i)
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+}
@@ -1,10 +1,13 @@
 package org.qortal.at.lottery;
 
 import org.ciyam.at.*;
-import org.qortal.utils.Base58;
+import org.qortal.crypto.Crypto;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static org.ciyam.at.OpCode.calcOffset;
 
@@ -50,11 +53,49 @@ import static org.ciyam.at.OpCode.calcOffset;
  */
 public class Lottery {
 
+    /** Parameter bounds enforced by {@link #buildQortalAT(int, long)} */
+    public static final int MIN_SLEEP_MINUTES = 10;
+    public static final int MAX_SLEEP_MINUTES = 30 * 24 * 60;
+    public static final long MIN_MINIMUM_AMOUNT = 100_0000L;
+    public static final long MAX_MINIMUM_AMOUNT = 1000_0000_0000L;
+
     private static byte[] CODE_BYTES;
 
     /** SHA256 of AT code bytes */
     private static byte[] CODE_BYTES_HASH;
 
+    /** Data segment addresses of parameters, matching addr* labels in {@link #compileQortalAT(int, long)} */
+    static final int ADDR_SLEEP_MINUTES = 0;
+    static final int ADDR_MINIMUM_AMOUNT = 1;
+
+    /** Data segment addresses of runtime values, matching addr* labels in {@link #compileQortalAT(int, long)} */
+    static final int ADDR_SLEEP_UNTIL_TIMESTAMP = 2;
+    static final int ADDR_SLEEP_UNTIL_HEIGHT = 3;
+    static final int ADDR_WINNING_VALUE = 4;
+    static final int ADDR_CURRENT_ADDRESS = 8;
+    static final int ADDR_CURRENT_ADDRESS_BYTE_LENGTH = 12;
+    static final int ADDR_LAST_TXN_TIMESTAMP = 13;
+    static final int ADDR_DATA_SEGMENT_BYTE_LENGTH = 32;
+
+    /** Precompiled at build time, if available */
+    private static final AtTemplate TEMPLATE = AtTemplate.load("lottery");
+
+    /** Returns SHA256 of lottery AT code bytes, used to recognise deployed lottery ATs. */
+    public static byte[] getCodeBytesHash() {
+        if (TEMPLATE != null)
+            return TEMPLATE.getCodeHash();
+
+        return compileCodeBytesHash();
+    }
+
+    /** Returns SHA256 of code bytes compiled at runtime, ignoring any template. */
+    static byte[] compileCodeBytesHash() {
+        if (CODE_BYTES_HASH == null)
+            compileQortalAT(MIN_SLEEP_MINUTES, MIN_MINIMUM_AMOUNT);
+
+        return CODE_BYTES_HASH.clone();
+    }
+
     /**
      * Returns Qortal AT creation bytes for lottery AT.
      *
@@ -62,12 +103,29 @@ public class Lottery {
      * @param minimumAmount     Minimum amount of QORT for valid entry
      */
     public static byte[] buildQortalAT(int sleepMinutes, long minimumAmount) {
-        if (sleepMinutes < 10 || sleepMinutes > 30 * 24 * 60)
+        if (sleepMinutes < MIN_SLEEP_MINUTES || sleepMinutes > MAX_SLEEP_MINUTES)
             throw new IllegalArgumentException("Sleep period should be between 10 minutes and 1 month");
 
-        if (minimumAmount < 100_0000L || minimumAmount > 1000_0000_0000L)
+        if (minimumAmount < MIN_MINIMUM_AMOUNT || minimumAmount > MAX_MINIMUM_AMOUNT)
             throw new IllegalArgumentException("Minimum amount should be between 0.01 QORT and 1000 QORT");
 
+        if (TEMPLATE != null) {
+            byte[] creationBytes = TEMPLATE.newCreationBytes();
+            TEMPLATE.putValue(creationBytes, ADDR_SLEEP_MINUTES, sleepMinutes);
+            TEMPLATE.putValue(creationBytes, ADDR_MINIMUM_AMOUNT, minimumAmount);
+            return creationBytes;
+        }
+
+        return compileQortalAT(sleepMinutes, minimumAmount);
+    }
+
+    private static void checkAddress(String label, int expected, int actual) {
+        if (actual != expected)
+            throw new IllegalStateException(String.format("Data segment address of %s is %d, but ADDR_ constant says %d", label, actual, expected));
+    }
+
+    /** Returns creation bytes compiled at runtime. Parameters are not checked. */
+    static byte[] compileQortalAT(int sleepMinutes, long minimumAmount) {
         // Labels for data segment addresses
         int addrCounter = 0;
 
@@ -103,6 +161,17 @@ public class Lottery {
         final int addrZero = addrCounter++;
         final int addrDataSegmentByteLength = addrCounter++;
 
+        // Constants used by code reading data segments must follow any change to labels above
+        checkAddress("SleepMinutes", ADDR_SLEEP_MINUTES, addrSleepMinutes);
+        checkAddress("MinimumAmount", ADDR_MINIMUM_AMOUNT, addrMinimumAmount);
+        checkAddress("SleepUntilTimestamp", ADDR_SLEEP_UNTIL_TIMESTAMP, addrSleepUntilTimestamp);
+        checkAddress("SleepUntilHeight", ADDR_SLEEP_UNTIL_HEIGHT, addrSleepUntilHeight);
+        checkAddress("WinningValue", ADDR_WINNING_VALUE, addrWinningValue);
+        checkAddress("CurrentAddress", ADDR_CURRENT_ADDRESS, addrCurrentAddress);
+        checkAddress("CurrentAddressByteLength", ADDR_CURRENT_ADDRESS_BYTE_LENGTH, addrCurrentAddressByteLength);
+        checkAddress("LastTxnTimestamp", ADDR_LAST_TXN_TIMESTAMP, addrLastTxnTimestamp);
+        checkAddress("DataSegmentByteLength", ADDR_DATA_SEGMENT_BYTE_LENGTH, addrDataSegmentByteLength);
+
         // Data segment
         ByteBuffer dataByteBuffer = ByteBuffer.allocate(addrCounter * MachineState.VALUE_SIZE);
 
@@ -133,6 +202,10 @@ public class Lottery {
         dataByteBuffer.position(addrDataSegmentByteLength * MachineState.VALUE_SIZE);
         dataByteBuffer.putLong(addrCounter * MachineState.VALUE_SIZE);
 
+        // Code doesn't depend on parameters, so reuse it once compiled
+        if (CODE_BYTES != null)
+            return toCreationBytes(CODE_BYTES, dataByteBuffer.array());
+
         // Code labels
         Integer labelTxnLoop = null;
         Integer labelCheckTxn = null;
@@ -297,34 +370,75 @@ public class Lottery {
         byte[] codeBytes = new byte[codeByteBuffer.limit()];
         codeByteBuffer.get(codeBytes);
 
+        // Code doesn't depend on parameters so all lottery ATs share the same code hash
+        if (CODE_BYTES == null) {
+            CODE_BYTES = codeBytes;
+            CODE_BYTES_HASH = Crypto.digest(codeBytes);
+        }
+
+        return toCreationBytes(codeBytes, dataByteBuffer.array());
+    }
+
+    private static byte[] toCreationBytes(byte[] codeBytes, byte[] dataBytes) {
         final short ciyamAtVersion = 2;
         final short numCallStackPages = 0;
         final short numUserStackPages = 0;
         final long minActivationAmount = 0L;
 
-        return MachineState.toCreationBytes(ciyamAtVersion, codeBytes, dataByteBuffer.array(), numCallStackPages, numUserStackPages, minActivationAmount);
+        return MachineState.toCreationBytes(ciyamAtVersion, codeBytes, dataBytes, numCallStackPages, numUserStackPages, minActivationAmount);
     }
 
 
     private static void usage() {
-        System.err.println("usage: lottery <timeout-minutes> <minimum-entry-amount>");
+        System.err.println("usage: lottery [--format raw|hex|base64|base58] [--output <file>] <timeout-minutes> <minimum-entry-amount>");
         System.err.println("example: lottery 20160 1.0");
         System.err.println("         payout in 20160 mins (~2 weeks), minimum entry 1.0 QORT");
+        System.err.println("default format is base58, default output is stdout");
     }
 
-    public static void main(String[] args) {
-        if (args.length != 2) {
+    public static void main(String[] args) throws IOException {
+        OutputFormat format = OutputFormat.BASE58;
+        Path outputPath = null;
+
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            if (argIndex + 1 >= args.length) {
+                usage();
+                System.exit(2);
+            }
+
+            String option = args[argIndex++];
+            String value = args[argIndex++];
+
+            if (option.equals("--format")) {
+                format = OutputFormat.fromName(value);
+
+                if (format == null) {
+                    usage();
+                    System.err.println();
+                    System.err.printf("Output format '%s' unknown%n", value);
+                    System.exit(2);
+                }
+            } else if (option.equals("--output")) {
+                outputPath = Paths.get(value);
+            } else {
+                usage();
+                System.exit(2);
+            }
+        }
+
+        if (args.length - argIndex != 2) {
             usage();
             System.exit(2);
         }
 
         int sleepMinutes;
         try {
-            sleepMinutes = Integer.parseInt(args[0]);
+            sleepMinutes = Integer.parseInt(args[argIndex]);
         } catch (NumberFormatException e) {
             usage();
             System.err.println();
-            System.err.printf("Entry timeout minutes '%s' invalid - should be integer larger than 10", args[0]);
+            System.err.printf("Entry timeout minutes '%s' invalid - should be integer larger than 10", args[argIndex]);
             System.exit(1);
             // not reached
             throw e;
@@ -332,17 +446,24 @@ public class Lottery {
 
         long minimumAmount;
         try {
-            minimumAmount = new BigDecimal(args[1]).setScale(8).unscaledValue().longValue();
+            minimumAmount = new BigDecimal(args[argIndex + 1]).setScale(8).unscaledValue().longValue();
         } catch (NumberFormatException e) {
             usage();
             System.err.println();
-            System.err.printf("Minimum entry amount '%s' invalid - should be larger than 0.1 QORT", args[1]);
+            System.err.printf("Minimum entry amount '%s' invalid - should be larger than 0.1 QORT", args[argIndex + 1]);
             System.exit(1);
             // not reached
             throw e;
         }
 
         byte[] creationBytes = buildQortalAT(sleepMinutes, minimumAmount);
-        System.out.printf("Creation bytes:\n%s\n", Base58.encode(creationBytes));
+
+        try (CreationBytesOutput output = CreationBytesOutput.open(format, outputPath)) {
+            // Keep original human-friendly label for default output
+            if (format == OutputFormat.BASE58)
+                output.writeText("Creation bytes:\n");
+
+            output.write(creationBytes);
+        }
     }
 }
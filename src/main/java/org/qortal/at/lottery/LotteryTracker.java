@@ -0,0 +1,289 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.API;
+import org.ciyam.at.MachineState;
+import org.qortal.utils.Base58;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Incrementally tracks status of a single Lottery AT from the stream of transactions sent to it,
+ * so status queries don't need to rescan every transaction.
+ * <p>
+ * Constructed from the AT's data segment while it is sleeping, i.e. after its first execution.
+ * This holds everything the AT itself uses: minimum amount, cutoff timestamp, creation timestamp
+ * and the creator's address as initial best address.
+ * <p>
+ * Transactions must be fed in chain order using {@link #onTransaction(String, API.ATTransactionType, long, long)},
+ * which is O(1). Entries are judged using the same rules as the AT:
+ * PAYMENT type, amount at least minimum amount, timestamp after creation and before cutoff.
+ * <p>
+ * The AT wakes at the cutoff height and derives its winning value from the previous block's hash.
+ * Once that block is fed to {@link #onBlock(int, byte[])}, the winner is computed using the AT's distance rule:
+ * SHA256 of data segment up to sender's address, minus winning value word-by-word, lowest unsigned distance wins,
+ * with ties going to the earlier entry.
+ * <p>
+ * Distinct entrants are counted exactly until {@link #DEFAULT_EXACT_DISTINCT_LIMIT} (or configured limit),
+ * then estimated using {@link HyperLogLog} so memory used for counting stays fixed.
+ * <p>
+ * Distances can't be computed before the winning value is known, so until then each distinct entrant is held,
+ * in entry order, whatever the counting limit: memory is O(distinct entrants), not O(entries).
+ * Once the winner is known, entries are considered as they arrive and nothing more is held.
+ * <p>
+ * Methods are synchronized so a UI thread can poll status while another thread feeds transactions.
+ */
+public class LotteryTracker {
+
+    public static final int DEFAULT_EXACT_DISTINCT_LIMIT = 100_000;
+
+    private static final int ADDRESS_LENGTH = 32;
+
+    private final Function<String, byte[]> addressEncoder;
+    private final int exactDistinctLimit;
+
+    /** Data segment while AT sleeps, used to derive winning value */
+    private final byte[] sleepingData;
+
+    private final long minimumAmount;
+    private final long creationTimestamp;
+    private final long cutoffTimestamp;
+    private final int cutoffHeight;
+
+    private long pot;
+    private long validEntryCount;
+
+    private Set<String> distinctEntrants = new HashSet<>();
+    private final HyperLogLog distinctEstimator = new HyperLogLog();
+
+    /** Distinct entrants, in order of first entry, waiting for winning value */
+    private Set<String> pendingEntrants = new LinkedHashSet<>();
+
+    /** Data segment from start to end of current address, as hashed by AT for each entry */
+    private byte[] entryHashInput;
+    private long[] winningValue;
+
+    private String winner;
+    private final long[] bestDistance = new long[4];
+
+    private final MessageDigest sha256;
+    private final byte[] digestBuffer = new byte[32];
+
+    /**
+     * Creates tracker for Qortal addresses, which the AT sees Base58-decoded.
+     *
+     * @param sleepingData      Lottery AT data segment after its first execution
+     * @param initialBalance    AT's balance after creation
+     */
+    public LotteryTracker(byte[] sleepingData, long initialBalance) {
+        this(sleepingData, initialBalance, LotteryTracker::decodeQortalAddress, DEFAULT_EXACT_DISTINCT_LIMIT);
+    }
+
+    /**
+     * @param sleepingData          Lottery AT data segment after its first execution
+     * @param initialBalance        AT's balance after creation
+     * @param addressEncoder        converts address into bytes, as AT would see them in B register
+     * @param exactDistinctLimit    number of distinct entrants to count exactly before switching to estimate
+     */
+    public LotteryTracker(byte[] sleepingData, long initialBalance, Function<String, byte[]> addressEncoder, int exactDistinctLimit) {
+        ByteBuffer dataBuffer = ByteBuffer.wrap(sleepingData);
+
+        int dataByteLengthOffset = Lottery.ADDR_DATA_SEGMENT_BYTE_LENGTH * MachineState.VALUE_SIZE;
+        if (sleepingData.length < dataByteLengthOffset + MachineState.VALUE_SIZE
+                || dataBuffer.getLong(dataByteLengthOffset) != sleepingData.length)
+            throw new IllegalArgumentException("Not a lottery AT data segment");
+
+        this.cutoffTimestamp = dataBuffer.getLong(Lottery.ADDR_SLEEP_UNTIL_TIMESTAMP * MachineState.VALUE_SIZE);
+        this.cutoffHeight = (int) dataBuffer.getLong(Lottery.ADDR_SLEEP_UNTIL_HEIGHT * MachineState.VALUE_SIZE);
+        if (this.cutoffHeight == 0)
+            throw new IllegalArgumentException("Lottery AT hasn't started sleeping yet");
+
+        this.minimumAmount = dataBuffer.getLong(Lottery.ADDR_MINIMUM_AMOUNT * MachineState.VALUE_SIZE);
+        this.creationTimestamp = dataBuffer.getLong(Lottery.ADDR_LAST_TXN_TIMESTAMP * MachineState.VALUE_SIZE);
+
+        this.sleepingData = sleepingData.clone();
+        this.pot = initialBalance;
+        this.addressEncoder = addressEncoder;
+        this.exactDistinctLimit = exactDistinctLimit;
+
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** Converts Qortal address into bytes as AT would see them in B register, before zero-padding. */
+    public static byte[] decodeQortalAddress(String address) {
+        byte[] addressBytes = Base58.decode(address);
+        if (addressBytes == null)
+            throw new IllegalArgumentException(String.format("Address '%s' is not valid Base58", address));
+
+        return addressBytes;
+    }
+
+    /**
+     * Processes next transaction sent to AT, in chain order.
+     *
+     * @param timestamp     AT 'timestamp' of transaction: block height in upper 32 bits, sequence in lower
+     */
+    public synchronized void onTransaction(String sender, API.ATTransactionType type, long amount, long timestamp) {
+        if (type != API.ATTransactionType.PAYMENT)
+            return;
+
+        this.pot += amount;
+
+        if (amount < this.minimumAmount || timestamp <= this.creationTimestamp || timestamp >= this.cutoffTimestamp)
+            return;
+
+        ++this.validEntryCount;
+        this.distinctEstimator.add(HyperLogLog.hash(sender));
+
+        if (this.distinctEntrants != null) {
+            this.distinctEntrants.add(sender);
+
+            // Too many to count exactly, so rely on estimate from now on
+            if (this.distinctEntrants.size() > this.exactDistinctLimit)
+                this.distinctEntrants = null;
+        }
+
+        // Repeat entries have the same distance so can never beat an earlier entry,
+        // and re-adding keeps first entry's position
+        if (this.winningValue != null)
+            considerEntrant(sender);
+        else
+            this.pendingEntrants.add(sender);
+    }
+
+    /**
+     * Processes newly appended block. Once the block before cutoff height arrives, the winner is computed.
+     * <p>
+     * Only the block hash is used; transactions should be fed separately.
+     */
+    public synchronized void onBlock(int height, byte[] blockHash) {
+        if (height != this.cutoffHeight - 1 || this.winningValue != null)
+            return;
+
+        // AT copies previous block hash into its data segment then hashes the whole segment
+        byte[] wakingData = this.sleepingData.clone();
+        System.arraycopy(blockHash, 0, wakingData, Lottery.ADDR_WINNING_VALUE * MachineState.VALUE_SIZE, 32);
+
+        this.sha256.update(wakingData);
+        byte[] winningValueBytes = this.sha256.digest();
+        System.arraycopy(winningValueBytes, 0, wakingData, Lottery.ADDR_WINNING_VALUE * MachineState.VALUE_SIZE, 32);
+
+        ByteBuffer winningValueBuffer = ByteBuffer.wrap(winningValueBytes);
+        this.winningValue = new long[4];
+        for (int i = 0; i < 4; ++i)
+            this.winningValue[i] = winningValueBuffer.getLong(i * MachineState.VALUE_SIZE);
+
+        int entryHashLength = (int) ByteBuffer.wrap(wakingData).getLong(Lottery.ADDR_CURRENT_ADDRESS_BYTE_LENGTH * MachineState.VALUE_SIZE);
+        this.entryHashInput = Arrays.copyOf(wakingData, entryHashLength);
+
+        Arrays.fill(this.bestDistance, 0xFFFFFFFFFFFFFFFFL);
+
+        for (String entrant : this.pendingEntrants)
+            considerEntrant(entrant);
+
+        this.pendingEntrants = null;
+    }
+
+    private void considerEntrant(String entrant) {
+        byte[] addressBytes = this.addressEncoder.apply(entrant);
+        if (addressBytes.length > ADDRESS_LENGTH)
+            throw new IllegalArgumentException(String.format("Address '%s' too long for B register", entrant));
+
+        int addressOffset = Lottery.ADDR_CURRENT_ADDRESS * MachineState.VALUE_SIZE;
+        Arrays.fill(this.entryHashInput, addressOffset, addressOffset + ADDRESS_LENGTH, (byte) 0);
+        System.arraycopy(addressBytes, 0, this.entryHashInput, addressOffset, addressBytes.length);
+
+        this.sha256.update(this.entryHashInput);
+        try {
+            this.sha256.digest(this.digestBuffer, 0, this.digestBuffer.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest failed", e);
+        }
+
+        ByteBuffer digest = ByteBuffer.wrap(this.digestBuffer);
+        long[] distance = new long[4];
+        for (int i = 0; i < 4; ++i)
+            distance[i] = digest.getLong(i * MachineState.VALUE_SIZE) - this.winningValue[i];
+
+        // Strictly less than, so earlier entries win ties, just like AT
+        if (compareUnsigned(distance, this.bestDistance) < 0) {
+            System.arraycopy(distance, 0, this.bestDistance, 0, 4);
+            this.winner = entrant;
+        }
+    }
+
+    /** Compares 256-bit unsigned values held as 4 longs, most significant first. */
+    private static int compareUnsigned(long[] a, long[] b) {
+        for (int i = 0; i < 4; ++i) {
+            int comparison = Long.compareUnsigned(a[i], b[i]);
+            if (comparison != 0)
+                return comparison;
+        }
+
+        return 0;
+    }
+
+    /** Returns AT balance: initial balance plus all payments fed so far, valid entries or not. */
+    public synchronized long getPot() {
+        return this.pot;
+    }
+
+    public synchronized long getValidEntryCount() {
+        return this.validEntryCount;
+    }
+
+    /** Returns number of distinct entrants, exact unless {@link #isDistinctEntrantCountEstimated()}. */
+    public synchronized long getDistinctEntrantCount() {
+        if (this.distinctEntrants != null)
+            return this.distinctEntrants.size();
+
+        return this.distinctEstimator.estimate();
+    }
+
+    public synchronized boolean isDistinctEntrantCountEstimated() {
+        return this.distinctEntrants == null;
+    }
+
+    public long getMinimumAmount() {
+        return this.minimumAmount;
+    }
+
+    public long getCutoffTimestamp() {
+        return this.cutoffTimestamp;
+    }
+
+    /** Returns block height at which AT wakes, stops accepting entries and pays out. */
+    public int getCutoffHeight() {
+        return this.cutoffHeight;
+    }
+
+    /** Returns true once block before cutoff height has been fed, so winner is known. */
+    public synchronized boolean isWinnerKnown() {
+        return this.winningValue != null;
+    }
+
+    /**
+     * Returns winning entrant, or null if winner not yet known or there were no valid entries.
+     * With no valid entries, the AT returns the pot to its creator.
+     */
+    public synchronized String getWinner() {
+        return this.winner;
+    }
+
+    /** Returns AT's winning value, or null if not yet known. */
+    public synchronized long[] getWinningValue() {
+        return this.winningValue == null ? null : this.winningValue.clone();
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.qortal.at.lottery;
+
+import org.qortal.utils.Base58;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodings for creation bytes output by command-line tools.
+ * <p>
+ * Base58 is what Qortal's API expects, but its cost grows quadratically with input length,
+ * so tooling that feeds other programs should prefer {@link #RAW}, {@link #HEX} or {@link #BASE64}.
+ */
+public enum OutputFormat {
+    /** Creation bytes as-is, back-to-back with no separator. Each blob's length can be derived from its header. */
+    RAW(false),
+    HEX(true),
+    BASE64(true),
+    BASE58(true);
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /** Whether output is text, one encoded blob per line */
+    public final boolean isText;
+
+    OutputFormat(boolean isText) {
+        this.isText = isText;
+    }
+
+    public byte[] encode(byte[] bytes) {
+        switch (this) {
+            case HEX:
+                byte[] hex = new byte[bytes.length * 2];
+                for (int i = 0; i < bytes.length; ++i) {
+                    hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+                    hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+                }
+                return hex;
+
+            case BASE64:
+                return Base64.getEncoder().encode(bytes);
+
+            case BASE58:
+                return Base58.encode(bytes).getBytes(StandardCharsets.US_ASCII);
+
+            case RAW:
+            default:
+                return bytes;
+        }
+    }
+
+    /** Returns format matching <tt>name</tt>, ignoring case, or null if unknown. */
+    public static OutputFormat fromName(String name) {
+        for (OutputFormat format : values())
+            if (format.name().equalsIgnoreCase(name))
+                return format;
+
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package org.qortal.at.lottery;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compiles Lottery and Dice ATs once, at build time, and writes them as {@link AtTemplate} resources.
+ * <p>
+ * Run by Maven during <tt>process-classes</tt>, as AT code can only be compiled once this project's classes are.
+ */
+public class TemplateGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: template-generator <classes-output-directory>");
+            System.exit(2);
+        }
+
+        Path directory = Paths.get(args[0], TemplateGenerator.class.getPackageName().replace('.', '/'), AtTemplate.RESOURCE_DIRECTORY);
+
+        AtTemplate.write(directory, "lottery", Lottery.compileQortalAT(Lottery.MIN_SLEEP_MINUTES, Lottery.MIN_MINIMUM_AMOUNT), Lottery.compileCodeBytesHash());
+        AtTemplate.write(directory, "dice", Dice.compileQortalAT(Dice.MIN_MINIMUM_AMOUNT, Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER), Dice.compileCodeBytesHash());
+
+        System.out.println("AT templates written to " + directory);
+    }
+
+}
@@ -0,0 +1,240 @@
+package org.qortal.at.lottery.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped index of Lottery and Dice ATs.
+ * <p>
+ * File layout:
+ * <ul>
+ *     <li>header: magic, version, record count</li>
+ *     <li>fixed-length records, sorted by end height</li>
+ *     <li>record numbers, sorted by minimum amount</li>
+ * </ul>
+ * A query binary-searches both orderings then scans whichever matching prefix is shorter,
+ * so cost depends on the more selective condition, not the size of the index.
+ */
+public class AtIndex implements Closeable {
+
+    private static final int MAGIC = 0x41544958; // "ATIX"
+    private static final int VERSION = 2;
+
+    private static final int HEADER_LENGTH = 16;
+
+    /*
+     * Record layout:
+     *   0  kind ordinal (byte)
+     *   1  address length (byte)
+     *   2  reserved (short)
+     *   4  creation height (int)
+     *   8  end height (int)
+     *  12  sleep minutes (int)
+     *  16  minimum amount (long)
+     *  24  dice sides (short)
+     *  26  dice multiplier (short)
+     *  28  address (ASCII, zero-padded)
+     */
+    private static final int RECORD_LENGTH = 64;
+    private static final int ADDRESS_OFFSET = 28;
+    private static final int MAX_ADDRESS_LENGTH = RECORD_LENGTH - ADDRESS_OFFSET;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int minimumOrderOffset;
+
+    private AtIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < HEADER_LENGTH || size > Integer.MAX_VALUE)
+            throw new IOException("Unexpected AT index file size: " + size);
+
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION)
+            throw new IOException("Not an AT index file, or unsupported version");
+
+        this.recordCount = this.buffer.getInt(8);
+        this.minimumOrderOffset = HEADER_LENGTH + this.recordCount * RECORD_LENGTH;
+
+        if (size != this.minimumOrderOffset + (long) this.recordCount * Integer.BYTES)
+            throw new IOException("AT index file truncated?");
+    }
+
+    public static AtIndex open(Path path) throws IOException {
+        return new AtIndex(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public int size() {
+        return this.recordCount;
+    }
+
+    public IndexedAT get(int recordNumber) {
+        int offset = HEADER_LENGTH + recordNumber * RECORD_LENGTH;
+
+        IndexedAT.Kind kind = IndexedAT.Kind.valueOf(this.buffer.get(offset));
+        int addressLength = this.buffer.get(offset + 1) & 0xff;
+
+        byte[] addressBytes = new byte[addressLength];
+        for (int i = 0; i < addressLength; ++i)
+            addressBytes[i] = this.buffer.get(offset + ADDRESS_OFFSET + i);
+
+        return new IndexedAT(kind,
+                new String(addressBytes, StandardCharsets.US_ASCII),
+                this.buffer.getInt(offset + 4),
+                this.buffer.getInt(offset + 8),
+                this.buffer.getInt(offset + 12),
+                this.buffer.getLong(offset + 16),
+                this.buffer.getShort(offset + 24),
+                this.buffer.getShort(offset + 26));
+    }
+
+    private int getEndHeight(int recordNumber) {
+        return this.buffer.getInt(HEADER_LENGTH + recordNumber * RECORD_LENGTH + 8);
+    }
+
+    private long getMinimumAmount(int recordNumber) {
+        return this.buffer.getLong(HEADER_LENGTH + recordNumber * RECORD_LENGTH + 16);
+    }
+
+    private int getMinimumOrderRecordNumber(int position) {
+        return this.buffer.getInt(this.minimumOrderOffset + position * Integer.BYTES);
+    }
+
+    /**
+     * Returns ATs with minimum amount less than or equal to <tt>maxMinimumAmount</tt>
+     * that stop taking entries before <tt>endBeforeHeight</tt>.
+     * <p>
+     * Dice ATs never end so are never returned. Results are in no particular order.
+     */
+    public List<IndexedAT> find(long maxMinimumAmount, int endBeforeHeight) {
+        List<IndexedAT> results = new ArrayList<>();
+
+        // Number of records with endHeight < endBeforeHeight
+        int endPrefix = searchEndHeight(endBeforeHeight);
+        // Number of records with minimumAmount <= maxMinimumAmount
+        int minimumPrefix = searchMinimumAmount(maxMinimumAmount);
+
+        if (endPrefix <= minimumPrefix) {
+            for (int recordNumber = 0; recordNumber < endPrefix; ++recordNumber)
+                if (getMinimumAmount(recordNumber) <= maxMinimumAmount)
+                    results.add(get(recordNumber));
+        } else {
+            for (int position = 0; position < minimumPrefix; ++position) {
+                int recordNumber = getMinimumOrderRecordNumber(position);
+
+                if (getEndHeight(recordNumber) < endBeforeHeight)
+                    results.add(get(recordNumber));
+            }
+        }
+
+        return results;
+    }
+
+    /** Returns first record number with end height &ge; <tt>height</tt>. */
+    private int searchEndHeight(int height) {
+        int low = 0;
+        int high = this.recordCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (getEndHeight(mid) < height)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /** Returns first position in minimum amount order with minimum amount &gt; <tt>amount</tt>. */
+    private int searchMinimumAmount(long amount) {
+        int low = 0;
+        int high = this.recordCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (getMinimumAmount(getMinimumOrderRecordNumber(mid)) <= amount)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /** Writes index file containing <tt>entries</tt>, replacing any existing file. */
+    public static void write(Path path, Collection<IndexedAT> entries) throws IOException {
+        List<IndexedAT> byEndHeight = new ArrayList<>(entries);
+        byEndHeight.sort(Comparator.comparingInt(entry -> entry.endHeight));
+
+        Integer[] byMinimumAmount = new Integer[byEndHeight.size()];
+        for (int i = 0; i < byMinimumAmount.length; ++i)
+            byMinimumAmount[i] = i;
+
+        Arrays.sort(byMinimumAmount, Comparator.comparingLong(recordNumber -> byEndHeight.get(recordNumber).minimumAmount));
+
+        long fileLength = HEADER_LENGTH + (long) byEndHeight.size() * (RECORD_LENGTH + Integer.BYTES);
+        if (fileLength > Integer.MAX_VALUE)
+            throw new IOException("Too many entries for AT index file");
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate((int) fileLength);
+
+        byteBuffer.putInt(MAGIC);
+        byteBuffer.putInt(VERSION);
+        byteBuffer.putInt(byEndHeight.size());
+        byteBuffer.putInt(0); // reserved
+
+        for (IndexedAT entry : byEndHeight) {
+            byte[] addressBytes = entry.atAddress.getBytes(StandardCharsets.US_ASCII);
+            if (addressBytes.length > MAX_ADDRESS_LENGTH)
+                throw new IllegalArgumentException("AT address too long: " + entry.atAddress);
+
+            int offset = byteBuffer.position();
+
+            byteBuffer.put((byte) entry.kind.ordinal());
+            byteBuffer.put((byte) addressBytes.length);
+            byteBuffer.putShort((short) 0);
+            byteBuffer.putInt(entry.creationHeight);
+            byteBuffer.putInt(entry.endHeight);
+            byteBuffer.putInt(entry.sleepMinutes);
+            byteBuffer.putLong(entry.minimumAmount);
+            byteBuffer.putShort((short) entry.sides);
+            byteBuffer.putShort((short) entry.multiplier);
+            byteBuffer.put(addressBytes);
+
+            byteBuffer.position(offset + RECORD_LENGTH);
+        }
+
+        for (Integer recordNumber : byMinimumAmount)
+            byteBuffer.putInt(recordNumber);
+
+        // Write to temporary file then move into place so readers never see partial index
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tempPath, byteBuffer.array());
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.qortal.at.lottery.index;
+
+import org.qortal.at.lottery.CreationBytesValidator;
+import org.qortal.utils.Base58;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recognises Lottery and Dice ATs from their creation bytes and builds an {@link AtIndex}.
+ * <p>
+ * All Lottery ATs share the same code, as do all Dice ATs, so ATs are recognised by their code segment
+ * using {@link CreationBytesValidator}, which also decodes and range-checks their parameters.
+ */
+public class AtIndexer {
+
+    private final CreationBytesValidator validator = new CreationBytesValidator();
+
+    private final List<IndexedAT> entries = new ArrayList<>();
+    private long unrecognisedCount;
+
+    /**
+     * Adds AT to index if <tt>creationBytes</tt> are for a Lottery or Dice AT.
+     *
+     * @return indexed AT, or null if not recognised
+     */
+    public IndexedAT add(String atAddress, int creationHeight, byte[] creationBytes) {
+        IndexedAT entry = recognise(atAddress, creationHeight, creationBytes);
+
+        if (entry == null)
+            ++this.unrecognisedCount;
+        else
+            this.entries.add(entry);
+
+        return entry;
+    }
+
+    private IndexedAT recognise(String atAddress, int creationHeight, byte[] creationBytes) {
+        switch (this.validator.validate(creationBytes)) {
+            case LOTTERY:
+                return IndexedAT.lottery(atAddress, creationHeight, this.validator.getSleepMinutes(), this.validator.getMinimumAmount());
+
+            case DICE:
+                return IndexedAT.dice(atAddress, creationHeight, this.validator.getMinimumAmount(),
+                        this.validator.getSides(), this.validator.getMultiplier());
+
+            default:
+                return null;
+        }
+    }
+
+    public List<IndexedAT> getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    public long getUnrecognisedCount() {
+        return this.unrecognisedCount;
+    }
+
+    /**
+     * Adds ATs from lines of <tt>at-address,creation-height,base58-creation-bytes</tt>.
+     * <p>
+     * Blank lines and lines starting with <tt>#</tt> are ignored.
+     */
+    public void addAll(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] fields = line.split(",");
+            if (fields.length != 3)
+                throw new IOException("Expected 3 fields but found " + fields.length + ": " + line);
+
+            byte[] creationBytes = Base58.decode(fields[2].trim());
+            if (creationBytes == null)
+                throw new IOException("Invalid Base58 creation bytes for AT " + fields[0]);
+
+            add(fields[0].trim(), Integer.parseInt(fields[1].trim()), creationBytes);
+        }
+    }
+
+    public void writeIndex(Path path) throws IOException {
+        AtIndex.write(path, this.entries);
+    }
+
+    private static void usage() {
+        System.err.println("usage: at-indexer <index-file> [<input-file>]");
+        System.err.println("input lines: <at-address>,<creation-height>,<base58-creation-bytes>");
+        System.err.println("input is read from stdin if no input file given");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            usage();
+            System.exit(2);
+        }
+
+        AtIndexer indexer = new AtIndexer();
+
+        try (BufferedReader reader = args.length == 2
+                ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            indexer.addAll(reader);
+        }
+
+        indexer.writeIndex(Paths.get(args[0]));
+
+        System.err.printf("Indexed %d ATs, skipped %d unrecognised%n", indexer.getEntries().size(), indexer.getUnrecognisedCount());
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.qortal.at.lottery.index;
+
+/**
+ * Lottery or Dice AT recognised by {@link AtIndexer}, along with its decoded parameters.
+ */
+public class IndexedAT {
+
+    public enum Kind {
+        LOTTERY, DICE;
+
+        private static final Kind[] KINDS = values();
+
+        public static Kind valueOf(int ordinal) {
+            return ordinal >= 0 && ordinal < KINDS.length ? KINDS[ordinal] : null;
+        }
+    }
+
+    /** End height for ATs that never stop by themselves, e.g. Dice. */
+    public static final int NO_END_HEIGHT = Integer.MAX_VALUE;
+
+    public final Kind kind;
+    public final String atAddress;
+    public final int creationHeight;
+    /** Approximate height when lottery stops taking entries (roughly 1 block per minute), or {@link #NO_END_HEIGHT} */
+    public final int endHeight;
+    /** Lottery only, otherwise 0 */
+    public final int sleepMinutes;
+    public final long minimumAmount;
+    /** Dice only, otherwise 0. All Dice ATs share the same code, so these tell tables apart. */
+    public final int sides;
+    public final int multiplier;
+
+    public IndexedAT(Kind kind, String atAddress, int creationHeight, int endHeight, int sleepMinutes, long minimumAmount, int sides, int multiplier) {
+        this.kind = kind;
+        this.atAddress = atAddress;
+        this.creationHeight = creationHeight;
+        this.endHeight = endHeight;
+        this.sleepMinutes = sleepMinutes;
+        this.minimumAmount = minimumAmount;
+        this.sides = sides;
+        this.multiplier = multiplier;
+    }
+
+    public static IndexedAT lottery(String atAddress, int creationHeight, int sleepMinutes, long minimumAmount) {
+        // AT first runs in block after creation, then sleeps
+        long endHeight = (long) creationHeight + 1 + sleepMinutes;
+
+        return new IndexedAT(Kind.LOTTERY, atAddress, creationHeight, (int) Math.min(endHeight, NO_END_HEIGHT - 1), sleepMinutes, minimumAmount, 0, 0);
+    }
+
+    public static IndexedAT dice(String atAddress, int creationHeight, long minimumAmount, int sides, int multiplier) {
+        return new IndexedAT(Kind.DICE, atAddress, creationHeight, NO_END_HEIGHT, 0, minimumAmount, sides, multiplier);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s created at %d, ends at %s, sleep %d mins, minimum %d, %d sides, multiplier %d",
+                this.kind, this.atAddress, this.creationHeight,
+                this.endHeight == NO_END_HEIGHT ? "never" : Integer.toString(this.endHeight),
+                this.sleepMinutes, this.minimumAmount, this.sides, this.multiplier);
+    }
+
+}
@@ -0,0 +1,229 @@
+package org.qortal.at.lottery.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.qortal.at.lottery.Dice;
+import org.qortal.at.lottery.Lottery;
+import org.qortal.at.lottery.OutputFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running service that generates Lottery and Dice creation bytes over loopback HTTP.
+ * <p>
+ * Avoids paying JVM startup for every AT: builders stay JIT-warm and reuse their cached code.
+ * <p>
+ * Requests:
+ * <ul>
+ *     <li><tt>GET /lottery?sleepMinutes=20160&amp;minimumAmount=0.1[&amp;format=base58]</tt></li>
+ *     <li><tt>GET /dice?minimumAmount=1.0[&amp;sides=6&amp;multiplier=6][&amp;format=base58]</tt></li>
+ * </ul>
+ * Text formats respond with encoded creation bytes and a trailing newline. Raw format responds with bytes as-is.
+ * AT code hash is returned, as hex, in <tt>X-Code-Hash</tt> header.
+ * Invalid parameters get a <tt>400</tt> response with the same message <tt>buildQortalAT</tt> would throw.
+ * <p>
+ * Java 11 has no Unix domain socket support, so this binds to loopback only.
+ */
+public class GeneratorServer {
+
+    public static final int DEFAULT_PORT = 8765;
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    public GeneratorServer(int port) throws IOException {
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        this.httpServer.setExecutor(this.executor);
+        this.httpServer.createContext("/lottery", this::handleLottery);
+        this.httpServer.createContext("/dice", this::handleDice);
+
+        // Compile and cache code now, rather than on first request
+        Lottery.getCodeBytesHash();
+        Dice.getCodeBytesHash();
+    }
+
+    public void start() {
+        this.httpServer.start();
+    }
+
+    public void stop() {
+        this.httpServer.stop(0);
+        this.executor.shutdown();
+
+        try {
+            this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Returns port actually bound, useful if constructed with port 0. */
+    public int getPort() {
+        return this.httpServer.getAddress().getPort();
+    }
+
+    private void handleLottery(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = parseQuery(exchange);
+
+            int sleepMinutes = parseSleepMinutes(params.get("sleepMinutes"));
+            long minimumAmount = parseAmount(params.get("minimumAmount"));
+            OutputFormat format = parseFormat(params.get("format"));
+
+            respond(exchange, format, Lottery.buildQortalAT(sleepMinutes, minimumAmount), Lottery.getCodeBytesHash());
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, e.getMessage());
+        }
+    }
+
+    private void handleDice(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = parseQuery(exchange);
+
+            long minimumAmount = parseAmount(params.get("minimumAmount"));
+            int sides = parseOptionalInt("sides", params.get("sides"), Dice.DEFAULT_SIDES);
+            int multiplier = parseOptionalInt("multiplier", params.get("multiplier"), Dice.DEFAULT_MULTIPLIER);
+            OutputFormat format = parseFormat(params.get("format"));
+
+            respond(exchange, format, Dice.buildQortalAT(minimumAmount, sides, multiplier), Dice.getCodeBytesHash());
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, e.getMessage());
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        if (!exchange.getRequestMethod().equals("GET"))
+            throw new IllegalArgumentException("Only GET supported");
+
+        Map<String, String> params = new HashMap<>();
+
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty())
+            return params;
+
+        for (String pair : query.split("&")) {
+            int equalsIndex = pair.indexOf('=');
+            if (equalsIndex == -1)
+                continue;
+
+            params.put(URLDecoder.decode(pair.substring(0, equalsIndex), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equalsIndex + 1), StandardCharsets.UTF_8));
+        }
+
+        return params;
+    }
+
+    private static int parseSleepMinutes(String value) {
+        if (value == null)
+            throw new IllegalArgumentException("Missing sleepMinutes");
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Entry timeout minutes '%s' invalid - should be integer larger than 10", value));
+        }
+    }
+
+    private static int parseOptionalInt(String name, String value, int defaultValue) {
+        if (value == null)
+            return defaultValue;
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Parameter %s '%s' invalid - should be integer", name, value));
+        }
+    }
+
+    private static long parseAmount(String value) {
+        if (value == null)
+            throw new IllegalArgumentException("Missing minimumAmount");
+
+        try {
+            return new BigDecimal(value).setScale(8).unscaledValue().longValue();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("Minimum entry amount '%s' invalid", value));
+        }
+    }
+
+    private static OutputFormat parseFormat(String value) {
+        if (value == null)
+            return OutputFormat.BASE58;
+
+        OutputFormat format = OutputFormat.fromName(value);
+        if (format == null)
+            throw new IllegalArgumentException(String.format("Output format '%s' unknown", value));
+
+        return format;
+    }
+
+    private static void respond(HttpExchange exchange, OutputFormat format, byte[] creationBytes, byte[] codeHash) throws IOException {
+        byte[] body = format.encode(creationBytes);
+        int bodyLength = format.isText ? body.length + 1 : body.length;
+
+        exchange.getResponseHeaders().set("Content-Type", format.isText ? "text/plain; charset=US-ASCII" : "application/octet-stream");
+        exchange.getResponseHeaders().set("X-Code-Hash", new String(OutputFormat.HEX.encode(codeHash), StandardCharsets.US_ASCII));
+        exchange.sendResponseHeaders(200, bodyLength);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+
+            if (format.isText)
+                responseBody.write('\n');
+        }
+    }
+
+    private static void respondError(HttpExchange exchange, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(400, body.length);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: generator-server [<port>]");
+        System.err.printf("default port is %d, bound to loopback only%n", DEFAULT_PORT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            usage();
+            System.exit(2);
+        }
+
+        int port = DEFAULT_PORT;
+        if (args.length == 1) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                usage();
+                System.exit(2);
+            }
+        }
+
+        GeneratorServer server = new GeneratorServer(port);
+        server.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+
+        System.err.printf("Generating creation bytes on http://%s:%d/%n", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort());
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.API;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+
+/**
+ * Callbacks from {@link DiceAPI} and {@link AtRunner} while an AT executes.
+ * <p>
+ * All methods default to doing nothing so listeners only need to implement what they use.
+ */
+public interface AtListener {
+
+    /** Called just before <tt>state</tt> starts executing in a new round. */
+    default void onRoundStart(MachineState state) {
+    }
+
+    /**
+     * Called before each opcode is executed.
+     *
+     * @param programCounter    address of opcode in code segment
+     * @param rawFunctionCode   function code if opcode is an EXT_FUN* variant, otherwise 0
+     * @param steps             steps charged for this opcode
+     */
+    default void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+    }
+
+    /** Called after <tt>state</tt> has finished executing for this round, with resulting packed state. */
+    default void onRoundEnd(MachineState state, byte[] packedState) {
+    }
+
+    /** Called when AT loads transaction into A, i.e. <tt>PUT_TX_AFTER_TIMESTAMP_INTO_A</tt> found one. */
+    default void onTransaction(MachineState state, String sender, API.ATTransactionType type, long amount, long timestamp) {
+    }
+
+    /** Called when AT pays <tt>amount</tt> to <tt>recipient</tt>. */
+    default void onPayment(MachineState state, String recipient, long amount) {
+    }
+
+    /** Called when AT finishes, before any remaining balance is returned to creator. */
+    default void onFinished(MachineState state, long finalBalance) {
+    }
+
+}
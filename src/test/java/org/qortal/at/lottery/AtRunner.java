@@ -0,0 +1,102 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.AtLoggerFactory;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.test.TestAPI;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Executes a single AT against a {@link DiceAPI} simulated blockchain, one block at a time.
+ * <p>
+ * Unlike {@link org.ciyam.at.test.ExecutableTest}, this notifies any {@link AtListener}s registered with the API
+ * at the start and end of each execution round, and doesn't print anything itself.
+ * <p>
+ * Lottery ATs don't use any Qortal-specific functions so they run happily on a <tt>DiceAPI</tt> too.
+ */
+// Heavily based on org.ciyam.at.test.ExecutableTest
+public class AtRunner {
+
+    public final DiceAPI api;
+    public final AtLoggerFactory loggerFactory;
+
+    public byte[] codeBytes;
+    public byte[] packedState;
+    public MachineState state;
+
+    /** Number of rounds where AT actually executed, as opposed to being skipped while sleeping */
+    public long executionCount;
+
+    /** Used to generate unique transaction hashes without needing a new random for each */
+    private long transactionCounter;
+
+    public AtRunner(DiceAPI api, AtLoggerFactory loggerFactory) {
+        this.api = api;
+        this.loggerFactory = loggerFactory;
+    }
+
+    public AtRunner deploy(byte[] creationBytes, long initialBalance) {
+        this.state = new MachineState(this.api, this.loggerFactory, creationBytes);
+        this.api.setCurrentBalance(initialBalance);
+        this.codeBytes = this.state.getCodeBytes();
+        this.packedState = this.state.toBytes();
+        this.executionCount = 0;
+
+        return this;
+    }
+
+    /**
+     * Executes AT, if it would be woken, using current block then moves on to next block.
+     *
+     * @return true if AT actually executed
+     */
+    public boolean execute_once() {
+        this.state = MachineState.fromBytes(this.api, this.loggerFactory, this.packedState, this.codeBytes);
+
+        boolean willExecute = this.api.willExecute(this.state, this.api.getCurrentBlockHeight());
+
+        if (willExecute) {
+            this.api.preExecute(this.state);
+            this.state.execute();
+            this.packedState = this.state.toBytes();
+            this.api.postExecute(this.state, this.packedState);
+
+            ++this.executionCount;
+        }
+
+        this.api.bumpCurrentBlockHeight();
+
+        return willExecute;
+    }
+
+    /**
+     * Executes AT until finished, or <tt>maxBlocks</tt> have passed.
+     *
+     * @return true if AT finished
+     */
+    public boolean execute_until_finished(int maxBlocks) {
+        for (int i = 0; i < maxBlocks && !this.state.isFinished(); ++i)
+            execute_once();
+
+        return this.state.isFinished();
+    }
+
+    public TestAPI.TestTransaction send_payment(String sender, long amount) {
+        TestAPI.TestTransaction testTransaction = new TestAPI.TestTransaction(nextTransactionHash(), sender, TestAPI.AT_ADDRESS, amount);
+        this.api.addTransactionToCurrentBlock(testTransaction);
+        return testTransaction;
+    }
+
+    public TestAPI.TestTransaction send_message(String sender, byte[] message) {
+        TestAPI.TestTransaction testTransaction = new TestAPI.TestTransaction(nextTransactionHash(), sender, TestAPI.AT_ADDRESS, message);
+        this.api.addTransactionToCurrentBlock(testTransaction);
+        return testTransaction;
+    }
+
+    private byte[] nextTransactionHash() {
+        byte[] txHash = new byte[32];
+        ByteBuffer.wrap(txHash).putLong(System.identityHashCode(this)).putLong(++this.transactionCounter);
+        return txHash;
+    }
+
+}
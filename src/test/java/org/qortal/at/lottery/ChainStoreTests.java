@@ -0,0 +1,381 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.Timestamp;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qortal.at.lottery.sim.AddressBook;
+import org.qortal.at.lottery.sim.ChainStore;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+import org.qortal.at.lottery.sim.MappedChainStore;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ChainStoreTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void columnar_lookups() {
+        ColumnarChainStore chain = new ColumnarChainStore();
+        check_lookups(chain, new ChainStoreAPI(chain, 1L));
+    }
+
+    @Test
+    public void columnar_memory_versus_test_transactions() throws IllegalAccessException {
+        // Power of two, so columns are exactly full
+        final int transactionCount = 1 << 20;
+        final int transactionsPerBlock = 128;
+        final int sampleCount = 1_000;
+
+        // Qortal addresses are 34 characters
+        String[] senders = new String[1_000];
+        for (int i = 0; i < senders.length; ++i)
+            senders[i] = String.format("Q%033d", i);
+
+        // As when read from an export, each TestTransaction has its own address strings, formatted afresh
+        DiceAPI listApi = new DiceAPI();
+        listApi.setLogTransactions(false);
+
+        long listBytes = 0;
+        for (int i = 0; i < sampleCount; ++i) {
+            byte[] txHash = new byte[32];
+            ByteBuffer.wrap(txHash).putInt(i);
+
+            TestAPI.TestTransaction testTransaction = new TestAPI.TestTransaction(txHash, String.format("Q%033d", i % senders.length), String.format("A%033d", 0), i);
+            listApi.addTransactionToCurrentBlock(testTransaction);
+
+            if (i % transactionsPerBlock == transactionsPerBlock - 1)
+                listApi.bumpCurrentBlockHeight();
+
+            // Plus block's reference to it
+            listBytes += retainedBytes(testTransaction) + REFERENCE_BYTES;
+        }
+
+        double listBytesPerTransaction = listBytes / (double) sampleCount;
+
+        ColumnarChainStore chain = new ColumnarChainStore();
+        ChainStoreAPI columnarApi = new ChainStoreAPI(chain, 1L);
+        columnarApi.setLogTransactions(false);
+
+        for (int i = 0; i < transactionCount; ++i) {
+            columnarApi.sendPayment(senders[i % senders.length], i);
+
+            if (i % transactionsPerBlock == transactionsPerBlock - 1)
+                columnarApi.bumpCurrentBlockHeight();
+        }
+
+        // Address book holds one copy of each address
+        AddressBook addressBook = columnarApi.getAddressBook();
+        long addressBookBytes = 0;
+        for (int addressId = 0; addressId < addressBook.size(); ++addressId)
+            addressBookBytes += retainedBytes(addressBook.getAddress(addressId)) + ADDRESS_BOOK_ENTRY_BYTES;
+
+        double columnarBytesPerTransaction = (chain.getRetainedBytes() + addressBookBytes) / (double) transactionCount;
+
+        System.out.println(String.format("Heap per transaction: TestTransaction chain %.1f bytes, columnar chain %.1f bytes",
+                listBytesPerTransaction, columnarBytesPerTransaction));
+
+        // Sender, recipient, type, amount and index entry, plus a little for blocks and addresses
+        assertTrue(columnarBytesPerTransaction < 24.0);
+        assertTrue(String.format("columnar %.1f bytes not a tenth of TestTransaction %.1f bytes", columnarBytesPerTransaction, listBytesPerTransaction),
+                columnarBytesPerTransaction * 10 <= listBytesPerTransaction);
+    }
+
+    // Sizes with compressed oops and class pointers, the default for heaps under 32GB
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    /** HashMap node, boxed id, map table and list slots */
+    private static final int ADDRESS_BOOK_ENTRY_BYTES = 32 + 16 + 8 + 4;
+
+    /**
+     * Returns heap used by <tt>object</tt> and what it references, walking fields by reflection,
+     * except for enum constants which are shared. Other JDK objects only count their header, so this is a lower bound.
+     * <p>
+     * Deterministic, unlike measuring heap before and after, which depends on when GC runs.
+     */
+    private static long retainedBytes(Object object) throws IllegalAccessException {
+        if (object == null || object instanceof Enum)
+            return 0;
+
+        // Value array, hash, coder and hash-is-zero flag, then Latin-1 bytes as addresses are ASCII
+        if (object instanceof String)
+            return alignedBytes(OBJECT_HEADER_BYTES + REFERENCE_BYTES + Integer.BYTES + 2) + alignedBytes(ARRAY_HEADER_BYTES + ((String) object).length());
+
+        if (object instanceof byte[])
+            return alignedBytes(ARRAY_HEADER_BYTES + ((byte[]) object).length);
+
+        if (object instanceof Long)
+            return alignedBytes(OBJECT_HEADER_BYTES + Long.BYTES);
+
+        if (object instanceof Integer)
+            return alignedBytes(OBJECT_HEADER_BYTES + Integer.BYTES);
+
+        if (object.getClass().getName().startsWith("java."))
+            return alignedBytes(OBJECT_HEADER_BYTES);
+
+        long shallowBytes = OBJECT_HEADER_BYTES;
+        long referencedBytes = 0;
+
+        for (Class<?> clazz = object.getClass(); clazz != Object.class; clazz = clazz.getSuperclass())
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+
+                if (field.getType().isPrimitive()) {
+                    shallowBytes += primitiveBytes(field.getType());
+                    continue;
+                }
+
+                shallowBytes += REFERENCE_BYTES;
+                field.setAccessible(true);
+                referencedBytes += retainedBytes(field.get(object));
+            }
+
+        return alignedBytes(shallowBytes) + referencedBytes;
+    }
+
+    private static int primitiveBytes(Class<?> type) {
+        if (type == long.class || type == double.class)
+            return 8;
+
+        if (type == int.class || type == float.class)
+            return 4;
+
+        if (type == short.class || type == char.class)
+            return 2;
+
+        return 1;
+    }
+
+    private static long alignedBytes(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    @Test
+    public void mapped_lookups() throws IOException {
+        Path directory = temporaryFolder.newFolder("chain").toPath();
+
+        try (MappedChainStore chain = new MappedChainStore(directory);
+             AddressBook addressBook = AddressBook.open(directory.resolve("addresses.txt"))) {
+            check_lookups(chain, new ChainStoreAPI(chain, addressBook, 1L));
+        }
+
+        // Reopen for replay
+        try (MappedChainStore chain = new MappedChainStore(directory);
+             AddressBook addressBook = AddressBook.open(directory.resolve("addresses.txt"))) {
+            assertEquals(1_000_000L, chain.getTransactionCount());
+
+            int atAddressId = addressBook.getId(TestAPI.AT_ADDRESS);
+            long txIndex = chain.findTransactionTo(atAddressId, Timestamp.toLong(9_000, 0), chain.getBlockCount());
+            assertEquals(8_999L, chain.getAmount(txIndex));
+            assertEquals("Q_player", addressBook.getAddress(chain.getSenderId(txIndex)));
+
+            // Unindexed recipient lookups use sparse height index
+            txIndex = chain.findTransactionTo(addressBook.getId("Q_other"), Timestamp.toLong(9_000, 0), chain.getBlockCount());
+            assertEquals(Timestamp.toLong(9_000, 1), chain.getTimestamp(txIndex));
+        }
+    }
+
+    private static void check_lookups(ChainStore chain, ChainStoreAPI api) {
+        final int blockCount = 10_000;
+        final int transactionsPerBlock = 100;
+        final int otherId = api.getAddressBook().intern("Q_other");
+
+        for (int blockIndex = 0; blockIndex < blockCount; ++blockIndex) {
+            // Only last transaction in each block is to AT
+            for (int i = 0; i < transactionsPerBlock - 1; ++i)
+                chain.addTransaction(otherId, otherId, 0, i, new byte[32]);
+
+            api.sendPayment("Q_player", blockIndex);
+            api.bumpCurrentBlockHeight();
+        }
+
+        assertEquals((long) blockCount * transactionsPerBlock, chain.getTransactionCount());
+
+        int atAddressId = api.getAddressBook().getId(TestAPI.AT_ADDRESS);
+
+        long txIndex = chain.findTransactionTo(atAddressId, Timestamp.toLong(500, 0), api.getCurrentBlockHeight());
+        assertEquals(Timestamp.toLong(500, transactionsPerBlock - 1), chain.getTimestamp(txIndex));
+        assertEquals(499L, chain.getAmount(txIndex));
+
+        // Nothing after latest
+        long lastTimestamp = Timestamp.toLong(blockCount, transactionsPerBlock - 1);
+        assertEquals(-1L, chain.findTransactionTo(atAddressId, lastTimestamp, api.getCurrentBlockHeight()));
+
+        // Not beyond max height
+        assertEquals(-1L, chain.findTransactionTo(atAddressId, Timestamp.toLong(500, transactionsPerBlock - 1), 500));
+
+        // Given hashes are kept, others derived from seed and transaction index
+        byte[] txHash = new byte[ChainStore.HASH_LENGTH];
+        chain.getTransactionHash(txIndex - 1, txHash, 0);
+        assertArrayEquals(new byte[ChainStore.HASH_LENGTH], txHash);
+
+        byte[] expectedHash = new byte[ChainStore.HASH_LENGTH];
+        ChainStore.deriveTransactionHash(api.getSeed(), txIndex, expectedHash, 0);
+        chain.getTransactionHash(txIndex, txHash, 0);
+        assertArrayEquals(expectedHash, txHash);
+    }
+
+    @Test
+    public void columnar_truncate() {
+        ColumnarChainStore chain = new ColumnarChainStore();
+        check_truncate(chain, new ChainStoreAPI(chain, 1L));
+    }
+
+    @Test
+    public void mapped_truncate() throws IOException {
+        Path directory = temporaryFolder.newFolder("chain").toPath();
+
+        try (MappedChainStore chain = new MappedChainStore(directory)) {
+            check_truncate(chain, new ChainStoreAPI(chain, 1L));
+        }
+    }
+
+    @Test
+    public void fork_truncate() {
+        ChainStoreAPI parentApi = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+
+        for (int blockIndex = 0; blockIndex < 20; ++blockIndex) {
+            parentApi.sendPayment("Q_player", blockIndex);
+            parentApi.bumpCurrentBlockHeight();
+        }
+
+        ChainStoreAPI api = parentApi.fork(2L);
+        ChainStore chain = api.getChain();
+        int atAddressId = api.getAddressBook().getId(TestAPI.AT_ADDRESS);
+
+        // First fork transaction carries on with parent's current block
+        api.sendPayment("Q_player", 100L);
+
+        for (int blockIndex = 0; blockIndex < 10; ++blockIndex) {
+            api.bumpCurrentBlockHeight();
+            api.sendPayment("Q_player", 101L + blockIndex);
+        }
+
+        chain.truncate(21);
+        assertEquals(21, chain.getBlockCount());
+        assertEquals(21L, chain.getTransactionCount());
+        assertEquals(-1L, chain.findTransactionTo(atAddressId, Timestamp.toLong(21, 0), 1000));
+
+        long txIndex = api.sendPayment("Q_player", 200L);
+        assertEquals(Timestamp.toLong(21, 1), chain.getTimestamp(txIndex));
+        assertEquals(txIndex, chain.findTransactionTo(atAddressId, Timestamp.toLong(21, 0), 21));
+
+        // Parent's transaction hashes use parent's seed
+        byte[] txHash = new byte[ChainStore.HASH_LENGTH];
+        byte[] expectedHash = new byte[ChainStore.HASH_LENGTH];
+
+        chain.getTransactionHash(0L, txHash, 0);
+        ChainStore.deriveTransactionHash(1L, 0L, expectedHash, 0);
+        assertArrayEquals(expectedHash, txHash);
+
+        chain.getTransactionHash(txIndex, txHash, 0);
+        ChainStore.deriveTransactionHash(2L, txIndex, expectedHash, 0);
+        assertArrayEquals(expectedHash, txHash);
+
+        // Parent's blocks are shared, so can't be removed
+        try {
+            chain.truncate(20);
+            fail("Fork shouldn't be able to truncate parent's blocks");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        assertEquals(21, parentApi.getChain().getBlockCount());
+    }
+
+    private static void check_truncate(ChainStore chain, ChainStoreAPI api) {
+        final int blockCount = 1_000;
+        final int otherId = api.getAddressBook().intern("Q_other");
+        final int atAddressId = api.getAddressBook().getId(TestAPI.AT_ADDRESS);
+
+        // Each block has transaction to other recipient then payment to AT
+        for (int blockIndex = 0; blockIndex < blockCount; ++blockIndex) {
+            chain.addTransaction(otherId, otherId, 0, blockIndex, new byte[32]);
+            api.sendPayment("Q_player", blockIndex);
+            api.bumpCurrentBlockHeight();
+        }
+
+        chain.truncate(500);
+        assertEquals(500, chain.getBlockCount());
+        assertEquals(1_000L, chain.getTransactionCount());
+
+        // Removed transactions are gone from both index and scans
+        assertEquals(-1L, chain.findTransactionTo(atAddressId, Timestamp.toLong(500, 1), 10_000));
+        assertEquals(-1L, chain.findTransactionTo(otherId, Timestamp.toLong(500, 0), 10_000));
+
+        long txIndex = chain.findTransactionTo(atAddressId, Timestamp.toLong(499, 1), 500);
+        assertEquals(499L, chain.getAmount(txIndex));
+
+        // New transactions carry on in block at truncated height
+        txIndex = api.sendPayment("Q_player", 5_000L);
+        assertEquals(1_000L, txIndex);
+        assertEquals(Timestamp.toLong(500, 2), chain.getTimestamp(txIndex));
+        assertEquals(txIndex, chain.findTransactionTo(atAddressId, Timestamp.toLong(500, 1), 500));
+
+        api.bumpCurrentBlockHeight();
+        txIndex = api.sendPayment("Q_player", 5_001L);
+        assertEquals(Timestamp.toLong(501, 0), chain.getTimestamp(txIndex));
+        assertEquals(txIndex, chain.findTransactionTo(atAddressId, Timestamp.toLong(500, 2), 501));
+    }
+
+    @Test
+    public void dice_on_columnar_chain() {
+        final int playCount = 600;
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * playCount * 6L);
+
+        runner.execute_once();
+
+        for (int playIndex = 0; playIndex < playCount; ++playIndex) {
+            api.sendPayment(String.format("Q_player_%02d", playIndex % 2), DEFAULT_MINIMUM_AMOUNT);
+            runner.execute_once();
+            runner.execute_once();
+        }
+
+        int winCount = api.getAtPaymentCount();
+        assertTrue(winCount > 0 && winCount < playCount);
+
+        for (int i = 0; i < winCount; ++i) {
+            assertTrue(api.getAtPaymentRecipient(i).startsWith("Q_player_"));
+            assertEquals(DEFAULT_MINIMUM_AMOUNT * 6L, api.getAtPaymentAmount(i));
+        }
+    }
+
+    @Test
+    public void lottery_on_columnar_chain() {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < 1000; ++i)
+            api.sendPayment(String.format("Q_player_%03d", i), DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(1000));
+
+        assertEquals(1, api.getAtPaymentCount());
+        assertTrue(api.getAtPaymentRecipient(0).startsWith("Q_player_"));
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Test;
+import org.qortal.at.lottery.sim.BlockProducer;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+import org.qortal.at.lottery.sim.Mempool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many threads submitting bets and entries while a block producer thread runs the AT.
+ */
+public class ConcurrentLoadTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static final int SUBMITTER_COUNT = Integer.getInteger("load.submitters", 8);
+    private static final int BETS_PER_SUBMITTER = Integer.getInteger("load.betsPerSubmitter", 5_000);
+
+    /** Starts submitter threads, each calling <tt>submitter</tt> with its own index and random. */
+    private static List<Thread> startSubmitters(SubmitterBody submitter) {
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < SUBMITTER_COUNT; ++i) {
+            final int submitterIndex = i;
+            Thread thread = new Thread(() -> submitter.run(submitterIndex, new SplittableRandom(submitterIndex)), "submitter-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        return threads;
+    }
+
+    private interface SubmitterBody {
+        void run(int submitterIndex, SplittableRandom random);
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    private static long totalAtPayments(ChainStoreAPI api) {
+        long total = 0;
+        for (int i = 0; i < api.getAtPaymentCount(); ++i)
+            total += api.getAtPaymentAmount(i);
+
+        return total;
+    }
+
+    private static void report(String scenario, BlockProducer producer, long elapsedNanos) {
+        System.out.println(String.format("%s: %d transactions in %d blocks (max %d per block), %.0f tx/s, " +
+                        "inclusion latency mean %d µs, max %d µs",
+                scenario, producer.getTransactionCount(), producer.getBlockCount(), producer.getMaxTransactionsInBlock(),
+                producer.getTransactionCount() * 1e9 / elapsedNanos,
+                producer.getMeanInclusionNanos() / 1000, producer.getMaxInclusionNanos() / 1000));
+    }
+
+    @Test
+    public void concurrent_dice_bets() throws InterruptedException {
+        final long initialBalance = DEFAULT_MINIMUM_AMOUNT * 2 * 6 * SUBMITTER_COUNT * BETS_PER_SUBMITTER;
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        api.setLogTransactions(false);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), initialBalance);
+        runner.execute_once();
+
+        Mempool mempool = new Mempool();
+        BlockProducer producer = new BlockProducer(runner, api, mempool).start();
+
+        long startNanos = System.nanoTime();
+
+        List<Thread> submitters = startSubmitters((submitterIndex, random) -> {
+            for (int bet = 0; bet < BETS_PER_SUBMITTER; ++bet) {
+                String player = String.format("Q_player_%02d_%02d", submitterIndex, random.nextInt(10));
+                mempool.submitPayment(player, DEFAULT_MINIMUM_AMOUNT + random.nextLong(DEFAULT_MINIMUM_AMOUNT));
+            }
+        });
+
+        joinAll(submitters);
+
+        // Every bet submitted before creator's MESSAGE so AT sees all of them before finishing
+        mempool.submitMessage(TestAPI.AT_CREATOR_ADDRESS);
+        producer.join();
+
+        report("Dice", producer, System.nanoTime() - startNanos);
+
+        assertTrue(runner.state.isFinished());
+        assertTrue(mempool.isEmpty());
+        assertEquals(mempool.getSubmittedCount(), producer.getTransactionCount());
+
+        // Wins, then creator gets the rest
+        int winCount = api.getAtPaymentCount() - 1;
+        long betCount = (long) SUBMITTER_COUNT * BETS_PER_SUBMITTER;
+        assertTrue(winCount > betCount / 12 && winCount < betCount / 3);
+
+        for (int i = 0; i < winCount; ++i)
+            assertTrue(api.getAtPaymentRecipient(i).startsWith("Q_player_"));
+
+        assertEquals(TestAPI.AT_CREATOR_ADDRESS, api.getAtPaymentRecipient(winCount));
+
+        // Nothing lost or double-counted
+        assertEquals(initialBalance + mempool.getSubmittedAmount(), totalAtPayments(api));
+    }
+
+    @Test
+    public void concurrent_lottery_entries() throws InterruptedException {
+        final int entryCount = SUBMITTER_COUNT * BETS_PER_SUBMITTER;
+
+        /*
+         * Cutoff is in blocks. Producer doesn't make idle blocks while submitters run, so every block then holds
+         * at least one entry, and cutoff can't pass before all entries are in, however threads are scheduled.
+         */
+        final int sleepMinutes = Math.max(Lottery.MIN_SLEEP_MINUTES, entryCount + 10);
+        assertTrue("Too many entries for lottery's maximum sleep", sleepMinutes <= Lottery.MAX_SLEEP_MINUTES);
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        api.setLogTransactions(false);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(sleepMinutes, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+        runner.execute_once();
+
+        Mempool mempool = new Mempool();
+        BlockProducer producer = new BlockProducer(runner, api, mempool);
+        producer.idleBlocks = false;
+        producer.start();
+
+        long startNanos = System.nanoTime();
+
+        List<Thread> submitters = startSubmitters((submitterIndex, random) -> {
+            for (int entry = 0; entry < BETS_PER_SUBMITTER; ++entry)
+                mempool.submitPayment(String.format("Q_entrant_%02d_%05d", submitterIndex, entry), DEFAULT_MINIMUM_AMOUNT);
+        });
+
+        joinAll(submitters);
+
+        // Lottery finishes by itself once idle blocks take chain past cutoff
+        producer.idleBlocks = true;
+        producer.join();
+
+        report("Lottery", producer, System.nanoTime() - startNanos);
+
+        assertTrue(runner.state.isFinished());
+        assertEquals(entryCount, mempool.getSubmittedCount());
+        assertEquals(mempool.getSubmittedCount(), producer.getTransactionCount());
+
+        assertEquals(1, api.getAtPaymentCount());
+        assertTrue(api.getAtPaymentRecipient(0).startsWith("Q_entrant_"));
+        assertEquals(DEFAULT_INITIAL_BALANCE + producer.getPaymentAmount(), totalAtPayments(api));
+    }
+
+}
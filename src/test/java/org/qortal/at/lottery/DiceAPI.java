@@ -3,12 +3,32 @@ package org.qortal.at.lottery;
 import org.ciyam.at.*;
 import org.ciyam.at.test.TestAPI;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class DiceAPI extends TestAPI {
 
+    /** Opcodes that are followed by a 2-byte function code */
+    private static final EnumSet<OpCode> FUNCTION_OPCODES = Arrays.stream(OpCode.values())
+            .filter(opCode -> opCode.name().startsWith("EXT_FUN"))
+            .collect(Collectors.toCollection(() -> EnumSet.noneOf(OpCode.class)));
+
     protected Long sleepUntilMessageTimestamp;
 
+    protected final List<AtListener> listeners = new ArrayList<>();
+
+    /** Whether to print transactions found while checking if AT should wake */
+    protected boolean logTransactions = true;
+
+    /** State currently executing, if any, so opcode callbacks can be attributed */
+    protected MachineState executingState;
+    protected ByteBuffer executingCodeByteBuffer;
+
     public Long getSleepUntilMessageTimestamp() {
         return this.sleepUntilMessageTimestamp;
     }
@@ -17,6 +37,18 @@ public class DiceAPI extends TestAPI {
         this.sleepUntilMessageTimestamp = sleepUntilMessageTimestamp;
     }
 
+    public void setLogTransactions(boolean logTransactions) {
+        this.logTransactions = logTransactions;
+    }
+
+    public void addListener(AtListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(AtListener listener) {
+        this.listeners.remove(listener);
+    }
+
     public boolean willExecute(MachineState state, int blockHeight) {
         // Sleep-until-message/height checking
         Long sleepUntilMessageTimestamp = this.getSleepUntilMessageTimestamp();
@@ -31,8 +63,7 @@ public class DiceAPI extends TestAPI {
             if (!wakeDueToHeight) {
                 // No avoiding asking repository
                 Timestamp previousTxTimestamp = new Timestamp(sleepUntilMessageTimestamp);
-                TestTransaction nextTransaction = this.getTransactionAfterTimestamp(blockHeight, previousTxTimestamp, state);
-                wakeDueToMessage = nextTransaction != null;
+                wakeDueToMessage = this.hasTransactionAfterTimestamp(blockHeight, previousTxTimestamp, state);
             }
 
             // Can we skip?
@@ -53,6 +84,38 @@ public class DiceAPI extends TestAPI {
             this.setSleepUntilHeight(state, 0);
             this.setSleepUntilMessageTimestamp(null);
         }
+
+        this.executingState = state;
+        this.executingCodeByteBuffer = this.listeners.isEmpty() ? null : ByteBuffer.wrap(state.getCodeBytes());
+
+        for (AtListener listener : this.listeners)
+            listener.onRoundStart(state);
+    }
+
+    public void postExecute(MachineState state, byte[] packedState) {
+        this.executingState = null;
+        this.executingCodeByteBuffer = null;
+
+        for (AtListener listener : this.listeners)
+            listener.onRoundEnd(state, packedState);
+    }
+
+    @Override
+    public int getOpCodeSteps(OpCode opcode) {
+        int steps = super.getOpCodeSteps(opcode);
+
+        // Nobody listening, or not called via AtRunner?
+        if (this.executingCodeByteBuffer == null)
+            return steps;
+
+        int programCounter = this.executingState.getProgramCounter();
+
+        short rawFunctionCode = FUNCTION_OPCODES.contains(opcode) ? this.executingCodeByteBuffer.getShort(programCounter + 1) : 0;
+
+        for (AtListener listener : this.listeners)
+            listener.onOpCode(this.executingState, programCounter, opcode, rawFunctionCode, steps);
+
+        return steps;
     }
 
     @Override
@@ -76,6 +139,61 @@ public class DiceAPI extends TestAPI {
         qortalFunctionCode.execute(functionData, state, rawFunctionCode);
     }
 
+    protected void notifyTransaction(MachineState state, String sender, ATTransactionType type, long amount, long timestamp) {
+        for (AtListener listener : this.listeners)
+            listener.onTransaction(state, sender, type, amount, timestamp);
+    }
+
+    protected void notifyPayment(MachineState state, String recipient, long amount) {
+        for (AtListener listener : this.listeners)
+            listener.onPayment(state, recipient, amount);
+    }
+
+    protected void notifyFinished(MachineState state, long finalBalance) {
+        for (AtListener listener : this.listeners)
+            listener.onFinished(state, finalBalance);
+    }
+
+    /** Returns address from B, as address string's bytes, zero-padded. */
+    protected static String decodeAddress(byte[] encodedAddress) {
+        int length = encodedAddress.length;
+        while (length > 0 && encodedAddress[length - 1] == 0)
+            --length;
+
+        return new String(encodedAddress, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void putTransactionAfterTimestampIntoA(Timestamp timestamp, MachineState state) {
+        super.putTransactionAfterTimestampIntoA(timestamp, state);
+
+        if (this.listeners.isEmpty())
+            return;
+
+        Timestamp foundTimestamp = this.findTransactionAfterTimestamp(this.getCurrentBlockHeight(), timestamp);
+        if (foundTimestamp == null)
+            return;
+
+        TestTransaction transaction = this.getTransaction(foundTimestamp);
+        long amount = transaction.txType.equals(ATTransactionType.PAYMENT) ? transaction.amount : 0L;
+        notifyTransaction(state, transaction.sender, transaction.txType, amount, foundTimestamp.longValue());
+    }
+
+    @Override
+    public void payAmountToB(long amount, MachineState state) {
+        if (!this.listeners.isEmpty())
+            notifyPayment(state, decodeAddress(this.getB(state)), amount);
+
+        super.payAmountToB(amount, state);
+    }
+
+    @Override
+    public void onFinished(long finalBalance, MachineState state) {
+        notifyFinished(state, finalBalance);
+
+        super.onFinished(finalBalance, state);
+    }
+
     /*package*/ void sleepUntilMessageOrHeight(MachineState state, long txTimestamp, Long sleepUntilHeight) {
         this.setIsSleeping(state, true);
 
@@ -85,7 +203,33 @@ public class DiceAPI extends TestAPI {
             this.setSleepUntilHeight(state, sleepUntilHeight.intValue());
     }
 
-    private TestTransaction getTransactionAfterTimestamp(int currentBlockHeight, Timestamp timestamp, MachineState state) {
+    /** Returns whether there is a transaction to AT after <tt>timestamp</tt>, up to and including current block. */
+    protected boolean hasTransactionAfterTimestamp(int currentBlockHeight, Timestamp timestamp, MachineState state) {
+        Timestamp foundTimestamp = this.findTransactionAfterTimestamp(currentBlockHeight, timestamp);
+        if (foundTimestamp == null)
+            return false;
+
+        if (this.logTransactions) {
+            TestTransaction transaction = this.getTransaction(foundTimestamp);
+
+            System.out.println(String.format("Found transaction at height %d, sequence %d: %s %s from %s",
+                    foundTimestamp.blockHeight,
+                    foundTimestamp.transactionSequence,
+                    transaction.txType.equals(ATTransactionType.PAYMENT) ? prettyAmount(transaction.amount) : "",
+                    transaction.txType.name(),
+                    transaction.sender
+            ));
+        }
+
+        return true;
+    }
+
+    private TestTransaction getTransaction(Timestamp timestamp) {
+        return this.blockchain.get(timestamp.blockHeight - 1).transactions.get(timestamp.transactionSequence);
+    }
+
+    /** Returns timestamp of first transaction to AT after <tt>timestamp</tt>, up to and including current block, or null. */
+    private Timestamp findTransactionAfterTimestamp(int currentBlockHeight, Timestamp timestamp) {
         int blockHeight = timestamp.blockHeight;
         int transactionSequence = timestamp.transactionSequence + 1;
 
@@ -103,18 +247,8 @@ public class DiceAPI extends TestAPI {
 
             TestTransaction transaction = transactions.get(transactionSequence);
 
-            if (transaction.recipient.equals("AT")) {
-                // Found a transaction
-                System.out.println(String.format("Found transaction at height %d, sequence %d: %s %s from %s",
-                        blockHeight,
-                        transactionSequence,
-                        transaction.txType.equals(ATTransactionType.PAYMENT) ? prettyAmount(transaction.amount) : "",
-                        transaction.txType.name(),
-                        transaction.sender
-                ));
-
-                return transaction;
-            }
+            if (transaction.recipient.equals("AT"))
+                return new Timestamp(Timestamp.toLong(blockHeight, transactionSequence));
 
             ++transactionSequence;
         }
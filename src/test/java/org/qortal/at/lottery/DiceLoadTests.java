@@ -0,0 +1,44 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+import org.qortal.at.lottery.sim.DiceLoadGenerator;
+
+import static org.junit.Assert.*;
+
+public class DiceLoadTests {
+
+    @Test
+    public void sustained_bet_traffic() {
+        DiceLoadGenerator generator = new DiceLoadGenerator();
+        generator.seed = 1L;
+        generator.betsPerBlock = Integer.getInteger("load.betsPerBlock", 20);
+        generator.playerCount = Integer.getInteger("load.players", 50);
+        generator.blockCount = Integer.getInteger("load.blocks", 200);
+
+        DiceLoadGenerator.Report report = generator.run();
+
+        System.err.println(String.format("Dice load: %s", report));
+
+        assertTrue(report.finished);
+        assertTrue(report.payouts > 0);
+        assertTrue(report.refunds > 0);
+        assertTrue(report.transactionsScanned > 0);
+    }
+
+    @Test
+    public void non_default_table() {
+        DiceLoadGenerator generator = new DiceLoadGenerator();
+        generator.seed = 1L;
+        generator.sides = 20;
+        generator.multiplier = 10;
+        generator.blockCount = 100;
+
+        DiceLoadGenerator.Report report = generator.run();
+
+        // Payouts only match at the table's own multiplier
+        assertTrue(report.finished);
+        assertTrue(report.payouts > 0);
+        assertTrue(report.refunds > 0);
+    }
+
+}
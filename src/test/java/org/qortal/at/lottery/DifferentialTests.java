@@ -0,0 +1,86 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+import org.qortal.at.lottery.fuzz.AtVariant;
+import org.qortal.at.lottery.fuzz.DifferentialTester;
+import org.qortal.at.lottery.fuzz.FuzzCase;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks AT variants behave identically on the same chains.
+ * <p>
+ * Compares current Lottery against {@link ReorderedLottery}, whose code differs but should behave identically,
+ * and template-patched Dice creation bytes against freshly compiled code.
+ * Use the same harness to compare an optimised builder against the current one.
+ * Increase chain count using system property <tt>diff.cases</tt>.
+ */
+public class DifferentialTests {
+
+    private static final long SEED = Long.getLong("diff.seed", 1L);
+    private static final int CASE_COUNT = Integer.getInteger("diff.cases", 1_000);
+
+    private static DifferentialTester newTester(FuzzCase.Target target, AtVariant variantA, AtVariant variantB) {
+        DifferentialTester tester = new DifferentialTester(target, variantA, variantB,
+                target == FuzzCase.Target.LOTTERY ? DifferentialTester.lotteryFields() : DifferentialTester.diceFields());
+        tester.seed = SEED;
+        tester.caseCount = CASE_COUNT;
+        return tester;
+    }
+
+    @Test
+    public void lottery_matches_reordered_lottery() {
+        AtVariant reordered = new AtVariant("reordered Lottery", DataSegmentLabels.LOTTERY,
+                fuzzCase -> ReorderedLottery.compileQortalAT(fuzzCase.sleepMinutes, fuzzCase.minimumAmount));
+
+        // Same data segment and code length, but different code
+        byte[] current = Lottery.buildQortalAT(Lottery.MIN_SLEEP_MINUTES, Lottery.MIN_MINIMUM_AMOUNT);
+        byte[] other = ReorderedLottery.compileQortalAT(Lottery.MIN_SLEEP_MINUTES, Lottery.MIN_MINIMUM_AMOUNT);
+        assertEquals(current.length, other.length);
+        assertFalse(Arrays.equals(current, other));
+
+        long startTime = System.nanoTime();
+        DifferentialTester.Divergence divergence = newTester(FuzzCase.Target.LOTTERY, AtVariant.currentLottery(), reordered).run();
+        System.out.println(String.format("Lottery: %d chains compared in %d ms", CASE_COUNT, (System.nanoTime() - startTime) / 1_000_000));
+
+        if (divergence != null)
+            fail(divergence.toString());
+    }
+
+    @Test
+    public void dice_template_matches_compiled() {
+        AtVariant compiled = new AtVariant("compiled Dice", DataSegmentLabels.DICE,
+                fuzzCase -> Dice.compileQortalAT(fuzzCase.minimumAmount, fuzzCase.sides, fuzzCase.multiplier));
+
+        long startTime = System.nanoTime();
+        DifferentialTester.Divergence divergence = newTester(FuzzCase.Target.DICE, AtVariant.currentDice(), compiled).run();
+        System.out.println(String.format("Dice: %d chains compared in %d ms", CASE_COUNT, (System.nanoTime() - startTime) / 1_000_000));
+
+        if (divergence != null)
+            fail(divergence.toString());
+    }
+
+    @Test
+    public void divergence_reported() {
+        // Variant that demands slightly more than the real minimum, so bets at exactly minimum behave differently
+        AtVariant stricter = new AtVariant("stricter Dice", DataSegmentLabels.DICE,
+                fuzzCase -> Dice.buildQortalAT(fuzzCase.minimumAmount + 1, fuzzCase.sides, fuzzCase.multiplier));
+
+        DifferentialTester tester = new DifferentialTester(FuzzCase.Target.DICE, AtVariant.currentDice(), stricter,
+                DifferentialTester.diceFields());
+        tester.seed = SEED;
+        tester.caseCount = 100;
+
+        DifferentialTester.Divergence divergence = tester.run();
+        assertNotNull(divergence);
+
+        System.out.println(divergence);
+
+        assertFalse(divergence.trace.isEmpty());
+        assertFalse(divergence.description.isEmpty());
+    }
+
+}
@@ -0,0 +1,238 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Test;
+import org.qortal.at.lottery.events.AtEvent;
+import org.qortal.at.lottery.events.AtEventDetector;
+import org.qortal.at.lottery.events.EventRingBuffer;
+import org.qortal.at.lottery.events.NdjsonEventWriter;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EventTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    /** Small ring so writer has to keep up with AT */
+    private static final int RING_CAPACITY = 8;
+
+    private static final Pattern STRING_FIELD = Pattern.compile("\"(\\w+)\":\"([^\"]*)\"");
+    private static final Pattern NUMBER_FIELD = Pattern.compile("\"(\\w+)\":(-?\\d+|true|false)");
+
+    @Test
+    public void lottery_events() throws IOException {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        api.setLogTransactions(false);
+
+        EventRingBuffer ring = new EventRingBuffer(RING_CAPACITY);
+        StringWriter output = new StringWriter();
+
+        try (NdjsonEventWriter writer = new NdjsonEventWriter(ring, output)) {
+            api.addListener(new AtEventDetector(api, AtEventDetector.AtKind.LOTTERY, ring, 1L));
+
+            AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                    .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+            runner.execute_once();
+
+            api.sendPayment("Q_cheapskate", DEFAULT_MINIMUM_AMOUNT / 2);
+            api.sendMessage("Q_chatterbox");
+
+            for (int i = 0; i < 20; ++i)
+                api.sendPayment(String.format("Q_player_%02d", i), DEFAULT_MINIMUM_AMOUNT);
+
+            // Well past end of lottery
+            for (int i = 0; i < 30; ++i)
+                api.bumpCurrentBlockHeight();
+
+            api.sendPayment("Q_latecomer", DEFAULT_MINIMUM_AMOUNT);
+
+            assertTrue(runner.execute_until_finished(1000));
+        }
+
+        List<String> lines = lines(output);
+
+        assertEquals(20, count(lines, "ENTRY_ACCEPTED"));
+        assertEquals(Arrays.asList("Q_cheapskate"), addresses(lines, "ENTRY_REJECTED", "BELOW_MINIMUM"));
+        assertEquals(Arrays.asList("Q_chatterbox"), addresses(lines, "ENTRY_REJECTED", "NON_PAYMENT"));
+        assertEquals(Arrays.asList("Q_latecomer"), addresses(lines, "ENTRY_REJECTED", "PAST_CUTOFF"));
+
+        // Last new best entrant is the winner
+        List<String> newBestAddresses = addresses(lines, "NEW_BEST_DISTANCE", null);
+        assertFalse(newBestAddresses.isEmpty());
+        assertEquals(Arrays.asList(api.getAtPaymentRecipient(0)), addresses(lines, "PAYOUT", null));
+        assertEquals(api.getAtPaymentRecipient(0), newBestAddresses.get(newBestAddresses.size() - 1));
+
+        assertEquals("FINISH", field(lines.get(lines.size() - 1), "type"));
+    }
+
+    @Test
+    public void dice_events() throws IOException {
+        final int betCount = 60;
+        final long oversizeBet = DEFAULT_INITIAL_BALANCE * betCount;
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        api.setLogTransactions(false);
+
+        EventRingBuffer ring = new EventRingBuffer(RING_CAPACITY);
+        StringWriter output = new StringWriter();
+
+        try (NdjsonEventWriter writer = new NdjsonEventWriter(ring, output)) {
+            api.addListener(new AtEventDetector(api, AtEventDetector.AtKind.DICE, ring, 2L));
+
+            AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                    .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * betCount);
+
+            runner.execute_once();
+
+            api.sendPayment("Q_cheapskate", DEFAULT_MINIMUM_AMOUNT / 2);
+            api.sendMessage("Q_chatterbox");
+
+            for (int i = 0; i < betCount; ++i)
+                api.sendPayment(String.format("Q_player_%02d", i % 4), DEFAULT_MINIMUM_AMOUNT);
+
+            api.sendPayment("Q_high_roller", oversizeBet);
+            runner.execute_once();
+            runner.execute_once();
+
+            runner.send_message(TestAPI.AT_CREATOR_ADDRESS, new byte[0]);
+            assertTrue(runner.execute_until_finished(100));
+        }
+
+        List<String> lines = lines(output);
+
+        assertEquals(betCount, count(lines, "ENTRY_ACCEPTED"));
+        assertEquals(betCount, count(lines, "ROLL"));
+        assertEquals(Arrays.asList("Q_cheapskate"), addresses(lines, "ENTRY_REJECTED", "BELOW_MINIMUM"));
+        assertEquals(Arrays.asList("Q_chatterbox"), addresses(lines, "ENTRY_REJECTED", "NON_PAYMENT"));
+        assertEquals(Arrays.asList("Q_high_roller"), addresses(lines, "ENTRY_REJECTED", "OVERSIZE_REFUND"));
+
+        long winCount = 0;
+        for (int i = 0; i < lines.size(); ++i) {
+            String line = lines.get(i);
+            if (!"ROLL".equals(field(line, "type")))
+                continue;
+
+            boolean won = Boolean.parseBoolean(field(line, "won"));
+            assertEquals(won, field(line, "value").equals("0"));
+
+            if (won) {
+                ++winCount;
+
+                // Winning roll is followed by payout to same player
+                String payout = lines.get(i + 1);
+                assertEquals("PAYOUT", field(payout, "type"));
+                assertEquals(field(line, "address"), field(payout, "address"));
+                assertEquals(String.valueOf(DEFAULT_MINIMUM_AMOUNT * 6), field(payout, "amount"));
+            }
+        }
+
+        // Wins plus refund
+        assertEquals(winCount + 1, count(lines, "PAYOUT"));
+        assertEquals(api.getAtPaymentCount() - 1, count(lines, "PAYOUT")); // creator gets remaining balance on finish
+        assertEquals("FINISH", field(lines.get(lines.size() - 1), "type"));
+    }
+
+    @Test
+    public void concurrent_producers() throws InterruptedException {
+        final int producerCount = 4;
+        final int eventsPerProducer = 1_000_000;
+
+        EventRingBuffer ring = new EventRingBuffer(1024);
+
+        // Each producer's events must arrive in order, with none lost
+        long[] nextExpected = new long[producerCount];
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        AtomicBoolean producersDone = new AtomicBoolean();
+
+        Thread consumer = new Thread(() -> {
+            while (!producersDone.get() || !ring.isEmpty())
+                ring.drain(event -> {
+                    int producer = (int) event.run;
+                    if (event.amount != nextExpected[producer]++)
+                        outOfOrder.set(true);
+                }, 4096);
+        });
+        consumer.start();
+
+        List<Thread> producers = new ArrayList<>();
+        long startTime = System.nanoTime();
+
+        for (int p = 0; p < producerCount; ++p) {
+            final int producer = p;
+
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventsPerProducer; ++i) {
+                    long sequence = ring.claim();
+                    AtEvent event = ring.get(sequence);
+                    event.run = producer;
+                    event.type = AtEvent.Type.PAYOUT;
+                    event.amount = i;
+                    ring.publish(sequence);
+                }
+            });
+
+            producers.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : producers)
+            thread.join();
+
+        producersDone.set(true);
+        consumer.join();
+
+        long elapsed = System.nanoTime() - startTime;
+        System.out.println(String.format("%d producers: %d events in %d ms (%d ns/event)",
+                producerCount, producerCount * eventsPerProducer, elapsed / 1_000_000, elapsed / (producerCount * eventsPerProducer)));
+
+        assertFalse(outOfOrder.get());
+        for (int p = 0; p < producerCount; ++p)
+            assertEquals(eventsPerProducer, nextExpected[p]);
+    }
+
+    private static List<String> lines(StringWriter output) {
+        return Arrays.stream(output.toString().split("\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /** Returns field's value from NDJSON line, without quotes, or null if missing. */
+    private static String field(String line, String name) {
+        for (Pattern pattern : new Pattern[] { STRING_FIELD, NUMBER_FIELD }) {
+            Matcher matcher = pattern.matcher(line);
+            while (matcher.find())
+                if (matcher.group(1).equals(name))
+                    return matcher.group(2);
+        }
+
+        return null;
+    }
+
+    private static long count(List<String> lines, String type) {
+        return lines.stream().filter(line -> type.equals(field(line, "type"))).count();
+    }
+
+    private static List<String> addresses(List<String> lines, String type, String reason) {
+        return lines.stream()
+                .filter(line -> type.equals(field(line, "type")))
+                .filter(line -> reason == null || reason.equals(field(line, "reason")))
+                .map(line -> field(line, "address"))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,240 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+import org.qortal.at.lottery.sim.Statistics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Statistical checks that Lottery winners and Dice rolls are fair.
+ * <p>
+ * Every trial runs on its own simulated chain, seeded from <tt>fairness.seed</tt> and trial number,
+ * so trials run in parallel yet results are identical for the same seed.
+ * <p>
+ * Trial counts default to values that run in seconds. Increase using system properties
+ * <tt>fairness.lottery.trials</tt> and <tt>fairness.dice.bets</tt> for millions of trials.
+ */
+public class FairnessTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    /** Reject fairness if p-value falls below this */
+    private static final double ALPHA = 0.0001;
+
+    private static final long SEED = Long.getLong("fairness.seed", 1L);
+
+    private static final int LOTTERY_ENTRANTS = 10;
+    private static final int LOTTERY_TRIALS = Integer.getInteger("fairness.lottery.trials", 2_000);
+
+    private static final int DICE_SIDES = Dice.DEFAULT_SIDES;
+    private static final int DICE_MULTIPLIER = Dice.DEFAULT_MULTIPLIER;
+    private static final int DICE_CHUNKS = 32;
+    private static final int DICE_BETS = Integer.getInteger("fairness.dice.bets", 64_000);
+
+    private static long trialSeed(int trial) {
+        return SEED ^ ((trial + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    /** Lottery trial result: winner's entrant index, and winning value scaled to [0, 1) */
+    private static class LotteryResult {
+        int winner;
+        double winningValue;
+    }
+
+    /**
+     * Runs one lottery with {@link #LOTTERY_ENTRANTS} entrants.
+     *
+     * @param favouredEntries    number of entries made by entrant 0
+     * @param favouredAmount     amount paid by entrant 0 per entry
+     */
+    private static LotteryResult runLottery(int trial, int favouredEntries, long favouredAmount) {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), trialSeed(trial));
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        // Entrant order is rotated per trial so position in block can't favour anyone
+        for (int i = 0; i < LOTTERY_ENTRANTS; ++i) {
+            int entrant = (i + trial) % LOTTERY_ENTRANTS;
+
+            if (entrant == 0)
+                for (int entry = 0; entry < favouredEntries; ++entry)
+                    api.sendPayment(entrantName(0), favouredAmount);
+            else
+                api.sendPayment(entrantName(entrant), DEFAULT_MINIMUM_AMOUNT);
+        }
+
+        assertTrue(runner.execute_until_finished(1000));
+        assertEquals(1, api.getAtPaymentCount());
+
+        LotteryResult result = new LotteryResult();
+        result.winner = Integer.parseInt(api.getAtPaymentRecipient(0).substring("Q_entrant_".length()));
+
+        int winningValueOffset = StateSizeAnalyser.HEADER_LENGTH + DataSegmentLabels.LOTTERY.getAddress("WinningValue[0]") * 8;
+        long winningValue = ByteBuffer.wrap(runner.packedState).getLong(winningValueOffset);
+        result.winningValue = (winningValue >>> 11) * 0x1.0p-53;
+
+        return result;
+    }
+
+    private static String entrantName(int entrant) {
+        return String.format("Q_entrant_%02d", entrant);
+    }
+
+    private static LotteryResult[] runLotteries(int favouredEntries, long favouredAmount) {
+        return IntStream.range(0, LOTTERY_TRIALS).parallel()
+                .mapToObj(trial -> runLottery(trial, favouredEntries, favouredAmount))
+                .toArray(LotteryResult[]::new);
+    }
+
+    private static long[] winnerCounts(LotteryResult[] results) {
+        long[] counts = new long[LOTTERY_ENTRANTS];
+        for (LotteryResult result : results)
+            counts[result.winner]++;
+
+        return counts;
+    }
+
+    private static double checkUniformWinners(String scenario, LotteryResult[] results) {
+        long[] counts = winnerCounts(results);
+        double chiSquare = Statistics.chiSquareUniform(counts);
+        double pValue = Statistics.chiSquarePValue(chiSquare, LOTTERY_ENTRANTS - 1);
+
+        System.out.println(String.format("Lottery %s: %d trials, winner counts %s, chi-square %.2f, p-value %.4f",
+                scenario, results.length, Arrays.toString(counts), chiSquare, pValue));
+
+        assertTrue(String.format("Lottery %s winners not uniform, p-value %g", scenario, pValue), pValue > ALPHA);
+        return pValue;
+    }
+
+    @Test
+    public void lottery_winner_uniformity() {
+        LotteryResult[] results = runLotteries(1, DEFAULT_MINIMUM_AMOUNT);
+        checkUniformWinners("single entries", results);
+
+        // Winning value is derived from SHA256 so should be uniform across trials
+        double[] winningValues = Arrays.stream(results).mapToDouble(result -> result.winningValue).toArray();
+        double d = Statistics.ksUniform(winningValues);
+        double pValue = Statistics.ksPValue(d, winningValues.length);
+
+        System.out.println(String.format("Lottery winning values: KS D %.4f, p-value %.4f", d, pValue));
+        assertTrue(String.format("Lottery winning values not uniform, p-value %g", pValue), pValue > ALPHA);
+    }
+
+    @Test
+    public void lottery_multiple_entries_independence() {
+        // Entrant 0 enters 5 times but should still only win 1 in 10
+        checkUniformWinners("entrant 0 enters 5 times", runLotteries(5, DEFAULT_MINIMUM_AMOUNT));
+    }
+
+    @Test
+    public void lottery_payment_amount_independence() {
+        // Entrant 0 pays 20x minimum but should still only win 1 in 10
+        checkUniformWinners("entrant 0 pays 20x", runLotteries(1, DEFAULT_MINIMUM_AMOUNT * 20));
+    }
+
+    /** Dice chunk results, indexed by amount class: 0 = minimum amount, 1 = 3x minimum amount */
+    private static class DiceResult {
+        long[] bets = new long[2];
+        long[] wins = new long[2];
+    }
+
+    private static DiceResult runDice(int chunk, int betCount) {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), trialSeed(chunk));
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT, DICE_SIDES, DICE_MULTIPLIER),
+                        DEFAULT_MINIMUM_AMOUNT * 3 * DICE_MULTIPLIER * (betCount + 1));
+
+        runner.execute_once();
+
+        DiceResult result = new DiceResult();
+        // Player and amount drawn independently, so amount class isn't tied to who is betting
+        Random random = new Random(trialSeed(chunk));
+
+        for (int bet = 0; bet < betCount; ++bet) {
+            int player = random.nextInt(4);
+            int amountClass = random.nextInt(2);
+            long amount = amountClass == 0 ? DEFAULT_MINIMUM_AMOUNT : DEFAULT_MINIMUM_AMOUNT * 3;
+            int previousPaymentCount = api.getAtPaymentCount();
+
+            api.sendPayment(String.format("Q_player_%d", player), amount);
+            runner.execute_once(); // AT won't run but block contains PAYMENT
+            runner.execute_once(); // AT should run
+
+            result.bets[amountClass]++;
+
+            if (api.getAtPaymentCount() > previousPaymentCount) {
+                // Balance is always large enough, so any payment is a win, never a refund
+                assertEquals(amount * DICE_MULTIPLIER, api.getAtPaymentAmount(api.getAtPaymentCount() - 1));
+                result.wins[amountClass]++;
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void dice_win_rate() {
+        final int betsPerChunk = DICE_BETS / DICE_CHUNKS;
+        final double[] winLoseProportions = { 1.0 / DICE_SIDES, (DICE_SIDES - 1.0) / DICE_SIDES };
+
+        DiceResult[] results = IntStream.range(0, DICE_CHUNKS).parallel()
+                .mapToObj(chunk -> runDice(chunk, betsPerChunk))
+                .toArray(DiceResult[]::new);
+
+        long totalBets = 0;
+        long totalWins = 0;
+        long[][] winsByAmount = new long[2][2]; // [amount class][won, lost]
+        double[] chunkPValues = new double[DICE_CHUNKS];
+
+        for (int chunk = 0; chunk < DICE_CHUNKS; ++chunk) {
+            DiceResult result = results[chunk];
+            long chunkBets = result.bets[0] + result.bets[1];
+            long chunkWins = result.wins[0] + result.wins[1];
+
+            totalBets += chunkBets;
+            totalWins += chunkWins;
+
+            for (int amountClass = 0; amountClass < 2; ++amountClass) {
+                winsByAmount[amountClass][0] += result.wins[amountClass];
+                winsByAmount[amountClass][1] += result.bets[amountClass] - result.wins[amountClass];
+            }
+
+            chunkPValues[chunk] = Statistics.chiSquarePValue(
+                    Statistics.chiSquare(new long[] { chunkWins, chunkBets - chunkWins }, winLoseProportions), 1);
+        }
+
+        // Overall win rate is 1 in number of sides
+        double chiSquare = Statistics.chiSquare(new long[] { totalWins, totalBets - totalWins }, winLoseProportions);
+        double pValue = Statistics.chiSquarePValue(chiSquare, 1);
+        System.out.println(String.format("Dice: %d bets, %d wins (%.4f), chi-square %.2f, p-value %.4f",
+                totalBets, totalWins, (double) totalWins / totalBets, chiSquare, pValue));
+        assertTrue(String.format("Dice win rate not 1/%d, p-value %g", DICE_SIDES, pValue), pValue > ALPHA);
+
+        // Winning is independent of amount bet
+        double independenceChiSquare = Statistics.chiSquareIndependence(winsByAmount);
+        double independencePValue = Statistics.chiSquarePValue(independenceChiSquare, 1);
+        System.out.println(String.format("Dice wins by amount %s: chi-square %.2f, p-value %.4f",
+                Arrays.deepToString(winsByAmount), independenceChiSquare, independencePValue));
+        assertTrue(String.format("Dice wins depend on amount, p-value %g", independencePValue), independencePValue > ALPHA);
+
+        // Per-chunk p-values should themselves be uniform if every chunk is fair
+        double d = Statistics.ksUniform(chunkPValues);
+        double ksPValue = Statistics.ksPValue(d, chunkPValues.length);
+        System.out.println(String.format("Dice per-chunk p-values: KS D %.4f, p-value %.4f", d, ksPValue));
+        assertTrue(String.format("Dice per-chunk win rates not consistent, p-value %g", ksPValue), ksPValue > ALPHA);
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+import org.qortal.at.lottery.fuzz.FuzzAction;
+import org.qortal.at.lottery.fuzz.FuzzCase;
+import org.qortal.at.lottery.fuzz.FuzzRun;
+import org.qortal.at.lottery.fuzz.Fuzzer;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property-based checks of Lottery and Dice economic invariants using random transaction streams.
+ * <p>
+ * Case counts default to values that run in seconds. Increase using system property <tt>fuzz.cases</tt>;
+ * change <tt>fuzz.seed</tt> to explore different streams.
+ */
+public class FuzzTests {
+
+    private static final long SEED = Long.getLong("fuzz.seed", 1L);
+    private static final int CASE_COUNT = Integer.getInteger("fuzz.cases", 500);
+
+    private static Fuzzer newFuzzer(FuzzCase.Target target) {
+        Fuzzer fuzzer = new Fuzzer(target);
+        fuzzer.seed = SEED;
+        fuzzer.caseCount = CASE_COUNT;
+        return fuzzer;
+    }
+
+    @Test
+    public void dice_invariants() {
+        Fuzzer.Failure failure = newFuzzer(FuzzCase.Target.DICE).run();
+
+        if (failure != null)
+            fail(failure.toString());
+    }
+
+    @Test
+    public void lottery_invariants() {
+        Fuzzer.Failure failure = newFuzzer(FuzzCase.Target.LOTTERY).run();
+
+        if (failure != null)
+            fail(failure.toString());
+    }
+
+    @Test
+    public void shrinking() {
+        // Deliberately false invariant: Dice never pays anyone
+        FuzzRun.BlockCheck noPayouts = (api, runner) -> api.getAtPaymentCount() > 0 ? "AT paid " + api.getAtPaymentRecipient(0) : null;
+
+        Fuzzer fuzzer = new Fuzzer(FuzzCase.Target.DICE, Collections.singletonList(noPayouts));
+        fuzzer.seed = SEED;
+        fuzzer.caseCount = 100;
+
+        Fuzzer.Failure failure = fuzzer.run();
+        assertNotNull(failure);
+
+        System.out.println(failure);
+
+        assertNotNull(failure.shrunkViolation);
+        assertEquals(failure.originalViolation.invariant, failure.shrunkViolation.invariant);
+        assertTrue(failure.shrunk.actions.size() <= failure.original.actions.size());
+
+        // Messages can't cause Dice payouts so should all be removed
+        assertTrue(failure.shrunk.actions.stream().noneMatch(action -> action.kind == FuzzAction.Kind.MESSAGE));
+        assertTrue(failure.shrunk.actions.stream().anyMatch(action -> action.kind == FuzzAction.Kind.PAYMENT));
+    }
+
+}
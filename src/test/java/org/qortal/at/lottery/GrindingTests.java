@@ -0,0 +1,129 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.GrindingBenchmark;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * How much an attacker gains by grinding entrant addresses against a known Lottery winning value.
+ * <p>
+ * Increase work using system properties <tt>grinding.candidates</tt> (per thread) and <tt>grinding.trials</tt>.
+ */
+public class GrindingTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static final int GRINDING_CANDIDATES = Integer.getInteger("grinding.candidates", 250_000);
+    private static final int GRINDING_TRIALS = Integer.getInteger("grinding.trials", 200);
+
+    /** Roughly Qortal's block time, i.e. how long an attacker would have between blocks */
+    private static final int BLOCK_SECONDS = 60;
+
+    private static AtRunner runLottery(ChainStoreAPI api, int entrantCount) {
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entrantCount; ++i)
+            api.sendPayment(entrantName(i), DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(1000));
+        return runner;
+    }
+
+    private static String entrantName(int entrant) {
+        return String.format("Q_entrant_%03d", entrant);
+    }
+
+    private static GrindingBenchmark newBenchmark(AtRunner runner) {
+        byte[] dataSegment = Arrays.copyOfRange(runner.packedState, StateSizeAnalyser.HEADER_LENGTH,
+                StateSizeAnalyser.HEADER_LENGTH + DataSegmentLabels.LOTTERY.getByteLength());
+
+        return new GrindingBenchmark(dataSegment);
+    }
+
+    private static GrindingBenchmark newBenchmark() {
+        return newBenchmark(runLottery(new ChainStoreAPI(new ColumnarChainStore(), 1L), 10));
+    }
+
+    @Test
+    public void distance_matches_lottery() {
+        final int entrantCount = 50;
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        api.setLogTransactions(false);
+
+        AtRunner runner = runLottery(api, entrantCount);
+        GrindingBenchmark benchmark = newBenchmark(runner);
+
+        // Simulated chain hands addresses to AT as UTF-8
+        String winner = api.getAtPaymentRecipient(0);
+        long[] winnerDistance = benchmark.distance(winner.getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer packedState = ByteBuffer.wrap(runner.packedState);
+        for (int i = 0; i < 4; ++i) {
+            int address = DataSegmentLabels.LOTTERY.getAddress("BestDistance[" + i + "]");
+            assertEquals("best distance word " + i, packedState.getLong(StateSizeAnalyser.HEADER_LENGTH + address * 8), winnerDistance[i]);
+        }
+
+        // Nobody else was closer
+        for (int i = 0; i < entrantCount; ++i) {
+            long[] distance = benchmark.distance(entrantName(i).getBytes(StandardCharsets.UTF_8));
+            assertTrue(entrantName(i) + " closer than winner", Long.compareUnsigned(distance[0], winnerDistance[0]) >= 0);
+        }
+    }
+
+    @Test
+    public void grinding_rate() {
+        GrindingBenchmark benchmark = newBenchmark();
+
+        // Warm up, so hashing is compiled before timing
+        benchmark.grind(1, GRINDING_CANDIDATES / 10);
+
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            GrindingBenchmark.Result result = benchmark.grind(threads, GRINDING_CANDIDATES);
+            assertEquals((long) threads * GRINDING_CANDIDATES, result.hashes);
+
+            double perBlock = result.getHashesPerSecondPerThread() * BLOCK_SECONDS;
+
+            System.out.println(String.format("Grinding on %d threads: %.2f M hashes/sec, %.2f M hashes/sec/core, best distance 2^-%.1f; "
+                            + "one core tries %.2e candidates per %d-second block, worth about 2^%.1f entrants",
+                    threads, result.getHashesPerSecond() / 1e6, result.getHashesPerSecondPerThread() / 1e6,
+                    GrindingBenchmark.distanceBits(result.bestDistance), perBlock, BLOCK_SECONDS, Math.log(perBlock) / Math.log(2.0)));
+        }
+    }
+
+    @Test
+    public void best_distance_shrinks_with_entrants() {
+        final int[] entrantCounts = { 1, 10, 100, 1_000, 10_000 };
+
+        GrindingBenchmark benchmark = newBenchmark();
+        double[] measuredBits = benchmark.meanBestDistanceBits(entrantCounts, GRINDING_TRIALS);
+
+        for (int i = 0; i < entrantCounts.length; ++i) {
+            double expectedBits = GrindingBenchmark.expectedBestDistanceBits(entrantCounts[i]);
+
+            System.out.println(String.format("%6d entrants: best distance 2^-%.2f on average over %d trials, expected 2^-%.2f",
+                    entrantCounts[i], measuredBits[i], GRINDING_TRIALS, expectedBits));
+
+            // Per-trial standard deviation is under 2 bits, so this allows for over 4 standard errors
+            assertEquals(String.format("best distance for %d entrants", entrantCounts[i]), expectedBits, measuredBits[i], 0.6);
+
+            if (i > 0)
+                assertTrue("best distance should shrink as entrants grow", measuredBits[i] > measuredBits[i - 1]);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.qortal.at.lottery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qortal.at.lottery.index.AtIndex;
+import org.qortal.at.lottery.index.AtIndexer;
+import org.qortal.at.lottery.index.IndexedAT;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class IndexTests {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void recognise_ats() {
+        AtIndexer indexer = new AtIndexer();
+
+        IndexedAT lottery = indexer.add("AT_lottery", 1000, Lottery.buildQortalAT(20160, 1_0000_0000L));
+        assertNotNull(lottery);
+        assertEquals(IndexedAT.Kind.LOTTERY, lottery.kind);
+        assertEquals(20160, lottery.sleepMinutes);
+        assertEquals(1_0000_0000L, lottery.minimumAmount);
+        assertEquals(1000 + 1 + 20160, lottery.endHeight);
+
+        IndexedAT dice = indexer.add("AT_dice", 2000, Dice.buildQortalAT(5000_0000L));
+        assertNotNull(dice);
+        assertEquals(IndexedAT.Kind.DICE, dice.kind);
+        assertEquals(5000_0000L, dice.minimumAmount);
+        assertEquals(IndexedAT.NO_END_HEIGHT, dice.endHeight);
+        assertEquals(Dice.DEFAULT_SIDES, dice.sides);
+        assertEquals(Dice.DEFAULT_MULTIPLIER, dice.multiplier);
+
+        // Same code, different table
+        IndexedAT coinFlip = indexer.add("AT_coin_flip", 2500, Dice.buildQortalAT(5000_0000L, 2, 2));
+        assertNotNull(coinFlip);
+        assertEquals(2, coinFlip.sides);
+        assertEquals(2, coinFlip.multiplier);
+        assertEquals(0, lottery.sides);
+
+        // Tampered code
+        byte[] creationBytes = Lottery.buildQortalAT(20160, 1_0000_0000L);
+        creationBytes[30] ^= 0x01;
+        assertNull(indexer.add("AT_tampered", 3000, creationBytes));
+
+        // Truncated
+        assertNull(indexer.add("AT_truncated", 3000, new byte[10]));
+
+        assertEquals(3, indexer.getEntries().size());
+        assertEquals(2, indexer.getUnrecognisedCount());
+    }
+
+    @Test
+    public void index_keeps_dice_tables() throws IOException {
+        AtIndexer indexer = new AtIndexer();
+        indexer.add("AT_lottery", 1000, Lottery.buildQortalAT(20160, 1_0000_0000L));
+        indexer.add("AT_dice", 2000, Dice.buildQortalAT(5000_0000L, Dice.MAX_SIDES, 500));
+
+        Path indexPath = temporaryFolder.getRoot().toPath().resolve("ats.idx");
+        indexer.writeIndex(indexPath);
+
+        try (AtIndex index = AtIndex.open(indexPath)) {
+            // Sorted by end height, and Dice never ends
+            IndexedAT lottery = index.get(0);
+            assertEquals("AT_lottery", lottery.atAddress);
+            assertEquals(20160, lottery.sleepMinutes);
+            assertEquals(0, lottery.sides);
+
+            IndexedAT dice = index.get(1);
+            assertEquals("AT_dice", dice.atAddress);
+            assertEquals(Dice.MAX_SIDES, dice.sides);
+            assertEquals(500, dice.multiplier);
+        }
+    }
+
+    @Test
+    public void query_index() throws IOException {
+        final int atCount = Integer.getInteger("index.ats", 5_000);
+        final int queryCount = 1_000;
+
+        Random random = new Random(1L);
+        AtIndexer indexer = new AtIndexer();
+
+        for (int i = 0; i < atCount; ++i) {
+            String atAddress = String.format("AT%032d", i);
+            int creationHeight = 1 + random.nextInt(1_000_000);
+            long minimumAmount = (1 + random.nextInt(100_000)) * 100_0000L;
+
+            if (random.nextInt(10) == 0)
+                indexer.add(atAddress, creationHeight, Dice.buildQortalAT(minimumAmount));
+            else
+                indexer.add(atAddress, creationHeight, Lottery.buildQortalAT(10 + random.nextInt(30 * 24 * 60 - 10), minimumAmount));
+        }
+
+        assertEquals(atCount, indexer.getEntries().size());
+
+        Path indexPath = temporaryFolder.getRoot().toPath().resolve("ats.idx");
+        indexer.writeIndex(indexPath);
+
+        try (AtIndex index = AtIndex.open(indexPath)) {
+            assertEquals(atCount, index.size());
+
+            long totalNanos = 0;
+            long totalResults = 0;
+
+            for (int q = 0; q < queryCount; ++q) {
+                long maxMinimumAmount = random.nextInt(100_000) * 100_0000L;
+                int endBeforeHeight = random.nextInt(1_100_000);
+
+                long start = System.nanoTime();
+                List<IndexedAT> results = index.find(maxMinimumAmount, endBeforeHeight);
+                totalNanos += System.nanoTime() - start;
+                totalResults += results.size();
+
+                List<String> expected = indexer.getEntries().stream()
+                        .filter(entry -> entry.minimumAmount <= maxMinimumAmount && entry.endHeight < endBeforeHeight)
+                        .map(entry -> entry.atAddress)
+                        .sorted()
+                        .collect(Collectors.toList());
+
+                List<String> actual = results.stream()
+                        .peek(entry -> assertEquals(IndexedAT.Kind.LOTTERY, entry.kind))
+                        .sorted(Comparator.comparing(entry -> entry.atAddress))
+                        .map(entry -> entry.atAddress)
+                        .collect(Collectors.toList());
+
+                assertEquals(expected, actual);
+            }
+
+            System.out.println(String.format("%d queries over %d ATs: %d results, mean %.1f us/query",
+                    queryCount, atCount, totalResults, totalNanos / 1000.0 / queryCount));
+        }
+    }
+
+}
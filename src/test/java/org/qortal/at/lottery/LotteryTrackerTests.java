@@ -0,0 +1,146 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.API;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LotteryTrackerTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static final int ENTRANTS = 30;
+
+    /** Tracker for simulated chain, which encodes addresses as UTF-8 */
+    private static LotteryTracker newTracker(AtRunner runner, int exactDistinctLimit) {
+        byte[] data = Arrays.copyOfRange(runner.packedState, StateSizeAnalyser.HEADER_LENGTH,
+                StateSizeAnalyser.HEADER_LENGTH + DataSegmentLabels.LOTTERY.getByteLength());
+
+        return new LotteryTracker(data, DEFAULT_INITIAL_BALANCE, address -> address.getBytes(StandardCharsets.UTF_8), exactDistinctLimit);
+    }
+
+    private static void sendPayment(ChainStoreAPI api, LotteryTracker tracker, String sender, long amount) {
+        long txIndex = api.sendPayment(sender, amount);
+        tracker.onTransaction(sender, API.ATTransactionType.PAYMENT, amount, api.getChain().getTimestamp(txIndex));
+    }
+
+    private static void sendMessage(ChainStoreAPI api, LotteryTracker tracker, String sender) {
+        long txIndex = api.sendMessage(sender);
+        tracker.onTransaction(sender, API.ATTransactionType.MESSAGE, 0L, api.getChain().getTimestamp(txIndex));
+    }
+
+    private static long getDataValue(AtRunner runner, String label) {
+        return ByteBuffer.wrap(runner.packedState).getLong(StateSizeAnalyser.HEADER_LENGTH + DataSegmentLabels.LOTTERY.getAddress(label) * 8);
+    }
+
+    private static void runTrackedLottery(long seed, int exactDistinctLimit) {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), seed);
+        api.setLogTransactions(false);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        LotteryTracker tracker = newTracker(runner, exactDistinctLimit);
+        long expectedPot = DEFAULT_INITIAL_BALANCE;
+
+        for (int entrant = 0; entrant < ENTRANTS; ++entrant) {
+            String sender = String.format("Q_entrant_%02d", entrant);
+
+            sendPayment(api, tracker, sender, DEFAULT_MINIMUM_AMOUNT);
+            expectedPot += DEFAULT_MINIMUM_AMOUNT;
+
+            // Some entrants enter again, which doesn't add a distinct entrant
+            if (entrant % 3 == 0) {
+                sendPayment(api, tracker, sender, DEFAULT_MINIMUM_AMOUNT * 2);
+                expectedPot += DEFAULT_MINIMUM_AMOUNT * 2;
+            }
+
+            if (entrant % 10 == 9)
+                runner.execute_once();
+        }
+
+        // Not entries, although payment still adds to pot
+        sendPayment(api, tracker, "Q_too_little", DEFAULT_MINIMUM_AMOUNT - 1);
+        expectedPot += DEFAULT_MINIMUM_AMOUNT - 1;
+        sendMessage(api, tracker, "Q_message");
+
+        assertFalse(tracker.isWinnerKnown());
+        assertNull(tracker.getWinner());
+
+        assertTrue(runner.execute_until_finished(1000));
+
+        byte[] blockHash = new byte[32];
+        for (int height = 1; height <= api.getCurrentBlockHeight(); ++height) {
+            api.getChain().getBlockHash(height, blockHash, 0);
+            tracker.onBlock(height, blockHash.clone());
+        }
+
+        assertTrue(tracker.isWinnerKnown());
+
+        assertEquals(getDataValue(runner, "NumberOfEntries"), tracker.getValidEntryCount());
+        assertEquals(ENTRANTS + (ENTRANTS + 2) / 3, tracker.getValidEntryCount());
+        assertEquals(expectedPot, tracker.getPot());
+
+        if (tracker.isDistinctEntrantCountEstimated())
+            assertEquals(ENTRANTS, tracker.getDistinctEntrantCount(), 1);
+        else
+            assertEquals(ENTRANTS, tracker.getDistinctEntrantCount());
+
+        long[] winningValue = tracker.getWinningValue();
+        for (int i = 0; i < 4; ++i)
+            assertEquals("winning value word " + i, getDataValue(runner, "WinningValue[" + i + "]"), winningValue[i]);
+
+        assertEquals(1, api.getAtPaymentCount());
+        assertEquals(api.getAtPaymentRecipient(0), tracker.getWinner());
+    }
+
+    @Test
+    public void tracker_matches_lottery() {
+        for (long seed = 1L; seed <= 20L; ++seed)
+            runTrackedLottery(seed, LotteryTracker.DEFAULT_EXACT_DISTINCT_LIMIT);
+    }
+
+    @Test
+    public void tracker_matches_lottery_when_estimating() {
+        for (long seed = 1L; seed <= 20L; ++seed)
+            runTrackedLottery(seed, 5);
+    }
+
+    @Test
+    public void hyperloglog_estimate() {
+        HyperLogLog hyperLogLog = new HyperLogLog();
+
+        int checkpoint = 10;
+        for (int i = 1; i <= 1_000_000; ++i) {
+            hyperLogLog.add(HyperLogLog.hash("Q_entrant_" + i));
+
+            // Repeats make no difference
+            if (i % 2 == 0)
+                hyperLogLog.add(HyperLogLog.hash("Q_entrant_" + (i / 2)));
+
+            if (i == checkpoint) {
+                long estimate = hyperLogLog.estimate();
+                double error = Math.abs(estimate - i) / (double) i;
+                System.out.println(String.format("HyperLogLog: %d distinct, estimate %d, error %.2f%%", i, estimate, error * 100.0));
+
+                // Roughly 4 standard errors
+                assertTrue(String.format("estimate %d too far from %d", estimate, i), error < 0.035);
+
+                checkpoint *= 10;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.qortal.at.lottery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qortal.utils.Base58;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OutputTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void text_formats() throws IOException {
+        byte[] creationBytes = Lottery.buildQortalAT(20160, DEFAULT_MINIMUM_AMOUNT);
+
+        for (OutputFormat format : new OutputFormat[] { OutputFormat.HEX, OutputFormat.BASE64, OutputFormat.BASE58 }) {
+            Path path = temporaryFolder.getRoot().toPath().resolve("lottery." + format.name().toLowerCase());
+
+            try (CreationBytesOutput output = CreationBytesOutput.open(format, path)) {
+                output.write(creationBytes);
+                output.write(creationBytes);
+            }
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+            assertEquals(2, lines.size());
+
+            for (String line : lines)
+                assertArrayEquals(format.name(), creationBytes, decode(format, line));
+        }
+    }
+
+    private static byte[] decode(OutputFormat format, String text) {
+        switch (format) {
+            case HEX:
+                byte[] bytes = new byte[text.length() / 2];
+                for (int i = 0; i < bytes.length; ++i)
+                    bytes[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+                return bytes;
+
+            case BASE64:
+                return Base64.getDecoder().decode(text);
+
+            case BASE58:
+                return Base58.decode(text);
+
+            default:
+                throw new IllegalArgumentException("Not a text format: " + format);
+        }
+    }
+
+    @Test
+    public void raw_format() throws IOException {
+        final int blobCount = 10_000;
+
+        Path path = temporaryFolder.getRoot().toPath().resolve("ats.raw");
+
+        try (CreationBytesOutput output = CreationBytesOutput.open(OutputFormat.RAW, path)) {
+            // Labels are ignored in raw output
+            output.writeText("Creation bytes:\n");
+
+            for (int i = 0; i < blobCount; ++i)
+                output.write(i % 2 == 0 ? Lottery.buildQortalAT(20160, DEFAULT_MINIMUM_AMOUNT + i) : Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT + i));
+        }
+
+        // Walk back-to-back blobs using each header's lengths
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CreationBytes parsed = new CreationBytes();
+        CreationBytesValidator validator = new CreationBytesValidator();
+
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+
+            buffer.limit(start + CreationBytes.HEADER_LENGTH);
+            parsed.wrap(buffer);
+            int end = start + CreationBytes.HEADER_LENGTH + parsed.getCodeLength() + parsed.getDataLength();
+
+            buffer.limit(end);
+            assertTrue(validator.validate(buffer).isValid);
+            assertEquals(DEFAULT_MINIMUM_AMOUNT + count, validator.getMinimumAmount());
+
+            buffer.limit(buffer.capacity()).position(end);
+            ++count;
+        }
+
+        assertEquals(blobCount, count);
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.FunctionCode;
+import org.ciyam.at.OpCode;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.ExecutionProfiler;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class ProfilerTests {
+
+    private static final Path REPORT_DIRECTORY = Paths.get("target", "profiles");
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static String[] addPlayers(DiceAPI api, int playerCount) {
+        String[] players = new String[playerCount];
+
+        for (int i = 0; i < playerCount; ++i) {
+            players[i] = String.format("Q_player_%02d", i);
+            new TestAPI.TestAccount(players[i], 100_0000_0000L).addToMap(api.accounts);
+        }
+
+        return players;
+    }
+
+    @Test
+    public void profile_lottery() throws IOException {
+        final int entryCount = 100;
+
+        DiceAPI api = new DiceAPI();
+        ExecutionProfiler profiler = new ExecutionProfiler("lottery-" + entryCount + "-entries");
+        api.addListener(profiler);
+        String[] players = addPlayers(api, 20);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entryCount; ++i)
+            runner.send_payment(players[i % players.length], DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(1000));
+
+        profiler.writeReports(REPORT_DIRECTORY);
+
+        // Initial winning value, plus one per valid entry
+        assertEquals(entryCount + 1, profiler.getFunctionBucket(FunctionCode.SHA256_INTO_B).executions);
+        // One per entry, plus one that finds nothing
+        assertEquals(entryCount + 1, profiler.getFunctionBucket(FunctionCode.PUT_TX_AFTER_TIMESTAMP_INTO_A).executions);
+        assertTrue(profiler.getOpCodeBucket(OpCode.FIN_IMD).executions == 1);
+    }
+
+    @Test
+    public void profile_dice() throws IOException {
+        final int playCount = 200;
+
+        DiceAPI api = new DiceAPI();
+        ExecutionProfiler profiler = new ExecutionProfiler("dice-" + playCount + "-plays");
+        api.addListener(profiler);
+        String[] players = addPlayers(api, 2);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * playCount * 6L);
+
+        runner.execute_once();
+
+        for (int playIndex = 0; playIndex < playCount; ++playIndex) {
+            runner.send_payment(players[playIndex % players.length], DEFAULT_MINIMUM_AMOUNT);
+            runner.execute_once(); // AT won't run but block contains PAYMENT
+            runner.execute_once(); // AT should run
+        }
+
+        profiler.writeReports(REPORT_DIRECTORY);
+
+        // One roll per play
+        assertEquals(playCount, profiler.getFunctionBucket(FunctionCode.SHA256_INTO_B).executions);
+        assertTrue(profiler.getRounds() > playCount);
+        assertFalse(profiler.getOpCodeBuckets().isEmpty());
+    }
+
+    @Test
+    public void state_size_lottery() throws IOException {
+        final int entryCount = 100;
+
+        DiceAPI api = new DiceAPI();
+        StateSizeAnalyser analyser = new StateSizeAnalyser("lottery-" + entryCount + "-entries", DataSegmentLabels.LOTTERY);
+        api.addListener(analyser);
+        String[] players = addPlayers(api, 20);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+        analyser.setInitialPackedState(runner.packedState);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entryCount; ++i)
+            runner.send_payment(players[i % players.length], DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(1000));
+
+        analyser.writeReports(REPORT_DIRECTORY);
+
+        assertEquals(runner.executionCount, analyser.getRounds());
+        assertTrue(analyser.getMinSize() >= StateSizeAnalyser.HEADER_LENGTH + DataSegmentLabels.LOTTERY.getByteLength());
+
+        // Entry parameters never change
+        assertEquals(0, analyser.getAddressChanges("SleepMinutes").rounds);
+        assertEquals(0, analyser.getAddressChanges("MinimumAmount").rounds);
+        // Entries are counted in the same round as the payout
+        assertTrue(analyser.getAddressChanges("NumberOfEntries").rounds > 0);
+        assertTrue(analyser.getAddressChanges("BestAddress[0]").rounds > 0);
+    }
+
+    @Test
+    public void state_size_dice() throws IOException {
+        final int playCount = 50;
+
+        DiceAPI api = new DiceAPI();
+        StateSizeAnalyser analyser = new StateSizeAnalyser("dice-" + playCount + "-plays", DataSegmentLabels.DICE);
+        api.addListener(analyser);
+        String[] players = addPlayers(api, 2);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * playCount * 6L);
+        analyser.setInitialPackedState(runner.packedState);
+
+        runner.execute_once();
+
+        for (int playIndex = 0; playIndex < playCount; ++playIndex) {
+            runner.send_payment(players[playIndex % players.length], DEFAULT_MINIMUM_AMOUNT);
+            runner.execute_once();
+            runner.execute_once();
+        }
+
+        analyser.writeReports(REPORT_DIRECTORY);
+
+        assertEquals(runner.executionCount, analyser.getRounds());
+        assertTrue(analyser.getTotalChangedBytes() > 0);
+
+        // Each play moves timestamp on and rolls using fresh block hash
+        assertTrue(analyser.getAddressChanges("LastTxnTimestamp").rounds >= playCount);
+        assertTrue(analyser.getAddressChanges("PreviousBlockHash[0]").rounds > 0);
+        assertEquals(0, analyser.getAddressChanges("Sides").rounds);
+    }
+
+}
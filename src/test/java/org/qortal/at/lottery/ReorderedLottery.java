@@ -0,0 +1,194 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.*;
+
+import java.nio.ByteBuffer;
+
+import static org.ciyam.at.OpCode.calcOffset;
+
+/**
+ * Lottery AT with the same data segment and behaviour as {@link Lottery}, but different code,
+ * for checking {@link org.qortal.at.lottery.fuzz.DifferentialTester} against a genuinely different variant.
+ * <p>
+ * Differences from {@link Lottery#compileQortalAT(int, long)}, none of which should change behaviour
+ * or the number of steps on any path:
+ * <ul>
+ *     <li>creator's address is saved before creation timestamp</li>
+ *     <li>distance words are subtracted in reverse order</li>
+ *     <li>distances are compared best-against-current, branching on greater-than instead of less-than</li>
+ *     <li>new winner's distance is saved before their address</li>
+ * </ul>
+ */
+public class ReorderedLottery {
+
+    private ReorderedLottery() {
+    }
+
+    /** Returns creation bytes, with the same data segment as {@link Lottery#buildQortalAT(int, long)}. */
+    public static byte[] compileQortalAT(int sleepMinutes, long minimumAmount) {
+        // Labels for data segment addresses, which must match Lottery's
+        int addrCounter = 0;
+
+        final int addrSleepMinutes = addrCounter++;
+        final int addrMinimumAmount = addrCounter++;
+
+        final int addrSleepUntilTimestamp = addrCounter++;
+        final int addrSleepUntilHeight = addrCounter++;
+
+        final int addrWinningValue = addrCounter; addrCounter += 4;
+
+        final int addrCurrentAddress = addrCounter; addrCounter += 4;
+        final int addrCurrentAddressByteLength = addrCounter++;
+
+        final int addrLastTxnTimestamp = addrCounter++;
+        final int addrResult = addrCounter++;
+        final int addrTxnType = addrCounter++;
+        final int addrPaymentTxnType = addrCounter++;
+        final int addrPaymentAmount = addrCounter++;
+
+        final int addrNumberOfEntries = addrCounter++;
+
+        final int addrCurrentDistance = addrCounter; addrCounter += 4;
+
+        final int addrBestDistance = addrCounter; addrCounter += 4;
+        final int addrBestAddress = addrCounter; addrCounter += 4;
+
+        final int addrZero = addrCounter++;
+        final int addrDataSegmentByteLength = addrCounter++;
+
+        if (addrDataSegmentByteLength != Lottery.ADDR_DATA_SEGMENT_BYTE_LENGTH)
+            throw new IllegalStateException("Reordered lottery's data segment no longer matches Lottery's");
+
+        // Data segment
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(addrCounter * MachineState.VALUE_SIZE);
+
+        dataByteBuffer.putLong(addrSleepMinutes * MachineState.VALUE_SIZE, sleepMinutes);
+        dataByteBuffer.putLong(addrMinimumAmount * MachineState.VALUE_SIZE, minimumAmount);
+        dataByteBuffer.putLong(addrCurrentAddressByteLength * MachineState.VALUE_SIZE, addrCurrentAddressByteLength * MachineState.VALUE_SIZE);
+        dataByteBuffer.putLong(addrPaymentTxnType * MachineState.VALUE_SIZE, API.ATTransactionType.PAYMENT.value);
+
+        for (int i = 0; i < 4; ++i)
+            dataByteBuffer.putLong((addrBestDistance + i) * MachineState.VALUE_SIZE, 0xFFFFFFFFFFFFFFFFL);
+
+        dataByteBuffer.putLong(addrDataSegmentByteLength * MachineState.VALUE_SIZE, addrCounter * MachineState.VALUE_SIZE);
+
+        // Code labels
+        Integer labelTxnLoop = null;
+        Integer labelCheckTxn = null;
+        Integer labelCheckTxn2 = null;
+        Integer labelNewWinner = null;
+        Integer labelPayout = null;
+
+        ByteBuffer codeByteBuffer = ByteBuffer.allocate(768);
+
+        // Two-pass version
+        for (int pass = 0; pass < 2; ++pass) {
+            codeByteBuffer.clear();
+
+            try {
+                /* Initialization, in the opposite order to Lottery */
+
+                codeByteBuffer.put(OpCode.EXT_FUN.compile(FunctionCode.PUT_CREATOR_INTO_B));
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.GET_B_DAT, addrBestAddress));
+
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_CREATION_TIMESTAMP, addrLastTxnTimestamp));
+
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_BLOCK_TIMESTAMP, addrSleepUntilTimestamp));
+                codeByteBuffer.put(OpCode.EXT_FUN_RET_DAT_2.compile(FunctionCode.ADD_MINUTES_TO_TIMESTAMP, addrSleepUntilTimestamp, addrSleepUntilTimestamp, addrSleepMinutes));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrSleepUntilHeight, addrSleepUntilTimestamp));
+                codeByteBuffer.put(OpCode.SHR_VAL.compile(addrSleepUntilHeight, 32L));
+
+                /* Sleep */
+                codeByteBuffer.put(OpCode.SLP_DAT.compile(addrSleepUntilHeight));
+
+                /* Done sleeping */
+                codeByteBuffer.put(OpCode.EXT_FUN.compile(FunctionCode.PUT_PREVIOUS_BLOCK_HASH_INTO_A));
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.GET_A_DAT, addrWinningValue));
+                codeByteBuffer.put(OpCode.EXT_FUN_DAT_2.compile(FunctionCode.SHA256_INTO_B, addrZero, addrDataSegmentByteLength));
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.GET_B_DAT, addrWinningValue));
+
+                /* Transaction processing loop */
+                codeByteBuffer.put(OpCode.SET_PCS.compile());
+
+                labelTxnLoop = codeByteBuffer.position();
+
+                codeByteBuffer.put(OpCode.EXT_FUN_DAT.compile(FunctionCode.PUT_TX_AFTER_TIMESTAMP_INTO_A, addrLastTxnTimestamp));
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.CHECK_A_IS_ZERO, addrResult));
+                codeByteBuffer.put(OpCode.BZR_DAT.compile(addrResult, calcOffset(codeByteBuffer, labelCheckTxn)));
+                codeByteBuffer.put(OpCode.JMP_ADR.compile(labelPayout == null ? 0 : labelPayout));
+
+                /* Check transaction */
+                labelCheckTxn = codeByteBuffer.position();
+
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_TIMESTAMP_FROM_TX_IN_A, addrLastTxnTimestamp));
+                codeByteBuffer.put(OpCode.BLT_DAT.compile(addrLastTxnTimestamp, addrSleepUntilTimestamp, calcOffset(codeByteBuffer, labelCheckTxn2)));
+                codeByteBuffer.put(OpCode.JMP_ADR.compile(labelPayout == null ? 0 : labelPayout));
+
+                /* Check transaction - part 2 */
+                labelCheckTxn2 = codeByteBuffer.position();
+
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_TYPE_FROM_TX_IN_A, addrTxnType));
+                codeByteBuffer.put(OpCode.BNE_DAT.compile(addrTxnType, addrPaymentTxnType, calcOffset(codeByteBuffer, labelTxnLoop)));
+
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.GET_AMOUNT_FROM_TX_IN_A, addrPaymentAmount));
+                codeByteBuffer.put(OpCode.BLT_DAT.compile(addrPaymentAmount, addrMinimumAmount, calcOffset(codeByteBuffer, labelTxnLoop)));
+
+                codeByteBuffer.put(OpCode.INC_DAT.compile(addrNumberOfEntries));
+
+                codeByteBuffer.put(OpCode.EXT_FUN.compile(FunctionCode.PUT_ADDRESS_FROM_TX_IN_A_INTO_B));
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.GET_B_DAT, addrCurrentAddress));
+                codeByteBuffer.put(OpCode.EXT_FUN_DAT_2.compile(FunctionCode.SHA256_INTO_B, addrZero, addrCurrentAddressByteLength));
+
+                // Distance words are independent, so order doesn't matter
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.GET_B_DAT, addrCurrentDistance));
+                codeByteBuffer.put(OpCode.SUB_DAT.compile(addrCurrentDistance + 3, addrWinningValue + 3));
+                codeByteBuffer.put(OpCode.SUB_DAT.compile(addrCurrentDistance + 2, addrWinningValue + 2));
+                codeByteBuffer.put(OpCode.SUB_DAT.compile(addrCurrentDistance + 1, addrWinningValue + 1));
+                codeByteBuffer.put(OpCode.SUB_DAT.compile(addrCurrentDistance + 0, addrWinningValue + 0));
+
+                // Best distance in A, current in B, so new winner if A is greater
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.SET_A_DAT, addrBestDistance));
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.SET_B_DAT, addrCurrentDistance));
+                codeByteBuffer.put(OpCode.EXT_FUN_RET.compile(FunctionCode.UNSIGNED_COMPARE_A_WITH_B, addrResult));
+                codeByteBuffer.put(OpCode.BGT_DAT.compile(addrResult, addrZero, calcOffset(codeByteBuffer, labelNewWinner)));
+
+                codeByteBuffer.put(OpCode.JMP_ADR.compile(labelTxnLoop));
+
+                /* New current winner */
+                labelNewWinner = codeByteBuffer.position();
+
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestDistance + 0, addrCurrentDistance + 0));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestDistance + 1, addrCurrentDistance + 1));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestDistance + 2, addrCurrentDistance + 2));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestDistance + 3, addrCurrentDistance + 3));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestAddress + 0, addrCurrentAddress + 0));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestAddress + 1, addrCurrentAddress + 1));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestAddress + 2, addrCurrentAddress + 2));
+                codeByteBuffer.put(OpCode.SET_DAT.compile(addrBestAddress + 3, addrCurrentAddress + 3));
+                codeByteBuffer.put(OpCode.JMP_ADR.compile(labelTxnLoop));
+
+                /* Payout */
+                labelPayout = codeByteBuffer.position();
+
+                codeByteBuffer.put(OpCode.EXT_FUN_VAL.compile(FunctionCode.SET_B_DAT, addrBestAddress));
+                codeByteBuffer.put(OpCode.EXT_FUN.compile(FunctionCode.PAY_ALL_TO_ADDRESS_IN_B));
+                codeByteBuffer.put(OpCode.FIN_IMD.compile());
+            } catch (CompilationException e) {
+                throw new IllegalStateException("Unable to compile AT?", e);
+            }
+        }
+
+        codeByteBuffer.flip();
+
+        byte[] codeBytes = new byte[codeByteBuffer.limit()];
+        codeByteBuffer.get(codeBytes);
+
+        final short ciyamAtVersion = 2;
+        final short numCallStackPages = 0;
+        final short numUserStackPages = 0;
+        final long minActivationAmount = 0L;
+
+        return MachineState.toCreationBytes(ciyamAtVersion, codeBytes, dataByteBuffer.array(), numCallStackPages, numUserStackPages, minActivationAmount);
+    }
+
+}
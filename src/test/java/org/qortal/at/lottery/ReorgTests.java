@@ -0,0 +1,191 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.junit.Test;
+import org.qortal.at.lottery.sim.AtCheckpoints;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import static org.junit.Assert.*;
+
+public class ReorgTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static final long SEED = 1L;
+
+    /** Deterministic play: one dice roll per block, from rotating players, so replay rebuilds the same chain. */
+    private static AtRunner newDiceRunner(int blockCount) {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), SEED);
+        api.setLogTransactions(false);
+
+        return new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * blockCount * 6L);
+    }
+
+    private static void playDiceBlock(AtRunner runner, AtCheckpoints checkpoints) {
+        ChainStoreAPI api = (ChainStoreAPI) runner.api;
+        api.sendPayment(String.format("Q_player_%02d", api.getCurrentBlockHeight() % 8), DEFAULT_MINIMUM_AMOUNT);
+
+        if (checkpoints != null)
+            checkpoints.executeOnce(runner);
+        else
+            runner.execute_once();
+    }
+
+    /** Rebuilds AT state at <tt>height</tt> the slow way: from creation, re-executing every block. */
+    private static AtRunner replayDice(int blockCount, int height) {
+        AtRunner runner = newDiceRunner(blockCount);
+
+        while (runner.api.getCurrentBlockHeight() <= height)
+            playDiceBlock(runner, null);
+
+        return runner;
+    }
+
+    private static void assertSameAt(AtRunner expected, AtRunner actual) {
+        ChainStoreAPI expectedApi = (ChainStoreAPI) expected.api;
+        ChainStoreAPI actualApi = (ChainStoreAPI) actual.api;
+
+        assertArrayEquals(expected.packedState, actual.packedState);
+        assertEquals(expected.executionCount, actual.executionCount);
+        assertEquals(expectedApi.getCurrentBlockHeight(), actualApi.getCurrentBlockHeight());
+        assertEquals(expectedApi.getCurrentBalance(expected.state), actualApi.getCurrentBalance(actual.state));
+        assertEquals(expectedApi.getSleepUntilMessageTimestamp(), actualApi.getSleepUntilMessageTimestamp());
+        assertEquals(expectedApi.getChain().getTransactionCount(), actualApi.getChain().getTransactionCount());
+        assertEquals(expectedApi.getAtPaymentCount(), actualApi.getAtPaymentCount());
+    }
+
+    @Test
+    public void dice_rollback_matches_replay() {
+        final int blockCount = 300;
+        final int maxDepth = 50;
+
+        for (int depth : new int[] { 0, 1, 7, maxDepth }) {
+            AtRunner runner = newDiceRunner(blockCount);
+            AtCheckpoints checkpoints = new AtCheckpoints(maxDepth);
+
+            for (int i = 0; i < blockCount; ++i)
+                playDiceBlock(runner, checkpoints);
+
+            assertEquals(maxDepth, checkpoints.getAvailableDepth());
+
+            int height = checkpoints.rollback(runner, depth);
+            assertEquals(blockCount - depth, height);
+            assertEquals(height, checkpoints.getLatestHeight());
+            assertEquals(maxDepth - depth, checkpoints.getAvailableDepth());
+
+            assertSameAt(replayDice(blockCount, height), runner);
+
+            // Carries on from rolled back state, on replacement blocks
+            for (int i = 0; i < depth; ++i)
+                playDiceBlock(runner, checkpoints);
+
+            assertEquals(blockCount + 1, runner.api.getCurrentBlockHeight());
+        }
+    }
+
+    @Test
+    public void rollback_beyond_ring_fails() {
+        AtRunner runner = newDiceRunner(20);
+        AtCheckpoints checkpoints = new AtCheckpoints(4);
+
+        for (int i = 0; i < 20; ++i)
+            playDiceBlock(runner, checkpoints);
+
+        try {
+            checkpoints.rollback(runner, 5);
+            fail("Rollback deeper than ring should fail");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Nothing changed
+        assertEquals(21, runner.api.getCurrentBlockHeight());
+        assertEquals(4, checkpoints.getAvailableDepth());
+    }
+
+    @Test
+    public void lottery_rollback_undoes_payout() {
+        final int maxDepth = 100;
+
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), SEED);
+        api.setLogTransactions(false);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        AtCheckpoints checkpoints = new AtCheckpoints(maxDepth);
+        // AT balance by height
+        long[] balances = new long[maxDepth + 2];
+
+        checkpoints.executeOnce(runner);
+
+        for (int i = 0; i < 100; ++i)
+            api.sendPayment(String.format("Q_player_%03d", i), DEFAULT_MINIMUM_AMOUNT);
+
+        // Run until a few blocks after payout
+        int blocksAfterFinish = 3;
+        for (int i = 0; i < maxDepth && blocksAfterFinish > 0; ++i) {
+            checkpoints.executeOnce(runner);
+            balances[checkpoints.getLatestHeight()] = api.getCurrentBalance(runner.state);
+
+            if (runner.state.isFinished())
+                --blocksAfterFinish;
+        }
+
+        assertEquals(1, api.getAtPaymentCount());
+        String winner = api.getAtPaymentRecipient(0);
+        int payoutHeight = api.getAtPaymentHeight(0);
+
+        // Reorg back to before AT woke up
+        int depth = checkpoints.getLatestHeight() - payoutHeight + 1;
+        assertTrue("reorg too deep for test", depth <= checkpoints.getAvailableDepth());
+
+        checkpoints.rollback(runner, depth);
+
+        assertFalse(runner.state.isFinished());
+        assertEquals(0, api.getAtPaymentCount());
+        assertEquals(balances[payoutHeight - 1], api.getCurrentBalance(runner.state));
+        assertTrue(api.getCurrentBalance(runner.state) >= DEFAULT_INITIAL_BALANCE);
+
+        // Replacement blocks have same seed-derived hashes, so same winner
+        assertTrue(runner.execute_until_finished(maxDepth));
+        assertEquals(1, api.getAtPaymentCount());
+        assertEquals(winner, api.getAtPaymentRecipient(0));
+        assertEquals(payoutHeight, api.getAtPaymentHeight(0));
+    }
+
+    @Test
+    public void rollback_versus_replay() {
+        final int blockCount = Integer.getInteger("reorg.blocks", 5_000);
+        final int maxDepth = Integer.getInteger("reorg.depth", 100);
+
+        AtRunner runner = newDiceRunner(blockCount);
+        AtCheckpoints checkpoints = new AtCheckpoints(maxDepth);
+
+        for (int i = 0; i < blockCount; ++i)
+            playDiceBlock(runner, checkpoints);
+
+        for (int depth = 1; depth <= maxDepth; depth *= 10) {
+            long rollbackStart = System.nanoTime();
+            int height = checkpoints.rollback(runner, depth);
+            long rollbackNanos = System.nanoTime() - rollbackStart;
+
+            long replayStart = System.nanoTime();
+            AtRunner replayed = replayDice(blockCount, height);
+            long replayNanos = System.nanoTime() - replayStart;
+
+            assertSameAt(replayed, runner);
+
+            System.out.println(String.format("Reorg depth %d at height %d: rollback %d µs, replay from creation %d µs (%.0fx)",
+                    depth, blockCount, rollbackNanos / 1000, replayNanos / 1000, replayNanos / (double) Math.max(1L, rollbackNanos)));
+
+            // Rebuild the orphaned blocks, ready for next depth
+            for (int i = 0; i < depth; ++i)
+                playDiceBlock(runner, checkpoints);
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.API;
+import org.ciyam.at.Timestamp;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qortal.at.lottery.sim.AddressBook;
+import org.qortal.at.lottery.sim.ChainReplayer;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+import org.qortal.at.lottery.sim.MappedChainStore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ReplayTests {
+
+    private static final String EXPORT_AT_ADDRESS = "QaTdiceOrLotteryAddress";
+    private static final String EXPORT_CREATOR_ADDRESS = "QcreatorAddress";
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replay_dice_ndjson() throws IOException {
+        final int playCount = 300;
+        byte[] creationBytes = Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT);
+        long initialBalance = DEFAULT_INITIAL_BALANCE * playCount * 6L;
+
+        // Produce "real" history
+        ChainStoreAPI recordingApi = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        AtRunner runner = new AtRunner(recordingApi, new QuietTestLoggerFactory()).deploy(creationBytes, initialBalance);
+        runner.execute_once();
+
+        for (int playIndex = 0; playIndex < playCount; ++playIndex) {
+            recordingApi.sendPayment(String.format("Q_player_%02d", playIndex % 7), DEFAULT_MINIMUM_AMOUNT + playIndex);
+            runner.execute_once();
+        }
+
+        recordingApi.sendMessage(TestAPI.AT_CREATOR_ADDRESS);
+        runner.execute_once();
+        assertTrue(runner.state.isFinished());
+
+        Path exportPath = temporaryFolder.getRoot().toPath().resolve("dice.ndjson");
+        export(recordingApi, exportPath);
+
+        ChainReplayer.Report report = replay(exportPath, creationBytes, initialBalance);
+
+        assertTrue(report.recordedPayments > 1);
+        assertTrue(report.toString(), report.allPaymentsMatched());
+        assertTrue(report.finished);
+    }
+
+    @Test
+    public void replay_lottery_csv() throws IOException {
+        byte[] creationBytes = Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT);
+
+        ChainStoreAPI recordingApi = new ChainStoreAPI(new ColumnarChainStore(), 2L);
+        AtRunner runner = new AtRunner(recordingApi, new QuietTestLoggerFactory()).deploy(creationBytes, DEFAULT_INITIAL_BALANCE);
+        runner.execute_once();
+
+        for (int entryIndex = 0; entryIndex < 200; ++entryIndex) {
+            recordingApi.sendPayment(String.format("Q_player_%03d", entryIndex), DEFAULT_MINIMUM_AMOUNT);
+
+            if (entryIndex % 50 == 0)
+                runner.execute_once();
+        }
+
+        assertTrue(runner.execute_until_finished(1000));
+
+        Path exportPath = temporaryFolder.getRoot().toPath().resolve("lottery.csv");
+        export(recordingApi, exportPath);
+
+        ChainReplayer.Report report = replay(exportPath, creationBytes, DEFAULT_INITIAL_BALANCE);
+
+        assertEquals(1L, report.recordedPayments);
+        assertTrue(report.toString(), report.allPaymentsMatched());
+        assertTrue(report.finished);
+    }
+
+    @Test
+    public void replay_dice_real_addresses() throws IOException {
+        // Valid Qortal addresses, so AT sees them Base58-decoded
+        final String atAddress = "Aa3uKw6buhw84ESHmeS5R65bCmsp23dizv";
+        final String creatorAddress = "QUktHPib5xAFJxV15gdf5b9E2AvLhhbpTo";
+        final String alice = "QTGAvSNgK8JFtyVqkQ7QEXrEnMCnjzBkws";
+        final String bob = "QNxsEWns4JmUE486V8X5benNmzoxmLFpQi";
+
+        assertArrayEquals(LotteryTracker.decodeQortalAddress(alice), ChainStoreAPI.toAddressBytes(alice));
+        assertEquals(alice, ChainStoreAPI.fromAddressBytes(Arrays.copyOf(ChainStoreAPI.toAddressBytes(alice), 32)));
+
+        // Bets too big for AT's 10 QORT balance are refunded to sender, whatever the dice roll.
+        // Bob's first payment is below minimum so ignored.
+        String export = String.join("\n",
+                "height,sequence,type,sender,recipient,amount,blockHash",
+                "1,0,BLOCK,,,,0101010101010101010101010101010101010101010101010101010101010101",
+                "2,0,PAYMENT," + alice + "," + atAddress + ",5.00000000,",
+                "2,1,PAYMENT," + bob + "," + atAddress + ",0.50000000,",
+                "3,0,PAYMENT," + atAddress + "," + alice + ",5.00000000,",
+                "3,1,PAYMENT," + bob + "," + atAddress + ",8.00000000,",
+                "4,0,PAYMENT," + atAddress + "," + bob + ",8.00000000,",
+                "");
+
+        Path exportPath = temporaryFolder.getRoot().toPath().resolve("dice-real.csv");
+        Files.write(exportPath, export.getBytes(StandardCharsets.UTF_8));
+
+        Path chainDirectory = temporaryFolder.newFolder().toPath();
+
+        try (MappedChainStore chain = new MappedChainStore(chainDirectory);
+             AddressBook addressBook = AddressBook.open(chainDirectory.resolve("addresses.txt"))) {
+            ChainStoreAPI replayApi = new ChainStoreAPI(chain, addressBook, 99L);
+
+            ChainReplayer.Report report = new ChainReplayer(replayApi, atAddress, creatorAddress)
+                    .replay(exportPath, Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE, 1);
+
+            assertEquals(2L, report.recordedPayments);
+            assertTrue(report.toString(), report.allPaymentsMatched());
+        }
+    }
+
+    private ChainReplayer.Report replay(Path exportPath, byte[] creationBytes, long initialBalance) throws IOException {
+        Path chainDirectory = temporaryFolder.newFolder().toPath();
+
+        try (MappedChainStore chain = new MappedChainStore(chainDirectory);
+             AddressBook addressBook = AddressBook.open(chainDirectory.resolve("addresses.txt"))) {
+            ChainStoreAPI replayApi = new ChainStoreAPI(chain, addressBook, 99L);
+
+            ChainReplayer.Report report = new ChainReplayer(replayApi, EXPORT_AT_ADDRESS, EXPORT_CREATOR_ADDRESS)
+                    .replay(exportPath, creationBytes, initialBalance, 1);
+
+            System.err.println(String.format("Replay of %s: %s", exportPath.getFileName(), report));
+            return report;
+        }
+    }
+
+    /** Writes whole simulated chain as export, using CSV or NDJSON depending on file extension. */
+    private static void export(ChainStoreAPI api, Path exportPath) throws IOException {
+        boolean isCsv = exportPath.getFileName().toString().endsWith(".csv");
+        byte[] hash = new byte[32];
+        int previousHeight = 0;
+
+        try (Writer writer = Files.newBufferedWriter(exportPath, StandardCharsets.UTF_8)) {
+            if (isCsv)
+                writer.write("height,sequence,type,sender,recipient,amount,blockHash\n");
+
+            for (long txIndex = 0; txIndex < api.getChain().getTransactionCount(); ++txIndex) {
+                Timestamp timestamp = new Timestamp(api.getChain().getTimestamp(txIndex));
+
+                // Declare hashes of any blocks up to this one
+                while (previousHeight < timestamp.blockHeight) {
+                    ++previousHeight;
+                    api.getChain().getBlockHash(previousHeight, hash, 0);
+                    writeRow(writer, isCsv, previousHeight, 0, "BLOCK", "", "", 0L, toHex(hash));
+                }
+
+                String type = API.ATTransactionType.values()[api.getChain().getTypeOrdinal(txIndex)].name();
+
+                writeRow(writer, isCsv, timestamp.blockHeight, timestamp.transactionSequence, type,
+                        toExportAddress(api.getAddressBook().getAddress(api.getChain().getSenderId(txIndex))),
+                        toExportAddress(api.getAddressBook().getAddress(api.getChain().getRecipientId(txIndex))),
+                        api.getChain().getAmount(txIndex),
+                        null);
+            }
+        }
+    }
+
+    private static void writeRow(Writer writer, boolean isCsv, int height, int sequence, String type, String sender, String recipient, long amount, String blockHash) throws IOException {
+        String prettyAmount = String.format("%d.%08d", amount / 1_0000_0000L, amount % 1_0000_0000L);
+
+        if (isCsv)
+            writer.write(String.format("%d,%d,%s,%s,%s,%s,%s%n", height, sequence, type, sender, recipient, prettyAmount, blockHash == null ? "" : blockHash));
+        else
+            writer.write(String.format("{\"height\":%d,\"sequence\":%d,\"type\":\"%s\",\"sender\":\"%s\",\"recipient\":\"%s\",\"amount\":%s%s}%n",
+                    height, sequence, type, sender, recipient, prettyAmount, blockHash == null ? "" : ",\"blockHash\":\"" + blockHash + "\""));
+    }
+
+    private static String toExportAddress(String address) {
+        if (address.equals(TestAPI.AT_ADDRESS))
+            return EXPORT_AT_ADDRESS;
+
+        if (address.equals(TestAPI.AT_CREATOR_ADDRESS))
+            return EXPORT_CREATOR_ADDRESS;
+
+        return address;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder stringBuilder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            stringBuilder.append(String.format("%02x", b));
+
+        return stringBuilder.toString();
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.qortal.at.lottery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.qortal.at.lottery.service.GeneratorServer;
+import org.qortal.utils.Base58;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ServiceTests {
+
+    private GeneratorServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = new GeneratorServer(0);
+        this.server.start();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop();
+    }
+
+    private static class Response {
+        int status;
+        String codeHash;
+        byte[] body;
+    }
+
+    private Response get(String pathAndQuery) throws IOException {
+        URL url = new URL(String.format("http://127.0.0.1:%d%s", this.server.getPort(), pathAndQuery));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        response.codeHash = connection.getHeaderField("X-Code-Hash");
+
+        try (InputStream in = response.status == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in.transferTo(bytes);
+            response.body = bytes.toByteArray();
+        }
+
+        return response;
+    }
+
+    @Test
+    public void generate_ats() throws IOException {
+        Response response = get("/lottery?sleepMinutes=20160&minimumAmount=0.1");
+        assertEquals(200, response.status);
+        assertArrayEquals(Lottery.buildQortalAT(20160, 1000_0000L), Base58.decode(new String(response.body, StandardCharsets.US_ASCII).trim()));
+        assertEquals(new String(OutputFormat.HEX.encode(Lottery.getCodeBytesHash()), StandardCharsets.US_ASCII), response.codeHash);
+
+        response = get("/dice?minimumAmount=1.0&format=raw");
+        assertEquals(200, response.status);
+        assertArrayEquals(Dice.buildQortalAT(1_0000_0000L), response.body);
+        assertEquals(new String(OutputFormat.HEX.encode(Dice.getCodeBytesHash()), StandardCharsets.US_ASCII), response.codeHash);
+    }
+
+    @Test
+    public void invalid_requests() throws IOException {
+        Response response = get("/lottery?sleepMinutes=5&minimumAmount=0.1");
+        assertEquals(400, response.status);
+        assertTrue(new String(response.body, StandardCharsets.UTF_8).startsWith("Sleep period"));
+
+        assertEquals(400, get("/dice?minimumAmount=5000").status);
+        assertEquals(400, get("/dice?minimumAmount=lots").status);
+        assertEquals(400, get("/dice").status);
+        assertEquals(400, get("/dice?minimumAmount=1.0&format=morse").status);
+    }
+
+    @Test
+    public void request_latency() throws IOException {
+        final int requestCount = Integer.getInteger("service.requests", 2_000);
+
+        // Warm up
+        for (int i = 0; i < 200; ++i)
+            get("/dice?minimumAmount=1.0&format=hex");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requestCount; ++i)
+            assertEquals(200, get(String.format("/lottery?sleepMinutes=%d&minimumAmount=1.0&format=hex", 10 + i)).status);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("%d requests: mean %.1f us/request", requestCount, elapsed / 1000.0 / requestCount));
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.junit.Test;
+import org.qortal.at.lottery.sim.AtSnapshot;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    @Test
+    public void lottery_what_if_one_more_entrant() {
+        final int entryCount = Integer.getInteger("snapshot.entries", 2_000);
+        final int forkCount = Integer.getInteger("snapshot.forks", 100);
+
+        // Prepare lottery with entries, stopping just before cutoff
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), 1L);
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entryCount; ++i)
+            api.sendPayment(String.format("Q_player_%05d", i), DEFAULT_MINIMUM_AMOUNT);
+
+        runner.execute_once();
+        assertTrue(runner.state.isSleeping());
+
+        AtSnapshot snapshot = AtSnapshot.take(runner);
+
+        // Baseline: nobody else joins
+        AtRunner baseline = snapshot.fork();
+        assertTrue(baseline.execute_until_finished(1000));
+        String baselineWinner = ((ChainStoreAPI) baseline.api).getAtPaymentRecipient(0);
+
+        // Forks are independent, so can run in parallel
+        AtomicInteger extraWins = new AtomicInteger();
+
+        IntStream.range(0, forkCount).parallel().forEach(forkIndex -> {
+            AtRunner whatIf = snapshot.fork();
+            ChainStoreAPI whatIfApi = (ChainStoreAPI) whatIf.api;
+
+            String extraEntrant = String.format("Q_extra_%05d", forkIndex);
+            whatIfApi.sendPayment(extraEntrant, DEFAULT_MINIMUM_AMOUNT);
+
+            assertTrue(whatIf.execute_until_finished(1000));
+            assertEquals(1, whatIfApi.getAtPaymentCount());
+
+            // Same future blocks, so winner is either the extra entrant or the same as before
+            String winner = whatIfApi.getAtPaymentRecipient(0);
+            if (winner.equals(extraEntrant))
+                extraWins.incrementAndGet();
+            else
+                assertEquals(baselineWinner, winner);
+        });
+
+        System.err.println(String.format("Extra entrant won %d out of %d forks, against %d entries", extraWins.get(), forkCount, entryCount));
+
+        // Original chain is untouched by forks
+        assertEquals(entryCount, api.getChain().getTransactionCount());
+    }
+
+}
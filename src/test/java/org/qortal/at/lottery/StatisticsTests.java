@@ -0,0 +1,80 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+import org.qortal.at.lottery.sim.Statistics;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks fairness statistics against published reference values, so a bug in them can't make every fairness check pass.
+ */
+public class StatisticsTests {
+
+    @Test
+    public void ln_gamma() {
+        assertEquals(0.0, Statistics.lnGamma(1.0), 1e-12);
+        assertEquals(0.0, Statistics.lnGamma(2.0), 1e-12);
+        // Gamma(1/2) = sqrt(pi)
+        assertEquals(0.5 * Math.log(Math.PI), Statistics.lnGamma(0.5), 1e-12);
+        // Gamma(10) = 9!
+        assertEquals(Math.log(362_880.0), Statistics.lnGamma(10.0), 1e-10);
+        // Gamma(4.5) = 105 * sqrt(pi) / 16
+        assertEquals(Math.log(105.0 * Math.sqrt(Math.PI) / 16.0), Statistics.lnGamma(4.5), 1e-10);
+    }
+
+    @Test
+    public void chi_square_p_values() {
+        // Critical values from standard chi-square tables
+        assertEquals(0.05, Statistics.chiSquarePValue(3.841, 1), 0.0005);
+        assertEquals(0.01, Statistics.chiSquarePValue(6.635, 1), 0.0001);
+        assertEquals(0.05, Statistics.chiSquarePValue(16.919, 9), 0.0005);
+        assertEquals(0.001, Statistics.chiSquarePValue(27.877, 9), 0.00001);
+        assertEquals(0.95, Statistics.chiSquarePValue(3.325, 9), 0.0005);
+
+        // With 2 degrees of freedom Q = exp(-x / 2) exactly
+        assertEquals(Math.exp(-2.0), Statistics.chiSquarePValue(4.0, 2), 1e-12);
+        assertEquals(Math.exp(-20.0), Statistics.chiSquarePValue(40.0, 2), 1e-20);
+
+        assertEquals(1.0, Statistics.chiSquarePValue(0.0, 5), 0.0);
+    }
+
+    @Test
+    public void chi_square_statistics() {
+        assertEquals(0.0, Statistics.chiSquareUniform(new long[] { 10, 10, 10 }), 0.0);
+        // (60 - 50)^2 / 50 + (40 - 50)^2 / 50
+        assertEquals(4.0, Statistics.chiSquareUniform(new long[] { 60, 40 }), 1e-12);
+
+        // Expected counts 12, 18, 28, 42
+        double expected = 4.0 / 12.0 + 4.0 / 18.0 + 4.0 / 28.0 + 4.0 / 42.0;
+        assertEquals(expected, Statistics.chiSquareIndependence(new long[][] { { 10, 20 }, { 30, 40 } }), 1e-12);
+    }
+
+    /** Returns KS p-value for a <tt>d</tt> that Stephens' correction turns into <tt>lambda</tt>. */
+    private static double ksPValueAt(double lambda) {
+        final int n = 10_000;
+        double sqrtN = Math.sqrt(n);
+        return Statistics.ksPValue(lambda / (sqrtN + 0.12 + 0.11 / sqrtN), n);
+    }
+
+    @Test
+    public void kolmogorov_smirnov() {
+        assertEquals(0.5, Statistics.ksUniform(new double[] { 0.5 }), 1e-12);
+        assertEquals(0.25, Statistics.ksUniform(new double[] { 0.75, 0.25 }), 1e-12);
+
+        // Two-sided 5% critical values: 0.409 for n = 10 from exact tables, 1.358 / sqrt(n) asymptotically
+        assertEquals(0.05, Statistics.ksPValue(0.409, 10), 0.002);
+        assertEquals(0.05, Statistics.ksPValue(1.358 / Math.sqrt(10_000), 10_000), 0.001);
+        // 1% asymptotic critical value is 1.628 / sqrt(n)
+        assertEquals(0.01, Statistics.ksPValue(1.628 / Math.sqrt(10_000), 10_000), 0.0005);
+
+        // Q(lambda) either side of where the two series forms meet, from first terms of the series
+        assertEquals(0.963945, ksPValueAt(0.5), 1e-6);
+        assertEquals(0.270000, ksPValueAt(1.0), 1e-6);
+        assertEquals(0.123453, ksPValueAt(1.18), 1e-6);
+        assertEquals(0.000671, ksPValueAt(2.0), 1e-6);
+
+        assertEquals(1.0, Statistics.ksPValue(0.0, 100), 1e-9);
+        assertEquals(1.0, Statistics.ksPValue(0.01, 100), 1e-9);
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.StepBaseline;
+import org.qortal.at.lottery.profiling.StepCounter;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards against code changes making Lottery entries or Dice rolls cost more steps, and so more fees.
+ * <p>
+ * Runs canonical workloads on seeded simulated chains, so step counts are exact and repeatable,
+ * and compares them against <tt>src/test/resources/step-baseline.properties</tt>.
+ * <p>
+ * Recorded metrics fail on any regression beyond the baseline's threshold. Unrecorded metrics, e.g. new workloads,
+ * can't be judged so the test is skipped (not passed) with a list of them, after checking recorded ones.
+ * After an intentional change, regenerate the baseline using <tt>-Dsteps.updateBaseline=true</tt> and check it in.
+ */
+public class StepRegressionTests {
+
+    private static final Path BASELINE_PATH = Paths.get("src", "test", "resources", "step-baseline.properties");
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("steps.updateBaseline");
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static final long SEED = 1L;
+    private static final int MAX_DICE_BETS = 200;
+
+    /** Metrics for one workload, in insertion order */
+    private static class Measurement {
+        final String workload;
+        final Map<String, Long> metrics = new LinkedHashMap<>();
+
+        Measurement(String workload, byte[] creationBytes, StepCounter counter) {
+            this.workload = workload;
+
+            CreationBytes view = new CreationBytes();
+            assertTrue(view.wrap(ByteBuffer.wrap(creationBytes)));
+
+            this.metrics.put("steps", counter.getSteps());
+            this.metrics.put("maxRoundSteps", counter.getMaxRoundSteps());
+            this.metrics.put("dataBytes", (long) view.getDataLength());
+            this.metrics.put("maxStateBytes", (long) counter.getMaxStateSize());
+        }
+    }
+
+    private static ChainStoreAPI newApi(StepCounter counter) {
+        ChainStoreAPI api = new ChainStoreAPI(new ColumnarChainStore(), SEED);
+        api.setLogTransactions(false);
+        api.addListener(counter);
+        return api;
+    }
+
+    private static Measurement lottery(int entryCount) {
+        StepCounter counter = new StepCounter();
+        ChainStoreAPI api = newApi(counter);
+
+        byte[] creationBytes = Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT);
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory()).deploy(creationBytes, DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entryCount; ++i)
+            api.sendPayment(String.format("Q_player_%05d", i), DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(100_000));
+        assertEquals(1, api.getAtPaymentCount());
+
+        return new Measurement(String.format("lottery-%d-entries", entryCount), creationBytes, counter);
+    }
+
+    /** Dice outcome of a single bet, as judged by AT's payment, if any */
+    private enum DiceOutcome {
+        WIN, LOSE, REFUND
+    }
+
+    /**
+     * Places single bets, one per block, until <tt>wanted</tt> outcome happens, measuring just the rounds for that bet.
+     */
+    private static Measurement dice(DiceOutcome wanted, long initialBalance) {
+        StepCounter counter = new StepCounter();
+        ChainStoreAPI api = newApi(counter);
+
+        byte[] creationBytes = Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT);
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory()).deploy(creationBytes, initialBalance);
+
+        runner.execute_once();
+
+        for (int bet = 0; bet < MAX_DICE_BETS; ++bet) {
+            int previousPaymentCount = api.getAtPaymentCount();
+            counter.reset();
+
+            api.sendPayment("Q_player", DEFAULT_MINIMUM_AMOUNT);
+            runner.execute_once(); // AT won't run but block contains PAYMENT
+            runner.execute_once(); // AT should run
+
+            DiceOutcome outcome;
+            if (api.getAtPaymentCount() == previousPaymentCount)
+                outcome = DiceOutcome.LOSE;
+            else if (api.getAtPaymentAmount(previousPaymentCount) == DEFAULT_MINIMUM_AMOUNT)
+                outcome = DiceOutcome.REFUND;
+            else
+                outcome = DiceOutcome.WIN;
+
+            if (outcome == wanted)
+                return new Measurement("dice-" + wanted.name().toLowerCase(), creationBytes, counter);
+        }
+
+        fail(String.format("No dice %s in %d bets", wanted, MAX_DICE_BETS));
+        return null;
+    }
+
+    private static Measurement diceCreatorFinish() {
+        StepCounter counter = new StepCounter();
+        ChainStoreAPI api = newApi(counter);
+
+        byte[] creationBytes = Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT);
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory()).deploy(creationBytes, DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+        counter.reset();
+
+        api.sendMessage(TestAPI.AT_CREATOR_ADDRESS);
+        assertTrue(runner.execute_until_finished(10));
+
+        return new Measurement("dice-creator-finish", creationBytes, counter);
+    }
+
+    @Test
+    public void step_counts() throws IOException {
+        List<Measurement> measurements = new ArrayList<>();
+
+        measurements.add(lottery(1));
+        measurements.add(lottery(100));
+        measurements.add(lottery(10_000));
+
+        final long largeBalance = DEFAULT_INITIAL_BALANCE * MAX_DICE_BETS * 6L;
+        measurements.add(dice(DiceOutcome.WIN, largeBalance));
+        measurements.add(dice(DiceOutcome.LOSE, largeBalance));
+        // Balance too small to cover 6x payout, so first bet is refunded
+        measurements.add(dice(DiceOutcome.REFUND, DEFAULT_MINIMUM_AMOUNT));
+        measurements.add(diceCreatorFinish());
+
+        StepBaseline baseline = StepBaseline.load(BASELINE_PATH);
+        List<String> regressions = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+
+        for (Measurement measurement : measurements)
+            for (Map.Entry<String, Long> metric : measurement.metrics.entrySet()) {
+                Long baselineValue = baseline.get(measurement.workload, metric.getKey());
+                long value = metric.getValue();
+
+                String change = baselineValue == null ? "new" : String.format("%+d", value - baselineValue);
+                System.out.println(String.format("%-24s %-14s %10d  (%s)", measurement.workload, metric.getKey(), value, change));
+
+                if (baselineValue == null)
+                    missing.add(measurement.workload + "." + metric.getKey());
+                else if (baseline.isRegression(baselineValue, value))
+                    regressions.add(String.format("%s.%s: %d -> %d", measurement.workload, metric.getKey(), baselineValue, value));
+
+                baseline.put(measurement.workload, metric.getKey(), value);
+            }
+
+        if (UPDATE_BASELINE) {
+            baseline.write(BASELINE_PATH);
+            System.out.println("Updated " + BASELINE_PATH);
+            return;
+        }
+
+        assertTrue(String.format("Regressions beyond %s%% threshold: %s", baseline.getThresholdPercent(), regressions), regressions.isEmpty());
+
+        // Unrecorded metrics would otherwise pass whatever their value, so report as skipped instead
+        assumeTrue(String.format("No baseline for %s - run with -Dsteps.updateBaseline=true and check in %s", missing, BASELINE_PATH),
+                missing.isEmpty());
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TemplateTests {
+
+    @Test
+    public void templates_match_compiled() {
+        // If templates were packaged by the build then these compare template output against compiler output
+        for (int sleepMinutes : new int[] { Lottery.MIN_SLEEP_MINUTES, 20160, Lottery.MAX_SLEEP_MINUTES })
+            for (long minimumAmount : new long[] { Lottery.MIN_MINIMUM_AMOUNT, 1_0000_0000L, Lottery.MAX_MINIMUM_AMOUNT })
+                assertArrayEquals(Lottery.compileQortalAT(sleepMinutes, minimumAmount), Lottery.buildQortalAT(sleepMinutes, minimumAmount));
+
+        for (long minimumAmount : new long[] { Dice.MIN_MINIMUM_AMOUNT, 1_0000_0000L, Dice.MAX_MINIMUM_AMOUNT })
+            for (int[] table : new int[][] { { Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER }, { 2, 2 }, { 10, 9 }, { Dice.MAX_SIDES, 950 } })
+                assertArrayEquals(Dice.compileQortalAT(minimumAmount, table[0], table[1]), Dice.buildQortalAT(minimumAmount, table[0], table[1]));
+
+        assertArrayEquals(Lottery.compileCodeBytesHash(), Lottery.getCodeBytesHash());
+        assertArrayEquals(Dice.compileCodeBytesHash(), Dice.getCodeBytesHash());
+    }
+
+    @Test
+    public void templates_packaged() {
+        // Templates are only generated by the "templates" profile, but then both must be packaged
+        assumeTrue("Build with -Ptemplates so templates are generated", AtTemplate.load("lottery") != null);
+        assertNotNull("Dice template missing from templates build", AtTemplate.load("dice"));
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.qortal.at.lottery;
+
+import org.ciyam.at.OpCode;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.junit.Test;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+import org.qortal.at.lottery.profiling.StepCounter;
+import org.qortal.at.lottery.profiling.TraceDecoder;
+import org.qortal.at.lottery.profiling.TraceRecorder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceTests {
+
+    private static final Path TRACE_DIRECTORY = Paths.get("target", "traces");
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+    private static final long DEFAULT_INITIAL_BALANCE = 10_0000_0000L; // 10 QORT
+
+    private static String[] addPlayers(DiceAPI api, int playerCount) {
+        String[] players = new String[playerCount];
+
+        for (int i = 0; i < playerCount; ++i) {
+            players[i] = String.format("Q_player_%02d", i);
+            new TestAPI.TestAccount(players[i], 100_0000_0000L).addToMap(api.accounts);
+        }
+
+        return players;
+    }
+
+    private static AtRunner runLottery(DiceAPI api, int entryCount) {
+        String[] players = addPlayers(api, 10);
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Lottery.buildQortalAT(10, DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE);
+
+        runner.execute_once();
+
+        for (int i = 0; i < entryCount; ++i)
+            runner.send_payment(players[i % players.length], DEFAULT_MINIMUM_AMOUNT);
+
+        assertTrue(runner.execute_until_finished(1000));
+        return runner;
+    }
+
+    @Test
+    public void lottery_trace() throws IOException {
+        final int entryCount = 20;
+
+        DiceAPI api = new DiceAPI();
+        StepCounter stepCounter = new StepCounter();
+        TraceRecorder recorder = TraceRecorder.inMemory(DataSegmentLabels.LOTTERY, 1 << 16);
+        api.addListener(stepCounter);
+        api.addListener(recorder);
+
+        AtRunner runner = runLottery(api, entryCount);
+
+        TraceDecoder decoder = new TraceDecoder(recorder.asReadOnlyBuffer());
+        assertEquals(0, decoder.getLostRecordCount());
+
+        List<TraceDecoder.Step> steps = decoder.decode();
+        assertEquals(1, decoder.getFinishedRounds());
+        assertEquals(stepCounter.getSteps(), steps.stream().mapToLong(step -> step.steps).sum());
+        assertEquals(OpCode.FIN_IMD, steps.get(steps.size() - 1).opCode);
+
+        // Every valid entry bumps number of entries
+        long entriesWritten = steps.stream()
+                .filter(step -> step.opCode == OpCode.INC_DAT)
+                .map(step -> step.getWrite("NumberOfEntries"))
+                .filter(write -> write != null)
+                .count();
+        assertEquals(entryCount, entriesWritten);
+
+        // Last write to each address matches final state
+        ByteBuffer packedState = ByteBuffer.wrap(runner.packedState);
+        for (String name : new String[] { "WinningValue[0]", "BestDistance[3]", "BestAddress[0]", "NumberOfEntries" }) {
+            TraceDecoder.Write lastWrite = null;
+            for (TraceDecoder.Step step : steps)
+                if (step.getWrite(name) != null)
+                    lastWrite = step.getWrite(name);
+
+            assertNotNull(name + " never written", lastWrite);
+
+            int address = DataSegmentLabels.LOTTERY.getAddress(name);
+            assertEquals(name, packedState.getLong(StateSizeAnalyser.HEADER_LENGTH + address * 8), lastWrite.value);
+        }
+
+        Files.createDirectories(TRACE_DIRECTORY);
+        try (Writer writer = Files.newBufferedWriter(TRACE_DIRECTORY.resolve("lottery.txt"), StandardCharsets.UTF_8)) {
+            decoder.writeText(writer);
+        }
+    }
+
+    @Test
+    public void mapped_ring_keeps_latest() throws IOException {
+        final int capacity = 256;
+        final int playCount = 50;
+
+        Files.createDirectories(TRACE_DIRECTORY);
+        Path tracePath = TRACE_DIRECTORY.resolve("dice.trace");
+
+        DiceAPI api = new DiceAPI();
+        String[] players = addPlayers(api, 4);
+
+        try (TraceRecorder recorder = TraceRecorder.mapped(tracePath, DataSegmentLabels.DICE, capacity)) {
+            api.addListener(recorder);
+
+            AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                    .deploy(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT), DEFAULT_INITIAL_BALANCE * playCount * 6L);
+
+            runner.execute_once();
+
+            for (int playIndex = 0; playIndex < playCount; ++playIndex) {
+                runner.send_payment(players[playIndex % players.length], DEFAULT_MINIMUM_AMOUNT);
+                runner.execute_once();
+                runner.execute_once();
+            }
+
+            assertTrue(recorder.getRecordCount() > capacity);
+        }
+
+        TraceDecoder decoder = TraceDecoder.open(tracePath);
+        assertTrue(decoder.getLostRecordCount() > 0);
+        assertSame(DataSegmentLabels.DICE, decoder.getLabels());
+
+        List<TraceDecoder.Step> steps = decoder.decode();
+        assertFalse(steps.isEmpty());
+        assertTrue(steps.size() < capacity);
+
+        // Oldest rounds were overwritten, so latest round must still be there
+        int lastHeight = steps.get(steps.size() - 1).height;
+        assertTrue(lastHeight > playCount);
+
+        for (int i = 1; i < steps.size(); ++i)
+            assertTrue(steps.get(i).height >= steps.get(i - 1).height);
+    }
+
+    @Test
+    public void labels_match_compiled_layout() {
+        CreationBytes creationBytes = new CreationBytes();
+
+        assertTrue(creationBytes.wrap(ByteBuffer.wrap(Lottery.compileQortalAT(Lottery.MIN_SLEEP_MINUTES, DEFAULT_MINIMUM_AMOUNT))));
+        assertEquals(creationBytes.getDataLength(), DataSegmentLabels.LOTTERY.getByteLength());
+        assertEquals(creationBytes.getDataLength(), creationBytes.getDataValue(Lottery.ADDR_DATA_SEGMENT_BYTE_LENGTH));
+
+        assertLabel(DataSegmentLabels.LOTTERY, "SleepMinutes", Lottery.ADDR_SLEEP_MINUTES);
+        assertLabel(DataSegmentLabels.LOTTERY, "MinimumAmount", Lottery.ADDR_MINIMUM_AMOUNT);
+        assertLabel(DataSegmentLabels.LOTTERY, "SleepUntilTimestamp", Lottery.ADDR_SLEEP_UNTIL_TIMESTAMP);
+        assertLabel(DataSegmentLabels.LOTTERY, "SleepUntilHeight", Lottery.ADDR_SLEEP_UNTIL_HEIGHT);
+        assertLabel(DataSegmentLabels.LOTTERY, "WinningValue[0]", Lottery.ADDR_WINNING_VALUE);
+        assertLabel(DataSegmentLabels.LOTTERY, "CurrentAddress[0]", Lottery.ADDR_CURRENT_ADDRESS);
+        assertLabel(DataSegmentLabels.LOTTERY, "CurrentAddressByteLength", Lottery.ADDR_CURRENT_ADDRESS_BYTE_LENGTH);
+        assertLabel(DataSegmentLabels.LOTTERY, "LastTxnTimestamp", Lottery.ADDR_LAST_TXN_TIMESTAMP);
+        assertLabel(DataSegmentLabels.LOTTERY, "DataSegmentByteLength", Lottery.ADDR_DATA_SEGMENT_BYTE_LENGTH);
+
+        assertTrue(creationBytes.wrap(ByteBuffer.wrap(Dice.compileQortalAT(DEFAULT_MINIMUM_AMOUNT, Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER))));
+        assertEquals(creationBytes.getDataLength(), DataSegmentLabels.DICE.getByteLength());
+
+        assertLabel(DataSegmentLabels.DICE, "MinimumAmount", Dice.ADDR_MINIMUM_AMOUNT);
+        assertLabel(DataSegmentLabels.DICE, "Sides", Dice.ADDR_SIDES);
+        assertLabel(DataSegmentLabels.DICE, "Multiplier", Dice.ADDR_MULTIPLIER);
+    }
+
+    private static void assertLabel(DataSegmentLabels labels, String name, int address) {
+        assertEquals(name, labels.getName(address));
+        assertEquals(address, labels.getAddress(name));
+    }
+
+    @Test
+    public void disabled_recorder() {
+        DiceAPI api = new DiceAPI();
+        TraceRecorder recorder = TraceRecorder.inMemory(DataSegmentLabels.LOTTERY, 1024);
+        recorder.setEnabled(false);
+        api.addListener(recorder);
+
+        runLottery(api, 5);
+
+        assertEquals(0, recorder.getRecordCount());
+    }
+
+}
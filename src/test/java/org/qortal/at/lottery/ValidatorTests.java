@@ -0,0 +1,140 @@
+package org.qortal.at.lottery;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ValidatorTests {
+
+    private static final long DEFAULT_MINIMUM_AMOUNT = 1_0000_0000L; // 1 QORT
+
+    @Test
+    public void valid_ats() {
+        CreationBytesValidator validator = new CreationBytesValidator();
+
+        assertEquals(CreationBytesValidator.Result.LOTTERY, validator.validate(Lottery.buildQortalAT(20160, DEFAULT_MINIMUM_AMOUNT)));
+        assertEquals(20160, validator.getSleepMinutes());
+        assertEquals(DEFAULT_MINIMUM_AMOUNT, validator.getMinimumAmount());
+
+        assertEquals(CreationBytesValidator.Result.DICE, validator.validate(Dice.buildQortalAT(5000_0000L)));
+        assertEquals(0, validator.getSleepMinutes());
+        assertEquals(5000_0000L, validator.getMinimumAmount());
+        assertEquals(Dice.DEFAULT_SIDES, validator.getSides());
+        assertEquals(Dice.DEFAULT_MULTIPLIER, validator.getMultiplier());
+    }
+
+    @Test
+    public void dice_tables() {
+        CreationBytesValidator validator = new CreationBytesValidator();
+
+        // Different odds and payouts are still recognised as Dice, as code is the same
+        assertEquals(CreationBytesValidator.Result.DICE, validator.validate(Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT, 10, 9)));
+        assertEquals(10, validator.getSides());
+        assertEquals(9, validator.getMultiplier());
+
+        byte[] creationBytes = Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT, 2, 2);
+        CreationBytes parsed = new CreationBytes();
+        assertTrue(parsed.wrap(ByteBuffer.wrap(creationBytes)));
+        int sidesOffset = parsed.getDataOffset() + Dice.ADDR_SIDES * CreationBytes.DATA_PAGE_SIZE;
+        int multiplierOffset = parsed.getDataOffset() + Dice.ADDR_MULTIPLIER * CreationBytes.DATA_PAGE_SIZE;
+
+        // One-sided die
+        byte[] tampered = creationBytes.clone();
+        ByteBuffer.wrap(tampered).putLong(sidesOffset, 1L);
+        assertEquals(CreationBytesValidator.Result.PARAMETER_OUT_OF_RANGE, validator.validate(tampered));
+
+        // Multiplier larger than number of sides
+        tampered = creationBytes.clone();
+        ByteBuffer.wrap(tampered).putLong(multiplierOffset, 3L);
+        assertEquals(CreationBytesValidator.Result.PARAMETER_OUT_OF_RANGE, validator.validate(tampered));
+
+        assertThrows(IllegalArgumentException.class, () -> Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT, Dice.MAX_SIDES + 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> Dice.buildQortalAT(DEFAULT_MINIMUM_AMOUNT, 6, 1));
+    }
+
+    @Test
+    public void invalid_ats() {
+        CreationBytesValidator validator = new CreationBytesValidator();
+        byte[] creationBytes = Lottery.buildQortalAT(20160, DEFAULT_MINIMUM_AMOUNT);
+
+        CreationBytes parsed = new CreationBytes();
+        assertTrue(parsed.wrap(ByteBuffer.wrap(creationBytes)));
+        int dataOffset = parsed.getDataOffset();
+
+        assertEquals(CreationBytesValidator.Result.MALFORMED, validator.validate(new byte[10]));
+        assertEquals(CreationBytesValidator.Result.MALFORMED, validator.validate(ByteBuffer.wrap(creationBytes, 0, creationBytes.length - 1)));
+
+        // Non-zero user stack pages
+        byte[] tampered = creationBytes.clone();
+        tampered[11] = 1;
+        assertEquals(CreationBytesValidator.Result.UNEXPECTED_HEADER, validator.validate(tampered));
+
+        // Code
+        tampered = creationBytes.clone();
+        tampered[CreationBytes.HEADER_LENGTH + 5] ^= 0x01;
+        assertEquals(CreationBytesValidator.Result.UNKNOWN_CODE, validator.validate(tampered));
+
+        // Initial data after parameters, e.g. number of entries
+        tampered = creationBytes.clone();
+        tampered[tampered.length - 1] ^= 0x01;
+        assertEquals(CreationBytesValidator.Result.UNEXPECTED_DATA, validator.validate(tampered));
+
+        // Sleep minutes too short
+        tampered = creationBytes.clone();
+        ByteBuffer.wrap(tampered).putLong(dataOffset, 5L);
+        assertEquals(CreationBytesValidator.Result.PARAMETER_OUT_OF_RANGE, validator.validate(tampered));
+
+        // Minimum amount too large
+        tampered = creationBytes.clone();
+        ByteBuffer.wrap(tampered).putLong(dataOffset + CreationBytes.DATA_PAGE_SIZE, Lottery.MAX_MINIMUM_AMOUNT + 1);
+        assertEquals(CreationBytesValidator.Result.PARAMETER_OUT_OF_RANGE, validator.validate(tampered));
+    }
+
+    @Test
+    public void validation_throughput() {
+        final int blobCount = Integer.getInteger("validator.blobs", 200_000);
+
+        // Pack distinct blobs back-to-back into one direct buffer, then validate in place
+        Random random = new Random(1L);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            long minimumAmount = Lottery.MIN_MINIMUM_AMOUNT + random.nextInt(1_000_000);
+            samples.add(i % 2 == 0 ? Lottery.buildQortalAT(10 + random.nextInt(1000), minimumAmount) : Dice.buildQortalAT(minimumAmount));
+        }
+
+        int totalLength = samples.stream().mapToInt(sample -> sample.length).sum();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(totalLength);
+        int[] offsets = new int[samples.size() + 1];
+        for (int i = 0; i < samples.size(); ++i) {
+            offsets[i] = buffer.position();
+            buffer.put(samples.get(i));
+        }
+        offsets[samples.size()] = buffer.position();
+
+        CreationBytesValidator validator = new CreationBytesValidator();
+        long validCount = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < blobCount; ++i) {
+            int sampleIndex = i % samples.size();
+            buffer.limit(offsets[sampleIndex + 1]).position(offsets[sampleIndex]);
+
+            if (validator.validate(buffer).isValid)
+                ++validCount;
+
+            buffer.limit(buffer.capacity());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(blobCount, validCount);
+
+        System.out.println(String.format("Validated %d blobs in %d ms: %.0f blobs/sec",
+                blobCount, elapsed / 1_000_000L, blobCount * 1e9 / elapsed));
+    }
+
+}
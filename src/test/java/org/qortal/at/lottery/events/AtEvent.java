@@ -0,0 +1,119 @@
+package org.qortal.at.lottery.events;
+
+/**
+ * Something a Lottery or Dice AT did, as published to {@link EventRingBuffer}.
+ * <p>
+ * Instances are ring buffer slots, reused for later events, so consumers must not keep references.
+ * Fields not relevant to {@link #type} are left at their reset values.
+ */
+public class AtEvent {
+
+    public enum Type {
+        /** Payment counted as lottery entry, or dice bet that was rolled */
+        ENTRY_ACCEPTED,
+        /** Transaction ignored or refunded, see {@link Reason} */
+        ENTRY_REJECTED,
+        /** Lottery entry is new closest to winning value */
+        NEW_BEST_DISTANCE,
+        /** Dice roll: {@link #value} is AT's roll result, zero means a win */
+        ROLL,
+        /** AT paid {@link #amount} to {@link #address} */
+        PAYOUT,
+        /** AT finished with {@link #amount} remaining balance */
+        FINISH
+    }
+
+    public enum Reason {
+        BELOW_MINIMUM,
+        NON_PAYMENT,
+        PAST_CUTOFF,
+        /** Dice bet refunded as AT couldn't afford to pay out */
+        OVERSIZE_REFUND
+    }
+
+    /** Identifies AT run, for streams containing events from many runs */
+    public long run;
+    public Type type;
+    public Reason reason;
+    /** Block height when AT emitted event */
+    public int height;
+    /** Timestamp of transaction that caused event, or 0 */
+    public long txTimestamp;
+    /** Sender for entries, recipient for payouts */
+    public String address;
+    public long amount;
+    /** Roll result */
+    public long value;
+    /** Whether roll won */
+    public boolean won;
+    /** Lottery distance, most significant word first */
+    public final long[] distance = new long[4];
+
+    void reset(long run, Type type, int height) {
+        this.run = run;
+        this.type = type;
+        this.reason = null;
+        this.height = height;
+        this.txTimestamp = 0L;
+        this.address = null;
+        this.amount = 0L;
+        this.value = 0L;
+        this.won = false;
+    }
+
+    /** Appends event as single-line JSON object, without trailing newline. */
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"run\":").append(this.run)
+                .append(",\"type\":\"").append(this.type.name()).append('"')
+                .append(",\"height\":").append(this.height);
+
+        if (this.reason != null)
+            sb.append(",\"reason\":\"").append(this.reason.name()).append('"');
+
+        if (this.txTimestamp != 0L)
+            sb.append(",\"txTimestamp\":").append(this.txTimestamp);
+
+        if (this.address != null) {
+            sb.append(",\"address\":\"");
+            appendEscaped(sb, this.address);
+            sb.append('"');
+        }
+
+        switch (this.type) {
+            case ENTRY_ACCEPTED:
+            case ENTRY_REJECTED:
+            case PAYOUT:
+            case FINISH:
+                sb.append(",\"amount\":").append(this.amount);
+                break;
+
+            case ROLL:
+                sb.append(",\"value\":").append(this.value).append(",\"won\":").append(this.won);
+                break;
+
+            case NEW_BEST_DISTANCE:
+                sb.append(",\"distance\":\"");
+                for (long word : this.distance)
+                    for (int shift = 60; shift >= 0; shift -= 4)
+                        sb.append(Character.forDigit((int) (word >>> shift) & 0xf, 16));
+                sb.append('"');
+                break;
+        }
+
+        sb.append('}');
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+    }
+
+}
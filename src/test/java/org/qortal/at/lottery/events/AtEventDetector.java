@@ -0,0 +1,242 @@
+package org.qortal.at.lottery.events;
+
+import org.ciyam.at.API;
+import org.ciyam.at.FunctionCode;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.qortal.at.lottery.AtListener;
+import org.qortal.at.lottery.DiceAPI;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns callbacks from a Lottery or Dice AT run into {@link AtEvent}s, published to an {@link EventRingBuffer}.
+ * <p>
+ * Each transaction the AT loads is classified once the AT has finished with it, i.e. when it loads the next transaction,
+ * pays out or finishes, using which function calls the AT made in between:
+ * <ul>
+ *     <li>Lottery: <tt>SHA256_INTO_B</tt> means entry accepted; <tt>SET_DAT</tt> after <tt>UNSIGNED_COMPARE_A_WITH_B</tt> means new best distance.
+ *     No <tt>GET_TYPE_FROM_TX_IN_A</tt> means entry was past cutoff.</li>
+ *     <li>Dice: <tt>SHA256_INTO_B</tt> means bet was rolled. <tt>GET_CURRENT_BALANCE</tt> then payment without rolling means refund.</li>
+ * </ul>
+ * Roll results and distances are read from the data segment, using {@link DataSegmentLabels},
+ * and only when needed, so detection adds little cost to execution.
+ * <p>
+ * One detector per AT run, registered with that run's {@link DiceAPI}. Runs on different threads can share a ring.
+ */
+public class AtEventDetector implements AtListener {
+
+    public enum AtKind {
+        LOTTERY,
+        DICE
+    }
+
+    private static final short PUT_TX_AFTER_TIMESTAMP_INTO_A = FunctionCode.PUT_TX_AFTER_TIMESTAMP_INTO_A.value;
+    private static final short GET_TYPE_FROM_TX_IN_A = FunctionCode.GET_TYPE_FROM_TX_IN_A.value;
+    private static final short GET_AMOUNT_FROM_TX_IN_A = FunctionCode.GET_AMOUNT_FROM_TX_IN_A.value;
+    private static final short GET_CURRENT_BALANCE = FunctionCode.GET_CURRENT_BALANCE.value;
+    private static final short SHA256_INTO_B = FunctionCode.SHA256_INTO_B.value;
+    private static final short UNSIGNED_COMPARE_A_WITH_B = FunctionCode.UNSIGNED_COMPARE_A_WITH_B.value;
+
+    private static final int LOTTERY_BEST_DISTANCE_OFFSET = dataOffset(DataSegmentLabels.LOTTERY, "BestDistance[0]");
+    private static final int DICE_RESULT_OFFSET = dataOffset(DataSegmentLabels.DICE, "Result");
+
+    private final DiceAPI api;
+    private final AtKind kind;
+    private final EventRingBuffer ring;
+    private final long run;
+
+    // Transaction currently being processed by AT, if any
+    private boolean hasTransaction;
+    private String sender;
+    private API.ATTransactionType txType;
+    private long amount;
+    private long txTimestamp;
+
+    // Function calls seen since transaction loaded
+    private boolean sawGetType;
+    private boolean sawGetAmount;
+    private boolean sawGetBalance;
+    private boolean sawSha256;
+    private boolean sawCompare;
+    private boolean sawNewBest;
+
+    private long publishedCount;
+
+    public AtEventDetector(DiceAPI api, AtKind kind, EventRingBuffer ring, long run) {
+        this.api = api;
+        this.kind = kind;
+        this.ring = ring;
+        this.run = run;
+    }
+
+    private static int dataOffset(DataSegmentLabels labels, String name) {
+        return StateSizeAnalyser.HEADER_LENGTH + labels.getAddress(name) * MachineState.VALUE_SIZE;
+    }
+
+    public long getPublishedCount() {
+        return this.publishedCount;
+    }
+
+    @Override
+    public void onTransaction(MachineState state, String sender, API.ATTransactionType type, long amount, long timestamp) {
+        this.hasTransaction = true;
+        this.sender = sender;
+        this.txType = type;
+        this.amount = amount;
+        this.txTimestamp = timestamp;
+
+        this.sawGetType = false;
+        this.sawGetAmount = false;
+        this.sawGetBalance = false;
+        this.sawSha256 = false;
+        this.sawCompare = false;
+        this.sawNewBest = false;
+    }
+
+    @Override
+    public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+        if (rawFunctionCode == PUT_TX_AFTER_TIMESTAMP_INTO_A) {
+            // AT has finished with previous transaction
+            closeTransaction(state, null);
+            return;
+        }
+
+        if (!this.hasTransaction)
+            return;
+
+        if (rawFunctionCode == GET_TYPE_FROM_TX_IN_A)
+            this.sawGetType = true;
+        else if (rawFunctionCode == GET_AMOUNT_FROM_TX_IN_A)
+            this.sawGetAmount = true;
+        else if (rawFunctionCode == GET_CURRENT_BALANCE)
+            this.sawGetBalance = true;
+        else if (rawFunctionCode == SHA256_INTO_B)
+            this.sawSha256 = true;
+        else if (rawFunctionCode == UNSIGNED_COMPARE_A_WITH_B)
+            this.sawCompare = true;
+        else if (opCode == OpCode.SET_DAT && this.sawCompare)
+            this.sawNewBest = true;
+    }
+
+    @Override
+    public void onPayment(MachineState state, String recipient, long amount) {
+        closeTransaction(state, recipient);
+
+        long sequence = this.ring.claim();
+        AtEvent event = begin(sequence, AtEvent.Type.PAYOUT);
+        event.address = recipient;
+        event.amount = amount;
+        publish(sequence);
+    }
+
+    @Override
+    public void onFinished(MachineState state, long finalBalance) {
+        // Dice creator's MESSAGE is a request to finish, not a rejected bet
+        if (this.kind == AtKind.DICE && this.hasTransaction && this.txType != API.ATTransactionType.PAYMENT)
+            this.hasTransaction = false;
+
+        closeTransaction(state, null);
+
+        long sequence = this.ring.claim();
+        AtEvent event = begin(sequence, AtEvent.Type.FINISH);
+        event.amount = finalBalance;
+        publish(sequence);
+    }
+
+    /**
+     * Publishes events for transaction AT was processing, if any.
+     *
+     * @param paymentRecipient    recipient if AT is paying out while processing transaction, otherwise null
+     */
+    private void closeTransaction(MachineState state, String paymentRecipient) {
+        if (!this.hasTransaction)
+            return;
+
+        this.hasTransaction = false;
+
+        if (this.kind == AtKind.LOTTERY)
+            closeLotteryTransaction(state);
+        else
+            closeDiceTransaction(state, paymentRecipient != null);
+    }
+
+    private void closeLotteryTransaction(MachineState state) {
+        if (!this.sawSha256) {
+            if (!this.sawGetType)
+                publishRejected(AtEvent.Reason.PAST_CUTOFF);
+            else if (this.txType != API.ATTransactionType.PAYMENT)
+                publishRejected(AtEvent.Reason.NON_PAYMENT);
+            else
+                publishRejected(AtEvent.Reason.BELOW_MINIMUM);
+
+            return;
+        }
+
+        publishAccepted();
+
+        if (this.sawNewBest) {
+            ByteBuffer packedState = ByteBuffer.wrap(state.toBytes());
+
+            long sequence = this.ring.claim();
+            AtEvent event = beginTransactionEvent(sequence, AtEvent.Type.NEW_BEST_DISTANCE);
+            for (int i = 0; i < event.distance.length; ++i)
+                event.distance[i] = packedState.getLong(LOTTERY_BEST_DISTANCE_OFFSET + i * MachineState.VALUE_SIZE);
+            publish(sequence);
+        }
+    }
+
+    private void closeDiceTransaction(MachineState state, boolean isPayingOut) {
+        if (this.sawSha256) {
+            publishAccepted();
+
+            long sequence = this.ring.claim();
+            AtEvent event = beginTransactionEvent(sequence, AtEvent.Type.ROLL);
+            event.value = ByteBuffer.wrap(state.toBytes()).getLong(DICE_RESULT_OFFSET);
+            event.won = isPayingOut;
+            publish(sequence);
+            return;
+        }
+
+        if (this.txType != API.ATTransactionType.PAYMENT)
+            publishRejected(AtEvent.Reason.NON_PAYMENT);
+        else if (this.sawGetBalance && isPayingOut)
+            publishRejected(AtEvent.Reason.OVERSIZE_REFUND);
+        else if (this.sawGetAmount)
+            publishRejected(AtEvent.Reason.BELOW_MINIMUM);
+    }
+
+    private void publishAccepted() {
+        long sequence = this.ring.claim();
+        beginTransactionEvent(sequence, AtEvent.Type.ENTRY_ACCEPTED);
+        publish(sequence);
+    }
+
+    private void publishRejected(AtEvent.Reason reason) {
+        long sequence = this.ring.claim();
+        beginTransactionEvent(sequence, AtEvent.Type.ENTRY_REJECTED).reason = reason;
+        publish(sequence);
+    }
+
+    private AtEvent begin(long sequence, AtEvent.Type type) {
+        AtEvent event = this.ring.get(sequence);
+        event.reset(this.run, type, this.api.getCurrentBlockHeight());
+        return event;
+    }
+
+    private AtEvent beginTransactionEvent(long sequence, AtEvent.Type type) {
+        AtEvent event = begin(sequence, type);
+        event.txTimestamp = this.txTimestamp;
+        event.address = this.sender;
+        event.amount = this.amount;
+        return event;
+    }
+
+    private void publish(long sequence) {
+        this.ring.publish(sequence);
+        ++this.publishedCount;
+    }
+
+}
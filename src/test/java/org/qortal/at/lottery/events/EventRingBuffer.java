@@ -0,0 +1,111 @@
+package org.qortal.at.lottery.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free, multi-producer, single-consumer ring of preallocated {@link AtEvent}s.
+ * <p>
+ * Producers claim a sequence, fill in that sequence's event, then publish it:
+ * <pre>
+ * long sequence = ring.claim();
+ * AtEvent event = ring.get(sequence);
+ * ...
+ * ring.publish(sequence);
+ * </pre>
+ * Claiming is a single atomic increment. Each slot records the last sequence published into it,
+ * so the consumer can tell which slots are ready without locks.
+ * If the ring is full, producers spin until the consumer catches up, rather than dropping events.
+ */
+public class EventRingBuffer {
+
+    private final AtEvent[] slots;
+    private final int mask;
+
+    /** Sequence most recently published into each slot */
+    private final AtomicLongArray publishedSequences;
+
+    /** Next sequence for producers to claim */
+    private final AtomicLong claimSequence = new AtomicLong();
+    /** Next sequence for consumer to read; slots before this can be reused */
+    private final AtomicLong consumeSequence = new AtomicLong();
+
+    /** @param capacity    number of slots, rounded up to a power of 2 */
+    public EventRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Ring buffer capacity out of range: " + capacity);
+
+        int size = Integer.highestOneBit(((capacity - 1) << 1) | 1);
+
+        this.slots = new AtEvent[size];
+        for (int i = 0; i < size; ++i)
+            this.slots[i] = new AtEvent();
+
+        this.mask = size - 1;
+
+        this.publishedSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i)
+            this.publishedSequences.set(i, -1L);
+    }
+
+    public int getCapacity() {
+        return this.slots.length;
+    }
+
+    /** Claims next sequence, waiting for consumer if ring is full. */
+    public long claim() {
+        long sequence = this.claimSequence.getAndIncrement();
+
+        while (sequence - this.slots.length >= this.consumeSequence.get())
+            Thread.onSpinWait();
+
+        return sequence;
+    }
+
+    /** Returns event slot for claimed <tt>sequence</tt>. */
+    public AtEvent get(long sequence) {
+        return this.slots[(int) sequence & this.mask];
+    }
+
+    /** Makes event at claimed <tt>sequence</tt> visible to consumer. */
+    public void publish(long sequence) {
+        this.publishedSequences.lazySet((int) sequence & this.mask, sequence);
+    }
+
+    /**
+     * Passes up to <tt>maxBatch</tt> published events, in sequence order, to <tt>handler</tt>.
+     * <p>
+     * Stops early at the first claimed but unpublished sequence. Only one thread may drain.
+     *
+     * @return number of events handled
+     */
+    public int drain(Consumer<AtEvent> handler, int maxBatch) {
+        long sequence = this.consumeSequence.get();
+        int count = 0;
+
+        while (count < maxBatch) {
+            int index = (int) sequence & this.mask;
+
+            if (this.publishedSequences.get(index) != sequence)
+                break;
+
+            handler.accept(this.slots[index]);
+
+            ++sequence;
+            ++count;
+        }
+
+        // Release whole batch of slots back to producers at once
+        if (count > 0)
+            this.consumeSequence.lazySet(sequence);
+
+        return count;
+    }
+
+    /** Returns true if every claimed sequence has been consumed. */
+    public boolean isEmpty() {
+        return this.consumeSequence.get() == this.claimSequence.get();
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.qortal.at.lottery.events;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains an {@link EventRingBuffer} on a background thread, writing one JSON object per line.
+ * <p>
+ * Events are written in batches, with one flush per batch, so producers never wait on I/O
+ * unless the ring fills up.
+ * <p>
+ * Producers must have published all their events before {@link #close()} is called.
+ */
+public class NdjsonEventWriter implements Closeable {
+
+    public static final int DEFAULT_MAX_BATCH = 4096;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final EventRingBuffer ring;
+    private final Writer writer;
+    private final int maxBatch;
+    private final Thread thread;
+
+    /** Reused for formatting each event */
+    private final StringBuilder line = new StringBuilder(256);
+
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    private long eventCount;
+    private long batchCount;
+
+    public NdjsonEventWriter(EventRingBuffer ring, Writer writer, int maxBatch) {
+        this.ring = ring;
+        this.writer = writer;
+        this.maxBatch = maxBatch;
+
+        this.thread = new Thread(this::run, "ndjson-event-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public NdjsonEventWriter(EventRingBuffer ring, Writer writer) {
+        this(ring, writer, DEFAULT_MAX_BATCH);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                int count = this.ring.drain(this::write, this.maxBatch);
+
+                if (count > 0) {
+                    this.writer.flush();
+                    this.eventCount += count;
+                    ++this.batchCount;
+                    continue;
+                }
+
+                // Only stop once ring is empty after close requested
+                if (this.closing && this.ring.isEmpty())
+                    return;
+
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            this.failure = e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+
+            // Keep consuming so producers don't spin forever on a full ring
+            while (!this.closing || !this.ring.isEmpty())
+                if (this.ring.drain(event -> { }, this.maxBatch) == 0)
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void write(AtEvent event) {
+        this.line.setLength(0);
+        event.appendJson(this.line);
+        this.line.append('\n');
+
+        try {
+            this.writer.append(this.line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns number of events written. Only accurate after {@link #close()}. */
+    public long getEventCount() {
+        return this.eventCount;
+    }
+
+    /** Returns number of batches written. Only accurate after {@link #close()}. */
+    public long getBatchCount() {
+        return this.batchCount;
+    }
+
+    /** Writes all remaining events then closes underlying writer. */
+    @Override
+    public void close() throws IOException {
+        this.closing = true;
+
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for event writer to finish", e);
+        }
+
+        this.writer.close();
+
+        if (this.failure != null)
+            throw this.failure;
+    }
+
+}
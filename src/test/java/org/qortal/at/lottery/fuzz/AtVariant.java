@@ -0,0 +1,47 @@
+package org.qortal.at.lottery.fuzz;
+
+import org.qortal.at.lottery.Dice;
+import org.qortal.at.lottery.Lottery;
+import org.qortal.at.lottery.profiling.DataSegmentLabels;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Named AT builder, e.g. current <tt>Lottery.buildQortalAT</tt> or an optimised version, for {@link DifferentialTester}.
+ * <p>
+ * Builders must be pure: same parameters, same creation bytes. Creation bytes are cached per parameters.
+ */
+public class AtVariant {
+
+    public final String name;
+    /** Names for variant's data segment, so fields can be compared even if layout differs */
+    public final DataSegmentLabels labels;
+
+    private final Function<FuzzCase, byte[]> builder;
+    private final Map<String, byte[]> creationBytesCache = new ConcurrentHashMap<>();
+
+    public AtVariant(String name, DataSegmentLabels labels, Function<FuzzCase, byte[]> builder) {
+        this.name = name;
+        this.labels = labels;
+        this.builder = builder;
+    }
+
+    public static AtVariant currentLottery() {
+        return new AtVariant("Lottery", DataSegmentLabels.LOTTERY,
+                fuzzCase -> Lottery.buildQortalAT(fuzzCase.sleepMinutes, fuzzCase.minimumAmount));
+    }
+
+    public static AtVariant currentDice() {
+        return new AtVariant("Dice", DataSegmentLabels.DICE,
+                fuzzCase -> Dice.buildQortalAT(fuzzCase.minimumAmount, fuzzCase.sides, fuzzCase.multiplier));
+    }
+
+    /** Returns creation bytes for <tt>fuzzCase</tt>'s parameters. Returned array must not be modified. */
+    public byte[] getCreationBytes(FuzzCase fuzzCase) {
+        String key = String.format("%d/%d/%d/%d", fuzzCase.sleepMinutes, fuzzCase.minimumAmount, fuzzCase.sides, fuzzCase.multiplier);
+        return this.creationBytesCache.computeIfAbsent(key, k -> this.builder.apply(fuzzCase));
+    }
+
+}
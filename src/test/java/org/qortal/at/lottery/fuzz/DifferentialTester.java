@@ -0,0 +1,240 @@
+package org.qortal.at.lottery.fuzz;
+
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.qortal.at.lottery.AtRunner;
+import org.qortal.at.lottery.profiling.StateSizeAnalyser;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.LongStream;
+
+/**
+ * Checks that two AT variants behave identically: same payments, in the same blocks, and same final data segment fields.
+ * <p>
+ * Both variants run in lockstep, block by block, on separate but identical simulated chains,
+ * so the first divergent block is found without running the rest of the chain.
+ * Chains are {@link FuzzCase}s, either generated or converted from an export using {@link FuzzCase#fromExport}.
+ * Cases run in parallel; the divergence with the lowest case number is reported.
+ */
+public class DifferentialTester {
+
+    /** Blocks to keep running after last action, on top of lottery sleep minutes */
+    private static final int TAIL_BLOCKS = 20;
+    /** Number of actions before divergence to include in trace */
+    private static final int TRACE_ACTIONS = 20;
+
+    public static class Divergence {
+        public final FuzzCase fuzzCase;
+        /** Index of action at which variants diverged, or -1 if after all actions */
+        public final int actionIndex;
+        public final int height;
+        public final String description;
+        public final List<String> trace;
+
+        Divergence(FuzzCase fuzzCase, int actionIndex, int height, String description, List<String> trace) {
+            this.fuzzCase = fuzzCase;
+            this.actionIndex = actionIndex;
+            this.height = height;
+            this.description = description;
+            this.trace = trace;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s seed %d diverged at action %d, height %d: %s%ntrace:%n  %s",
+                    this.fuzzCase.target, this.fuzzCase.seed, this.actionIndex, this.height, this.description,
+                    String.join("\n  ", this.trace));
+        }
+    }
+
+    public long seed = 0L;
+    public int caseCount = 10_000;
+    public int maxActions = 200;
+
+    private final FuzzCase.Target target;
+    private final AtVariant variantA;
+    private final AtVariant variantB;
+    /** Data segment fields compared once both variants have run all blocks */
+    private final List<String> finalFields;
+
+    public DifferentialTester(FuzzCase.Target target, AtVariant variantA, AtVariant variantB, List<String> finalFields) {
+        this.target = target;
+        this.variantA = variantA;
+        this.variantB = variantB;
+        this.finalFields = finalFields;
+
+        for (String field : finalFields)
+            if (variantA.labels.getAddress(field) == -1 || variantB.labels.getAddress(field) == -1)
+                throw new IllegalArgumentException("Field " + field + " missing from variant's data segment labels");
+    }
+
+    public long caseSeed(long caseNumber) {
+        return this.seed ^ ((caseNumber + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    /** Returns divergence with lowest case number, or null if variants agree on every case. */
+    public Divergence run() {
+        OptionalLong firstDivergence = LongStream.range(0, this.caseCount).parallel()
+                .filter(caseNumber -> compare(FuzzCase.generate(this.target, caseSeed(caseNumber), this.maxActions)) != null)
+                .min();
+
+        if (!firstDivergence.isPresent())
+            return null;
+
+        return compare(FuzzCase.generate(this.target, caseSeed(firstDivergence.getAsLong()), this.maxActions));
+    }
+
+    /** Runs both variants on <tt>fuzzCase</tt>, returning first divergence, or null if they agree. */
+    public Divergence compare(FuzzCase fuzzCase) {
+        VariantRun a = new VariantRun(this.variantA, fuzzCase);
+        VariantRun b = new VariantRun(this.variantB, fuzzCase);
+
+        Divergence divergence = endBlock(fuzzCase, -1, a, b);
+        if (divergence != null)
+            return divergence;
+
+        List<FuzzAction> actions = fuzzCase.actions;
+        for (int i = 0; i < actions.size() && !(a.isFinished() && b.isFinished()); ++i) {
+            FuzzAction action = actions.get(i);
+
+            if (action.kind == FuzzAction.Kind.END_BLOCK) {
+                divergence = endBlock(fuzzCase, i, a, b);
+                if (divergence != null)
+                    return divergence;
+            } else {
+                a.send(action);
+                b.send(action);
+            }
+        }
+
+        int tailBlocks = (fuzzCase.target == FuzzCase.Target.LOTTERY ? fuzzCase.sleepMinutes : 0) + TAIL_BLOCKS;
+        for (int i = 0; i < tailBlocks && !(a.isFinished() && b.isFinished()); ++i) {
+            divergence = endBlock(fuzzCase, -1, a, b);
+            if (divergence != null)
+                return divergence;
+        }
+
+        for (String field : this.finalFields) {
+            long valueA = a.getField(field);
+            long valueB = b.getField(field);
+
+            if (valueA != valueB)
+                return divergence(fuzzCase, -1, a, b, String.format("final %s: %s has %d, %s has %d",
+                        field, this.variantA.name, valueA, this.variantB.name, valueB));
+        }
+
+        return null;
+    }
+
+    private Divergence endBlock(FuzzCase fuzzCase, int actionIndex, VariantRun a, VariantRun b) {
+        List<String> paymentsA = a.endBlock();
+        List<String> paymentsB = b.endBlock();
+
+        if (!paymentsA.equals(paymentsB))
+            return divergence(fuzzCase, actionIndex, a, b, String.format("payments: %s paid %s, %s paid %s",
+                    this.variantA.name, paymentsA, this.variantB.name, paymentsB));
+
+        if (a.isFinished() != b.isFinished())
+            return divergence(fuzzCase, actionIndex, a, b, String.format("finished: %s %s, %s %s",
+                    this.variantA.name, a.isFinished(), this.variantB.name, b.isFinished()));
+
+        return null;
+    }
+
+    private Divergence divergence(FuzzCase fuzzCase, int actionIndex, VariantRun a, VariantRun b, String description) {
+        List<String> trace = new ArrayList<>();
+
+        int end = actionIndex == -1 ? fuzzCase.actions.size() : actionIndex + 1;
+        for (int i = Math.max(0, end - TRACE_ACTIONS); i < end; ++i)
+            trace.add(String.format("action %d: %s", i, fuzzCase.actions.get(i)));
+
+        trace.add(String.format("%s payments: %s", this.variantA.name, a.allPayments));
+        trace.add(String.format("%s payments: %s", this.variantB.name, b.allPayments));
+
+        return new Divergence(fuzzCase, actionIndex, a.api.getCurrentBlockHeight(), description, trace);
+    }
+
+    /** One variant running on its own chain */
+    private static class VariantRun {
+        final AtVariant variant;
+        final ChainStoreAPI api;
+        final AtRunner runner;
+
+        int paymentsSeen;
+        final List<String> allPayments = new ArrayList<>();
+
+        VariantRun(AtVariant variant, FuzzCase fuzzCase) {
+            this.variant = variant;
+
+            // Same seed means same block hashes, so same randomness for both variants
+            this.api = new ChainStoreAPI(new ColumnarChainStore(), fuzzCase.seed);
+            this.api.setLogTransactions(false);
+
+            this.runner = new AtRunner(this.api, new QuietTestLoggerFactory())
+                    .deploy(variant.getCreationBytes(fuzzCase), fuzzCase.initialBalance);
+        }
+
+        void send(FuzzAction action) {
+            if (action.kind == FuzzAction.Kind.PAYMENT)
+                this.api.sendPayment(action.getSenderAddress(), action.amount);
+            else
+                this.api.sendMessage(action.getSenderAddress());
+        }
+
+        /** Runs AT on current block, returning payments it made as "height recipient amount". */
+        List<String> endBlock() {
+            if (this.runner.state.isFinished())
+                this.api.bumpCurrentBlockHeight();
+            else
+                this.runner.execute_once();
+
+            if (this.paymentsSeen == this.api.getAtPaymentCount())
+                return List.of();
+
+            List<String> payments = new ArrayList<>();
+            for (; this.paymentsSeen < this.api.getAtPaymentCount(); ++this.paymentsSeen)
+                payments.add(String.format("%d %s %d", this.api.getAtPaymentHeight(this.paymentsSeen),
+                        this.api.getAtPaymentRecipient(this.paymentsSeen), this.api.getAtPaymentAmount(this.paymentsSeen)));
+
+            this.allPayments.addAll(payments);
+            return payments;
+        }
+
+        boolean isFinished() {
+            return this.runner.state.isFinished();
+        }
+
+        long getField(String name) {
+            int offset = StateSizeAnalyser.HEADER_LENGTH + this.variant.labels.getAddress(name) * 8;
+            return ByteBuffer.wrap(this.runner.packedState).getLong(offset);
+        }
+    }
+
+    /** Common final fields for current Lottery layout: entries, winning value, best distance and address. */
+    public static List<String> lotteryFields() {
+        List<String> fields = new ArrayList<>();
+        fields.add("NumberOfEntries");
+
+        for (String name : new String[] { "WinningValue", "BestDistance", "BestAddress" })
+            for (int i = 0; i < 4; ++i)
+                fields.add(name + "[" + i + "]");
+
+        return fields;
+    }
+
+    /** Final fields for current Dice layout that change at runtime: last bet's result, payout and sender, and balance. */
+    public static List<String> diceFields() {
+        List<String> fields = new ArrayList<>(Arrays.asList("LastTxnTimestamp", "TxnType", "PaymentAmount", "Result", "WinningPayout", "CurrentBalance"));
+
+        for (int i = 0; i < 4; ++i)
+            fields.add("SenderAddress[" + i + "]");
+
+        return fields;
+    }
+
+}
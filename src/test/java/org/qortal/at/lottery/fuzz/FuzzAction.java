@@ -0,0 +1,79 @@
+package org.qortal.at.lottery.fuzz;
+
+import org.ciyam.at.test.TestAPI;
+
+/**
+ * One step in a fuzzed transaction stream: a transaction to the AT, or the end of the current block.
+ */
+public class FuzzAction {
+
+    public enum Kind {
+        PAYMENT,
+        MESSAGE,
+        CREATOR_MESSAGE,
+        /** Seals current block and runs AT */
+        END_BLOCK
+    }
+
+    public final Kind kind;
+    /** Index of sender, for PAYMENT and MESSAGE */
+    public final int sender;
+    /** Amount, for PAYMENT */
+    public final long amount;
+
+    private FuzzAction(Kind kind, int sender, long amount) {
+        this.kind = kind;
+        this.sender = sender;
+        this.amount = amount;
+    }
+
+    public static FuzzAction payment(int sender, long amount) {
+        return new FuzzAction(Kind.PAYMENT, sender, amount);
+    }
+
+    public static FuzzAction message(int sender) {
+        return new FuzzAction(Kind.MESSAGE, sender, 0L);
+    }
+
+    public static FuzzAction creatorMessage() {
+        return new FuzzAction(Kind.CREATOR_MESSAGE, 0, 0L);
+    }
+
+    public static FuzzAction endBlock() {
+        return new FuzzAction(Kind.END_BLOCK, 0, 0L);
+    }
+
+    public FuzzAction withAmount(long amount) {
+        return new FuzzAction(this.kind, this.sender, amount);
+    }
+
+    public FuzzAction withSender(int sender) {
+        return new FuzzAction(this.kind, sender, this.amount);
+    }
+
+    public String getSenderAddress() {
+        return this.kind == Kind.CREATOR_MESSAGE ? TestAPI.AT_CREATOR_ADDRESS : senderAddress(this.sender);
+    }
+
+    public static String senderAddress(int sender) {
+        return String.format("Q_fuzz_%02d", sender);
+    }
+
+    @Override
+    public String toString() {
+        switch (this.kind) {
+            case PAYMENT:
+                return String.format("PAYMENT %s %d.%08d", getSenderAddress(), this.amount / 1_0000_0000L, this.amount % 1_0000_0000L);
+
+            case MESSAGE:
+                return String.format("MESSAGE %s", getSenderAddress());
+
+            case CREATOR_MESSAGE:
+                return "MESSAGE creator";
+
+            default:
+                return "END_BLOCK";
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package org.qortal.at.lottery.fuzz;
+
+import org.qortal.at.lottery.Dice;
+import org.qortal.at.lottery.Lottery;
+import org.qortal.at.lottery.sim.ChainExportReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * AT parameters, simulated chain seed and transaction stream for one fuzz run.
+ * <p>
+ * Streams are generated to favour edge cases: amounts either side of <tt>minimumAmount</tt>,
+ * Dice bets either side of the point where a win would exceed the AT's balance, Dice tables with various odds,
+ * non-creator and creator MESSAGEs, and runs of empty blocks.
+ */
+public class FuzzCase {
+
+    public enum Target {
+        LOTTERY,
+        DICE
+    }
+
+    private static final long[] MINIMUM_AMOUNTS = { Dice.MIN_MINIMUM_AMOUNT, 1_0000_0000L, 5_0000_0000L };
+    /** Dice sides and multiplier pairs, mostly the default table */
+    private static final int[][] DICE_TABLES = {
+            { Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER }, { Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER },
+            { 2, 2 }, { 10, 9 }, { 100, 100 }
+    };
+
+    public final Target target;
+    public final long seed;
+    public final long minimumAmount;
+    public final int sleepMinutes;
+    public final int sides;
+    public final int multiplier;
+    public final long initialBalance;
+    public final int senderCount;
+    public final List<FuzzAction> actions;
+
+    public FuzzCase(Target target, long seed, long minimumAmount, int sleepMinutes, int sides, int multiplier,
+            long initialBalance, int senderCount, List<FuzzAction> actions) {
+        this.target = target;
+        this.seed = seed;
+        this.minimumAmount = minimumAmount;
+        this.sleepMinutes = sleepMinutes;
+        this.sides = sides;
+        this.multiplier = multiplier;
+        this.initialBalance = initialBalance;
+        this.senderCount = senderCount;
+        this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+    }
+
+    /** Returns copy of this case with different actions, e.g. while shrinking. */
+    public FuzzCase withActions(List<FuzzAction> actions) {
+        return new FuzzCase(this.target, this.seed, this.minimumAmount, this.sleepMinutes, this.sides, this.multiplier,
+                this.initialBalance, this.senderCount, actions);
+    }
+
+    public byte[] buildCreationBytes() {
+        return this.target == Target.LOTTERY
+                ? Lottery.buildQortalAT(this.sleepMinutes, this.minimumAmount)
+                : Dice.buildQortalAT(this.minimumAmount, this.sides, this.multiplier);
+    }
+
+    /** Generates random case from <tt>seed</tt>, with up to <tt>maxActions</tt> actions. */
+    public static FuzzCase generate(Target target, long seed, int maxActions) {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        long minimumAmount = MINIMUM_AMOUNTS[random.nextInt(MINIMUM_AMOUNTS.length)];
+        int sleepMinutes = Lottery.MIN_SLEEP_MINUTES + random.nextInt(20);
+        // Small balances so Dice bets often hit the can't-afford-payout boundary
+        long initialBalance = minimumAmount * (1 + random.nextInt(60)) + random.nextLong(minimumAmount);
+        int senderCount = 1 + random.nextInt(8);
+        int[] diceTable = DICE_TABLES[random.nextInt(DICE_TABLES.length)];
+
+        List<FuzzAction> actions = new ArrayList<>();
+        int actionCount = 1 + random.nextInt(maxActions);
+        // Rough estimate of AT balance, ignoring payouts, to aim bets at payout boundary
+        long balanceEstimate = initialBalance;
+
+        while (actions.size() < actionCount) {
+            int roll = random.nextInt(100);
+
+            if (roll < 15) {
+                actions.add(FuzzAction.endBlock());
+            } else if (roll < 18) {
+                // Run of empty blocks
+                for (int i = random.nextInt(2, 15); i > 0; --i)
+                    actions.add(FuzzAction.endBlock());
+            } else if (roll < 23) {
+                actions.add(FuzzAction.message(random.nextInt(senderCount)));
+            } else if (roll < 25) {
+                actions.add(FuzzAction.creatorMessage());
+            } else {
+                long amount = nextAmount(random, minimumAmount, diceTable[1], balanceEstimate);
+                balanceEstimate += amount;
+                actions.add(FuzzAction.payment(random.nextInt(senderCount), amount));
+            }
+        }
+
+        return new FuzzCase(target, seed, minimumAmount, sleepMinutes, diceTable[0], diceTable[1], initialBalance, senderCount, actions);
+    }
+
+    /**
+     * Converts exported transaction history of a real AT into a case, e.g. for {@link DifferentialTester}.
+     * <p>
+     * Only transactions to <tt>atAddress</tt> are kept, senders are renumbered, and each new height ends a block.
+     * Block hashes come from <tt>seed</tt>, not the export, so AT results may differ from the real chain.
+     * Dice cases use the default table.
+     */
+    public static FuzzCase fromExport(Target target, Path exportPath, String atAddress, String creatorAddress,
+            long seed, long minimumAmount, int sleepMinutes, long initialBalance) throws IOException {
+        List<FuzzAction> actions = new ArrayList<>();
+        Map<String, Integer> senders = new HashMap<>();
+        Integer lastHeight = null;
+
+        ChainExportReader.Row row = new ChainExportReader.Row();
+
+        try (ChainExportReader reader = new ChainExportReader(exportPath)) {
+            while (reader.next(row)) {
+                if (lastHeight != null)
+                    for (int height = lastHeight; height < row.height; ++height)
+                        actions.add(FuzzAction.endBlock());
+
+                lastHeight = row.height;
+
+                if (row.type.equals("BLOCK") || atAddress.equals(row.sender))
+                    continue;
+
+                // Rows without recipient are to AT
+                if (row.recipient != null && !row.recipient.equals(atAddress))
+                    continue;
+
+                if (creatorAddress.equals(row.sender) && !row.type.equals("PAYMENT")) {
+                    actions.add(FuzzAction.creatorMessage());
+                    continue;
+                }
+
+                int sender = senders.computeIfAbsent(row.sender, address -> senders.size());
+
+                if (row.type.equals("PAYMENT"))
+                    actions.add(FuzzAction.payment(sender, row.amount));
+                else
+                    actions.add(FuzzAction.message(sender));
+            }
+        }
+
+        return new FuzzCase(target, seed, minimumAmount, sleepMinutes, Dice.DEFAULT_SIDES, Dice.DEFAULT_MULTIPLIER,
+                initialBalance, senders.size(), actions);
+    }
+
+    private static long nextAmount(SplittableRandom random, long minimumAmount, int multiplier, long balanceEstimate) {
+        int roll = random.nextInt(100);
+
+        if (roll < 40)
+            // Either side of minimum
+            return minimumAmount + random.nextInt(-2, 3);
+
+        if (roll < 60) {
+            // Either side of where payout stops being affordable
+            long boundary = (balanceEstimate - Dice.PAYOUT_FEES) / multiplier;
+            return Math.max(1L, boundary + random.nextInt(-2, 3));
+        }
+
+        if (roll < 65)
+            return 1L;
+
+        return 1L + random.nextLong(minimumAmount * 3);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s seed %d, minimum %d, sleep %d mins, %d sides paying %dx, initial balance %d, %d actions:%n  %s",
+                this.target, this.seed, this.minimumAmount, this.sleepMinutes, this.sides, this.multiplier, this.initialBalance, this.actions.size(),
+                this.actions.stream().map(FuzzAction::toString).collect(Collectors.joining("\n  ")));
+    }
+
+}
@@ -0,0 +1,243 @@
+package org.qortal.at.lottery.fuzz;
+
+import org.ciyam.at.API;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.qortal.at.lottery.AtListener;
+import org.qortal.at.lottery.AtRunner;
+import org.qortal.at.lottery.Dice;
+import org.qortal.at.lottery.sim.ChainStoreAPI;
+import org.qortal.at.lottery.sim.ColumnarChainStore;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs one {@link FuzzCase} on a simulated chain, checking economic invariants after every block:
+ * <ul>
+ *     <li>funds are conserved: initial balance plus payments in equals AT balance plus payments out</li>
+ *     <li>AT balance never goes negative, and AT only pays addresses that paid it (or creator)</li>
+ *     <li>Dice never pays a win of more than its balance minus {@link Dice#PAYOUT_FEES}</li>
+ *     <li>only a creator MESSAGE finishes Dice, and a creator MESSAGE always does</li>
+ *     <li>Lottery pays out exactly once, when it finishes</li>
+ * </ul>
+ * Payment checks happen as each payment is made, using {@link AtListener} callbacks.
+ */
+public class FuzzRun implements AtListener {
+
+    /** Extra invariant, checked after every block. Returns description of violation, or null. */
+    public interface BlockCheck {
+        String check(ChainStoreAPI api, AtRunner runner);
+    }
+
+    public static class Violation {
+        public final String invariant;
+        /** Index of action being processed when violation detected, or -1 if after all actions */
+        public final int actionIndex;
+        public final int height;
+        public final String message;
+
+        Violation(String invariant, int actionIndex, int height, String message) {
+            this.invariant = invariant;
+            this.actionIndex = actionIndex;
+            this.height = height;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s violated at action %d, height %d: %s", this.invariant, this.actionIndex, this.height, this.message);
+        }
+    }
+
+    /** Blocks to keep running after last action, for Dice to process final transactions */
+    private static final int DICE_TAIL_BLOCKS = 5;
+    /** Blocks, on top of sleep minutes, for Lottery to finish after last action */
+    private static final int LOTTERY_TAIL_BLOCKS = 20;
+
+    private final FuzzCase fuzzCase;
+    private final List<BlockCheck> extraChecks;
+
+    private ChainStoreAPI api;
+    private AtRunner runner;
+
+    private int actionIndex;
+    private Violation violation;
+
+    private long paidIn;
+    private long paidOut;
+    private int atPaymentsSeen;
+    private int payoutCount;
+    private boolean creatorMessageSent;
+    private final Set<String> payers = new HashSet<>();
+
+    // Transaction AT is processing
+    private String lastSender;
+    private API.ATTransactionType lastType;
+    private long lastAmount;
+
+    private FuzzRun(FuzzCase fuzzCase, List<BlockCheck> extraChecks) {
+        this.fuzzCase = fuzzCase;
+        this.extraChecks = extraChecks;
+    }
+
+    /** Runs <tt>fuzzCase</tt>, returning first invariant violation, or null if none. */
+    public static Violation check(FuzzCase fuzzCase, List<BlockCheck> extraChecks) {
+        return new FuzzRun(fuzzCase, extraChecks).run();
+    }
+
+    public static Violation check(FuzzCase fuzzCase) {
+        return check(fuzzCase, Collections.emptyList());
+    }
+
+    private Violation run() {
+        this.api = new ChainStoreAPI(new ColumnarChainStore(), this.fuzzCase.seed);
+        this.api.setLogTransactions(false);
+        this.api.addListener(this);
+
+        this.runner = new AtRunner(this.api, new QuietTestLoggerFactory())
+                .deploy(this.fuzzCase.buildCreationBytes(), this.fuzzCase.initialBalance);
+
+        this.actionIndex = -1;
+        if (endBlock())
+            return this.violation;
+
+        List<FuzzAction> actions = this.fuzzCase.actions;
+        for (this.actionIndex = 0; this.actionIndex < actions.size() && !this.runner.state.isFinished(); ++this.actionIndex) {
+            FuzzAction action = actions.get(this.actionIndex);
+
+            switch (action.kind) {
+                case PAYMENT:
+                    this.api.sendPayment(action.getSenderAddress(), action.amount);
+                    this.paidIn += action.amount;
+                    this.payers.add(action.getSenderAddress());
+                    break;
+
+                case MESSAGE:
+                    this.api.sendMessage(action.getSenderAddress());
+                    break;
+
+                case CREATOR_MESSAGE:
+                    this.api.sendMessage(action.getSenderAddress());
+                    this.creatorMessageSent = true;
+                    break;
+
+                case END_BLOCK:
+                    if (endBlock())
+                        return this.violation;
+                    break;
+            }
+        }
+
+        this.actionIndex = -1;
+
+        boolean isLottery = this.fuzzCase.target == FuzzCase.Target.LOTTERY;
+        int tailBlocks = isLottery ? this.fuzzCase.sleepMinutes + LOTTERY_TAIL_BLOCKS : DICE_TAIL_BLOCKS;
+
+        for (int i = 0; i < tailBlocks && !this.runner.state.isFinished(); ++i)
+            if (endBlock())
+                return this.violation;
+
+        if (isLottery) {
+            if (!this.runner.state.isFinished())
+                return violation("lottery finishes", "not finished after cutoff");
+
+            if (this.payoutCount != 1)
+                return violation("lottery pays exactly once", "paid " + this.payoutCount + " times");
+        } else if (this.creatorMessageSent && !this.runner.state.isFinished()) {
+            return violation("creator MESSAGE finishes dice", "not finished");
+        }
+
+        return null;
+    }
+
+    /** Runs AT on current block then checks invariants, returning true if violated. */
+    private boolean endBlock() {
+        this.runner.execute_once();
+
+        if (this.violation != null)
+            return true;
+
+        MachineState state = this.runner.state;
+        long balance = this.api.getCurrentBalance(state);
+
+        for (; this.atPaymentsSeen < this.api.getAtPaymentCount(); ++this.atPaymentsSeen)
+            this.paidOut += this.api.getAtPaymentAmount(this.atPaymentsSeen);
+
+        if (balance < 0)
+            this.violation = violation("balance never negative", "balance " + balance);
+        else if (this.fuzzCase.initialBalance + this.paidIn != balance + this.paidOut)
+            this.violation = violation("funds conserved", String.format("initial %d + in %d != balance %d + out %d",
+                    this.fuzzCase.initialBalance, this.paidIn, balance, this.paidOut));
+        else if (this.fuzzCase.target == FuzzCase.Target.LOTTERY && this.payoutCount > 0 && !state.isFinished())
+            this.violation = violation("lottery pays exactly once", "paid out before finishing");
+
+        for (int i = 0; this.violation == null && i < this.extraChecks.size(); ++i) {
+            String message = this.extraChecks.get(i).check(this.api, this.runner);
+            if (message != null)
+                this.violation = violation("extra check " + i, message);
+        }
+
+        return this.violation != null;
+    }
+
+    private Violation violation(String invariant, String message) {
+        return new Violation(invariant, this.actionIndex, this.api.getCurrentBlockHeight(), message);
+    }
+
+    @Override
+    public void onTransaction(MachineState state, String sender, API.ATTransactionType type, long amount, long timestamp) {
+        this.lastSender = sender;
+        this.lastType = type;
+        this.lastAmount = amount;
+    }
+
+    @Override
+    public void onPayment(MachineState state, String recipient, long amount) {
+        if (this.violation != null)
+            return;
+
+        ++this.payoutCount;
+
+        // Payment not yet deducted
+        long balance = this.api.getCurrentBalance(state);
+
+        if (amount > balance) {
+            this.violation = violation("balance never negative", String.format("paying %d with balance %d", amount, balance));
+            return;
+        }
+
+        boolean isKnownRecipient = this.payers.contains(recipient) || recipient.equals(TestAPI.AT_CREATOR_ADDRESS);
+        if (!isKnownRecipient) {
+            this.violation = violation("only pays entrants", "paid " + recipient);
+            return;
+        }
+
+        if (this.fuzzCase.target == FuzzCase.Target.LOTTERY) {
+            if (this.payoutCount > 1)
+                this.violation = violation("lottery pays exactly once", "second payment to " + recipient);
+
+            return;
+        }
+
+        boolean isWin = this.lastType == API.ATTransactionType.PAYMENT && amount == this.lastAmount * this.fuzzCase.multiplier;
+        if (isWin && amount > balance - Dice.PAYOUT_FEES)
+            this.violation = violation("dice payout affordable",
+                    String.format("paying %d with balance %d, fees %d", amount, balance, Dice.PAYOUT_FEES));
+    }
+
+    @Override
+    public void onFinished(MachineState state, long finalBalance) {
+        if (this.violation != null || this.fuzzCase.target != FuzzCase.Target.DICE)
+            return;
+
+        boolean isCreatorMessage = this.lastType == API.ATTransactionType.MESSAGE && TestAPI.AT_CREATOR_ADDRESS.equals(this.lastSender);
+        if (!isCreatorMessage)
+            this.violation = violation("only creator MESSAGE finishes dice",
+                    String.format("finished after %s from %s", this.lastType, this.lastSender));
+    }
+
+}
@@ -0,0 +1,175 @@
+package org.qortal.at.lottery.fuzz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.LongStream;
+
+/**
+ * Runs many generated {@link FuzzCase}s in parallel, then shrinks the first failing case to a minimal reproduction.
+ * <p>
+ * Each case is seeded from base seed and case number, so a failure found in a large parallel run
+ * can be reproduced on its own with {@link FuzzCase#generate(FuzzCase.Target, long, int)}.
+ */
+public class Fuzzer {
+
+    public static class Failure {
+        public final FuzzCase original;
+        public final FuzzRun.Violation originalViolation;
+        public final FuzzCase shrunk;
+        public final FuzzRun.Violation shrunkViolation;
+
+        Failure(FuzzCase original, FuzzRun.Violation originalViolation, FuzzCase shrunk, FuzzRun.Violation shrunkViolation) {
+            this.original = original;
+            this.originalViolation = originalViolation;
+            this.shrunk = shrunk;
+            this.shrunkViolation = shrunkViolation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%nshrunk from %d to %d actions:%n%s",
+                    this.shrunkViolation, this.original.actions.size(), this.shrunk.actions.size(), this.shrunk);
+        }
+    }
+
+    public long seed = 0L;
+    public int caseCount = 1000;
+    public int maxActions = 200;
+    /** Limit on re-runs while shrinking */
+    public int maxShrinkRuns = 5000;
+
+    private final FuzzCase.Target target;
+    private final List<FuzzRun.BlockCheck> extraChecks;
+
+    public Fuzzer(FuzzCase.Target target, List<FuzzRun.BlockCheck> extraChecks) {
+        this.target = target;
+        this.extraChecks = extraChecks;
+    }
+
+    public Fuzzer(FuzzCase.Target target) {
+        this(target, Collections.emptyList());
+    }
+
+    public long caseSeed(long caseNumber) {
+        return this.seed ^ ((caseNumber + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    public FuzzCase generate(long caseNumber) {
+        return FuzzCase.generate(this.target, caseSeed(caseNumber), this.maxActions);
+    }
+
+    /** Returns shrunk failure with lowest case number, or null if every case passes. */
+    public Failure run() {
+        // Keeping lowest failing case number means same failure is reported however threads are scheduled
+        OptionalLong firstFailure = LongStream.range(0, this.caseCount).parallel()
+                .filter(caseNumber -> FuzzRun.check(generate(caseNumber), this.extraChecks) != null)
+                .min();
+
+        if (!firstFailure.isPresent())
+            return null;
+
+        FuzzCase original = generate(firstFailure.getAsLong());
+        return shrink(original);
+    }
+
+    /**
+     * Shrinks failing case to smaller case that violates the same invariant.
+     * <p>
+     * First removes chunks of actions, halving chunk size down to single actions, as in delta debugging.
+     * Then simplifies remaining payments: sender 0 and amount equal to minimum. Repeats until nothing changes.
+     */
+    public Failure shrink(FuzzCase original) {
+        FuzzRun.Violation originalViolation = FuzzRun.check(original, this.extraChecks);
+        if (originalViolation == null)
+            throw new IllegalArgumentException("Case doesn't fail");
+
+        Shrinking shrinking = new Shrinking(original, originalViolation.invariant);
+
+        boolean changed = true;
+        while (changed && shrinking.runs < this.maxShrinkRuns) {
+            changed = removeChunks(shrinking);
+            changed |= simplifyActions(shrinking);
+        }
+
+        return new Failure(original, originalViolation, shrinking.current, FuzzRun.check(shrinking.current, this.extraChecks));
+    }
+
+    private class Shrinking {
+        final String invariant;
+        FuzzCase current;
+        int runs;
+
+        Shrinking(FuzzCase current, String invariant) {
+            this.current = current;
+            this.invariant = invariant;
+        }
+
+        /** Adopts <tt>actions</tt> if they still violate the same invariant. */
+        boolean tryActions(List<FuzzAction> actions) {
+            if (this.runs >= Fuzzer.this.maxShrinkRuns)
+                return false;
+
+            ++this.runs;
+
+            FuzzCase candidate = this.current.withActions(actions);
+            FuzzRun.Violation violation = FuzzRun.check(candidate, Fuzzer.this.extraChecks);
+
+            if (violation == null || !violation.invariant.equals(this.invariant))
+                return false;
+
+            this.current = candidate;
+            return true;
+        }
+    }
+
+    private static boolean removeChunks(Shrinking shrinking) {
+        boolean changed = false;
+
+        for (int chunkSize = Math.max(1, shrinking.current.actions.size() / 2); chunkSize >= 1; chunkSize /= 2) {
+            int start = 0;
+
+            while (start < shrinking.current.actions.size()) {
+                List<FuzzAction> actions = new ArrayList<>(shrinking.current.actions);
+                actions.subList(start, Math.min(start + chunkSize, actions.size())).clear();
+
+                if (shrinking.tryActions(actions))
+                    changed = true; // same start now refers to following chunk
+                else
+                    start += chunkSize;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean simplifyActions(Shrinking shrinking) {
+        boolean changed = false;
+        long minimumAmount = shrinking.current.minimumAmount;
+
+        for (int i = 0; i < shrinking.current.actions.size(); ++i) {
+            FuzzAction action = shrinking.current.actions.get(i);
+
+            if (action.kind == FuzzAction.Kind.PAYMENT || action.kind == FuzzAction.Kind.MESSAGE) {
+                if (action.sender != 0 && shrinking.tryActions(replace(shrinking.current.actions, i, action.withSender(0)))) {
+                    changed = true;
+                    action = shrinking.current.actions.get(i);
+                }
+            }
+
+            if (action.kind == FuzzAction.Kind.PAYMENT && action.amount != minimumAmount
+                    && shrinking.tryActions(replace(shrinking.current.actions, i, action.withAmount(minimumAmount))))
+                changed = true;
+        }
+
+        return changed;
+    }
+
+    private static List<FuzzAction> replace(List<FuzzAction> actions, int index, FuzzAction action) {
+        List<FuzzAction> replaced = new ArrayList<>(actions);
+        replaced.set(index, action);
+        return replaced;
+    }
+
+}
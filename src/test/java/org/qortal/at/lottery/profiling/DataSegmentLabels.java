@@ -0,0 +1,110 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.MachineState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Names for data segment addresses, matching the <tt>addr*</tt> labels used when building an AT.
+ * <p>
+ * Multi-value labels, like <tt>addrWinningValue</tt>, produce names with an index suffix, e.g. <tt>WinningValue[2]</tt>.
+ * <p>
+ * These tables must be kept in step with {@link org.qortal.at.lottery.Lottery#buildQortalAT(int, long)}
+ * and {@link org.qortal.at.lottery.Dice#buildQortalAT(long, int, int)}.
+ * <tt>TraceTests.labels_match_compiled_layout</tt> checks them against compiled data segment lengths
+ * and the <tt>ADDR_*</tt> constants, which are package-private so can't be used here directly.
+ */
+public class DataSegmentLabels {
+
+    public static final DataSegmentLabels LOTTERY = new DataSegmentLabels("Lottery")
+            .value("SleepMinutes")
+            .value("MinimumAmount")
+            .value("SleepUntilTimestamp")
+            .value("SleepUntilHeight")
+            .values("WinningValue", 4)
+            .values("CurrentAddress", 4)
+            .value("CurrentAddressByteLength")
+            .value("LastTxnTimestamp")
+            .value("Result")
+            .value("TxnType")
+            .value("PaymentTxnType")
+            .value("PaymentAmount")
+            .value("NumberOfEntries")
+            .values("CurrentDistance", 4)
+            .values("BestDistance", 4)
+            .values("BestAddress", 4)
+            .value("Zero")
+            .value("DataSegmentByteLength");
+
+    public static final DataSegmentLabels DICE = new DataSegmentLabels("Dice")
+            .value("MinimumAmount")
+            .value("Sides")
+            .value("Multiplier")
+            .value("LastTxnTimestamp")
+            .values("PreviousBlockHash", 4)
+            .value("Result")
+            .value("TxnType")
+            .value("PaymentTxnType")
+            .value("PaymentAmount")
+            .value("CurrentBalance")
+            .value("WinningPayout")
+            .value("Zero")
+            .values("SenderAddress", 4)
+            .value("SenderAddressByteLength");
+
+    private final String atName;
+    private final List<String> names = new ArrayList<>();
+
+    private DataSegmentLabels(String atName) {
+        this.atName = atName;
+    }
+
+    private DataSegmentLabels value(String name) {
+        this.names.add(name);
+        return this;
+    }
+
+    private DataSegmentLabels values(String name, int count) {
+        for (int i = 0; i < count; ++i)
+            this.names.add(name + "[" + i + "]");
+
+        return this;
+    }
+
+    /** Returns labels for <tt>atName</tt>, e.g. <tt>"Lottery"</tt>, or null if unknown. */
+    public static DataSegmentLabels forAtName(String atName) {
+        for (DataSegmentLabels labels : new DataSegmentLabels[] { LOTTERY, DICE })
+            if (labels.atName.equals(atName))
+                return labels;
+
+        return null;
+    }
+
+    public String getAtName() {
+        return this.atName;
+    }
+
+    /** Returns number of data segment addresses, i.e. final value of <tt>addrCounter</tt>. */
+    public int getAddressCount() {
+        return this.names.size();
+    }
+
+    public int getByteLength() {
+        return this.names.size() * MachineState.VALUE_SIZE;
+    }
+
+    /** Returns name for data segment <tt>address</tt>, or hex address if beyond known labels. */
+    public String getName(int address) {
+        if (address >= 0 && address < this.names.size())
+            return this.names.get(address);
+
+        return String.format("0x%04x", address);
+    }
+
+    /** Returns address for <tt>name</tt>, as produced by {@link #getName(int)}, or -1 if unknown. */
+    public int getAddress(String name) {
+        return this.names.indexOf(name);
+    }
+
+}
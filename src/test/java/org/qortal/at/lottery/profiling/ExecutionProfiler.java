@@ -0,0 +1,245 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.FunctionCode;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.qortal.at.lottery.AtListener;
+import org.qortal.at.lottery.DiceFunctionCode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts executions, steps and wall time per opcode and per function code.
+ * <p>
+ * Register with {@link org.qortal.at.lottery.DiceAPI#addListener(AtListener)} then run AT using
+ * {@link org.qortal.at.lottery.AtRunner}.
+ * <p>
+ * Wall time for an opcode is measured from its step callback until the next opcode's step callback
+ * (or end of round), so it includes any API work done by function calls.
+ * Use a quiet logger factory or logging will dominate timings.
+ */
+public class ExecutionProfiler implements AtListener {
+
+    public static class Bucket {
+        public final String name;
+        public long executions;
+        public long steps;
+        public long nanos;
+
+        public Bucket(String name) {
+            this.name = name;
+        }
+    }
+
+    private final String scenario;
+
+    private final Bucket[] opCodeBuckets = new Bucket[OpCode.values().length];
+    private final Map<Short, Bucket> functionBuckets = new TreeMap<>();
+
+    private long rounds;
+
+    // Opcode (and function) currently executing, and when it started
+    private Bucket currentOpCodeBucket;
+    private Bucket currentFunctionBucket;
+    private long currentStartNanos;
+
+    public ExecutionProfiler(String scenario) {
+        this.scenario = scenario;
+
+        for (OpCode opCode : OpCode.values())
+            this.opCodeBuckets[opCode.ordinal()] = new Bucket(opCode.name());
+    }
+
+    public String getScenario() {
+        return this.scenario;
+    }
+
+    public long getRounds() {
+        return this.rounds;
+    }
+
+    @Override
+    public void onRoundStart(MachineState state) {
+        ++this.rounds;
+        this.currentOpCodeBucket = null;
+        this.currentFunctionBucket = null;
+    }
+
+    @Override
+    public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+        long now = System.nanoTime();
+        stopCurrent(now);
+
+        this.currentOpCodeBucket = this.opCodeBuckets[opCode.ordinal()];
+        this.currentOpCodeBucket.executions++;
+        this.currentOpCodeBucket.steps += steps;
+
+        if (rawFunctionCode != 0) {
+            this.currentFunctionBucket = this.functionBuckets.computeIfAbsent(rawFunctionCode, ExecutionProfiler::newFunctionBucket);
+            this.currentFunctionBucket.executions++;
+            this.currentFunctionBucket.steps += steps;
+        }
+
+        this.currentStartNanos = now;
+    }
+
+    @Override
+    public void onRoundEnd(MachineState state, byte[] packedState) {
+        stopCurrent(System.nanoTime());
+    }
+
+    private void stopCurrent(long now) {
+        if (this.currentOpCodeBucket == null)
+            return;
+
+        long elapsed = now - this.currentStartNanos;
+        this.currentOpCodeBucket.nanos += elapsed;
+
+        if (this.currentFunctionBucket != null)
+            this.currentFunctionBucket.nanos += elapsed;
+
+        this.currentOpCodeBucket = null;
+        this.currentFunctionBucket = null;
+    }
+
+    private static Bucket newFunctionBucket(short rawFunctionCode) {
+        return new Bucket(functionName(rawFunctionCode));
+    }
+
+    /** Returns name of CIYAM or Qortal function code, or hex value if unknown. */
+    public static String functionName(short rawFunctionCode) {
+        FunctionCode functionCode = FunctionCode.valueOf(rawFunctionCode);
+        if (functionCode != null)
+            return functionCode.name();
+
+        DiceFunctionCode diceFunctionCode = DiceFunctionCode.valueOf(rawFunctionCode);
+        if (diceFunctionCode != null)
+            return diceFunctionCode.name();
+
+        return String.format("0x%04x", rawFunctionCode);
+    }
+
+    /** Returns opcodes that were actually executed, most wall time first. */
+    public List<Bucket> getOpCodeBuckets() {
+        return sorted(List.of(this.opCodeBuckets));
+    }
+
+    /** Returns function codes that were actually called, most wall time first. */
+    public List<Bucket> getFunctionBuckets() {
+        return sorted(this.functionBuckets.values());
+    }
+
+    public Bucket getOpCodeBucket(OpCode opCode) {
+        return this.opCodeBuckets[opCode.ordinal()];
+    }
+
+    public Bucket getFunctionBucket(FunctionCode functionCode) {
+        return this.functionBuckets.get(functionCode.value);
+    }
+
+    private static List<Bucket> sorted(Iterable<Bucket> buckets) {
+        List<Bucket> results = new ArrayList<>();
+        for (Bucket bucket : buckets)
+            if (bucket.executions > 0)
+                results.add(bucket);
+
+        results.sort(Comparator.comparingLong((Bucket bucket) -> bucket.nanos).reversed());
+        return results;
+    }
+
+    // Reports
+
+    /** Writes <tt>scenario.txt</tt>, <tt>scenario.csv</tt> and <tt>scenario.json</tt> into <tt>directory</tt>. */
+    public void writeReports(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(this.scenario + ".txt"), StandardCharsets.UTF_8)) {
+            writeText(writer);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(this.scenario + ".csv"), StandardCharsets.UTF_8)) {
+            writeCsv(writer);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(this.scenario + ".json"), StandardCharsets.UTF_8)) {
+            writeJson(writer);
+        }
+    }
+
+    public void writeText(Writer writer) throws IOException {
+        writer.write(String.format("Scenario: %s, rounds: %d%n", this.scenario, this.rounds));
+
+        writer.write(String.format("%nOpcodes:%n"));
+        writeHistogram(writer, getOpCodeBuckets());
+
+        writer.write(String.format("%nFunctions:%n"));
+        writeHistogram(writer, getFunctionBuckets());
+    }
+
+    private static void writeHistogram(Writer writer, List<Bucket> buckets) throws IOException {
+        final int barWidth = 40;
+
+        long maxNanos = buckets.stream().mapToLong(bucket -> bucket.nanos).max().orElse(1L);
+
+        writer.write(String.format("%-36s %12s %12s %14s %10s%n", "name", "executions", "steps", "nanos", "ns/exec"));
+
+        for (Bucket bucket : buckets) {
+            int barLength = (int) (bucket.nanos * barWidth / Math.max(maxNanos, 1L));
+
+            writer.write(String.format("%-36s %12d %12d %14d %10d %s%n",
+                    bucket.name,
+                    bucket.executions,
+                    bucket.steps,
+                    bucket.nanos,
+                    bucket.nanos / bucket.executions,
+                    "#".repeat(barLength)));
+        }
+    }
+
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("scenario,kind,name,executions,steps,nanos\n");
+
+        for (Bucket bucket : getOpCodeBuckets())
+            writeCsvLine(writer, "opcode", bucket);
+
+        for (Bucket bucket : getFunctionBuckets())
+            writeCsvLine(writer, "function", bucket);
+    }
+
+    private void writeCsvLine(Writer writer, String kind, Bucket bucket) throws IOException {
+        writer.write(String.format("%s,%s,%s,%d,%d,%d%n", this.scenario, kind, bucket.name, bucket.executions, bucket.steps, bucket.nanos));
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        writer.write(String.format("{\"scenario\":\"%s\",\"rounds\":%d,%n", this.scenario, this.rounds));
+
+        writer.write("\"opcodes\":");
+        writeJsonArray(writer, getOpCodeBuckets());
+        writer.write(String.format(",%n\"functions\":"));
+        writeJsonArray(writer, getFunctionBuckets());
+        writer.write(String.format("}%n"));
+    }
+
+    private static void writeJsonArray(Writer writer, List<Bucket> buckets) throws IOException {
+        writer.write("[");
+
+        for (int i = 0; i < buckets.size(); ++i) {
+            Bucket bucket = buckets.get(i);
+
+            writer.write(String.format("%s%n{\"name\":\"%s\",\"executions\":%d,\"steps\":%d,\"nanos\":%d}",
+                    i == 0 ? "" : ",", bucket.name, bucket.executions, bucket.steps, bucket.nanos));
+        }
+
+        writer.write("]");
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.MachineState;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how fast an attacker could grind candidate entrant addresses against a known Lottery winning value,
+ * and how close the best of <i>n</i> entrants gets to it.
+ * <p>
+ * Works on a woken Lottery data segment, so each hash covers exactly what the AT hashes per entry:
+ * data segment from the start to the end of <tt>CurrentAddress</tt>, with the candidate address zero-padded into
+ * <tt>CurrentAddress</tt>. Distance is computed like the AT does it: each 64-bit word of the hash minus the matching
+ * word of the winning value, compared unsigned, most significant word first.
+ * <p>
+ * Candidates are a Qortal address version byte followed by a counter. Only the ranking hash is timed, whereas a real attacker
+ * also needs a key pair and address derivation per candidate, so measured rates are an upper bound.
+ * <p>
+ * Each worker reuses one input buffer, digest buffer and <tt>MessageDigest</tt>, using
+ * <tt>MessageDigest.digest(byte[], int, int)</tt>, so the hashing loop allocates nothing.
+ */
+public class GrindingBenchmark {
+
+    /** First byte of decoded Qortal address, which makes it start with 'Q' in Base58 */
+    private static final byte QORTAL_ADDRESS_VERSION = 58;
+
+    private static final int ADDRESS_LENGTH = 32;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public static class Result {
+        public final int threads;
+        public final long hashes;
+        public final long nanos;
+        /** Lowest distance found, as 4 words, most significant first */
+        public final long[] bestDistance;
+
+        public Result(int threads, long hashes, long nanos, long[] bestDistance) {
+            this.threads = threads;
+            this.hashes = hashes;
+            this.nanos = nanos;
+            this.bestDistance = bestDistance;
+        }
+
+        public double getHashesPerSecond() {
+            return this.hashes * 1e9 / this.nanos;
+        }
+
+        public double getHashesPerSecondPerThread() {
+            return getHashesPerSecond() / this.threads;
+        }
+    }
+
+    /** Grinds a range of candidates, keeping the best distance. */
+    private static class Worker {
+        private final MessageDigest sha256;
+        private final byte[] input;
+        private final int addressOffset;
+        private final long[] winningValue;
+        private final byte[] digest = new byte[32];
+        private final long[] bestDistance = new long[4];
+
+        Worker(byte[] hashInput, int addressOffset, long[] winningValue) {
+            try {
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+
+            this.input = hashInput.clone();
+            this.input[addressOffset] = QORTAL_ADDRESS_VERSION;
+            this.addressOffset = addressOffset;
+            this.winningValue = winningValue;
+            Arrays.fill(this.bestDistance, 0xFFFFFFFFFFFFFFFFL);
+        }
+
+        /** Hashes candidates <tt>first</tt> to <tt>first + count - 1</tt>. */
+        void grind(long first, long count) {
+            for (long candidate = first; candidate < first + count; ++candidate) {
+                // Candidate number goes straight after version byte
+                LONG_VIEW.set(this.input, this.addressOffset + 1, candidate);
+                consider();
+            }
+        }
+
+        private void consider() {
+            this.sha256.update(this.input, 0, this.input.length);
+            try {
+                this.sha256.digest(this.digest, 0, this.digest.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException("SHA-256 digest failed", e);
+            }
+
+            // Compare as we go, as nearly every candidate loses on first word
+            for (int i = 0; i < 4; ++i) {
+                long distance = (long) LONG_VIEW.get(this.digest, i * MachineState.VALUE_SIZE) - this.winningValue[i];
+                int comparison = Long.compareUnsigned(distance, this.bestDistance[i]);
+
+                if (comparison > 0)
+                    return;
+
+                if (comparison < 0) {
+                    this.bestDistance[i] = distance;
+                    for (int j = i + 1; j < 4; ++j)
+                        this.bestDistance[j] = (long) LONG_VIEW.get(this.digest, j * MachineState.VALUE_SIZE) - this.winningValue[j];
+
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Data segment from start to end of CurrentAddress */
+    private final byte[] hashInput;
+    private final int addressOffset;
+    private final long[] winningValue = new long[4];
+
+    /** @param dataSegment    Lottery AT data segment after it has woken and derived its winning value */
+    public GrindingBenchmark(byte[] dataSegment) {
+        DataSegmentLabels labels = DataSegmentLabels.LOTTERY;
+        if (dataSegment.length != labels.getByteLength())
+            throw new IllegalArgumentException("Not a lottery AT data segment");
+
+        for (int i = 0; i < 4; ++i)
+            this.winningValue[i] = (long) LONG_VIEW.get(dataSegment, labels.getAddress("WinningValue[" + i + "]") * MachineState.VALUE_SIZE);
+
+        if (Arrays.stream(this.winningValue).allMatch(word -> word == 0L))
+            throw new IllegalArgumentException("Lottery AT hasn't derived its winning value yet");
+
+        int hashInputLength = (int) (long) LONG_VIEW.get(dataSegment, labels.getAddress("CurrentAddressByteLength") * MachineState.VALUE_SIZE);
+        this.hashInput = Arrays.copyOf(dataSegment, hashInputLength);
+        this.addressOffset = labels.getAddress("CurrentAddress[0]") * MachineState.VALUE_SIZE;
+
+        if (this.addressOffset + ADDRESS_LENGTH > hashInputLength)
+            throw new IllegalArgumentException("CurrentAddress not covered by entry hash");
+
+        Arrays.fill(this.hashInput, this.addressOffset, this.addressOffset + ADDRESS_LENGTH, (byte) 0);
+    }
+
+    private Worker newWorker() {
+        return new Worker(this.hashInput, this.addressOffset, this.winningValue);
+    }
+
+    /** Returns AT's distance for entrant with <tt>address</tt>, as AT would see it in B register before zero-padding. */
+    public long[] distance(byte[] address) {
+        if (address.length > ADDRESS_LENGTH)
+            throw new IllegalArgumentException("Address too long for B register");
+
+        Worker worker = newWorker();
+        Arrays.fill(worker.input, this.addressOffset, this.addressOffset + ADDRESS_LENGTH, (byte) 0);
+        System.arraycopy(address, 0, worker.input, this.addressOffset, address.length);
+        worker.consider();
+
+        return worker.bestDistance.clone();
+    }
+
+    /** Grinds <tt>candidatesPerThread</tt> candidates on each of <tt>threads</tt> threads, timing the lot. */
+    public Result grind(int threads, long candidatesPerThread) {
+        Worker[] workers = new Worker[threads];
+        Thread[] grinders = new Thread[threads];
+
+        for (int i = 0; i < threads; ++i) {
+            Worker worker = newWorker();
+            long first = i * candidatesPerThread;
+
+            workers[i] = worker;
+            grinders[i] = new Thread(() -> worker.grind(first, candidatesPerThread), "grinder-" + i);
+        }
+
+        long start = System.nanoTime();
+
+        for (Thread grinder : grinders)
+            grinder.start();
+
+        try {
+            for (Thread grinder : grinders)
+                grinder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while grinding", e);
+        }
+
+        long nanos = System.nanoTime() - start;
+
+        long[] bestDistance = workers[0].bestDistance;
+        for (Worker worker : workers)
+            if (compareUnsigned(worker.bestDistance, bestDistance) < 0)
+                bestDistance = worker.bestDistance;
+
+        return new Result(threads, threads * candidatesPerThread, nanos, bestDistance.clone());
+    }
+
+    /**
+     * Returns, for each of <tt>entrantCounts</tt> (ascending), the mean over <tt>trials</tt> of how many leading bits
+     * of the best entrant's distance are zero, i.e. <tt>-log2(distance / 2<sup>256</sup>)</tt>.
+     * <p>
+     * Each trial grinds its own candidates, in parallel, checking best distance as each entrant count is reached.
+     */
+    public double[] meanBestDistanceBits(int[] entrantCounts, int trials) {
+        int maxEntrants = entrantCounts[entrantCounts.length - 1];
+
+        double[][] bits = IntStream.range(0, trials).parallel()
+                .mapToObj(trial -> {
+                    Worker worker = newWorker();
+                    double[] trialBits = new double[entrantCounts.length];
+                    long first = (long) trial * maxEntrants;
+                    int entrants = 0;
+
+                    for (int i = 0; i < entrantCounts.length; ++i) {
+                        worker.grind(first + entrants, entrantCounts[i] - entrants);
+                        entrants = entrantCounts[i];
+                        trialBits[i] = distanceBits(worker.bestDistance);
+                    }
+
+                    return trialBits;
+                })
+                .toArray(double[][]::new);
+
+        double[] means = new double[entrantCounts.length];
+        for (double[] trialBits : bits)
+            for (int i = 0; i < means.length; ++i)
+                means[i] += trialBits[i] / trials;
+
+        return means;
+    }
+
+    /**
+     * Returns expected leading zero bits of the best of <tt>entrants</tt> uniformly random distances:
+     * the minimum of <i>n</i> uniforms has <tt>E[-ln U<sub>min</sub>] = H<sub>n</sub></tt>, the <i>n</i>-th harmonic number.
+     */
+    public static double expectedBestDistanceBits(long entrants) {
+        double harmonic = 0.0;
+        for (long k = 1; k <= entrants; ++k)
+            harmonic += 1.0 / k;
+
+        return harmonic / Math.log(2.0);
+    }
+
+    /** Returns <tt>-log2(distance / 2<sup>256</sup>)</tt>, using the two most significant words. */
+    public static double distanceBits(long[] distance) {
+        double scaled = unsignedToDouble(distance[0]) + unsignedToDouble(distance[1]) * 0x1.0p-64;
+        if (scaled == 0.0)
+            return 128.0;
+
+        return 64.0 - Math.log(scaled) / Math.log(2.0);
+    }
+
+    private static double unsignedToDouble(long value) {
+        return (value >>> 1) * 2.0 + (value & 1L);
+    }
+
+    /** Compares 256-bit unsigned values held as 4 longs, most significant first. */
+    private static int compareUnsigned(long[] a, long[] b) {
+        for (int i = 0; i < 4; ++i) {
+            int comparison = Long.compareUnsigned(a[i], b[i]);
+            if (comparison != 0)
+                return comparison;
+        }
+
+        return 0;
+    }
+
+}
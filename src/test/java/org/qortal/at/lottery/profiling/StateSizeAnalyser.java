@@ -0,0 +1,225 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.MachineState;
+import org.qortal.at.lottery.AtListener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measures packed AT state, as produced by <tt>MachineState.toBytes()</tt>, after every executed round.
+ * <p>
+ * Records full size and how many bytes differ from the previous round's packed state,
+ * broken down by data segment address (named using {@link DataSegmentLabels}) with anything
+ * outside the data segment (header, stacks, flags, registers) counted separately.
+ * <p>
+ * Register with {@link org.qortal.at.lottery.DiceAPI#addListener(AtListener)} then run AT using
+ * {@link org.qortal.at.lottery.AtRunner}.
+ */
+public class StateSizeAnalyser implements AtListener {
+
+    /** Packed state starts with same header as creation bytes, followed by data segment. */
+    public static final int HEADER_LENGTH = 20;
+
+    public static class AddressChanges {
+        public final int address;
+        public final String name;
+        /** Number of rounds where any byte at this address changed */
+        public long rounds;
+        /** Total number of changed bytes at this address, over all rounds */
+        public long bytes;
+
+        public AddressChanges(int address, String name) {
+            this.address = address;
+            this.name = name;
+        }
+    }
+
+    private final String scenario;
+    private final DataSegmentLabels labels;
+    private final AddressChanges[] addressChanges;
+
+    private byte[] previousPackedState;
+
+    private long rounds;
+    private int minSize = Integer.MAX_VALUE;
+    private int maxSize;
+    private long totalSize;
+    private int lastSize;
+
+    private long totalChangedBytes;
+    private int maxChangedBytes;
+    private long otherChangedBytes;
+    private long otherChangedRounds;
+
+    public StateSizeAnalyser(String scenario, DataSegmentLabels labels) {
+        this.scenario = scenario;
+        this.labels = labels;
+
+        this.addressChanges = new AddressChanges[labels.getAddressCount()];
+        for (int address = 0; address < this.addressChanges.length; ++address)
+            this.addressChanges[address] = new AddressChanges(address, labels.getName(address));
+    }
+
+    public String getScenario() {
+        return this.scenario;
+    }
+
+    /** Sets packed state to compare first round against, e.g. as deployed. */
+    public void setInitialPackedState(byte[] packedState) {
+        this.previousPackedState = packedState;
+    }
+
+    @Override
+    public void onRoundEnd(MachineState state, byte[] packedState) {
+        ++this.rounds;
+
+        int size = packedState.length;
+        this.lastSize = size;
+        this.totalSize += size;
+        this.minSize = Math.min(this.minSize, size);
+        this.maxSize = Math.max(this.maxSize, size);
+
+        byte[] previous = this.previousPackedState;
+        this.previousPackedState = packedState;
+
+        if (previous == null)
+            return;
+
+        final int dataStart = HEADER_LENGTH;
+        final int dataEnd = dataStart + this.labels.getByteLength();
+
+        int changedBytes = 0;
+        int otherChanged = 0;
+        int changedAddress = -1;
+
+        int commonLength = Math.min(previous.length, size);
+        for (int i = 0; i < commonLength; ++i) {
+            if (previous[i] == packedState[i])
+                continue;
+
+            ++changedBytes;
+
+            if (i < dataStart || i >= dataEnd) {
+                ++otherChanged;
+                continue;
+            }
+
+            int address = (i - dataStart) / MachineState.VALUE_SIZE;
+            AddressChanges changes = this.addressChanges[address];
+            changes.bytes++;
+
+            // Bytes for same address are contiguous so only count round once
+            if (address != changedAddress) {
+                changes.rounds++;
+                changedAddress = address;
+            }
+        }
+
+        // Any growth or shrinkage (e.g. stacks) counts as changed
+        int lengthDifference = Math.abs(size - previous.length);
+        changedBytes += lengthDifference;
+        otherChanged += lengthDifference;
+
+        this.totalChangedBytes += changedBytes;
+        this.maxChangedBytes = Math.max(this.maxChangedBytes, changedBytes);
+        this.otherChangedBytes += otherChanged;
+        if (otherChanged > 0)
+            this.otherChangedRounds++;
+    }
+
+    public long getRounds() {
+        return this.rounds;
+    }
+
+    public int getMinSize() {
+        return this.rounds == 0 ? 0 : this.minSize;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public int getLastSize() {
+        return this.lastSize;
+    }
+
+    public double getMeanSize() {
+        return this.rounds == 0 ? 0.0 : (double) this.totalSize / this.rounds;
+    }
+
+    public long getTotalChangedBytes() {
+        return this.totalChangedBytes;
+    }
+
+    public int getMaxChangedBytes() {
+        return this.maxChangedBytes;
+    }
+
+    public long getOtherChangedBytes() {
+        return this.otherChangedBytes;
+    }
+
+    public AddressChanges getAddressChanges(String name) {
+        int address = this.labels.getAddress(name);
+        return address == -1 ? null : this.addressChanges[address];
+    }
+
+    /** Returns data segment addresses that changed at least once, most changed bytes first. */
+    public List<AddressChanges> getChangedAddresses() {
+        List<AddressChanges> results = new ArrayList<>();
+        for (AddressChanges changes : this.addressChanges)
+            if (changes.rounds > 0)
+                results.add(changes);
+
+        results.sort(Comparator.comparingLong((AddressChanges changes) -> changes.bytes)
+                .thenComparingLong(changes -> changes.rounds)
+                .reversed());
+        return results;
+    }
+
+    // Reports
+
+    /** Writes <tt>scenario-state.txt</tt> and <tt>scenario-state.csv</tt> into <tt>directory</tt>. */
+    public void writeReports(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(this.scenario + "-state.txt"), StandardCharsets.UTF_8)) {
+            writeText(writer);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(this.scenario + "-state.csv"), StandardCharsets.UTF_8)) {
+            writeCsv(writer);
+        }
+    }
+
+    public void writeText(Writer writer) throws IOException {
+        writer.write(String.format("Scenario: %s (%s), rounds: %d%n", this.scenario, this.labels.getAtName(), this.rounds));
+        writer.write(String.format("Packed state bytes: min %d, max %d, mean %.1f, last %d (data segment %d)%n",
+                getMinSize(), this.maxSize, getMeanSize(), this.lastSize, this.labels.getByteLength()));
+        writer.write(String.format("Changed bytes per round: mean %.1f, max %d, outside data segment %d%n",
+                this.rounds == 0 ? 0.0 : (double) this.totalChangedBytes / this.rounds, this.maxChangedBytes, this.otherChangedBytes));
+
+        writer.write(String.format("%nData segment changes:%n"));
+        writer.write(String.format("%-32s %8s %10s %12s%n", "name", "address", "rounds", "bytes"));
+
+        for (AddressChanges changes : getChangedAddresses())
+            writer.write(String.format("%-32s %8d %10d %12d%n", changes.name, changes.address, changes.rounds, changes.bytes));
+    }
+
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("scenario,name,address,rounds,bytes\n");
+
+        for (AddressChanges changes : getChangedAddresses())
+            writer.write(String.format("%s,%s,%d,%d,%d%n", this.scenario, changes.name, changes.address, changes.rounds, changes.bytes));
+
+        writer.write(String.format("%s,%s,%d,%d,%d%n", this.scenario, "(other)", -1, this.otherChangedRounds, this.otherChangedBytes));
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.qortal.at.lottery.profiling;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Checked-in baseline of step counts and sizes per workload, with a regression threshold.
+ * <p>
+ * File is in properties format, one <tt>workload.metric=value</tt> per line, sorted so diffs stay readable,
+ * plus <tt>threshold.percent</tt>: how much a metric may grow before it counts as a regression.
+ */
+public class StepBaseline {
+
+    public static final String THRESHOLD_KEY = "threshold.percent";
+
+    private double thresholdPercent;
+    private final Map<String, Long> values = new TreeMap<>();
+
+    public static StepBaseline load(Path path) throws IOException {
+        StepBaseline baseline = new StepBaseline();
+
+        if (!Files.exists(path))
+            return baseline;
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+
+            if (key.equals(THRESHOLD_KEY))
+                baseline.thresholdPercent = Double.parseDouble(value);
+            else
+                baseline.values.put(key, Long.parseLong(value));
+        }
+
+        return baseline;
+    }
+
+    public double getThresholdPercent() {
+        return this.thresholdPercent;
+    }
+
+    /** Returns baseline value, or null if none recorded. */
+    public Long get(String workload, String metric) {
+        return this.values.get(workload + "." + metric);
+    }
+
+    public void put(String workload, String metric, long value) {
+        this.values.put(workload + "." + metric, value);
+    }
+
+    /** Returns true if <tt>value</tt> exceeds <tt>baselineValue</tt> by more than threshold. */
+    public boolean isRegression(long baselineValue, long value) {
+        return value > baselineValue * (1.0 + this.thresholdPercent / 100.0);
+    }
+
+    public void write(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# Step counts and sizes for canonical Lottery and Dice workloads, checked by StepRegressionTests.");
+        lines.add("# Regenerate with: mvn test -DskipTests=false -Dtest=StepRegressionTests -Dsteps.updateBaseline=true");
+        lines.add(THRESHOLD_KEY + "=" + formatThreshold(this.thresholdPercent));
+
+        for (Map.Entry<String, Long> entry : this.values.entrySet())
+            lines.add(entry.getKey() + "=" + entry.getValue());
+
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (String line : lines)
+                writer.write(line + "\n");
+        }
+    }
+
+    private static String formatThreshold(double thresholdPercent) {
+        return thresholdPercent == Math.rint(thresholdPercent) ? Long.toString((long) thresholdPercent) : Double.toString(thresholdPercent);
+    }
+
+}
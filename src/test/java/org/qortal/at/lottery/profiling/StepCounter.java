@@ -0,0 +1,62 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.qortal.at.lottery.AtListener;
+
+/**
+ * Counts steps charged while an AT executes, in total and per round, plus largest packed state seen.
+ * <p>
+ * Much cheaper than {@link ExecutionProfiler} when only step counts are needed.
+ */
+public class StepCounter implements AtListener {
+
+    private long steps;
+    private long rounds;
+    private long roundSteps;
+    private long maxRoundSteps;
+    private int maxStateSize;
+
+    @Override
+    public void onRoundStart(MachineState state) {
+        this.roundSteps = 0;
+    }
+
+    @Override
+    public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+        this.roundSteps += steps;
+    }
+
+    @Override
+    public void onRoundEnd(MachineState state, byte[] packedState) {
+        ++this.rounds;
+        this.steps += this.roundSteps;
+        this.maxRoundSteps = Math.max(this.maxRoundSteps, this.roundSteps);
+        this.maxStateSize = Math.max(this.maxStateSize, packedState.length);
+    }
+
+    /** Clears all counts, e.g. to measure just the next few rounds. */
+    public void reset() {
+        this.steps = 0;
+        this.rounds = 0;
+        this.maxRoundSteps = 0;
+        this.maxStateSize = 0;
+    }
+
+    public long getSteps() {
+        return this.steps;
+    }
+
+    public long getRounds() {
+        return this.rounds;
+    }
+
+    public long getMaxRoundSteps() {
+        return this.maxRoundSteps;
+    }
+
+    public int getMaxStateSize() {
+        return this.maxStateSize;
+    }
+
+}
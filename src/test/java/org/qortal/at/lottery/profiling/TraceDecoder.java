@@ -0,0 +1,220 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.OpCode;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes traces written by {@link TraceRecorder}, naming data segment addresses using {@link DataSegmentLabels}.
+ * <p>
+ * Only the records still in the ring are decoded, oldest first. Writes whose step has been overwritten are dropped.
+ */
+public class TraceDecoder {
+
+    public static class Write {
+        public final int address;
+        public final String name;
+        public final long value;
+
+        public Write(int address, String name, long value) {
+            this.address = address;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    public static class Step {
+        /** Height of block where this step executed, or -1 if round start was overwritten */
+        public final int height;
+        public final int programCounter;
+        public final OpCode opCode;
+        public final short rawFunctionCode;
+        public final int steps;
+        /** Data segment words changed by this step */
+        public final List<Write> writes = new ArrayList<>();
+
+        public Step(int height, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+            this.height = height;
+            this.programCounter = programCounter;
+            this.opCode = opCode;
+            this.rawFunctionCode = rawFunctionCode;
+            this.steps = steps;
+        }
+
+        /** Returns write to data segment address with <tt>name</tt>, or null if this step didn't change it. */
+        public Write getWrite(String name) {
+            for (Write write : this.writes)
+                if (write.name.equals(name))
+                    return write;
+
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            String function = this.rawFunctionCode != 0 ? " " + ExecutionProfiler.functionName(this.rawFunctionCode) : "";
+            return String.format("height %d, pc 0x%04x: %s%s", this.height, this.programCounter, this.opCode.name(), function);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final DataSegmentLabels labels;
+    private final int capacity;
+    private final long written;
+
+    /** Number of rounds that ended with AT finishing */
+    private int finishedRounds;
+
+    public TraceDecoder(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < TraceRecorder.HEADER_LENGTH
+                || buffer.getInt(0) != TraceRecorder.MAGIC || buffer.getInt(4) != TraceRecorder.VERSION)
+            throw new IOException("Not an AT trace, or unsupported version");
+
+        if (buffer.getInt(8) != TraceRecorder.RECORD_LENGTH)
+            throw new IOException("Unexpected trace record length: " + buffer.getInt(8));
+
+        this.capacity = buffer.getInt(12);
+        this.written = buffer.getLong(TraceRecorder.WRITTEN_OFFSET);
+
+        if (buffer.limit() != TraceRecorder.HEADER_LENGTH + (long) this.capacity * TraceRecorder.RECORD_LENGTH)
+            throw new IOException("AT trace truncated?");
+
+        byte[] atNameBytes = new byte[TraceRecorder.MAX_AT_NAME_LENGTH];
+        int atNameLength = 0;
+        while (atNameLength < atNameBytes.length && buffer.get(TraceRecorder.AT_NAME_OFFSET + atNameLength) != 0) {
+            atNameBytes[atNameLength] = buffer.get(TraceRecorder.AT_NAME_OFFSET + atNameLength);
+            ++atNameLength;
+        }
+
+        String atName = new String(atNameBytes, 0, atNameLength, StandardCharsets.US_ASCII);
+        this.labels = DataSegmentLabels.forAtName(atName);
+        if (this.labels == null)
+            throw new IOException("Unknown AT in trace: " + atName);
+
+        if (buffer.getInt(24) != this.labels.getByteLength())
+            throw new IOException("Trace data segment length doesn't match " + atName + " labels");
+    }
+
+    public static TraceDecoder open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new TraceDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public DataSegmentLabels getLabels() {
+        return this.labels;
+    }
+
+    /** Returns total number of records written, including any since overwritten. */
+    public long getRecordCount() {
+        return this.written;
+    }
+
+    /** Returns number of records overwritten because ring was full. */
+    public long getLostRecordCount() {
+        return Math.max(0L, this.written - this.capacity);
+    }
+
+    /** Returns number of decoded rounds that ended with AT finished. Only valid after {@link #decode()}. */
+    public int getFinishedRounds() {
+        return this.finishedRounds;
+    }
+
+    /** Returns steps still in ring, oldest first. */
+    public List<Step> decode() {
+        List<Step> results = new ArrayList<>();
+        this.finishedRounds = 0;
+
+        long first = getLostRecordCount();
+        int height = -1;
+        Step step = null;
+
+        for (long recordNumber = first; recordNumber < this.written; ++recordNumber) {
+            int offset = TraceRecorder.HEADER_LENGTH + (int) (recordNumber % this.capacity) * TraceRecorder.RECORD_LENGTH;
+
+            switch (this.buffer.get(offset)) {
+                case TraceRecorder.ROUND_START:
+                    height = this.buffer.getInt(offset + 4);
+                    step = null;
+                    break;
+
+                case TraceRecorder.STEP:
+                    step = new Step(height,
+                            this.buffer.getInt(offset + 4),
+                            OpCode.values()[this.buffer.get(offset + 1) & 0xff],
+                            this.buffer.getShort(offset + 2),
+                            this.buffer.getInt(offset + 8));
+                    results.add(step);
+                    break;
+
+                case TraceRecorder.WRITE:
+                    // Step may have been overwritten
+                    if (step == null)
+                        break;
+
+                    int address = this.buffer.getShort(offset + 2) & 0xffff;
+                    step.writes.add(new Write(address, this.labels.getName(address), this.buffer.getLong(offset + 8)));
+                    break;
+
+                case TraceRecorder.ROUND_END:
+                    if (this.buffer.get(offset + 1) != 0)
+                        ++this.finishedRounds;
+
+                    step = null;
+                    break;
+
+                default:
+                    throw new IllegalStateException(String.format("Unknown trace record type %d at record %d",
+                            this.buffer.get(offset), recordNumber));
+            }
+        }
+
+        return results;
+    }
+
+    /** Writes one line per step, followed by indented lines for each data segment word it changed. */
+    public void writeText(Writer writer) throws IOException {
+        writer.write(String.format("%s trace: %d records, %d overwritten%n", this.labels.getAtName(), this.written, getLostRecordCount()));
+
+        int height = Integer.MIN_VALUE;
+
+        for (Step step : decode()) {
+            if (step.height != height) {
+                height = step.height;
+                writer.write(String.format("%nRound at height %d%n", height));
+            }
+
+            String function = step.rawFunctionCode != 0 ? ExecutionProfiler.functionName(step.rawFunctionCode) : "";
+            writer.write(String.format("  0x%04x %-20s %-36s %d%n", step.programCounter, step.opCode.name(), function, step.steps));
+
+            for (Write write : step.writes)
+                writer.write(String.format("      %-26s = 0x%016x (%d)%n", write.name, write.value, write.value));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: trace-decoder <trace-file>");
+            System.exit(2);
+        }
+
+        TraceDecoder decoder = open(Paths.get(args[0]));
+
+        Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        decoder.writeText(writer);
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,265 @@
+package org.qortal.at.lottery.profiling;
+
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.qortal.at.lottery.AtListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+
+/**
+ * Records every step of AT execution into a compact binary ring of fixed-length records,
+ * for decoding later using {@link TraceDecoder}.
+ * <p>
+ * Records are:
+ * <ul>
+ *     <li>round start: block height</li>
+ *     <li>step: program counter, opcode, raw function code and steps charged</li>
+ *     <li>write: data segment address and new value, for each word changed by the preceding step</li>
+ *     <li>round end: whether AT finished</li>
+ * </ul>
+ * Once the ring is full, oldest records are overwritten, so the most recent history is always kept.
+ * The ring is either on-heap, or a memory-mapped file which survives the JVM dying mid-run.
+ * <p>
+ * Register with {@link org.qortal.at.lottery.DiceAPI#addListener(AtListener)} then run AT using
+ * {@link org.qortal.at.lottery.AtRunner}. Nothing is done per step unless a listener is registered,
+ * and a registered but disabled recorder returns immediately from every callback.
+ * <p>
+ * Changed words are found by comparing data segment from <tt>MachineState.toBytes()</tt> after each step,
+ * skipping steps whose opcodes only branch, sleep or call functions without a return value.
+ */
+public class TraceRecorder implements AtListener, Closeable {
+
+    static final int MAGIC = 0x41545452; // "ATTR"
+    static final int VERSION = 1;
+
+    /*
+     * File header layout:
+     *   0  magic (int)
+     *   4  version (int)
+     *   8  record length (int)
+     *  12  capacity in records (int)
+     *  16  total records written (long)
+     *  24  data segment byte length (int)
+     *  28  reserved (int)
+     *  32  AT name (ASCII, zero-padded)
+     */
+    static final int HEADER_LENGTH = 64;
+    static final int WRITTEN_OFFSET = 16;
+    static final int AT_NAME_OFFSET = 32;
+    static final int MAX_AT_NAME_LENGTH = HEADER_LENGTH - AT_NAME_OFFSET;
+
+    /*
+     * Record layout, all records are RECORD_LENGTH bytes:
+     *   0  record type (byte)
+     * ROUND_START:  4  block height (int)
+     * STEP:         1  opcode ordinal (byte), 2  raw function code (short), 4  program counter (int), 8  steps (int)
+     * WRITE:        2  data address (short), 8  new value (long)
+     * ROUND_END:    1  finished flag (byte)
+     */
+    static final int RECORD_LENGTH = 16;
+
+    static final byte ROUND_START = 1;
+    static final byte STEP = 2;
+    static final byte WRITE = 3;
+    static final byte ROUND_END = 4;
+
+    /** Opcodes that never write to data segment, so no need to look for changes after them */
+    private static final EnumSet<OpCode> NON_WRITING_OPCODES = EnumSet.of(
+            OpCode.JMP_ADR, OpCode.BZR_DAT, OpCode.BNZ_DAT, OpCode.BGT_DAT, OpCode.BLT_DAT, OpCode.BEQ_DAT, OpCode.BNE_DAT,
+            OpCode.SET_PCS, OpCode.SLP_DAT, OpCode.FIN_IMD,
+            OpCode.EXT_FUN, OpCode.EXT_FUN_DAT, OpCode.EXT_FUN_DAT_2);
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final int capacity;
+    private final int dataWordCount;
+
+    private volatile boolean isEnabled = true;
+    /** Whether current round is being recorded, so enabling mid-round doesn't produce half a round */
+    private boolean isRecording;
+
+    private long written;
+
+    /** Data segment words as of last check */
+    private final long[] dataWords;
+    /** Whether previous step might have written to data segment */
+    private boolean isCheckPending;
+
+    private TraceRecorder(ByteBuffer buffer, FileChannel channel, DataSegmentLabels labels, int capacity) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.dataWordCount = labels.getAddressCount();
+        this.dataWords = new long[this.dataWordCount];
+
+        byte[] atName = labels.getAtName().getBytes(StandardCharsets.US_ASCII);
+        if (atName.length > MAX_AT_NAME_LENGTH)
+            throw new IllegalArgumentException("AT name too long: " + labels.getAtName());
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_LENGTH);
+        buffer.putInt(12, capacity);
+        buffer.putLong(WRITTEN_OFFSET, 0L);
+        buffer.putInt(24, labels.getByteLength());
+        buffer.putInt(28, 0);
+        for (int i = 0; i < MAX_AT_NAME_LENGTH; ++i)
+            buffer.put(AT_NAME_OFFSET + i, i < atName.length ? atName[i] : 0);
+    }
+
+    /** Returns recorder keeping the most recent <tt>capacity</tt> records on-heap. */
+    public static TraceRecorder inMemory(DataSegmentLabels labels, int capacity) {
+        return new TraceRecorder(ByteBuffer.allocate(HEADER_LENGTH + capacity * RECORD_LENGTH), null, labels, capacity);
+    }
+
+    /** Returns recorder keeping the most recent <tt>capacity</tt> records in memory-mapped file at <tt>path</tt>, replacing any existing file. */
+    public static TraceRecorder mapped(Path path, DataSegmentLabels labels, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + (long) capacity * RECORD_LENGTH);
+            return new TraceRecorder(buffer, channel, labels, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Enables or disables recording, e.g. to trace only the rounds of interest. Takes effect from next round. */
+    public void setEnabled(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    public boolean isEnabled() {
+        return this.isEnabled;
+    }
+
+    /** Returns total number of records written, including any since overwritten. */
+    public long getRecordCount() {
+        return this.written;
+    }
+
+    /** Returns read-only view of header and ring, suitable for {@link TraceDecoder#TraceDecoder(ByteBuffer)}. */
+    public ByteBuffer asReadOnlyBuffer() {
+        return this.buffer.asReadOnlyBuffer();
+    }
+
+    /** Writes header and ring to <tt>path</tt>, e.g. for on-heap recorder. */
+    public void writeTo(Path path) throws IOException {
+        ByteBuffer view = asReadOnlyBuffer();
+        view.clear();
+
+        try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (view.hasRemaining())
+                output.write(view);
+        }
+    }
+
+    private int nextRecordOffset() {
+        int offset = HEADER_LENGTH + (int) (this.written % this.capacity) * RECORD_LENGTH;
+        ++this.written;
+        return offset;
+    }
+
+    /** Publishes record count last, so a mapped file never claims records that weren't fully written. */
+    private void commit() {
+        this.buffer.putLong(WRITTEN_OFFSET, this.written);
+    }
+
+    @Override
+    public void onRoundStart(MachineState state) {
+        this.isRecording = this.isEnabled;
+        if (!this.isRecording)
+            return;
+
+        loadDataWords(state.toBytes(), this.dataWords);
+        this.isCheckPending = false;
+
+        int offset = nextRecordOffset();
+        this.buffer.put(offset, ROUND_START);
+        this.buffer.putInt(offset + 4, state.getAPI().getCurrentBlockHeight());
+        commit();
+    }
+
+    @Override
+    public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+        if (!this.isRecording)
+            return;
+
+        // Changes made by previous step
+        if (this.isCheckPending)
+            recordWrites(state.toBytes());
+
+        int offset = nextRecordOffset();
+        this.buffer.put(offset, STEP);
+        this.buffer.put(offset + 1, (byte) opCode.ordinal());
+        this.buffer.putShort(offset + 2, rawFunctionCode);
+        this.buffer.putInt(offset + 4, programCounter);
+        this.buffer.putInt(offset + 8, steps);
+        commit();
+
+        this.isCheckPending = !NON_WRITING_OPCODES.contains(opCode);
+    }
+
+    @Override
+    public void onRoundEnd(MachineState state, byte[] packedState) {
+        if (!this.isRecording)
+            return;
+
+        // Compare everything, as final step may have been skipped, e.g. sleeping
+        recordWrites(packedState);
+
+        int offset = nextRecordOffset();
+        this.buffer.put(offset, ROUND_END);
+        this.buffer.put(offset + 1, (byte) (state.isFinished() ? 1 : 0));
+        commit();
+
+        this.isRecording = false;
+    }
+
+    private void recordWrites(byte[] packedState) {
+        ByteBuffer packedBuffer = ByteBuffer.wrap(packedState);
+
+        for (int address = 0; address < this.dataWordCount; ++address) {
+            long value = packedBuffer.getLong(StateSizeAnalyser.HEADER_LENGTH + address * MachineState.VALUE_SIZE);
+            if (value == this.dataWords[address])
+                continue;
+
+            this.dataWords[address] = value;
+
+            int offset = nextRecordOffset();
+            this.buffer.put(offset, WRITE);
+            this.buffer.putShort(offset + 2, (short) address);
+            this.buffer.putLong(offset + 8, value);
+        }
+
+        commit();
+        this.isCheckPending = false;
+    }
+
+    private static void loadDataWords(byte[] packedState, long[] dataWords) {
+        ByteBuffer packedBuffer = ByteBuffer.wrap(packedState);
+
+        for (int address = 0; address < dataWords.length; ++address)
+            dataWords[address] = packedBuffer.getLong(StateSizeAnalyser.HEADER_LENGTH + address * MachineState.VALUE_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel == null)
+            return;
+
+        ((MappedByteBuffer) this.buffer).force();
+        this.channel.close();
+    }
+
+}
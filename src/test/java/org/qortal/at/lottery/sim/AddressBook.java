@@ -0,0 +1,108 @@
+package org.qortal.at.lottery.sim;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns address strings as small integer ids so chains can store addresses in primitive columns.
+ * <p>
+ * Address books opened from a file append newly interned addresses, one per line, so ids survive reopening.
+ * <p>
+ * Address books can also be copy-on-write forks of a parent, which must not be modified afterwards.
+ */
+public class AddressBook implements Closeable {
+
+    private final AddressBook parent;
+    private final int baseSize;
+
+    private final Map<String, Integer> idsByAddress = new HashMap<>();
+    private final List<String> addressesById = new ArrayList<>();
+
+    private BufferedWriter appender;
+
+    public AddressBook() {
+        this.parent = null;
+        this.baseSize = 0;
+    }
+
+    /** Creates copy-on-write fork of <tt>parent</tt>. */
+    public AddressBook(AddressBook parent) {
+        this.parent = parent;
+        this.baseSize = parent.size();
+    }
+
+    /** Opens address book backed by <tt>file</tt>, loading any existing addresses. */
+    public static AddressBook open(Path file) throws IOException {
+        AddressBook addressBook = new AddressBook();
+
+        if (Files.exists(file))
+            for (String address : Files.readAllLines(file, StandardCharsets.UTF_8))
+                addressBook.intern(address);
+
+        addressBook.appender = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        return addressBook;
+    }
+
+    public int intern(String address) {
+        int existingId = getId(address);
+        if (existingId != -1)
+            return existingId;
+
+        Integer id = this.baseSize + this.addressesById.size();
+        this.addressesById.add(address);
+        this.idsByAddress.put(address, id);
+
+        if (this.appender != null) {
+            try {
+                this.appender.write(address);
+                this.appender.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to save address", e);
+            }
+        }
+
+        return id;
+    }
+
+    /** Returns id for <tt>address</tt>, or -1 if never interned. */
+    public int getId(String address) {
+        if (this.parent != null) {
+            int parentId = this.parent.getId(address);
+
+            // Ignore anything parent gained after we forked
+            if (parentId != -1 && parentId < this.baseSize)
+                return parentId;
+        }
+
+        return this.idsByAddress.getOrDefault(address, -1);
+    }
+
+    public String getAddress(int id) {
+        if (id < this.baseSize)
+            return this.parent.getAddress(id);
+
+        return this.addressesById.get(id - this.baseSize);
+    }
+
+    public int size() {
+        return this.baseSize + this.addressesById.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.appender != null)
+            this.appender.close();
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.MachineState;
+import org.qortal.at.lottery.AtRunner;
+
+/**
+ * Bounded ring of per-block checkpoints for one AT, so a chain reorganisation up to <tt>maxDepth</tt> blocks deep
+ * can be undone without replaying the AT from its creation.
+ * <p>
+ * Each checkpoint is the AT's packed state after executing at that height, plus the API state that goes with it:
+ * balance and sleep-until-message timestamp. Packed states are shared rather than copied, as <tt>AtRunner</tt>
+ * replaces its packed state on every execution, so blocks where the AT didn't execute cost only a reference.
+ * <p>
+ * Run the AT using {@link #executeOnce(AtRunner)} instead of <tt>AtRunner.execute_once()</tt> so every block
+ * gets a checkpoint. {@link #rollback(AtRunner, int)} then truncates the chain and restores the AT
+ * in time proportional to reorg depth. Track several ATs with one instance each.
+ * <p>
+ * Not thread-safe.
+ */
+public class AtCheckpoints {
+
+    private final int maxDepth;
+
+    // Ring columns, one entry per block
+    private final int[] heights;
+    private final byte[][] packedStates;
+    private final long[] balances;
+    private final Long[] sleepUntilMessageTimestamps;
+    private final long[] executionCounts;
+
+    /** Number of checkpoints held */
+    private int count;
+    /** Ring index for next checkpoint, so newest is just before */
+    private int next;
+
+    public AtCheckpoints(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Max reorg depth must be at least 1");
+
+        this.maxDepth = maxDepth;
+
+        // Undoing maxDepth blocks needs the checkpoint before them too
+        int capacity = maxDepth + 1;
+        this.heights = new int[capacity];
+        this.packedStates = new byte[capacity][];
+        this.balances = new long[capacity];
+        this.sleepUntilMessageTimestamps = new Long[capacity];
+        this.executionCounts = new long[capacity];
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /** Returns number of blocks that can currently be rolled back. */
+    public int getAvailableDepth() {
+        return Math.max(0, this.count - 1);
+    }
+
+    /** Returns height of newest checkpoint, or 0 if none. */
+    public int getLatestHeight() {
+        return this.count == 0 ? 0 : this.heights[previous(this.next)];
+    }
+
+    private int previous(int index) {
+        return (index == 0 ? this.heights.length : index) - 1;
+    }
+
+    /** Executes AT using current block, like <tt>AtRunner.execute_once()</tt>, then records checkpoint for that block. */
+    public boolean executeOnce(AtRunner runner) {
+        boolean executed = runner.execute_once();
+        record(runner);
+        return executed;
+    }
+
+    /**
+     * Records checkpoint for the block AT has just been run against, i.e. the block before current block.
+     * Must be called for every block, as rollback relies on consecutive heights.
+     */
+    public void record(AtRunner runner) {
+        int height = runner.api.getCurrentBlockHeight() - 1;
+
+        if (this.count > 0 && height != getLatestHeight() + 1)
+            throw new IllegalStateException(String.format("Checkpoint for height %d doesn't follow height %d", height, getLatestHeight()));
+
+        int index = this.next;
+        this.heights[index] = height;
+        this.packedStates[index] = runner.packedState;
+        this.balances[index] = runner.api.getCurrentBalance(runner.state);
+        this.sleepUntilMessageTimestamps[index] = runner.api.getSleepUntilMessageTimestamp();
+        this.executionCounts[index] = runner.executionCount;
+
+        this.next = index + 1 == this.heights.length ? 0 : index + 1;
+        if (this.count < this.heights.length)
+            ++this.count;
+    }
+
+    /**
+     * Undoes the last <tt>depth</tt> blocks: chain is truncated and AT restored to just after it executed
+     * at the remaining latest height, ready to run against a replacement block.
+     * <p>
+     * Runner must be using a {@link ChainStoreAPI}. See {@link ChainStoreAPI#rollback(int, long, Long)}
+     * for what happens to the chain.
+     *
+     * @return height AT was restored to
+     */
+    public int rollback(AtRunner runner, int depth) {
+        if (!(runner.api instanceof ChainStoreAPI))
+            throw new IllegalArgumentException("Rollback needs AT running on ChainStoreAPI");
+
+        if (depth < 0 || depth > getAvailableDepth())
+            throw new IllegalArgumentException(String.format("Can't roll back %d blocks, only %d available", depth, getAvailableDepth()));
+
+        // Discard checkpoints of orphaned blocks
+        for (int i = 0; i < depth; ++i) {
+            this.next = previous(this.next);
+            this.packedStates[this.next] = null;
+            this.sleepUntilMessageTimestamps[this.next] = null;
+        }
+        this.count -= depth;
+
+        int index = previous(this.next);
+        ChainStoreAPI api = (ChainStoreAPI) runner.api;
+        api.rollback(this.heights[index], this.balances[index], this.sleepUntilMessageTimestamps[index]);
+
+        runner.packedState = this.packedStates[index];
+        runner.state = MachineState.fromBytes(api, runner.loggerFactory, runner.packedState, runner.codeBytes);
+        runner.executionCount = this.executionCounts[index];
+
+        return this.heights[index];
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.AtLoggerFactory;
+import org.ciyam.at.MachineState;
+import org.qortal.at.lottery.AtRunner;
+
+/**
+ * Snapshot of an AT and its simulated chain that can be cheaply forked many times,
+ * e.g. to compare "what if" scenarios from one prepared lottery without replaying every block.
+ * <p>
+ * AT state is the packed bytes from <tt>MachineState.toBytes()</tt>, and chain is shared copy-on-write,
+ * so each fork only costs the blocks and transactions it adds itself.
+ * <p>
+ * Once a snapshot is taken, the original runner must not be used, as its chain is now shared by all forks.
+ * Forks are independent of each other and can be run on separate threads.
+ */
+public class AtSnapshot {
+
+    private final ChainStoreAPI api;
+    private final AtLoggerFactory loggerFactory;
+    private final byte[] codeBytes;
+    private final byte[] packedState;
+    private final int height;
+
+    private AtSnapshot(ChainStoreAPI api, AtLoggerFactory loggerFactory, byte[] codeBytes, byte[] packedState) {
+        this.api = api;
+        this.loggerFactory = loggerFactory;
+        this.codeBytes = codeBytes;
+        this.packedState = packedState;
+        this.height = api.getCurrentBlockHeight();
+    }
+
+    /** Takes snapshot of AT run by <tt>runner</tt>, which must be using a {@link ChainStoreAPI}. */
+    public static AtSnapshot take(AtRunner runner) {
+        if (!(runner.api instanceof ChainStoreAPI))
+            throw new IllegalArgumentException("Snapshots need AT running on ChainStoreAPI");
+
+        return new AtSnapshot((ChainStoreAPI) runner.api, runner.loggerFactory, runner.codeBytes, runner.packedState);
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns new runner continuing from snapshot on its own fork of the chain.
+     * <p>
+     * Forks given the same <tt>seed</tt> see the same future block hashes.
+     */
+    public AtRunner fork(long seed) {
+        ChainStoreAPI forkApi = this.api.fork(seed);
+
+        AtRunner runner = new AtRunner(forkApi, this.loggerFactory);
+        runner.codeBytes = this.codeBytes;
+        runner.packedState = this.packedState;
+        runner.state = MachineState.fromBytes(forkApi, runner.loggerFactory, this.packedState, this.codeBytes);
+
+        return runner;
+    }
+
+    public AtRunner fork() {
+        return fork(this.api.getSeed());
+    }
+
+}
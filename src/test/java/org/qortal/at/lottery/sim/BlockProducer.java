@@ -0,0 +1,143 @@
+package org.qortal.at.lottery.sim;
+
+import org.qortal.at.lottery.AtRunner;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seals blocks from a {@link Mempool} and runs an AT on each block, on its own thread.
+ * <p>
+ * Each block takes up to {@link #maxTransactionsPerBlock} waiting transactions, then the AT is executed,
+ * which moves the chain on to the next block. Only this thread touches the chain and AT,
+ * so neither needs to be thread-safe; producers only ever see the mempool.
+ * <p>
+ * Blocks are produced back-to-back while transactions are waiting. When the mempool is empty,
+ * empty blocks are produced every {@link #idleBlockNanos}, so sleeping ATs still wake up.
+ * With {@link #idleBlocks} off, producer instead waits for transactions, so every block holds at least one.
+ */
+public class BlockProducer implements Runnable {
+
+    public int maxTransactionsPerBlock = 1000;
+    public long idleBlockNanos = TimeUnit.MICROSECONDS.toNanos(100);
+    /** Whether to produce empty blocks when mempool is empty. Can be changed while running. */
+    public volatile boolean idleBlocks = true;
+
+    private final AtRunner runner;
+    private final ChainStoreAPI api;
+    private final Mempool mempool;
+
+    private volatile boolean stopping;
+    private Thread thread;
+
+    // Stats, only accurate once thread has finished
+    private long blockCount;
+    private long transactionCount;
+    private long paymentAmount;
+    private long maxTransactionsInBlock;
+    private long totalInclusionNanos;
+    private long maxInclusionNanos;
+
+    /** @param runner    deployed on <tt>api</tt> */
+    public BlockProducer(AtRunner runner, ChainStoreAPI api, Mempool mempool) {
+        this.runner = runner;
+        this.api = api;
+        this.mempool = mempool;
+    }
+
+    public BlockProducer start() {
+        this.thread = new Thread(this, "block-producer");
+        this.thread.start();
+        return this;
+    }
+
+    /** Asks producer to stop once mempool is empty, then waits. Producer also stops if AT finishes. */
+    public void stopAndJoin() throws InterruptedException {
+        this.stopping = true;
+        this.thread.join();
+    }
+
+    /** Waits for producer to stop, e.g. because AT finished. */
+    public void join() throws InterruptedException {
+        this.thread.join();
+    }
+
+    @Override
+    public void run() {
+        while (!this.runner.state.isFinished()) {
+            int included = includeTransactions();
+
+            if (included == 0 && !this.idleBlocks) {
+                if (this.stopping && this.mempool.isEmpty())
+                    return;
+
+                // Wait for transactions without moving chain on
+                LockSupport.parkNanos(this.idleBlockNanos);
+                continue;
+            }
+
+            this.runner.execute_once();
+            ++this.blockCount;
+
+            if (included > 0)
+                continue;
+
+            if (this.stopping && this.mempool.isEmpty())
+                return;
+
+            LockSupport.parkNanos(this.idleBlockNanos);
+        }
+    }
+
+    private int includeTransactions() {
+        int included = 0;
+
+        Mempool.PendingTransaction transaction;
+        while (included < this.maxTransactionsPerBlock && (transaction = this.mempool.poll()) != null) {
+            if (transaction.isPayment()) {
+                this.api.sendPayment(transaction.sender, transaction.amount);
+                this.paymentAmount += transaction.amount;
+            } else {
+                this.api.sendMessage(transaction.sender);
+            }
+
+            long inclusionNanos = System.nanoTime() - transaction.submitNanos;
+            this.totalInclusionNanos += inclusionNanos;
+            this.maxInclusionNanos = Math.max(this.maxInclusionNanos, inclusionNanos);
+
+            ++included;
+        }
+
+        this.transactionCount += included;
+        this.maxTransactionsInBlock = Math.max(this.maxTransactionsInBlock, included);
+
+        return included;
+    }
+
+    public long getBlockCount() {
+        return this.blockCount;
+    }
+
+    public long getTransactionCount() {
+        return this.transactionCount;
+    }
+
+    /** Returns total amount of payments included in blocks. */
+    public long getPaymentAmount() {
+        return this.paymentAmount;
+    }
+
+    public long getMaxTransactionsInBlock() {
+        return this.maxTransactionsInBlock;
+    }
+
+    /** Returns mean time from submission to inclusion in a block, in nanoseconds. */
+    public long getMeanInclusionNanos() {
+        return this.transactionCount == 0 ? 0 : this.totalInclusionNanos / this.transactionCount;
+    }
+
+    public long getMaxInclusionNanos() {
+        return this.maxInclusionNanos;
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.qortal.at.lottery.sim;
+
+import org.qortal.utils.Base58;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams rows from an exported AT transaction history, one row at a time, so file size doesn't matter.
+ * <p>
+ * Accepts CSV, with a header line naming columns, or NDJSON with one flat object per line.
+ * Columns/keys: <tt>height</tt>, <tt>sequence</tt>, <tt>type</tt>, <tt>sender</tt>, <tt>recipient</tt> (optional),
+ * <tt>amount</tt> and <tt>blockHash</tt>.
+ * <p>
+ * <tt>type</tt> is <tt>PAYMENT</tt>, <tt>MESSAGE</tt>, or <tt>BLOCK</tt> for rows that only declare a block's hash.
+ * <tt>amount</tt> is in QORT, e.g. <tt>1.5</tt>. <tt>blockHash</tt> is hex or Base58.
+ */
+public class ChainExportReader implements Closeable {
+
+    public static class Row {
+        public int height;
+        public int sequence;
+        public String type;
+        public String sender;
+        public String recipient;
+        public long amount;
+        public String blockHash;
+    }
+
+    private final BufferedReader reader;
+    private final boolean isCsv;
+    private String[] csvColumns;
+    private final Map<String, String> values = new HashMap<>();
+    private long lineNumber;
+
+    public ChainExportReader(Path path) throws IOException {
+        this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        this.isCsv = path.getFileName().toString().endsWith(".csv");
+
+        if (this.isCsv) {
+            String header = this.reader.readLine();
+            if (header == null)
+                throw new IOException("Missing CSV header in " + path);
+
+            this.csvColumns = header.trim().split(",");
+            this.lineNumber = 1;
+        }
+    }
+
+    /** Reads next row into <tt>row</tt>, returning false at end of file. */
+    public boolean next(Row row) throws IOException {
+        String line;
+        do {
+            line = this.reader.readLine();
+            if (line == null)
+                return false;
+
+            ++this.lineNumber;
+        } while (line.isBlank());
+
+        this.values.clear();
+
+        try {
+            if (this.isCsv)
+                parseCsv(line);
+            else
+                parseJson(line);
+
+            row.height = Integer.parseInt(this.values.get("height"));
+            row.sequence = Integer.parseInt(this.values.getOrDefault("sequence", "0"));
+            row.type = this.values.get("type").toUpperCase();
+            row.sender = this.values.get("sender");
+            row.recipient = this.values.get("recipient");
+            String amount = this.values.get("amount");
+            row.amount = amount == null || amount.isEmpty() ? 0L : new BigDecimal(amount).setScale(8).unscaledValue().longValue();
+            row.blockHash = this.values.get("blockHash");
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("Unable to parse export line %d: %s", this.lineNumber, e.getMessage()), e);
+        }
+
+        return true;
+    }
+
+    private void parseCsv(String line) {
+        String[] fields = line.split(",", -1);
+
+        for (int i = 0; i < this.csvColumns.length && i < fields.length; ++i)
+            if (!fields[i].isEmpty())
+                this.values.put(this.csvColumns[i], fields[i].trim());
+    }
+
+    /** Minimal parser for flat objects with string or number values */
+    private void parseJson(String line) {
+        int i = line.indexOf('{') + 1;
+
+        while (i > 0 && i < line.length()) {
+            int keyStart = line.indexOf('"', i);
+            if (keyStart == -1)
+                break;
+
+            int keyEnd = line.indexOf('"', keyStart + 1);
+            String key = line.substring(keyStart + 1, keyEnd);
+
+            int valueStart = line.indexOf(':', keyEnd) + 1;
+            while (Character.isWhitespace(line.charAt(valueStart)))
+                ++valueStart;
+
+            String value;
+            if (line.charAt(valueStart) == '"') {
+                int valueEnd = line.indexOf('"', valueStart + 1);
+                value = line.substring(valueStart + 1, valueEnd);
+                i = valueEnd + 1;
+            } else {
+                int valueEnd = valueStart;
+                while (valueEnd < line.length() && ",}".indexOf(line.charAt(valueEnd)) == -1)
+                    ++valueEnd;
+
+                value = line.substring(valueStart, valueEnd).trim();
+                i = valueEnd;
+            }
+
+            if (!value.equals("null"))
+                this.values.put(key, value);
+        }
+    }
+
+    /** Decodes hex or Base58 block hash into 32 bytes, hashing longer values (e.g. block signatures) using SHA256. */
+    public static byte[] decodeBlockHash(String blockHash) {
+        byte[] bytes;
+
+        if (blockHash.length() == 64 && blockHash.matches("[0-9a-fA-F]+")) {
+            bytes = new byte[32];
+            for (int i = 0; i < bytes.length; ++i)
+                bytes[i] = (byte) Integer.parseInt(blockHash.substring(i * 2, i * 2 + 2), 16);
+        } else {
+            bytes = Base58.decode(blockHash);
+        }
+
+        if (bytes.length == 32)
+            return bytes;
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable?", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+}
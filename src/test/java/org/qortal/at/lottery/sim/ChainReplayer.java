@@ -0,0 +1,209 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.qortal.at.lottery.AtListener;
+import org.qortal.at.lottery.AtRunner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Replays an exported AT transaction history, read using {@link ChainExportReader}, through a Lottery or Dice AT.
+ * <p>
+ * Transactions to the AT are added to the simulated chain, block by block, and the AT is executed as each block is
+ * completed. Rows sent <i>by</i> the AT are its recorded payouts, which are compared in order against the AT's
+ * simulated payouts by recipient and amount.
+ * <p>
+ * Rows are streamed, and only unmatched payouts are held in memory, so with a {@link MappedChainStore}
+ * arbitrarily large exports can be replayed.
+ * <p>
+ * Blocks with no rows get a zero hash. Exports should include <tt>BLOCK</tt> rows for any block whose hash the AT
+ * might use, i.e. block before each AT wakeup.
+ */
+public class ChainReplayer {
+
+    private static final byte[] ZERO_HASH = new byte[ChainStore.HASH_LENGTH];
+
+    public static class Report {
+        public long rows;
+        public long blocks;
+        public long executions;
+        public long steps;
+        public long executionNanos;
+
+        public long recordedPayments;
+        public long simulatedPayments;
+        public long matchedPayments;
+
+        /** Description of first payout that didn't match, or null if all matched */
+        public String firstMismatch;
+
+        public boolean finished;
+
+        public boolean allPaymentsMatched() {
+            return this.firstMismatch == null && this.recordedPayments == this.matchedPayments && this.simulatedPayments == this.matchedPayments;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows: %d, blocks: %d, AT executions: %d, steps: %d, execution time: %d ms, " +
+                            "recorded payments: %d, simulated payments: %d, matched: %d, finished: %s%s",
+                    this.rows, this.blocks, this.executions, this.steps, this.executionNanos / 1_000_000L,
+                    this.recordedPayments, this.simulatedPayments, this.matchedPayments, this.finished,
+                    this.firstMismatch == null ? "" : ", first mismatch: " + this.firstMismatch);
+        }
+    }
+
+    private static class Payment {
+        final int height;
+        final String recipient;
+        final long amount;
+
+        Payment(int height, String recipient, long amount) {
+            this.height = height;
+            this.recipient = recipient;
+            this.amount = amount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s to %s at height %d", TestAPI.prettyAmount(this.amount), this.recipient, this.height);
+        }
+    }
+
+    private final ChainStoreAPI api;
+    private final String atAddress;
+    private final String creatorAddress;
+
+    private final ArrayDeque<Payment> recordedPayments = new ArrayDeque<>();
+    private final ArrayDeque<Payment> simulatedPayments = new ArrayDeque<>();
+    private int simulatedPaymentsSeen;
+
+    /**
+     * @param api               simulated chain, usually empty
+     * @param atAddress         AT's real address, as used in export
+     * @param creatorAddress    AT creator's real address, as used in export
+     */
+    public ChainReplayer(ChainStoreAPI api, String atAddress, String creatorAddress) {
+        this.api = api;
+        this.atAddress = atAddress;
+        this.creatorAddress = creatorAddress;
+    }
+
+    public Report replay(Path exportPath, byte[] creationBytes, long initialBalance, int deployHeight) throws IOException {
+        Report report = new Report();
+
+        this.api.addListener(new AtListener() {
+            @Override
+            public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+                report.steps += steps;
+            }
+        });
+
+        while (this.api.getCurrentBlockHeight() < deployHeight)
+            this.api.bumpCurrentBlockHeight();
+
+        AtRunner runner = new AtRunner(this.api, new QuietTestLoggerFactory()).deploy(creationBytes, initialBalance);
+        this.api.setCreationBlockHeight(deployHeight);
+
+        ChainExportReader.Row row = new ChainExportReader.Row();
+
+        try (ChainExportReader reader = new ChainExportReader(exportPath)) {
+            while (reader.next(row)) {
+                ++report.rows;
+
+                if (row.height < this.api.getCurrentBlockHeight()) {
+                    if (row.height < deployHeight)
+                        continue;
+
+                    throw new IOException(String.format("Export rows out of order at height %d", row.height));
+                }
+
+                // Complete blocks before this row's block
+                while (row.height > this.api.getCurrentBlockHeight()) {
+                    boolean isRowBlock = row.height == this.api.getCurrentBlockHeight() + 1;
+                    this.api.setNextBlockHash(isRowBlock && row.blockHash != null ? ChainExportReader.decodeBlockHash(row.blockHash) : ZERO_HASH);
+
+                    executeBlock(runner, report);
+                }
+
+                if (row.type.equals("BLOCK")) {
+                    // Might be declaring hash of block we're already on, e.g. AT's deployment block
+                    if (row.blockHash != null)
+                        this.api.getChain().setBlockHash(row.height, ChainExportReader.decodeBlockHash(row.blockHash));
+
+                    continue;
+                }
+
+                if (row.sender.equals(this.atAddress)) {
+                    this.recordedPayments.addLast(new Payment(row.height, row.recipient, row.amount));
+                    ++report.recordedPayments;
+                    continue;
+                }
+
+                if (row.recipient != null && !row.recipient.equals(this.atAddress))
+                    continue;
+
+                String sender = row.sender.equals(this.creatorAddress) ? TestAPI.AT_CREATOR_ADDRESS : row.sender;
+
+                if (row.type.equals("PAYMENT"))
+                    this.api.sendPayment(sender, row.amount);
+                else
+                    this.api.sendMessage(sender);
+            }
+        }
+
+        // Process final block
+        if (!runner.state.isFinished())
+            executeBlock(runner, report);
+
+        matchPayments(report);
+
+        report.executions = runner.executionCount;
+        report.finished = runner.state.isFinished();
+
+        return report;
+    }
+
+    private void executeBlock(AtRunner runner, Report report) {
+        if (!runner.state.isFinished()) {
+            long startNanos = System.nanoTime();
+            runner.execute_once();
+            report.executionNanos += System.nanoTime() - startNanos;
+        } else {
+            this.api.bumpCurrentBlockHeight();
+        }
+
+        ++report.blocks;
+
+        // Collect new simulated payments
+        for (; this.simulatedPaymentsSeen < this.api.getAtPaymentCount(); ++this.simulatedPaymentsSeen) {
+            String recipient = this.api.getAtPaymentRecipient(this.simulatedPaymentsSeen);
+            if (recipient.equals(TestAPI.AT_CREATOR_ADDRESS))
+                recipient = this.creatorAddress;
+
+            this.simulatedPayments.addLast(new Payment(this.api.getAtPaymentHeight(this.simulatedPaymentsSeen), recipient, this.api.getAtPaymentAmount(this.simulatedPaymentsSeen)));
+            ++report.simulatedPayments;
+        }
+
+        matchPayments(report);
+    }
+
+    private void matchPayments(Report report) {
+        while (!this.recordedPayments.isEmpty() && !this.simulatedPayments.isEmpty()) {
+            Payment recorded = this.recordedPayments.removeFirst();
+            Payment simulated = this.simulatedPayments.removeFirst();
+
+            if (Objects.equals(recorded.recipient, simulated.recipient) && recorded.amount == simulated.amount)
+                ++report.matchedPayments;
+            else if (report.firstMismatch == null)
+                report.firstMismatch = String.format("recorded %s, simulated %s", recorded, simulated);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.qortal.at.lottery.sim;
+
+/**
+ * Storage for a simulated blockchain, addressed by block height (from 1) and transaction index (from 0).
+ * <p>
+ * Transactions are only ever appended to the latest block. Addresses are stored as ids from an {@link AddressBook}
+ * and transaction types as {@link org.ciyam.at.API.ATTransactionType} ordinals.
+ */
+public interface ChainStore {
+
+    int HASH_LENGTH = 32;
+
+    /** Number of blocks, which is also the current block height. */
+    int getBlockCount();
+
+    long getTransactionCount();
+
+    /**
+     * Index transactions sent to <tt>recipientId</tt>, to speed up {@link #findTransactionTo(int, long, int)}.
+     * Must be called before any such transactions are added. Stores only need to support one indexed recipient.
+     */
+    void indexRecipient(int recipientId);
+
+    /** Appends new empty block, which becomes the current block. */
+    void addBlock(byte[] blockHash);
+
+    /**
+     * Seed for hashes of transactions added without one.
+     * Must be called before any such transactions are added.
+     *
+     * @see #deriveTransactionHash(long, long, byte[], int)
+     */
+    void setTransactionHashSeed(long seed);
+
+    /**
+     * Appends transaction to current block, returning its transaction index.
+     * <p>
+     * If <tt>txHash</tt> is null then hash is derived from seed and transaction index when needed,
+     * so stores don't have to keep it.
+     */
+    long addTransaction(int senderId, int recipientId, int typeOrdinal, long amount, byte[] txHash);
+
+    /**
+     * Removes all blocks after <tt>height</tt>, and their transactions, e.g. to simulate a chain reorganisation.
+     * Block at <tt>height</tt> becomes the current block again. Cost is proportional to what is removed.
+     */
+    void truncate(int height);
+
+    /** Replaces hash of existing block at <tt>height</tt>, e.g. when replaying real blocks. */
+    void setBlockHash(int height, byte[] blockHash);
+
+    /** Copies hash of block at <tt>height</tt> into <tt>dest</tt> at <tt>offset</tt>. */
+    void getBlockHash(int height, byte[] dest, int offset);
+
+    long getTimestamp(long txIndex);
+
+    int getSenderId(long txIndex);
+
+    int getRecipientId(long txIndex);
+
+    int getTypeOrdinal(long txIndex);
+
+    long getAmount(long txIndex);
+
+    /** Copies hash of transaction into <tt>dest</tt> at <tt>offset</tt>. */
+    void getTransactionHash(long txIndex, byte[] dest, int offset);
+
+    /**
+     * Returns index of first transaction to <tt>recipientId</tt> with timestamp after <tt>afterTimestamp</tt>
+     * and in a block no later than <tt>maxHeight</tt>, or -1 if none.
+     */
+    long findTransactionTo(int recipientId, long afterTimestamp, int maxHeight);
+
+    /**
+     * Writes pseudo-random hash for transaction at <tt>txIndex</tt> into <tt>dest</tt> at <tt>offset</tt>.
+     * <p>
+     * Each 8-byte word is a SplitMix64 output for seed, transaction index and word position,
+     * so any transaction's hash can be recomputed without generating those before it.
+     */
+    static void deriveTransactionHash(long seed, long txIndex, byte[] dest, int offset) {
+        for (int word = 0; word < HASH_LENGTH / Long.BYTES; ++word) {
+            long z = seed + (txIndex * (HASH_LENGTH / Long.BYTES) + word + 1) * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+
+            // Big-endian, like ByteBuffer, so leading bytes are the most significant
+            for (int i = 0; i < Long.BYTES; ++i)
+                dest[offset + word * Long.BYTES + i] = (byte) (z >>> (56 - i * 8));
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.API;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.Timestamp;
+import org.qortal.at.lottery.DiceAPI;
+import org.qortal.utils.Base58;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link DiceAPI} backed by a {@link ChainStore} instead of <tt>TestAPI</tt>'s list of <tt>TestBlock</tt>s.
+ * <p>
+ * Register A holds a reference to the transaction found, not its full hash:
+ * A1 is transaction index (plus one, so never zero) and A2-A4 are the leading bytes of transaction's hash.
+ * <p>
+ * Addresses in B are zero-padded to 32 bytes. Real Qortal addresses, e.g. from replayed exports, are Base58-decoded
+ * as on Qortal. Simulator's made-up addresses, like <tt>Q_player_01</tt>, aren't valid Base58 so are UTF-8 bytes instead.
+ * <p>
+ * Block hashes are derived from seed and height, and transaction hashes from seed and transaction index,
+ * so runs are repeatable, and forks with the same seed see the same future blocks and transactions.
+ * AT's balance is tracked here: incoming payments are credited when added to chain.
+ * MESSAGE contents are not stored, so B is zeroed by <tt>PUT_MESSAGE_FROM_TX_IN_A_INTO_B</tt>.
+ */
+public class ChainStoreAPI extends DiceAPI {
+
+    private static final int PAYMENT_ORDINAL = API.ATTransactionType.PAYMENT.ordinal();
+    private static final int MESSAGE_ORDINAL = API.ATTransactionType.MESSAGE.ordinal();
+
+    /** Base58-decoded Qortal address: version byte, public key hash and checksum */
+    private static final int QORTAL_ADDRESS_LENGTH = 25;
+    /** Version byte of Qortal addresses, which makes them start with 'Q' in Base58 */
+    private static final byte QORTAL_ADDRESS_VERSION = 58;
+
+    protected final ChainStore chain;
+    protected final AddressBook addressBook;
+    protected final long seed;
+
+    protected final int atAddressId;
+    protected final int creatorAddressId;
+
+    protected int creationBlockHeight = 1;
+    protected long balance;
+
+    /** Hash to use for next block, instead of random */
+    protected byte[] nextBlockHash;
+
+    /** Reused for transaction & block hashes */
+    private final byte[] hashBuffer = new byte[ChainStore.HASH_LENGTH];
+
+    // AT payments, newest last
+    private int atPaymentCount;
+    private long[] atPaymentTxIndexes = new long[64];
+
+    public ChainStoreAPI(ChainStore chain, AddressBook addressBook, long seed) {
+        this.chain = chain;
+        this.addressBook = addressBook;
+        this.seed = seed;
+
+        this.atAddressId = addressBook.intern(AT_ADDRESS);
+        this.creatorAddressId = addressBook.intern(AT_CREATOR_ADDRESS);
+
+        chain.indexRecipient(this.atAddressId);
+        chain.setTransactionHashSeed(seed);
+
+        if (chain.getBlockCount() == 0)
+            addNewBlock();
+    }
+
+    public ChainStoreAPI(ChainStore chain, long seed) {
+        this(chain, new AddressBook(), seed);
+    }
+
+    public ChainStore getChain() {
+        return this.chain;
+    }
+
+    public AddressBook getAddressBook() {
+        return this.addressBook;
+    }
+
+    /**
+     * Returns new API on a copy-on-write fork of this API's chain and address book, with same AT balance and sleep state.
+     * <p>
+     * This API's chain must not be modified afterwards. Fork only reports its own AT payments.
+     */
+    public ChainStoreAPI fork(long seed) {
+        ChainStoreAPI fork = new ChainStoreAPI(new ColumnarChainStore(this.chain), new AddressBook(this.addressBook), seed);
+
+        fork.creationBlockHeight = this.creationBlockHeight;
+        fork.balance = this.balance;
+        fork.sleepUntilMessageTimestamp = this.sleepUntilMessageTimestamp;
+        fork.logTransactions = this.logTransactions;
+
+        return fork;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public void setCreationBlockHeight(int creationBlockHeight) {
+        this.creationBlockHeight = creationBlockHeight;
+    }
+
+    /** Use <tt>blockHash</tt> for next block added by {@link #bumpCurrentBlockHeight()}, e.g. when replaying real blocks. */
+    public void setNextBlockHash(byte[] blockHash) {
+        this.nextBlockHash = blockHash;
+    }
+
+    /**
+     * Rolls back to just after AT executed at <tt>height</tt>, e.g. for a chain reorganisation:
+     * later blocks and their transactions are removed, including AT payments, and AT's balance and sleep state
+     * are restored from values saved at that height. Then a new block is started at <tt>height + 1</tt>,
+     * using hash from {@link #setNextBlockHash(byte[])} if set, otherwise the same seed-derived hash as before.
+     *
+     * @see AtCheckpoints
+     */
+    public void rollback(int height, long balance, Long sleepUntilMessageTimestamp) {
+        this.chain.truncate(height);
+
+        long transactionCount = this.chain.getTransactionCount();
+        while (this.atPaymentCount > 0 && this.atPaymentTxIndexes[this.atPaymentCount - 1] >= transactionCount)
+            --this.atPaymentCount;
+
+        this.balance = balance;
+        this.sleepUntilMessageTimestamp = sleepUntilMessageTimestamp;
+
+        addNewBlock();
+    }
+
+    // Simulation
+
+    public long sendPayment(String sender, long amount) {
+        this.balance += amount;
+        return this.chain.addTransaction(this.addressBook.intern(sender), this.atAddressId, PAYMENT_ORDINAL, amount, null);
+    }
+
+    public long sendMessage(String sender) {
+        return this.chain.addTransaction(this.addressBook.intern(sender), this.atAddressId, MESSAGE_ORDINAL, 0L, null);
+    }
+
+    /** Adds <tt>TestTransaction</tt> to chain, keeping compatibility with code written for <tt>TestAPI</tt>. */
+    @Override
+    public void addTransactionToCurrentBlock(TestTransaction testTransaction) {
+        int recipientId = this.addressBook.intern(testTransaction.recipient);
+        long amount = testTransaction.txType.equals(ATTransactionType.PAYMENT) ? testTransaction.amount : 0L;
+
+        if (recipientId == this.atAddressId)
+            this.balance += amount;
+
+        this.chain.addTransaction(this.addressBook.intern(testTransaction.sender), recipientId, testTransaction.txType.ordinal(), amount, testTransaction.txHash);
+    }
+
+    public int getAtPaymentCount() {
+        return this.atPaymentCount;
+    }
+
+    /** Returns chain transaction index of AT's <tt>index</tt>-th payment. */
+    public long getAtPaymentTxIndex(int index) {
+        return this.atPaymentTxIndexes[index];
+    }
+
+    public String getAtPaymentRecipient(int index) {
+        return this.addressBook.getAddress(this.chain.getRecipientId(this.atPaymentTxIndexes[index]));
+    }
+
+    public long getAtPaymentAmount(int index) {
+        return this.chain.getAmount(this.atPaymentTxIndexes[index]);
+    }
+
+    public int getAtPaymentHeight(int index) {
+        return new Timestamp(this.chain.getTimestamp(this.atPaymentTxIndexes[index])).blockHeight;
+    }
+
+    private void addNewBlock() {
+        if (this.nextBlockHash != null) {
+            this.chain.addBlock(this.nextBlockHash);
+            this.nextBlockHash = null;
+            return;
+        }
+
+        // Golden ratio multiplier spreads consecutive heights
+        new Random(this.seed + (this.chain.getBlockCount() + 1) * 0x9E3779B97F4A7C15L).nextBytes(this.hashBuffer);
+        this.chain.addBlock(this.hashBuffer);
+    }
+
+    private long getTransactionIndexFromA(MachineState state) {
+        return this.getA1(state) - 1;
+    }
+
+    /** Returns address as AT would see it in B, before zero-padding. */
+    public static byte[] toAddressBytes(String address) {
+        byte[] addressBytes;
+        try {
+            addressBytes = Base58.decode(address);
+        } catch (IllegalArgumentException e) {
+            // Not Base58, so not a real address
+            addressBytes = null;
+        }
+
+        if (addressBytes != null && addressBytes.length == QORTAL_ADDRESS_LENGTH && addressBytes[0] == QORTAL_ADDRESS_VERSION)
+            return addressBytes;
+
+        return address.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns address from B, reversing {@link #toAddressBytes(String)}. */
+    public static String fromAddressBytes(byte[] encodedAddress) {
+        boolean isQortalAddress = encodedAddress[0] == QORTAL_ADDRESS_VERSION;
+        for (int i = QORTAL_ADDRESS_LENGTH; isQortalAddress && i < encodedAddress.length; ++i)
+            isQortalAddress = encodedAddress[i] == 0;
+
+        if (isQortalAddress)
+            return Base58.encode(Arrays.copyOf(encodedAddress, QORTAL_ADDRESS_LENGTH));
+
+        return decodeAddress(encodedAddress);
+    }
+
+    private byte[] encodeAddress(int addressId) {
+        return Arrays.copyOf(toAddressBytes(this.addressBook.getAddress(addressId)), 32);
+    }
+
+    private int internAddress(byte[] encodedAddress) {
+        return this.addressBook.intern(fromAddressBytes(encodedAddress));
+    }
+
+    private void recordAtPayment(int recipientId, long amount) {
+        long txIndex = this.chain.addTransaction(this.atAddressId, recipientId, PAYMENT_ORDINAL, amount, null);
+
+        if (this.atPaymentCount == this.atPaymentTxIndexes.length)
+            this.atPaymentTxIndexes = Arrays.copyOf(this.atPaymentTxIndexes, this.atPaymentCount * 2);
+
+        this.atPaymentTxIndexes[this.atPaymentCount++] = txIndex;
+    }
+
+    // Blockchain
+
+    @Override
+    public int getCurrentBlockHeight() {
+        return this.chain.getBlockCount();
+    }
+
+    @Override
+    public void bumpCurrentBlockHeight() {
+        addNewBlock();
+    }
+
+    @Override
+    public int getATCreationBlockHeight(MachineState state) {
+        return this.creationBlockHeight;
+    }
+
+    @Override
+    public void putPreviousBlockHashIntoA(MachineState state) {
+        this.chain.getBlockHash(this.getCurrentBlockHeight() - 1, this.hashBuffer, 0);
+        this.setA(state, this.hashBuffer);
+    }
+
+    @Override
+    protected boolean hasTransactionAfterTimestamp(int currentBlockHeight, Timestamp timestamp, MachineState state) {
+        return this.chain.findTransactionTo(this.atAddressId, timestamp.longValue(), currentBlockHeight) != -1;
+    }
+
+    @Override
+    public void putTransactionAfterTimestampIntoA(Timestamp timestamp, MachineState state) {
+        long txIndex = this.chain.findTransactionTo(this.atAddressId, timestamp.longValue(), this.getCurrentBlockHeight());
+
+        if (txIndex == -1) {
+            this.zeroA(state);
+            return;
+        }
+
+        this.chain.getTransactionHash(txIndex, this.hashBuffer, 0);
+        ByteBuffer.wrap(this.hashBuffer).putLong(0, txIndex + 1);
+        this.setA(state, this.hashBuffer);
+
+        if (!this.listeners.isEmpty())
+            notifyTransaction(state,
+                    this.addressBook.getAddress(this.chain.getSenderId(txIndex)),
+                    ATTransactionType.values()[this.chain.getTypeOrdinal(txIndex)],
+                    this.chain.getAmount(txIndex),
+                    this.chain.getTimestamp(txIndex));
+    }
+
+    @Override
+    public long getTypeFromTransactionInA(MachineState state) {
+        int typeOrdinal = this.chain.getTypeOrdinal(getTransactionIndexFromA(state));
+        return ATTransactionType.values()[typeOrdinal].value;
+    }
+
+    @Override
+    public long getAmountFromTransactionInA(MachineState state) {
+        return this.chain.getAmount(getTransactionIndexFromA(state));
+    }
+
+    @Override
+    public long getTimestampFromTransactionInA(MachineState state) {
+        return this.chain.getTimestamp(getTransactionIndexFromA(state));
+    }
+
+    @Override
+    public long generateRandomUsingTransactionInA(MachineState state) {
+        long txIndex = getTransactionIndexFromA(state);
+
+        this.chain.getTransactionHash(txIndex, this.hashBuffer, 0);
+        long txHashBits = ByteBuffer.wrap(this.hashBuffer).getLong(0);
+
+        this.chain.getBlockHash(this.getCurrentBlockHeight() - 1, this.hashBuffer, 0);
+        long blockHashBits = ByteBuffer.wrap(this.hashBuffer).getLong(0);
+
+        return txHashBits ^ blockHashBits;
+    }
+
+    @Override
+    public void putMessageFromTransactionInAIntoB(MachineState state) {
+        this.zeroB(state);
+    }
+
+    @Override
+    public void putAddressFromTransactionInAIntoB(MachineState state) {
+        int senderId = this.chain.getSenderId(getTransactionIndexFromA(state));
+        this.setB(state, encodeAddress(senderId));
+    }
+
+    @Override
+    public void putCreatorAddressIntoB(MachineState state) {
+        this.setB(state, encodeAddress(this.creatorAddressId));
+    }
+
+    // Balances
+
+    @Override
+    public long getCurrentBalance(MachineState state) {
+        return this.balance;
+    }
+
+    @Override
+    public void setCurrentBalance(long currentBalance) {
+        this.balance = currentBalance;
+    }
+
+    @Override
+    public void payAmountToB(long amount, MachineState state) {
+        int recipientId = internAddress(this.getB(state));
+
+        if (!this.listeners.isEmpty())
+            notifyPayment(state, this.addressBook.getAddress(recipientId), amount);
+
+        recordAtPayment(recipientId, amount);
+        this.balance -= amount;
+    }
+
+    @Override
+    public void onFinished(long finalBalance, MachineState state) {
+        notifyFinished(state, finalBalance);
+
+        if (finalBalance > 0)
+            recordAtPayment(this.creatorAddressId, finalBalance);
+
+        this.balance = 0;
+    }
+
+}
@@ -0,0 +1,413 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.Timestamp;
+
+import java.util.Arrays;
+
+/**
+ * Simulated blockchain held in primitive column arrays.
+ * <p>
+ * Each transaction costs 17 bytes (sender, recipient, type and amount), plus 4 if indexed,
+ * compared to a couple of hundred for a <tt>TestAPI.TestTransaction</tt> with its strings, boxed fields and hash array.
+ * Timestamps aren't stored as they follow from block boundaries, and hashes are derived from seed and transaction index
+ * using {@link ChainStore#deriveTransactionHash(long, long, byte[], int)}. Only hashes given explicitly are stored.
+ * <p>
+ * Transactions to the recipient registered using {@link #indexRecipient(int)} are also indexed,
+ * so AT lookups are a binary search rather than a scan.
+ * <p>
+ * A store can also be a copy-on-write fork of a <i>parent</i> store: blocks and transactions up to the fork point
+ * are read from parent, and only new ones are held in this store's columns. Parent must not be modified
+ * afterwards, except by appending, which forks ignore. Many forks can share one parent.
+ */
+public class ColumnarChainStore implements ChainStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Largest array most JVMs will allocate, which limits transaction and block counts */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** Array header size with compressed class pointers, for {@link #getRetainedBytes()} */
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    /**
+     * Fixed-length hashes held in chunks of {@value #CHUNK_HASHES}, so capacity isn't limited by maximum array size
+     * and offsets never overflow. First chunk grows by doubling, so small chains and forks stay small.
+     */
+    private static class HashColumn {
+        private static final int CHUNK_SHIFT = 16;
+        private static final int CHUNK_HASHES = 1 << CHUNK_SHIFT;
+        private static final int CHUNK_MASK = CHUNK_HASHES - 1;
+
+        private byte[][] chunks = new byte[1][];
+
+        void put(int index, byte[] hash) {
+            int chunkIndex = index >>> CHUNK_SHIFT;
+            int offset = (index & CHUNK_MASK) * HASH_LENGTH;
+
+            if (chunkIndex >= this.chunks.length)
+                this.chunks = Arrays.copyOf(this.chunks, Math.max(chunkIndex + 1, this.chunks.length * 2));
+
+            byte[] chunk = this.chunks[chunkIndex];
+            if (chunk == null)
+                chunk = this.chunks[chunkIndex] = new byte[chunkIndex == 0 ? INITIAL_CAPACITY * HASH_LENGTH : CHUNK_HASHES * HASH_LENGTH];
+
+            while (offset >= chunk.length)
+                chunk = this.chunks[chunkIndex] = Arrays.copyOf(chunk, Math.min(chunk.length * 2, CHUNK_HASHES * HASH_LENGTH));
+
+            System.arraycopy(hash, 0, chunk, offset, HASH_LENGTH);
+        }
+
+        void get(int index, byte[] dest, int destOffset) {
+            System.arraycopy(this.chunks[index >>> CHUNK_SHIFT], (index & CHUNK_MASK) * HASH_LENGTH, dest, destOffset, HASH_LENGTH);
+        }
+
+        long getRetainedBytes() {
+            long bytes = arrayBytes(this.chunks.length, Integer.BYTES);
+
+            for (byte[] chunk : this.chunks)
+                if (chunk != null)
+                    bytes += arrayBytes(chunk.length, 1);
+
+            return bytes;
+        }
+    }
+
+    // Parent, for forks
+    private final ChainStore parent;
+    private final int baseBlockCount;
+    private final long baseTransactionCount;
+    /** Sequence of next transaction in parent's current block, for carrying on with it */
+    private final int baseNextSequence;
+
+    // Block columns, for blocks after base
+    private int blockCount;
+    private int[] blockFirstTxIndex = new int[INITIAL_CAPACITY];
+    private final HashColumn blockHashes = new HashColumn();
+
+    // Transaction columns, for transactions after base
+    private int transactionCount;
+    private int[] senderIds = new int[INITIAL_CAPACITY];
+    private int[] recipientIds = new int[INITIAL_CAPACITY];
+    private byte[] typeOrdinals = new byte[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+
+    private long transactionHashSeed;
+
+    // Explicitly given transaction hashes, in transaction order, as most are derived
+    private int explicitHashCount;
+    private int[] explicitHashTxIndexes = new int[0];
+    private final HashColumn explicitHashes = new HashColumn();
+
+    // Per-recipient index, only for the recipient we care about (usually the AT)
+    private int indexedRecipientId = -1;
+    private int indexedCount;
+    private int[] indexedTxIndexes = new int[INITIAL_CAPACITY];
+
+    public ColumnarChainStore() {
+        this.parent = null;
+        this.baseBlockCount = 0;
+        this.baseTransactionCount = 0;
+        this.baseNextSequence = 0;
+    }
+
+    /** Creates copy-on-write fork of <tt>parent</tt> at its current block and transaction. */
+    public ColumnarChainStore(ChainStore parent) {
+        this.parent = parent;
+        this.baseBlockCount = parent.getBlockCount();
+        this.baseTransactionCount = parent.getTransactionCount();
+
+        // Carry on with parent's current block
+        int sequence = 0;
+        if (this.baseTransactionCount > 0) {
+            Timestamp lastTimestamp = new Timestamp(parent.getTimestamp(this.baseTransactionCount - 1));
+
+            if (lastTimestamp.blockHeight == this.baseBlockCount)
+                sequence = lastTimestamp.transactionSequence + 1;
+        }
+
+        this.baseNextSequence = sequence;
+    }
+
+    @Override
+    public int getBlockCount() {
+        return this.baseBlockCount + this.blockCount;
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return this.baseTransactionCount + this.transactionCount;
+    }
+
+    @Override
+    public void indexRecipient(int recipientId) {
+        if (this.indexedRecipientId != -1 && this.indexedRecipientId != recipientId)
+            throw new IllegalStateException("Only one recipient can be indexed");
+
+        this.indexedRecipientId = recipientId;
+    }
+
+    @Override
+    public void setTransactionHashSeed(long seed) {
+        this.transactionHashSeed = seed;
+    }
+
+    @Override
+    public void addBlock(byte[] blockHash) {
+        if (this.blockCount == this.blockFirstTxIndex.length)
+            this.blockFirstTxIndex = Arrays.copyOf(this.blockFirstTxIndex, nextCapacity(this.blockCount, "blocks"));
+
+        this.blockFirstTxIndex[this.blockCount] = this.transactionCount;
+        this.blockHashes.put(this.blockCount, blockHash);
+        ++this.blockCount;
+    }
+
+    @Override
+    public long addTransaction(int senderId, int recipientId, int typeOrdinal, long amount, byte[] txHash) {
+        if (getBlockCount() == 0)
+            throw new IllegalStateException("No block to add transaction to");
+
+        if (this.transactionCount == this.senderIds.length)
+            grow(nextCapacity(this.transactionCount, "transactions"));
+
+        int txIndex = this.transactionCount++;
+
+        this.senderIds[txIndex] = senderId;
+        this.recipientIds[txIndex] = recipientId;
+        this.typeOrdinals[txIndex] = (byte) typeOrdinal;
+        this.amounts[txIndex] = amount;
+
+        if (txHash != null) {
+            if (this.explicitHashCount == this.explicitHashTxIndexes.length)
+                this.explicitHashTxIndexes = Arrays.copyOf(this.explicitHashTxIndexes, Math.max(INITIAL_CAPACITY, nextCapacity(this.explicitHashCount, "explicit hashes")));
+
+            this.explicitHashes.put(this.explicitHashCount, txHash);
+            this.explicitHashTxIndexes[this.explicitHashCount++] = txIndex;
+        }
+
+        if (recipientId == this.indexedRecipientId) {
+            if (this.indexedCount == this.indexedTxIndexes.length)
+                this.indexedTxIndexes = Arrays.copyOf(this.indexedTxIndexes, nextCapacity(this.indexedCount, "indexed transactions"));
+
+            this.indexedTxIndexes[this.indexedCount++] = txIndex;
+        }
+
+        return this.baseTransactionCount + txIndex;
+    }
+
+    /** Only this store's own blocks can be removed, as parent may be shared with other forks. */
+    @Override
+    public void truncate(int height) {
+        if (height > getBlockCount())
+            throw new IllegalArgumentException(String.format("Can't truncate to height %d beyond current height %d", height, getBlockCount()));
+
+        if (height < this.baseBlockCount)
+            throw new IllegalStateException("Can't truncate parent's blocks");
+
+        int localBlockCount = height - this.baseBlockCount;
+        int newTransactionCount = localBlockCount < this.blockCount ? this.blockFirstTxIndex[localBlockCount] : this.transactionCount;
+
+        // Index and explicit hashes are in transaction order, so removed entries are all at the end
+        while (this.indexedCount > 0 && this.indexedTxIndexes[this.indexedCount - 1] >= newTransactionCount)
+            --this.indexedCount;
+
+        while (this.explicitHashCount > 0 && this.explicitHashTxIndexes[this.explicitHashCount - 1] >= newTransactionCount)
+            --this.explicitHashCount;
+
+        this.blockCount = localBlockCount;
+        this.transactionCount = newTransactionCount;
+    }
+
+    /** Returns doubled capacity, capped at {@link #MAX_CAPACITY}, or throws if already full. */
+    private static int nextCapacity(int capacity, String what) {
+        if (capacity >= MAX_CAPACITY)
+            throw new IllegalStateException(String.format("Columnar chain store can't hold more than %d %s", MAX_CAPACITY, what));
+
+        return (int) Math.min((long) capacity * 2, MAX_CAPACITY);
+    }
+
+    private void grow(int capacity) {
+        this.senderIds = Arrays.copyOf(this.senderIds, capacity);
+        this.recipientIds = Arrays.copyOf(this.recipientIds, capacity);
+        this.typeOrdinals = Arrays.copyOf(this.typeOrdinals, capacity);
+        this.amounts = Arrays.copyOf(this.amounts, capacity);
+    }
+
+    /** Returns index of last local block starting at or before local <tt>txIndex</tt>, or -1 if still in parent's block. */
+    private int getLocalBlockIndex(int txIndex) {
+        int low = 0;
+        int high = this.blockCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (this.blockFirstTxIndex[mid] <= txIndex)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low - 1;
+    }
+
+    /**
+     * Returns local index of transaction at <tt>height</tt> and <tt>sequence</tt>, or if there's no such transaction,
+     * of the next one after it, clamped to this store's transactions.
+     */
+    private int getLocalTxIndex(int height, int sequence) {
+        if (height < this.baseBlockCount)
+            return 0;
+
+        int localBlockIndex = height - this.baseBlockCount - 1;
+        if (localBlockIndex >= this.blockCount)
+            return this.transactionCount;
+
+        int blockEnd = localBlockIndex + 1 < this.blockCount ? this.blockFirstTxIndex[localBlockIndex + 1] : this.transactionCount;
+
+        // Parent's current block, which this store might carry on with
+        long blockStart = localBlockIndex < 0 ? -this.baseNextSequence : this.blockFirstTxIndex[localBlockIndex];
+
+        return (int) Math.max(0L, Math.min(blockStart + sequence, blockEnd));
+    }
+
+    @Override
+    public void setBlockHash(int height, byte[] blockHash) {
+        if (height <= this.baseBlockCount)
+            throw new IllegalStateException("Can't modify parent's blocks");
+
+        this.blockHashes.put(height - this.baseBlockCount - 1, blockHash);
+    }
+
+    @Override
+    public void getBlockHash(int height, byte[] dest, int offset) {
+        if (height <= this.baseBlockCount) {
+            this.parent.getBlockHash(height, dest, offset);
+            return;
+        }
+
+        this.blockHashes.get(height - this.baseBlockCount - 1, dest, offset);
+    }
+
+    @Override
+    public long getTimestamp(long txIndex) {
+        if (txIndex < this.baseTransactionCount)
+            return this.parent.getTimestamp(txIndex);
+
+        int localTxIndex = (int) (txIndex - this.baseTransactionCount);
+        int localBlockIndex = getLocalBlockIndex(localTxIndex);
+
+        if (localBlockIndex < 0)
+            return Timestamp.toLong(this.baseBlockCount, this.baseNextSequence + localTxIndex);
+
+        return Timestamp.toLong(this.baseBlockCount + localBlockIndex + 1, localTxIndex - this.blockFirstTxIndex[localBlockIndex]);
+    }
+
+    @Override
+    public int getSenderId(long txIndex) {
+        if (txIndex < this.baseTransactionCount)
+            return this.parent.getSenderId(txIndex);
+
+        return this.senderIds[(int) (txIndex - this.baseTransactionCount)];
+    }
+
+    @Override
+    public int getRecipientId(long txIndex) {
+        if (txIndex < this.baseTransactionCount)
+            return this.parent.getRecipientId(txIndex);
+
+        return this.recipientIds[(int) (txIndex - this.baseTransactionCount)];
+    }
+
+    @Override
+    public int getTypeOrdinal(long txIndex) {
+        if (txIndex < this.baseTransactionCount)
+            return this.parent.getTypeOrdinal(txIndex);
+
+        return this.typeOrdinals[(int) (txIndex - this.baseTransactionCount)];
+    }
+
+    @Override
+    public long getAmount(long txIndex) {
+        if (txIndex < this.baseTransactionCount)
+            return this.parent.getAmount(txIndex);
+
+        return this.amounts[(int) (txIndex - this.baseTransactionCount)];
+    }
+
+    @Override
+    public void getTransactionHash(long txIndex, byte[] dest, int offset) {
+        if (txIndex < this.baseTransactionCount) {
+            this.parent.getTransactionHash(txIndex, dest, offset);
+            return;
+        }
+
+        int position = Arrays.binarySearch(this.explicitHashTxIndexes, 0, this.explicitHashCount, (int) (txIndex - this.baseTransactionCount));
+
+        if (position >= 0)
+            this.explicitHashes.get(position, dest, offset);
+        else
+            ChainStore.deriveTransactionHash(this.transactionHashSeed, txIndex, dest, offset);
+    }
+
+    @Override
+    public long findTransactionTo(int recipientId, long afterTimestamp, int maxHeight) {
+        if (this.parent != null) {
+            long txIndex = this.parent.findTransactionTo(recipientId, afterTimestamp, Math.min(maxHeight, this.baseBlockCount));
+
+            // Ignore anything parent gained after we forked
+            if (txIndex != -1 && txIndex < this.baseTransactionCount)
+                return txIndex;
+        }
+
+        // Local transaction range to search, as timestamps follow transaction order
+        Timestamp after = new Timestamp(afterTimestamp);
+        int startTxIndex = getLocalTxIndex(after.blockHeight, after.transactionSequence + 1);
+        int endTxIndex = getLocalTxIndex(maxHeight + 1, 0);
+
+        if (recipientId == this.indexedRecipientId) {
+            // Binary search for first indexed transaction in range
+            int low = 0;
+            int high = this.indexedCount;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (this.indexedTxIndexes[mid] < startTxIndex)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            if (low == this.indexedCount)
+                return -1;
+
+            int txIndex = this.indexedTxIndexes[low];
+            return txIndex < endTxIndex ? this.baseTransactionCount + txIndex : -1;
+        }
+
+        // Unindexed recipient - scan range
+        for (int txIndex = startTxIndex; txIndex < endTxIndex; ++txIndex)
+            if (this.recipientIds[txIndex] == recipientId)
+                return this.baseTransactionCount + txIndex;
+
+        return -1;
+    }
+
+    /** Returns heap used by this store's columns, including unused capacity, but not by parent. */
+    public long getRetainedBytes() {
+        return arrayBytes(this.blockFirstTxIndex.length, Integer.BYTES)
+                + this.blockHashes.getRetainedBytes()
+                + arrayBytes(this.senderIds.length, Integer.BYTES)
+                + arrayBytes(this.recipientIds.length, Integer.BYTES)
+                + arrayBytes(this.typeOrdinals.length, 1)
+                + arrayBytes(this.amounts.length, Long.BYTES)
+                + arrayBytes(this.explicitHashTxIndexes.length, Integer.BYTES)
+                + this.explicitHashes.getRetainedBytes()
+                + arrayBytes(this.indexedTxIndexes.length, Integer.BYTES);
+    }
+
+    /** Array size, including header and padding to 8 bytes. */
+    private static long arrayBytes(int length, int elementSize) {
+        return (ARRAY_HEADER_BYTES + (long) length * elementSize + 7) & ~7L;
+    }
+
+}
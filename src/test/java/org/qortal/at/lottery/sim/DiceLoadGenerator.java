@@ -0,0 +1,250 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.FunctionCode;
+import org.ciyam.at.MachineState;
+import org.ciyam.at.OpCode;
+import org.ciyam.at.test.QuietTestLoggerFactory;
+import org.ciyam.at.test.TestAPI;
+import org.qortal.at.lottery.AtListener;
+import org.qortal.at.lottery.AtRunner;
+import org.qortal.at.lottery.Dice;
+import org.qortal.at.lottery.DiceAPI;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives a Dice AT with sustained bet traffic, many bets per block, for a number of blocks.
+ * <p>
+ * Transaction mix per bet is chosen using seeded random, so runs are repeatable:
+ * <ul>
+ *     <li>under-minimum payments, which AT ignores</li>
+ *     <li>oversize payments, which AT refunds</li>
+ *     <li>non-creator MESSAGEs, which AT ignores</li>
+ *     <li>normal payments between minimum and 2x minimum</li>
+ * </ul>
+ * A creator MESSAGE is sent in the final block, which finishes the AT.
+ */
+public class DiceLoadGenerator {
+
+    public long seed = 0L;
+
+    public int betsPerBlock = 10;
+    public int playerCount = 20;
+    public int blockCount = 1000;
+
+    public long minimumAmount = 1_0000_0000L; // 1 QORT
+    public int sides = Dice.DEFAULT_SIDES;
+    public int multiplier = Dice.DEFAULT_MULTIPLIER;
+    public long initialBalance = 1_000_000_0000_0000L; // 1M QORT
+
+    public int underMinimumPercent = 10;
+    public int oversizePercent = 5;
+    public int messagePercent = 5;
+
+    public boolean finishWithCreatorMessage = true;
+
+    public static class Report {
+        public long blocks;
+        public long transactions;
+        public long executions;
+        public long executionNanos;
+
+        public long wakeups;
+        public long transactionsScanned;
+        public long maxTransactionsScannedPerWakeup;
+
+        public long payouts;
+        public long refunds;
+        /** Latency in blocks from bet to payout/refund, indexed by latency, capped at last index */
+        public final long[] payoutLatencyHistogram = new long[64];
+
+        public boolean finished;
+
+        public double getExecutionsPerSecond() {
+            return this.executionNanos == 0 ? 0.0 : this.executions * 1_000_000_000.0 / this.executionNanos;
+        }
+
+        public double getTransactionsScannedPerWakeup() {
+            return this.wakeups == 0 ? 0.0 : (double) this.transactionsScanned / this.wakeups;
+        }
+
+        public long getPayoutLatencyPercentile(double percentile) {
+            long total = Arrays.stream(this.payoutLatencyHistogram).sum();
+            long threshold = (long) Math.ceil(total * percentile / 100.0);
+
+            long cumulative = 0;
+            for (int latency = 0; latency < this.payoutLatencyHistogram.length; ++latency) {
+                cumulative += this.payoutLatencyHistogram[latency];
+                if (cumulative >= threshold && cumulative > 0)
+                    return latency;
+            }
+
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("blocks: %d, transactions: %d, AT executions: %d (%.1f/s), " +
+                            "transactions scanned per wakeup: %.2f (max %d), payouts: %d, refunds: %d, " +
+                            "payout latency blocks p50: %d, p99: %d, finished: %s",
+                    this.blocks, this.transactions, this.executions, getExecutionsPerSecond(),
+                    getTransactionsScannedPerWakeup(), this.maxTransactionsScannedPerWakeup,
+                    this.payouts, this.refunds,
+                    getPayoutLatencyPercentile(50), getPayoutLatencyPercentile(99),
+                    this.finished);
+        }
+    }
+
+    /** Bet awaiting possible payout */
+    private static class Bet {
+        final String player;
+        final long amount;
+        final int height;
+
+        Bet(String player, long amount, int height) {
+            this.player = player;
+            this.amount = amount;
+            this.height = height;
+        }
+    }
+
+    /** Counts transaction lookups by AT per wakeup */
+    private static class ScanCounter implements AtListener {
+        final Report report;
+        long roundLookups;
+
+        ScanCounter(Report report) {
+            this.report = report;
+        }
+
+        @Override
+        public void onRoundStart(MachineState state) {
+            this.roundLookups = 0;
+        }
+
+        @Override
+        public void onOpCode(MachineState state, int programCounter, OpCode opCode, short rawFunctionCode, int steps) {
+            if (rawFunctionCode == FunctionCode.PUT_TX_AFTER_TIMESTAMP_INTO_A.value)
+                ++this.roundLookups;
+        }
+
+        @Override
+        public void onRoundEnd(MachineState state, byte[] packedState) {
+            // Final lookup in each wakeup finds nothing
+            long scanned = Math.max(0, this.roundLookups - 1);
+
+            this.report.wakeups++;
+            this.report.transactionsScanned += scanned;
+            this.report.maxTransactionsScannedPerWakeup = Math.max(this.report.maxTransactionsScannedPerWakeup, scanned);
+        }
+    }
+
+    public Report run() {
+        Random random = new Random(this.seed);
+        Report report = new Report();
+
+        DiceAPI api = new DiceAPI();
+        api.setLogTransactions(false);
+        api.addListener(new ScanCounter(report));
+
+        String[] players = new String[this.playerCount];
+        for (int i = 0; i < players.length; ++i) {
+            players[i] = String.format("Q_player_%04d", i);
+            new TestAPI.TestAccount(players[i], Long.MAX_VALUE / 4).addToMap(api.accounts);
+        }
+
+        AtRunner runner = new AtRunner(api, new QuietTestLoggerFactory())
+                .deploy(Dice.buildQortalAT(this.minimumAmount, this.sides, this.multiplier), this.initialBalance);
+
+        runner.execute_once();
+
+        ArrayDeque<Bet> pendingBets = new ArrayDeque<>();
+        int atTransactionsSeen = api.atTransactions.size();
+
+        for (int blockIndex = 0; blockIndex < this.blockCount; ++blockIndex) {
+            int height = api.getCurrentBlockHeight();
+
+            for (int betIndex = 0; betIndex < this.betsPerBlock; ++betIndex) {
+                String player = players[random.nextInt(players.length)];
+                int roll = random.nextInt(100);
+
+                if (roll < this.messagePercent) {
+                    runner.send_message(player, new byte[0]);
+                } else {
+                    long amount = nextAmount(random, roll - this.messagePercent);
+                    runner.send_payment(player, amount);
+
+                    if (amount >= this.minimumAmount)
+                        pendingBets.addLast(new Bet(player, amount, height));
+                }
+
+                ++report.transactions;
+            }
+
+            if (this.finishWithCreatorMessage && blockIndex == this.blockCount - 1) {
+                runner.send_message(TestAPI.AT_CREATOR_ADDRESS, new byte[0]);
+                ++report.transactions;
+            }
+
+            long startNanos = System.nanoTime();
+            boolean executed = runner.execute_once();
+            if (executed)
+                report.executionNanos += System.nanoTime() - startNanos;
+
+            atTransactionsSeen = matchPayouts(api.atTransactions, atTransactionsSeen, pendingBets, height, this.multiplier, report);
+
+            ++report.blocks;
+
+            if (runner.state.isFinished())
+                break;
+        }
+
+        report.executions = runner.executionCount;
+        report.finished = runner.state.isFinished();
+
+        return report;
+    }
+
+    private long nextAmount(Random random, int roll) {
+        if (roll < this.underMinimumPercent)
+            return 1 + (long) (random.nextDouble() * (this.minimumAmount - 1));
+
+        if (roll < this.underMinimumPercent + this.oversizePercent)
+            return this.initialBalance;
+
+        return this.minimumAmount + (long) (random.nextDouble() * this.minimumAmount);
+    }
+
+    /** Matches new AT payments against pending bets, in order, returning new count of AT transactions seen. */
+    private static int matchPayouts(List<TestAPI.TestTransaction> atTransactions, int atTransactionsSeen, ArrayDeque<Bet> pendingBets, int height,
+            int multiplier, Report report) {
+        for (int i = atTransactionsSeen; i < atTransactions.size(); ++i) {
+            TestAPI.TestTransaction payment = atTransactions.get(i);
+
+            // AT processes bets in order, so any earlier non-matching bets lost
+            while (!pendingBets.isEmpty()) {
+                Bet bet = pendingBets.removeFirst();
+
+                if (!bet.player.equals(payment.recipient))
+                    continue;
+
+                if (payment.amount == bet.amount)
+                    ++report.refunds;
+                else if (payment.amount == bet.amount * multiplier)
+                    ++report.payouts;
+                else
+                    continue;
+
+                int latency = Math.min(height - bet.height, report.payoutLatencyHistogram.length - 1);
+                report.payoutLatencyHistogram[latency]++;
+                break;
+            }
+        }
+
+        return atTransactions.size();
+    }
+
+}
@@ -0,0 +1,393 @@
+package org.qortal.at.lottery.sim;
+
+import org.ciyam.at.Timestamp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulated blockchain stored in memory-mapped segment files, so chains can be larger than the heap
+ * and reopened later for replay.
+ * <p>
+ * Files in chain directory:
+ * <ul>
+ *     <li><tt>chain.meta</tt> - block/transaction counts and indexed recipient</li>
+ *     <li><tt>transactions-NNNNN.seg</tt> - fixed-size transaction records</li>
+ *     <li><tt>blocks-NNNNN.seg</tt> - block hashes, by height</li>
+ *     <li><tt>heights-NNNNN.seg</tt> - sparse index: first transaction index of every {@value #HEIGHT_INDEX_INTERVAL}th block</li>
+ *     <li><tt>recipient-NNNNN.seg</tt> - indexes of transactions sent to indexed recipient</li>
+ * </ul>
+ * All reads are absolute gets from mapped buffers, so there's no copying or deserialisation except for hashes.
+ * <p>
+ * Not thread-safe.
+ */
+public class MappedChainStore implements ChainStore, Closeable {
+
+    public static final int HEIGHT_INDEX_INTERVAL = 256;
+
+    // Transaction record layout
+    private static final int TX_SENDER_OFFSET = 0;
+    private static final int TX_RECIPIENT_OFFSET = 4;
+    private static final int TX_TYPE_OFFSET = 8;
+    private static final int TX_AMOUNT_OFFSET = 16;
+    private static final int TX_TIMESTAMP_OFFSET = 24;
+    private static final int TX_HASH_OFFSET = 32;
+    private static final int TX_RECORD_SIZE = TX_HASH_OFFSET + HASH_LENGTH;
+
+    // Meta layout
+    private static final int META_BLOCK_COUNT_OFFSET = 0;
+    private static final int META_TRANSACTION_COUNT_OFFSET = 8;
+    private static final int META_CURRENT_BLOCK_FIRST_TX_OFFSET = 16;
+    private static final int META_INDEXED_RECIPIENT_OFFSET = 24;
+    private static final int META_INDEXED_COUNT_OFFSET = 32;
+    private static final int META_SIZE = 40;
+
+    private static final int RECORDS_PER_SEGMENT = 1 << 20;
+
+    /** Fixed-size records spread over equally sized memory-mapped segment files */
+    private static class SegmentedFile implements Closeable {
+        private final Path directory;
+        private final String prefix;
+        private final int recordSize;
+        private final List<FileChannel> channels = new ArrayList<>();
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+        SegmentedFile(Path directory, String prefix, int recordSize) throws IOException {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.recordSize = recordSize;
+
+            // Map any existing segments
+            while (Files.exists(segmentPath(this.segments.size())))
+                mapSegment(this.segments.size());
+        }
+
+        private Path segmentPath(int segmentIndex) {
+            return this.directory.resolve(String.format("%s-%05d.seg", this.prefix, segmentIndex));
+        }
+
+        private void mapSegment(int segmentIndex) throws IOException {
+            FileChannel channel = FileChannel.open(segmentPath(segmentIndex), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.channels.add(channel);
+            this.segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) RECORDS_PER_SEGMENT * this.recordSize));
+        }
+
+        /** Returns segment containing record, mapping new segments as needed. */
+        MappedByteBuffer segment(long recordIndex) {
+            int segmentIndex = (int) (recordIndex / RECORDS_PER_SEGMENT);
+
+            try {
+                while (segmentIndex >= this.segments.size())
+                    mapSegment(this.segments.size());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to map chain segment", e);
+            }
+
+            return this.segments.get(segmentIndex);
+        }
+
+        int offset(long recordIndex) {
+            return (int) (recordIndex % RECORDS_PER_SEGMENT) * this.recordSize;
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : this.segments)
+                segment.force();
+        }
+
+        @Override
+        public void close() throws IOException {
+            force();
+
+            for (FileChannel channel : this.channels)
+                channel.close();
+        }
+    }
+
+    private final FileChannel metaChannel;
+    private final MappedByteBuffer meta;
+
+    private final SegmentedFile transactions;
+    private final SegmentedFile blocks;
+    private final SegmentedFile heights;
+    private final SegmentedFile recipientIndex;
+
+    // Cached from meta
+    private int blockCount;
+    private long transactionCount;
+    private long currentBlockFirstTxIndex;
+    private int indexedRecipientId;
+    private long indexedCount;
+
+    /** Hashes are stored, so seed only matters while adding transactions */
+    private long transactionHashSeed;
+    private final byte[] derivedHash = new byte[HASH_LENGTH];
+
+    /** Opens chain in <tt>directory</tt>, creating it if necessary. */
+    public MappedChainStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        Path metaPath = directory.resolve("chain.meta");
+        boolean isNew = !Files.exists(metaPath);
+
+        this.metaChannel = FileChannel.open(metaPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.meta = this.metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+
+        if (isNew)
+            this.meta.putInt(META_INDEXED_RECIPIENT_OFFSET, -1);
+
+        this.blockCount = (int) this.meta.getLong(META_BLOCK_COUNT_OFFSET);
+        this.transactionCount = this.meta.getLong(META_TRANSACTION_COUNT_OFFSET);
+        this.currentBlockFirstTxIndex = this.meta.getLong(META_CURRENT_BLOCK_FIRST_TX_OFFSET);
+        this.indexedRecipientId = this.meta.getInt(META_INDEXED_RECIPIENT_OFFSET);
+        this.indexedCount = this.meta.getLong(META_INDEXED_COUNT_OFFSET);
+
+        this.transactions = new SegmentedFile(directory, "transactions", TX_RECORD_SIZE);
+        this.blocks = new SegmentedFile(directory, "blocks", HASH_LENGTH);
+        this.heights = new SegmentedFile(directory, "heights", Long.BYTES);
+        this.recipientIndex = new SegmentedFile(directory, "recipient", Long.BYTES);
+    }
+
+    @Override
+    public int getBlockCount() {
+        return this.blockCount;
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return this.transactionCount;
+    }
+
+    @Override
+    public void indexRecipient(int recipientId) {
+        if (this.indexedRecipientId == recipientId)
+            return;
+
+        if (this.indexedRecipientId != -1)
+            throw new IllegalStateException("Only one recipient can be indexed");
+
+        this.indexedRecipientId = recipientId;
+        this.meta.putInt(META_INDEXED_RECIPIENT_OFFSET, recipientId);
+    }
+
+    @Override
+    public void setTransactionHashSeed(long seed) {
+        this.transactionHashSeed = seed;
+    }
+
+    @Override
+    public void addBlock(byte[] blockHash) {
+        long blockIndex = this.blockCount;
+
+        MappedByteBuffer segment = this.blocks.segment(blockIndex);
+        putBytes(segment, this.blocks.offset(blockIndex), blockHash);
+
+        if (blockIndex % HEIGHT_INDEX_INTERVAL == 0) {
+            long heightIndex = blockIndex / HEIGHT_INDEX_INTERVAL;
+            this.heights.segment(heightIndex).putLong(this.heights.offset(heightIndex), this.transactionCount);
+        }
+
+        this.currentBlockFirstTxIndex = this.transactionCount;
+        ++this.blockCount;
+
+        this.meta.putLong(META_CURRENT_BLOCK_FIRST_TX_OFFSET, this.currentBlockFirstTxIndex);
+        this.meta.putLong(META_BLOCK_COUNT_OFFSET, this.blockCount);
+    }
+
+    @Override
+    public long addTransaction(int senderId, int recipientId, int typeOrdinal, long amount, byte[] txHash) {
+        if (this.blockCount == 0)
+            throw new IllegalStateException("No block to add transaction to");
+
+        long txIndex = this.transactionCount;
+        int sequence = (int) (txIndex - this.currentBlockFirstTxIndex);
+
+        if (txHash == null) {
+            ChainStore.deriveTransactionHash(this.transactionHashSeed, txIndex, this.derivedHash, 0);
+            txHash = this.derivedHash;
+        }
+
+        MappedByteBuffer segment = this.transactions.segment(txIndex);
+        int offset = this.transactions.offset(txIndex);
+
+        segment.putInt(offset + TX_SENDER_OFFSET, senderId);
+        segment.putInt(offset + TX_RECIPIENT_OFFSET, recipientId);
+        segment.put(offset + TX_TYPE_OFFSET, (byte) typeOrdinal);
+        segment.putLong(offset + TX_AMOUNT_OFFSET, amount);
+        segment.putLong(offset + TX_TIMESTAMP_OFFSET, Timestamp.toLong(this.blockCount, sequence));
+        putBytes(segment, offset + TX_HASH_OFFSET, txHash);
+
+        if (recipientId == this.indexedRecipientId) {
+            long indexIndex = this.indexedCount++;
+            this.recipientIndex.segment(indexIndex).putLong(this.recipientIndex.offset(indexIndex), txIndex);
+            this.meta.putLong(META_INDEXED_COUNT_OFFSET, this.indexedCount);
+        }
+
+        this.transactionCount = txIndex + 1;
+        this.meta.putLong(META_TRANSACTION_COUNT_OFFSET, this.transactionCount);
+
+        return txIndex;
+    }
+
+    /** Segment files keep their size; removed records are simply overwritten by later appends. */
+    @Override
+    public void truncate(int height) {
+        if (height < 0 || height > this.blockCount)
+            throw new IllegalArgumentException(String.format("Can't truncate to height %d, current height %d", height, this.blockCount));
+
+        long newTransactionCount = getFirstTxIndexAtOrAfter(height + 1);
+        this.currentBlockFirstTxIndex = getFirstTxIndexAtOrAfter(height);
+
+        // Index is in transaction order, so removed entries are all at the end
+        while (this.indexedCount > 0 && getIndexedTxIndex(this.indexedCount - 1) >= newTransactionCount)
+            --this.indexedCount;
+
+        this.blockCount = height;
+        this.transactionCount = newTransactionCount;
+
+        this.meta.putLong(META_BLOCK_COUNT_OFFSET, this.blockCount);
+        this.meta.putLong(META_TRANSACTION_COUNT_OFFSET, this.transactionCount);
+        this.meta.putLong(META_CURRENT_BLOCK_FIRST_TX_OFFSET, this.currentBlockFirstTxIndex);
+        this.meta.putLong(META_INDEXED_COUNT_OFFSET, this.indexedCount);
+    }
+
+    @Override
+    public void setBlockHash(int height, byte[] blockHash) {
+        long blockIndex = height - 1;
+        putBytes(this.blocks.segment(blockIndex), this.blocks.offset(blockIndex), blockHash);
+    }
+
+    @Override
+    public void getBlockHash(int height, byte[] dest, int offset) {
+        long blockIndex = height - 1;
+        getBytes(this.blocks.segment(blockIndex), this.blocks.offset(blockIndex), dest, offset);
+    }
+
+    @Override
+    public long getTimestamp(long txIndex) {
+        return this.transactions.segment(txIndex).getLong(this.transactions.offset(txIndex) + TX_TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public int getSenderId(long txIndex) {
+        return this.transactions.segment(txIndex).getInt(this.transactions.offset(txIndex) + TX_SENDER_OFFSET);
+    }
+
+    @Override
+    public int getRecipientId(long txIndex) {
+        return this.transactions.segment(txIndex).getInt(this.transactions.offset(txIndex) + TX_RECIPIENT_OFFSET);
+    }
+
+    @Override
+    public int getTypeOrdinal(long txIndex) {
+        return this.transactions.segment(txIndex).get(this.transactions.offset(txIndex) + TX_TYPE_OFFSET);
+    }
+
+    @Override
+    public long getAmount(long txIndex) {
+        return this.transactions.segment(txIndex).getLong(this.transactions.offset(txIndex) + TX_AMOUNT_OFFSET);
+    }
+
+    @Override
+    public void getTransactionHash(long txIndex, byte[] dest, int offset) {
+        getBytes(this.transactions.segment(txIndex), this.transactions.offset(txIndex) + TX_HASH_OFFSET, dest, offset);
+    }
+
+    // Absolute bulk get/put need Java 13+
+    private static void putBytes(MappedByteBuffer buffer, int index, byte[] hash) {
+        for (int i = 0; i < HASH_LENGTH; ++i)
+            buffer.put(index + i, hash[i]);
+    }
+
+    private static void getBytes(MappedByteBuffer buffer, int index, byte[] dest, int offset) {
+        for (int i = 0; i < HASH_LENGTH; ++i)
+            dest[offset + i] = buffer.get(index + i);
+    }
+
+    private long getIndexedTxIndex(long indexIndex) {
+        return this.recipientIndex.segment(indexIndex).getLong(this.recipientIndex.offset(indexIndex));
+    }
+
+    /** Returns index of first transaction in block at <tt>height</tt>, or later block if that block is empty. */
+    private long getFirstTxIndexAtOrAfter(int height) {
+        if (height > this.blockCount)
+            return this.transactionCount;
+
+        // Start from nearest sparse index entry then skip forward
+        long heightIndex = (height - 1) / HEIGHT_INDEX_INTERVAL;
+        long txIndex = this.heights.segment(heightIndex).getLong(this.heights.offset(heightIndex));
+        long startTimestamp = Timestamp.toLong(height, 0);
+
+        while (txIndex < this.transactionCount && getTimestamp(txIndex) < startTimestamp)
+            ++txIndex;
+
+        return txIndex;
+    }
+
+    @Override
+    public long findTransactionTo(int recipientId, long afterTimestamp, int maxHeight) {
+        long maxTimestamp = Timestamp.toLong(maxHeight + 1, 0);
+
+        if (recipientId == this.indexedRecipientId) {
+            long low = 0;
+            long high = this.indexedCount;
+
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+
+                if (getTimestamp(getIndexedTxIndex(mid)) <= afterTimestamp)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            if (low == this.indexedCount)
+                return -1;
+
+            long txIndex = getIndexedTxIndex(low);
+            return getTimestamp(txIndex) < maxTimestamp ? txIndex : -1;
+        }
+
+        Timestamp timestamp = new Timestamp(afterTimestamp);
+
+        for (long txIndex = getFirstTxIndexAtOrAfter(Math.max(timestamp.blockHeight, 1)); txIndex < this.transactionCount; ++txIndex) {
+            long txTimestamp = getTimestamp(txIndex);
+
+            if (txTimestamp >= maxTimestamp)
+                break;
+
+            if (txTimestamp > afterTimestamp && getRecipientId(txIndex) == recipientId)
+                return txIndex;
+        }
+
+        return -1;
+    }
+
+    /** Flushes all segments to disk. */
+    public void force() {
+        this.meta.force();
+        this.transactions.force();
+        this.blocks.force();
+        this.heights.force();
+        this.recipientIndex.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.transactions.close();
+        this.blocks.close();
+        this.heights.close();
+        this.recipientIndex.close();
+
+        this.meta.force();
+        this.metaChannel.close();
+    }
+
+}
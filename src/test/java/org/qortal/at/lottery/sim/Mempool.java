@@ -0,0 +1,68 @@
+package org.qortal.at.lottery.sim;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe queue of transactions to an AT, waiting to be included in a block by a {@link BlockProducer}.
+ * <p>
+ * Any number of threads can submit concurrently: submission is a lock-free enqueue and never blocks.
+ * Transactions are included in the order they were enqueued.
+ */
+public class Mempool {
+
+    /** Transaction waiting for inclusion. Immutable so it can be safely handed between threads. */
+    public static class PendingTransaction {
+        public final String sender;
+        /** Null for MESSAGE */
+        public final Long amount;
+        /** <tt>System.nanoTime()</tt> when submitted */
+        public final long submitNanos;
+
+        private PendingTransaction(String sender, Long amount) {
+            this.sender = sender;
+            this.amount = amount;
+            this.submitNanos = System.nanoTime();
+        }
+
+        public boolean isPayment() {
+            return this.amount != null;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<PendingTransaction> queue = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder submittedAmount = new LongAdder();
+
+    public void submitPayment(String sender, long amount) {
+        this.queue.offer(new PendingTransaction(sender, amount));
+        this.submittedCount.increment();
+        this.submittedAmount.add(amount);
+    }
+
+    public void submitMessage(String sender) {
+        this.queue.offer(new PendingTransaction(sender, null));
+        this.submittedCount.increment();
+    }
+
+    /** Returns next transaction to include, or null if none waiting. */
+    public PendingTransaction poll() {
+        return this.queue.poll();
+    }
+
+    public boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+
+    /** Returns number of transactions submitted so far, by all threads. */
+    public long getSubmittedCount() {
+        return this.submittedCount.sum();
+    }
+
+    /** Returns total amount of payments submitted so far, by all threads. */
+    public long getSubmittedAmount() {
+        return this.submittedAmount.sum();
+    }
+
+}
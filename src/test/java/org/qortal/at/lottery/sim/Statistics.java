@@ -0,0 +1,200 @@
+package org.qortal.at.lottery.sim;
+
+import java.util.Arrays;
+
+/**
+ * Goodness-of-fit tests used by fairness checks: chi-square and Kolmogorov-Smirnov, with p-values.
+ * <p>
+ * Small p-values (e.g. below 0.001) indicate observed data is unlikely under the expected distribution.
+ */
+public class Statistics {
+
+    private Statistics() {
+    }
+
+    /** Returns chi-square statistic for <tt>counts</tt> against a uniform distribution. */
+    public static double chiSquareUniform(long[] counts) {
+        double[] proportions = new double[counts.length];
+        Arrays.fill(proportions, 1.0 / counts.length);
+        return chiSquare(counts, proportions);
+    }
+
+    /** Returns chi-square statistic for <tt>counts</tt> against expected <tt>proportions</tt>, which should sum to 1. */
+    public static double chiSquare(long[] counts, double[] proportions) {
+        long total = Arrays.stream(counts).sum();
+
+        double chiSquare = 0.0;
+        for (int i = 0; i < counts.length; ++i) {
+            double expected = total * proportions[i];
+            double difference = counts[i] - expected;
+            chiSquare += difference * difference / expected;
+        }
+
+        return chiSquare;
+    }
+
+    /**
+     * Returns chi-square statistic for independence of rows and columns in contingency table.
+     * Degrees of freedom are <tt>(rows - 1) * (columns - 1)</tt>.
+     */
+    public static double chiSquareIndependence(long[][] table) {
+        int rows = table.length;
+        int columns = table[0].length;
+
+        long[] rowTotals = new long[rows];
+        long[] columnTotals = new long[columns];
+        long total = 0;
+
+        for (int row = 0; row < rows; ++row)
+            for (int column = 0; column < columns; ++column) {
+                rowTotals[row] += table[row][column];
+                columnTotals[column] += table[row][column];
+                total += table[row][column];
+            }
+
+        double chiSquare = 0.0;
+        for (int row = 0; row < rows; ++row)
+            for (int column = 0; column < columns; ++column) {
+                double expected = (double) rowTotals[row] * columnTotals[column] / total;
+                double difference = table[row][column] - expected;
+                chiSquare += difference * difference / expected;
+            }
+
+        return chiSquare;
+    }
+
+    /** Returns probability of chi-square statistic at least as large as <tt>chiSquare</tt>. */
+    public static double chiSquarePValue(double chiSquare, int degreesOfFreedom) {
+        return regularizedGammaQ(degreesOfFreedom / 2.0, chiSquare / 2.0);
+    }
+
+    /** Returns Kolmogorov-Smirnov statistic D for <tt>samples</tt> against uniform distribution on [0, 1). */
+    public static double ksUniform(double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+
+        int n = sorted.length;
+        double d = 0.0;
+
+        for (int i = 0; i < n; ++i) {
+            double x = Math.min(Math.max(sorted[i], 0.0), 1.0);
+            d = Math.max(d, Math.max((i + 1.0) / n - x, x - (double) i / n));
+        }
+
+        return d;
+    }
+
+    /** Returns approximate probability of KS statistic at least as large as <tt>d</tt> for <tt>n</tt> samples. */
+    public static double ksPValue(double d, int n) {
+        double sqrtN = Math.sqrt(n);
+        double lambda = (sqrtN + 0.12 + 0.11 / sqrtN) * d;
+
+        if (lambda <= 0.0)
+            return 1.0;
+
+        // Alternating series below converges too slowly for small lambda, so use complementary form:
+        // 1 - Q(lambda) = sqrt(2 pi) / lambda * sum exp(-(2j - 1)^2 pi^2 / (8 lambda^2))
+        if (lambda < 1.18) {
+            double y = -Math.PI * Math.PI / (8.0 * lambda * lambda);
+            double cdf = 0.0;
+            for (int j = 1; j <= 10; ++j)
+                cdf += Math.exp((2 * j - 1) * (2 * j - 1) * y);
+
+            return Math.min(Math.max(1.0 - Math.sqrt(2.0 * Math.PI) / lambda * cdf, 0.0), 1.0);
+        }
+
+        // Kolmogorov distribution: Q(lambda) = 2 * sum (-1)^(j-1) exp(-2 j^2 lambda^2)
+        double sum = 0.0;
+        double sign = 1.0;
+        for (int j = 1; j <= 100; ++j) {
+            double term = sign * Math.exp(-2.0 * j * j * lambda * lambda);
+            sum += term;
+
+            if (Math.abs(term) < 1e-12 * Math.abs(sum))
+                break;
+
+            sign = -sign;
+        }
+
+        return Math.min(Math.max(2.0 * sum, 0.0), 1.0);
+    }
+
+    /** Upper regularized incomplete gamma function Q(a, x). */
+    public static double regularizedGammaQ(double a, double x) {
+        if (x <= 0.0)
+            return 1.0;
+
+        if (x < a + 1.0)
+            return 1.0 - gammaPSeries(a, x);
+
+        return gammaQContinuedFraction(a, x);
+    }
+
+    private static double gammaPSeries(double a, double x) {
+        double term = 1.0 / a;
+        double sum = term;
+
+        for (int n = 1; n < 10_000; ++n) {
+            term *= x / (a + n);
+            sum += term;
+
+            if (Math.abs(term) < Math.abs(sum) * 1e-15)
+                break;
+        }
+
+        return sum * Math.exp(-x + a * Math.log(x) - lnGamma(a));
+    }
+
+    // Modified Lentz's method
+    private static double gammaQContinuedFraction(double a, double x) {
+        final double tiny = 1e-300;
+
+        double b = x + 1.0 - a;
+        double c = 1.0 / tiny;
+        double d = 1.0 / b;
+        double h = d;
+
+        for (int i = 1; i < 10_000; ++i) {
+            double an = -i * (i - a);
+            b += 2.0;
+
+            d = an * d + b;
+            if (Math.abs(d) < tiny)
+                d = tiny;
+
+            c = b + an / c;
+            if (Math.abs(c) < tiny)
+                c = tiny;
+
+            d = 1.0 / d;
+            double delta = d * c;
+            h *= delta;
+
+            if (Math.abs(delta - 1.0) < 1e-15)
+                break;
+        }
+
+        return Math.exp(-x + a * Math.log(x) - lnGamma(a)) * h;
+    }
+
+    // Lanczos approximation
+    private static final double[] LANCZOS = {
+            676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+            12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+    };
+
+    public static double lnGamma(double x) {
+        if (x < 0.5)
+            // Reflection formula
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1.0 - x);
+
+        x -= 1.0;
+        double sum = 0.99999999999980993;
+        for (int i = 0; i < LANCZOS.length; ++i)
+            sum += LANCZOS[i] / (x + i + 1);
+
+        double t = x + LANCZOS.length - 0.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+}